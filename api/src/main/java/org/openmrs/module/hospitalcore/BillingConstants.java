@@ -84,4 +84,21 @@ public class BillingConstants {
 	public static final String GLOBAL_PROPRETY_RADIOLOGY_ORDER_TYPE = MODULE
 			+ ".radiologyOrderType";
 
+	public static final String GLOBAL_PROPRETY_UPDATED_RECEIPT_IDS = MODULE
+			+ ".updatedReceiptIds";
+
+	public static final String GLOBAL_PROPRETY_RECEIPT_MIGRATION_CHECKPOINT = MODULE
+			+ ".receiptMigrationCheckpoint";
+
+	public static final String GLOBAL_PROPRETY_RECEIPT_MIGRATION_CHUNK_SIZE = MODULE
+			+ ".receiptMigrationChunkSize";
+
+	/**
+	 * Bills given a receipt by the receipt migration, in the order they are
+	 * processed
+	 */
+	public static final String[] RECEIPT_MIGRATION_BILL_TYPES = {
+			"AmbulanceBill", "TenderBill", "PatientServiceBill",
+			"MiscellaneousServiceBill" };
+
 }
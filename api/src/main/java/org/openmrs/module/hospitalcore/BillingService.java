@@ -21,6 +21,7 @@
 package org.openmrs.module.hospitalcore;
 
 import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
 
@@ -42,6 +43,9 @@ import org.openmrs.module.hospitalcore.model.PatientServiceBillItem;
 import org.openmrs.module.hospitalcore.model.Receipt;
 import org.openmrs.module.hospitalcore.model.Tender;
 import org.openmrs.module.hospitalcore.model.TenderBill;
+import org.openmrs.module.hospitalcore.util.BillingDailyTotal;
+import org.openmrs.module.hospitalcore.util.ServiceCatalogue;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 /**
@@ -233,6 +237,13 @@ public interface BillingService extends OpenmrsService {
 	
 	public String traversTab(Concept concept, Map<Integer, BillableService> mapServices, int count) throws APIException;
 	
+	/**
+	 * Returns the rendered service tabs and service list of the billing root concept. The markup is
+	 * compiled once and only rebuilt after the services or the concept dictionary are changed.
+	 */
+	@Transactional(readOnly = true)
+	public ServiceCatalogue getServiceCatalogue() throws APIException;
+	
 	public void disableService(Integer conceptId) throws APIException;
 	
 	/**
@@ -326,9 +337,26 @@ public interface BillingService extends OpenmrsService {
 	@Authorized({ BillingConstants.PRIV_ADD_BILL })
 	public Receipt createReceipt() throws APIException;
 	
+	/**
+	 * Start giving receipts to old bills in the background unless it is already done, see
+	 * {@link org.openmrs.module.hospitalcore.util.ReceiptMigration}
+	 */
 	@Authorized({ BillingConstants.PRIV_ADD_BILL })
 	public void updateReceipt() throws APIException;
 	
+	/**
+	 * Give a receipt to the next chunk of bills of one type having none and checkpoint the progress
+	 * in the same transaction
+	 * 
+	 * @param billType one of {@link BillingConstants#RECEIPT_MIGRATION_BILL_TYPES}
+	 * @param afterBillId only bills with a greater id, null to start from the first bill
+	 * @param chunkSize
+	 * @return ids of the updated bills in ascending order, empty when there is none left
+	 * @throws APIException
+	 */
+	@Authorized({ BillingConstants.PRIV_ADD_BILL })
+	public List<Integer> updateReceipts(String billType, Integer afterBillId, int chunkSize) throws APIException;
+	
 	public void updateOldBills();
 	
     public IndoorPatientServiceBill saveIndoorPatientServiceBill(IndoorPatientServiceBill indoorPatientServiceBill) throws APIException;
@@ -342,4 +370,48 @@ public interface BillingService extends OpenmrsService {
 	//New Requirement add Paid bill & Free bill Both 
 	public PatientServiceBillItem getPatientServiceBillItem(Integer billId,
 			String name)throws APIException;
+	
+	/**
+	 * Daily billing totals
+	 */
+	
+	/**
+	 * The billing totals of the days from fromDate up to and including toDate. The totals are kept
+	 * per day, service and creator in the transactions saving bills, which add the difference the
+	 * save made to the totals of the bill. A voided bill is taken back from the day it was
+	 * created.
+	 * 
+	 * @param fromDate
+	 * @param toDate
+	 * @param billType simple name of the bill entity, e.g. PatientServiceBill, null for all
+	 * @param groupBy dimensions of {@link BillingDailyTotal} to split the totals by, none for one
+	 *            total per bill type
+	 * @return the totals per bill type and dimensions, in that order
+	 * @throws APIException
+	 */
+	@Transactional(readOnly = true)
+	@Authorized({ BillingConstants.PRIV_VIEW_BILL })
+	public List<BillingDailyTotal> listBillingDailyTotals(Date fromDate, Date toDate, String billType, String... groupBy)
+	                                                                                                                     throws APIException;
+	
+	/**
+	 * Compute the daily billing totals of the days from fromDate up to and including toDate from
+	 * the bills again, each day committed on its own. Meant for closed days, or bills changed
+	 * outside this service.
+	 * 
+	 * @return the number of total rows written
+	 * @throws APIException
+	 */
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	@Authorized({ BillingConstants.PRIV_EDIT_BILL })
+	public int rebuildBillingDailyTotals(Date fromDate, Date toDate) throws APIException;
+	
+	/**
+	 * Compute the daily billing totals of one day from the bills again
+	 * 
+	 * @return the number of total rows written
+	 * @throws APIException
+	 */
+	@Authorized({ BillingConstants.PRIV_EDIT_BILL })
+	public int rebuildBillingDailyTotalsOfDay(Date day) throws APIException;
 }
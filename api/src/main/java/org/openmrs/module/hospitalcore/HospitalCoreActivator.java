@@ -28,6 +28,8 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.module.ModuleActivator;
 import org.openmrs.module.hospitalcore.util.Money;
+import org.openmrs.module.hospitalcore.util.PatientVisitCSVExporter;
+import org.openmrs.module.hospitalcore.util.ReceiptMigration;
 
 /**
  * This class contains the logic that is run every time this module is either started or shutdown
@@ -50,6 +52,8 @@ public class HospitalCoreActivator implements ModuleActivator{
 
 	public void stopped() {
 		// TODO Auto-generated method stub
+		PatientVisitCSVExporter.shutdown();
+		ReceiptMigration.shutdown();
 		log.info("Stoped HOSPITALCORE Module");
 	}
 
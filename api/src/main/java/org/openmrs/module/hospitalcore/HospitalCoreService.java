@@ -23,9 +23,12 @@ package org.openmrs.module.hospitalcore;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Writer;
 import java.math.BigInteger;
 import java.sql.Date;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.xml.parsers.ParserConfigurationException;
@@ -40,9 +43,13 @@ import org.openmrs.PersonAttribute;
 import org.openmrs.User;
 import org.openmrs.api.APIException;
 import org.openmrs.api.ConceptService;
+import org.openmrs.annotation.Authorized;
 import org.openmrs.api.OpenmrsService;
+import org.openmrs.module.hospitalcore.concept.ConceptGraph;
 import org.openmrs.module.hospitalcore.model.CoreForm;
 import org.openmrs.module.hospitalcore.model.PatientSearch;
+import org.openmrs.util.OpenmrsConstants;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.xml.sax.SAXException;
 
@@ -127,6 +134,47 @@ public interface HospitalCoreService extends OpenmrsService {
 			int age, int rangeAge, String date, int rangeDay,
 			String relativeName) throws APIException;
 
+	/**
+	 * Search one page of patients, ordered by patient id
+	 * 
+	 * @param nameOrIdentifier
+	 * @param gender
+	 * @param age
+	 * @param rangeAge
+	 * @param date
+	 * @param rangeDay
+	 * @param relativeName
+	 * @param afterPatientId
+	 *            last patient id of the previous page, null to page by offset
+	 * @param min
+	 *            first row when paging by offset
+	 * @param max
+	 *            page size
+	 * @return
+	 * @throws APIException
+	 */
+	public List<Patient> searchPatient(String nameOrIdentifier, String gender,
+			int age, int rangeAge, String date, int rangeDay,
+			String relativeName, Integer afterPatientId, int min, int max)
+			throws APIException;
+
+	/**
+	 * Count patients matching the search
+	 * 
+	 * @param nameOrIdentifier
+	 * @param gender
+	 * @param age
+	 * @param rangeAge
+	 * @param date
+	 * @param rangeDay
+	 * @param relativeName
+	 * @return
+	 * @throws APIException
+	 */
+	public Integer countPatient(String nameOrIdentifier, String gender,
+			int age, int rangeAge, String date, int rangeDay,
+			String relativeName) throws APIException;
+
 	/**
 	 * Search patients
 	 * 
@@ -151,6 +199,15 @@ public interface HospitalCoreService extends OpenmrsService {
 	 */
 	public List<PersonAttribute> getPersonAttributes(Integer patientId);
 	
+	/**
+	 * Get all attributes of many patients in one query
+	 * 
+	 * @param patientIds
+	 * @return attributes grouped by patient id
+	 */
+	public Map<Integer, List<PersonAttribute>> getPersonAttributes(
+			Collection<Integer> patientIds);
+	
 	/**
 	 * Get last visit encounter
 	 * @param patient
@@ -200,6 +257,24 @@ public interface HospitalCoreService extends OpenmrsService {
 	 */
 	public PatientSearch savePatientSearch(PatientSearch patientSearch);
 	
+	/**
+	 * Rebuild the search grams of every patient in patient_search, each batch
+	 * committed on its own
+	 * @return number of indexed patients
+	 */
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	@Authorized({ OpenmrsConstants.PRIV_EDIT_PATIENTS })
+	public Integer rebuildPatientSearchIndex();
+	
+	/**
+	 * Rebuild the search grams of the next batch of patients ordered by patient id
+	 * @param afterPatientId last patient id of the previous batch, null to start from the beginning
+	 * @param batchSize
+	 * @return ids of the indexed patients in ascending order, empty when nothing was left to index
+	 */
+	@Authorized({ OpenmrsConstants.PRIV_EDIT_PATIENTS })
+	public List<Integer> rebuildPatientSearchIndexBatch(Integer afterPatientId, int batchSize);
+	
 	/**
 	 * 
 	 * get Last Visit time
@@ -209,6 +284,15 @@ public interface HospitalCoreService extends OpenmrsService {
 	 */
 	public java.util.Date getLastVisitTime (int patientID);
 	
+	/**
+	 * Get last visit time of many patients in one query
+	 * 
+	 * @param patientIds
+	 * @return last visit time by patient id, patients without encounter are left out
+	 */
+	public Map<Integer, java.util.Date> getLastVisitTimes(
+			Collection<Integer> patientIds);
+	
 	//ghanshyam,22-oct-2013,New Requirement #2940 Dealing with dead patient
 	public PatientSearch getPatient(int patientID);
 	
@@ -220,4 +304,53 @@ public interface HospitalCoreService extends OpenmrsService {
 	public Set<Encounter>getEncountersByPatientAndDateFromObs(String date);
 	public List<Obs> getObsInstanceForDiagnosis(Encounter encounter,Concept concept) throws APIException;
 	
+	/**
+	 * Write the patient visit report of a period as CSV
+	 * 
+	 * @param fromDate
+	 *            inclusive
+	 * @param toDate
+	 *            exclusive
+	 * @param writer
+	 * @return number of written visits
+	 * @throws IOException
+	 */
+	@Transactional(readOnly = true)
+	public int writePatientVisitsCSV(java.util.Date fromDate,
+			java.util.Date toDate, Writer writer) throws IOException;
+
+	/**
+	 * Write the rows of the patient visit report of a period, without the
+	 * CSV header
+	 * 
+	 * @param fromDate
+	 *            inclusive
+	 * @param toDate
+	 *            exclusive
+	 * @param writer
+	 * @return number of written visits
+	 * @throws IOException
+	 */
+	@Transactional(readOnly = true)
+	public int writePatientVisits(java.util.Date fromDate,
+			java.util.Date toDate, Writer writer) throws IOException;
+
+	/**
+	 * Get the shared snapshot of the concept answer and concept set graph,
+	 * loading it when the concept dictionary has changed
+	 * 
+	 * @return
+	 */
+	@Transactional(readOnly = true)
+	public ConceptGraph getConceptGraph();
+
+	/**
+	 * Get many concepts in one query
+	 * 
+	 * @param conceptIds
+	 * @return concepts by concept id
+	 */
+	@Transactional(readOnly = true)
+	public Map<Integer, Concept> getConcepts(Collection<Integer> conceptIds);
+	
 }
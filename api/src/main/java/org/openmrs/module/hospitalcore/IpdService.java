@@ -22,7 +22,9 @@
 package org.openmrs.module.hospitalcore;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import org.openmrs.Concept;
 import org.openmrs.Encounter;
@@ -35,6 +37,11 @@ import org.openmrs.module.hospitalcore.model.IpdPatientAdmitted;
 import org.openmrs.module.hospitalcore.model.IpdPatientAdmittedLog;
 import org.openmrs.module.hospitalcore.model.IpdPatientVitalStatistics;
 import org.openmrs.module.hospitalcore.model.WardBedStrength;
+import org.openmrs.module.hospitalcore.util.IpdBulkResult;
+import org.openmrs.module.hospitalcore.util.KeysetPage;
+import org.openmrs.module.hospitalcore.util.VitalReading;
+import org.openmrs.module.hospitalcore.util.VitalSeries;
+import org.openmrs.module.hospitalcore.util.WardOccupancy;
 import org.springframework.transaction.annotation.Transactional;
 
 @Transactional(readOnly=false)
@@ -80,6 +87,19 @@ public interface IpdService extends OpenmrsService{
 	public List<IpdPatientAdmissionLog> listIpdPatientAdmissionLog(Integer patientId, Integer admissionWardId,String status,Integer min, Integer max)
 			throws APIException;
 	
+	/**
+	 * A page of the admission log, latest admission first
+	 * 
+	 * @param cursor the next cursor of the previous page, blank for the first page
+	 * @param pageSize 0 for the default page size
+	 */
+	@Transactional(readOnly = true)
+	public KeysetPage<IpdPatientAdmissionLog> listIpdPatientAdmissionLogPage(Integer patientId, Integer admissionWardId, String status, String cursor, int pageSize)
+			throws APIException;
+	
+	@Transactional(readOnly = true)
+	public int countIpdPatientAdmissionLog(Integer patientId, Integer admissionWardId, String status) throws APIException;
+	
 	@Transactional(readOnly = true)
 	public List<IpdPatientAdmission> getAllIpdPatientAdmission() throws APIException;
 	
@@ -90,10 +110,48 @@ public interface IpdService extends OpenmrsService{
 	@Transactional(readOnly = true)
 	public List<IpdPatientAdmitted> searchIpdPatientAdmitted(String patientSearch, ArrayList<Integer> userIds, String fromDate, String toDate, String wardId, String status) throws APIException;
 	
+	/**
+	 * A page of the admission queue ordered by admission date and id
+	 * 
+	 * @param cursor the next cursor of the previous page, blank for the first page
+	 * @param pageSize 0 for the default page size
+	 */
+	@Transactional(readOnly = true)
+	public KeysetPage<IpdPatientAdmission> searchIpdPatientAdmissionPage(String patientSearch, ArrayList<Integer> userIds, String fromDate, String toDate, String wardId, String status, String cursor, int pageSize) throws APIException;
+	
+	@Transactional(readOnly = true)
+	public int countIpdPatientAdmission(String patientSearch, ArrayList<Integer> userIds, String fromDate, String toDate, String wardId, String status) throws APIException;
+	
+	/**
+	 * A page of the admitted patients ordered by admission date and id
+	 * 
+	 * @param cursor the next cursor of the previous page, blank for the first page
+	 * @param pageSize 0 for the default page size
+	 */
+	@Transactional(readOnly = true)
+	public KeysetPage<IpdPatientAdmitted> searchIpdPatientAdmittedPage(String patientSearch, ArrayList<Integer> userIds, String fromDate, String toDate, String wardId, String status, String cursor, int pageSize) throws APIException;
+	
+	@Transactional(readOnly = true)
+	public int countIpdPatientAdmitted(String patientSearch, ArrayList<Integer> userIds, String fromDate, String toDate, String wardId, String status) throws APIException;
+	
 	public IpdPatientAdmitted transfer(Integer id, Integer wardId, Integer doctorId, String bed, String comments) throws APIException;
 	
 	public IpdPatientAdmittedLog discharge(Integer id, Integer outComeConceptId) throws APIException;
 	
+	/**
+	 * Transfer admitted patients to one ward in a single transaction.
+	 * Patients that can not be transferred are reported and skipped.
+	 * 
+	 * @param beds the new bed by admitted id
+	 */
+	public IpdBulkResult transfer(Map<Integer, String> beds, Integer wardId, Integer doctorId, String comments) throws APIException;
+	
+	/**
+	 * Discharge admitted patients with one outcome in a single transaction.
+	 * Patients that can not be discharged are reported and skipped.
+	 */
+	public IpdBulkResult discharge(List<Integer> ids, Integer outComeConceptId) throws APIException;
+	
 	@Transactional(readOnly = true)
 	public List<IpdPatientAdmittedLog> listAdmittedLogByPatientId(Integer patientId) throws APIException;
 	
@@ -106,7 +164,32 @@ public interface IpdService extends OpenmrsService{
   //Vital Stastics
 	public IpdPatientVitalStatistics saveIpdPatientVitalStatistics(IpdPatientVitalStatistics vitalStatistics) throws APIException;
 	public List<IpdPatientVitalStatistics> getIpdPatientVitalStatistics(Integer patientId,Integer patientAdmissionLogId) throws APIException;
+	/**
+	 * The vital statistics of an admission as arrays for charts
+	 * 
+	 * @param maxPoints the readings are grouped into at most this many buckets, 0 for every reading
+	 */
+	@Transactional(readOnly = true)
+	public VitalSeries getVitalSeries(Integer patientId, Integer patientAdmissionLogId, int maxPoints) throws APIException;
+	/**
+	 * @return the latest vital statistics by admission log id, admissions without any are left out
+	 */
+	@Transactional(readOnly = true)
+	public Map<Integer, VitalReading> getLatestVitalReadings(Collection<Integer> admissionLogIds) throws APIException;
 	public List<Concept> getDiet() throws APIException;
+	@Transactional(readOnly = true)
 	public List<IpdPatientAdmitted> getBedAvailability(Concept wardId,String bedNo);
+	/**
+	 * Whether a patient is admitted in a bed, answered from the ward census
+	 */
+	@Transactional(readOnly = true)
+	public boolean isBedOccupied(Integer wardId, String bed) throws APIException;
+	/**
+	 * The occupied beds and patient counts of a ward, from the ward census
+	 */
+	@Transactional(readOnly = true)
+	public WardOccupancy getWardOccupancy(Integer wardId) throws APIException;
+	@Transactional(readOnly = true)
+	public List<WardOccupancy> getWardOccupancies() throws APIException;
 	public IpdPatientAdmission getIpdPatientAdmissionByPatient(Patient patient) throws APIException;
 }
@@ -21,8 +21,10 @@
 
 package org.openmrs.module.hospitalcore;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import org.openmrs.Concept;
 import org.openmrs.Order;
@@ -55,8 +57,21 @@ public interface LabService extends OpenmrsService {
 	
 	public void deleteLab(Lab lab) throws APIException;
 	
+	/**
+	 * Get the first of the labs showing the concept, as an investigation, a
+	 * confidential test or an answer below one of them
+	 */
+	@Transactional(readOnly = true)
 	public Lab getLabByConcept(Concept concept, List<Lab> labs) throws APIException;
 	
+	/**
+	 * Get the lab of each concept, the first of all labs showing it
+	 * 
+	 * @return the lab by concept id, concepts no lab shows are left out
+	 */
+	@Transactional(readOnly = true)
+	public Map<Integer, Lab> getLabsByConcepts(Collection<Concept> concepts) throws APIException;
+	
 	/**
 	 * LAB TEST
 	 */
@@ -71,8 +86,18 @@ public interface LabService extends OpenmrsService {
 	
 	public List<LabTest> getLatestLabTestByDate(Lab lab, Date date) throws APIException;
 	
+	/**
+	 * Reserve the next sample number of a lab for the day of the date
+	 */
 	public String getNextSampleNumber(Lab lab, Date date) throws APIException;
 	
+	/**
+	 * Reserve consecutive sample numbers of a lab for the day of the date,
+	 * for accepting several tests at once. Numbers of a rolled back
+	 * transaction are given out again.
+	 */
+	public List<String> reserveSampleNumbers(Lab lab, Date date, int count) throws APIException;
+	
 	public void deleteLabTest(LabTest labtest) throws APIException;
 	
 	public void deleteLabTestByOrder(Order order) throws APIException;	
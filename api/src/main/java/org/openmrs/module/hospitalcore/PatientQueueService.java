@@ -22,6 +22,7 @@
 
 package org.openmrs.module.hospitalcore;
 
+import java.util.Date;
 import java.util.List;
 //New Requirement "Editable Dashboard" //
 import org.openmrs.Concept;
@@ -33,6 +34,8 @@ import org.openmrs.api.APIException;
 import org.openmrs.api.OpenmrsService;
 import org.openmrs.module.hospitalcore.model.OpdPatientQueue;
 import org.openmrs.module.hospitalcore.model.OpdPatientQueueLog;
+import org.openmrs.module.hospitalcore.util.OpdQueueRollover;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 /**
@@ -57,6 +60,19 @@ public interface PatientQueueService extends OpenmrsService {
 	public OpdPatientQueueLog saveOpdPatientQueueLog(OpdPatientQueueLog opdPatientQueueLog) throws APIException ;
 	public OpdPatientQueueLog getOpdPatientQueueLogById(Integer id) throws APIException;
 	public List<OpdPatientQueue> getAllPatientInQueue() throws APIException ;
+	/**
+	 * Move the queue rows of past days to the queue log, in batches of
+	 * batchSize rows each committed on its own
+	 */
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public OpdQueueRollover rolloverOpdPatientQueue(int batchSize) throws APIException;
+	/**
+	 * Move one batch of queue rows created before the given date to the
+	 * queue log
+	 * 
+	 * @return the number of rows moved
+	 */
+	public int rolloverOpdPatientQueueBatch(Date before, int batchSize) throws APIException;
 	public OpdPatientQueueLog copyTo(OpdPatientQueue opdPatientQueue)throws APIException ;
 	public OpdPatientQueue getOpdPatientQueue(String patientIdentifier,Integer opdConceptId) throws APIException;
 	//New Requirement "Editable Dashboard"//
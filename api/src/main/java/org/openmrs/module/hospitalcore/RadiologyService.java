@@ -34,6 +34,7 @@ import org.openmrs.module.hospitalcore.form.RadiologyForm;
 import org.openmrs.module.hospitalcore.model.RadiologyDepartment;
 import org.openmrs.module.hospitalcore.model.RadiologyTest;
 import org.openmrs.module.hospitalcore.template.RadiologyTemplate;
+import org.openmrs.module.hospitalcore.util.RadiologyWorklistDelta;
 import org.springframework.transaction.annotation.Transactional;
 
 @Transactional
@@ -244,6 +245,47 @@ public interface RadiologyService extends OpenmrsService {
 	public List<RadiologyTest> getAllRadiologyTestsByDate(Date date,
 			String phrase, Concept investigation) throws ParseException;
 
+	/**
+	 * Get one page of the radiology tests by date
+	 * 
+	 * @param date
+	 * @param phrase
+	 * @param investigation
+	 * @param page
+	 * @return
+	 * @throws ParseException
+	 */
+	public List<RadiologyTest> getAllRadiologyTestsByDate(Date date,
+			String phrase, Concept investigation, int page)
+			throws ParseException;
+
+	/**
+	 * Count radiology tests by date
+	 * 
+	 * @param date
+	 * @param phrase
+	 * @param investigation
+	 * @return
+	 * @throws ParseException
+	 */
+	public Integer countAllRadiologyTestsByDate(Date date, String phrase,
+			Concept investigation) throws ParseException;
+
+	/**
+	 * Get the changes of the current department's worklist for a day since
+	 * the version returned by the previous call
+	 * 
+	 * @param date
+	 * @param sinceVersion
+	 *            the version of the previous changes, 0 for the whole
+	 *            worklist
+	 * @return the changes, <code>null</code> if the user does not belong to
+	 *         a radiology department
+	 * @throws ParseException
+	 */
+	public RadiologyWorklistDelta getWorklistChanges(Date date,
+			long sinceVersion) throws ParseException;
+
 	/**
 	 * Get all completed radiology tests
 	 * 
@@ -0,0 +1,49 @@
+/**
+ *  Copyright 2010 Society for Health Information Systems Programmes, India (HISP India)
+ *
+ *  This file is part of Hospital-core module.
+ *
+ *  Hospital-core module is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  Hospital-core module is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Hospital-core module.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+
+package org.openmrs.module.hospitalcore.advice;
+
+import java.lang.reflect.Method;
+
+import org.openmrs.module.hospitalcore.concept.ConceptGraphCache;
+import org.openmrs.module.hospitalcore.concept.InvestigationRoutingCache;
+import org.openmrs.module.hospitalcore.concept.LabConceptIndexCache;
+import org.openmrs.module.hospitalcore.util.RadiologyWorklistCache;
+import org.openmrs.module.hospitalcore.util.ServiceCatalogueCache;
+import org.springframework.aop.AfterReturningAdvice;
+
+/**
+ * Invalidates the concept based caches of this module whenever the concept dictionary is changed
+ * through the ConceptService.
+ */
+public class ConceptDictionaryAdvice implements AfterReturningAdvice {
+	
+	public void afterReturning(Object returnValue, Method method, Object[] args, Object target) throws Throwable {
+		String name = method.getName();
+		if (name.startsWith("save") || name.startsWith("purge") || name.startsWith("retire")
+		        || name.startsWith("unretire")) {
+			ConceptGraphCache.invalidate();
+			InvestigationRoutingCache.invalidate();
+			LabConceptIndexCache.invalidate();
+			RadiologyWorklistCache.invalidate();
+			ServiceCatalogueCache.invalidateConcepts();
+		}
+	}
+}
@@ -0,0 +1,242 @@
+/**
+ *  Copyright 2010 Society for Health Information Systems Programmes, India (HISP India)
+ *
+ *  This file is part of Hospital-core module.
+ *
+ *  Hospital-core module is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  Hospital-core module is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Hospital-core module.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+
+package org.openmrs.module.hospitalcore.concept;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable snapshot of the concept answer and concept set edges used to build test trees. Concept
+ * ids are kept sorted in an int array and the edges in compressed adjacency arrays, so a snapshot
+ * of the whole dictionary stays small and can be shared between threads. Edges of concepts of class
+ * Test are left out because test trees do not expand them.
+ */
+public class ConceptGraph {
+	
+	private static final int[] EMPTY = new int[0];
+	
+	private final long version;
+	
+	private final int[] conceptIds;
+	
+	private final int[] childOffsets;
+	
+	private final int[] childIndexes;
+	
+	private final ConcurrentHashMap<Integer, int[]> descendants = new ConcurrentHashMap<Integer, int[]>();
+	
+	/**
+	 * Build the snapshot from a list of parent to child edges
+	 * 
+	 * @param version version of the cache the snapshot belongs to
+	 * @param parentIds concept ids of the parents, concept_answer.concept_id or
+	 *            concept_set.concept_set
+	 * @param childIds concept ids of the children, at the same positions as the parents
+	 * @param edgeCount number of edges used in both arrays
+	 */
+	public ConceptGraph(long version, int[] parentIds, int[] childIds, int edgeCount) {
+		this.version = version;
+		
+		int[] ids = new int[edgeCount * 2];
+		System.arraycopy(parentIds, 0, ids, 0, edgeCount);
+		System.arraycopy(childIds, 0, ids, edgeCount, edgeCount);
+		Arrays.sort(ids);
+		int size = 0;
+		for (int i = 0; i < ids.length; i++) {
+			if (size == 0 || ids[size - 1] != ids[i]) {
+				ids[size++] = ids[i];
+			}
+		}
+		conceptIds = new int[size];
+		System.arraycopy(ids, 0, conceptIds, 0, size);
+		
+		childOffsets = new int[size + 1];
+		for (int i = 0; i < edgeCount; i++) {
+			childOffsets[indexOf(parentIds[i]) + 1]++;
+		}
+		for (int i = 0; i < size; i++) {
+			childOffsets[i + 1] += childOffsets[i];
+		}
+		childIndexes = new int[edgeCount];
+		int[] next = new int[size];
+		System.arraycopy(childOffsets, 0, next, 0, size);
+		for (int i = 0; i < edgeCount; i++) {
+			int parent = indexOf(parentIds[i]);
+			childIndexes[next[parent]++] = indexOf(childIds[i]);
+		}
+	}
+	
+	/**
+	 * Version of the cache this snapshot was loaded for
+	 * 
+	 * @return
+	 */
+	public long getVersion() {
+		return version;
+	}
+	
+	/**
+	 * Number of concepts having at least one edge
+	 * 
+	 * @return
+	 */
+	public int getConceptCount() {
+		return conceptIds.length;
+	}
+	
+	/**
+	 * Number of edges in the snapshot
+	 * 
+	 * @return
+	 */
+	public int getEdgeCount() {
+		return childIndexes.length;
+	}
+	
+	/**
+	 * Get the ids of the direct children of a concept, answers and set members together
+	 * 
+	 * @param conceptId
+	 * @return
+	 */
+	public int[] getChildIds(int conceptId) {
+		int index = indexOf(conceptId);
+		if (index < 0) {
+			return EMPTY;
+		}
+		int from = childOffsets[index];
+		int[] ids = new int[childOffsets[index + 1] - from];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = conceptIds[childIndexes[from + i]];
+		}
+		return ids;
+	}
+	
+	/**
+	 * See whether a concept is a direct child of another
+	 * 
+	 * @param parentId
+	 * @param conceptId
+	 * @return
+	 */
+	public boolean isChild(int parentId, int conceptId) {
+		int parent = indexOf(parentId);
+		int child = indexOf(conceptId);
+		if (parent < 0 || child < 0) {
+			return false;
+		}
+		for (int i = childOffsets[parent]; i < childOffsets[parent + 1]; i++) {
+			if (childIndexes[i] == child) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Get the sorted ids of every concept below a root, the same set TestTree collects. Each concept
+	 * is expanded once so cycles in the dictionary do not loop. The result is memoized per root.
+	 * 
+	 * @param rootId
+	 * @return
+	 */
+	public int[] getDescendantIds(int rootId) {
+		int[] ids = descendants.get(rootId);
+		if (ids == null) {
+			ids = collectDescendants(rootId);
+			descendants.putIfAbsent(rootId, ids);
+		}
+		return ids;
+	}
+	
+	/**
+	 * Same as {@link #getDescendantIds(int)} as an unmodifiable set
+	 * 
+	 * @param rootId
+	 * @return
+	 */
+	public Set<Integer> getDescendantIdSet(int rootId) {
+		Set<Integer> set = new TreeSet<Integer>();
+		for (int id : getDescendantIds(rootId)) {
+			set.add(id);
+		}
+		return Collections.unmodifiableSet(set);
+	}
+	
+	/**
+	 * See whether a concept is below a root
+	 * 
+	 * @param rootId
+	 * @param conceptId
+	 * @return
+	 */
+	public boolean isDescendant(int rootId, int conceptId) {
+		return Arrays.binarySearch(getDescendantIds(rootId), conceptId) >= 0;
+	}
+	
+	private int[] collectDescendants(int rootId) {
+		int root = indexOf(rootId);
+		if (root < 0) {
+			return EMPTY;
+		}
+		boolean[] expanded = new boolean[conceptIds.length];
+		boolean[] found = new boolean[conceptIds.length];
+		int[] stack = new int[16];
+		int top = 0;
+		int count = 0;
+		stack[top++] = root;
+		expanded[root] = true;
+		while (top > 0) {
+			int node = stack[--top];
+			for (int i = childOffsets[node]; i < childOffsets[node + 1]; i++) {
+				int child = childIndexes[i];
+				if (!found[child]) {
+					found[child] = true;
+					count++;
+				}
+				if (!expanded[child]) {
+					expanded[child] = true;
+					if (top == stack.length) {
+						int[] grown = new int[stack.length * 2];
+						System.arraycopy(stack, 0, grown, 0, top);
+						stack = grown;
+					}
+					stack[top++] = child;
+				}
+			}
+		}
+		int[] ids = new int[count];
+		int n = 0;
+		for (int i = 0; i < found.length; i++) {
+			if (found[i]) {
+				ids[n++] = conceptIds[i];
+			}
+		}
+		return ids;
+	}
+	
+	private int indexOf(int conceptId) {
+		return Arrays.binarySearch(conceptIds, conceptId);
+	}
+}
@@ -0,0 +1,77 @@
+/**
+ *  Copyright 2010 Society for Health Information Systems Programmes, India (HISP India)
+ *
+ *  This file is part of Hospital-core module.
+ *
+ *  Hospital-core module is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  Hospital-core module is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Hospital-core module.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+
+package org.openmrs.module.hospitalcore.concept;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.module.hospitalcore.db.HospitalCoreDAO;
+import org.openmrs.module.hospitalcore.util.CacheVersion;
+
+/**
+ * Shared cache of the {@link ConceptGraph} snapshot. The snapshot is loaded once and reloaded
+ * lazily after the concept dictionary has changed.
+ */
+public class ConceptGraphCache {
+	
+	private static Log log = LogFactory.getLog(ConceptGraphCache.class);
+	
+	private static final CacheVersion version = new CacheVersion();
+	
+	private static volatile ConceptGraph graph;
+	
+	private ConceptGraphCache() {
+	}
+	
+	/**
+	 * Get the current snapshot, loading it through the dao when the cache is empty or out of date
+	 * 
+	 * @param dao
+	 * @return
+	 */
+	public static ConceptGraph getGraph(HospitalCoreDAO dao) {
+		ConceptGraph current = graph;
+		if (current != null && current.getVersion() == version.get()) {
+			return current;
+		}
+		synchronized (ConceptGraphCache.class) {
+			current = graph;
+			long currentVersion = version.get();
+			if (current == null || current.getVersion() != currentVersion) {
+				long start = System.currentTimeMillis();
+				current = dao.getConceptGraph(currentVersion);
+				graph = current;
+				if (log.isDebugEnabled()) {
+					log.debug("Loaded concept graph version " + currentVersion + " with " + current.getConceptCount()
+					        + " concepts and " + current.getEdgeCount() + " edges in "
+					        + (System.currentTimeMillis() - start) + " ms");
+				}
+			}
+			return current;
+		}
+	}
+	
+	/**
+	 * Mark the cached snapshot out of date, again once the current transaction completes
+	 */
+	public static void invalidate() {
+		version.increment();
+	}
+}
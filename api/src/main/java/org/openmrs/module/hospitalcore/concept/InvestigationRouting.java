@@ -0,0 +1,113 @@
+/**
+ *  Copyright 2010 Society for Health Information Systems Programmes, India (HISP India)
+ *
+ *  This file is part of Hospital-core module.
+ *
+ *  Hospital-core module is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  Hospital-core module is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Hospital-core module.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+
+package org.openmrs.module.hospitalcore.concept;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable routing table from an investigation concept id to the lab or radiology department
+ * owning it. Instances are built by {@link InvestigationRoutingCache} and shared between threads.
+ */
+public class InvestigationRouting {
+	
+	private final long version;
+	
+	private final Map<Integer, Integer> labIds;
+	
+	private final Map<Integer, Integer> radiologyDepartmentIds;
+	
+	public InvestigationRouting(long version, Map<Integer, Integer> labIds, Map<Integer, Integer> radiologyDepartmentIds) {
+		this.version = version;
+		this.labIds = Collections.unmodifiableMap(new HashMap<Integer, Integer>(labIds));
+		this.radiologyDepartmentIds = Collections.unmodifiableMap(new HashMap<Integer, Integer>(
+		        radiologyDepartmentIds));
+	}
+	
+	/**
+	 * Version of the cache this routing table was built for
+	 * 
+	 * @return
+	 */
+	public long getVersion() {
+		return version;
+	}
+	
+	/**
+	 * See whether a concept is an investigation of a lab
+	 * 
+	 * @param conceptId
+	 * @return
+	 */
+	public boolean isLabInvestigation(Integer conceptId) {
+		return labIds.containsKey(conceptId);
+	}
+	
+	/**
+	 * See whether a concept is an investigation of a radiology department
+	 * 
+	 * @param conceptId
+	 * @return
+	 */
+	public boolean isRadiologyInvestigation(Integer conceptId) {
+		return radiologyDepartmentIds.containsKey(conceptId);
+	}
+	
+	/**
+	 * Get the id of the lab owning the investigation, null if there is none
+	 * 
+	 * @param conceptId
+	 * @return
+	 */
+	public Integer getLabId(Integer conceptId) {
+		return labIds.get(conceptId);
+	}
+	
+	/**
+	 * Get the id of the radiology department owning the investigation, null if there is none
+	 * 
+	 * @param conceptId
+	 * @return
+	 */
+	public Integer getRadiologyDepartmentId(Integer conceptId) {
+		return radiologyDepartmentIds.get(conceptId);
+	}
+	
+	/**
+	 * Get the concept ids of all lab investigations
+	 * 
+	 * @return
+	 */
+	public Set<Integer> getLabConceptIds() {
+		return labIds.keySet();
+	}
+	
+	/**
+	 * Get the concept ids of all radiology investigations
+	 * 
+	 * @return
+	 */
+	public Set<Integer> getRadiologyConceptIds() {
+		return radiologyDepartmentIds.keySet();
+	}
+}
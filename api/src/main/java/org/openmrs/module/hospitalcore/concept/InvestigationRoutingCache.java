@@ -0,0 +1,122 @@
+/**
+ *  Copyright 2010 Society for Health Information Systems Programmes, India (HISP India)
+ *
+ *  This file is part of Hospital-core module.
+ *
+ *  Hospital-core module is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  Hospital-core module is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Hospital-core module.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+
+package org.openmrs.module.hospitalcore.concept;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.Concept;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.hospitalcore.HospitalCoreService;
+import org.openmrs.module.hospitalcore.LabService;
+import org.openmrs.module.hospitalcore.RadiologyCoreService;
+import org.openmrs.module.hospitalcore.model.Lab;
+import org.openmrs.module.hospitalcore.model.RadiologyDepartment;
+import org.openmrs.module.hospitalcore.util.CacheVersion;
+
+/**
+ * Shared cache of the investigation routing used when orders are created from bills. The routing
+ * is built once from the labs, radiology departments and the concept graph, and is rebuilt lazily
+ * after {@link #invalidate()} has been called.
+ */
+public class InvestigationRoutingCache {
+	
+	private static Log log = LogFactory.getLog(InvestigationRoutingCache.class);
+	
+	private static final CacheVersion version = new CacheVersion();
+	
+	private static volatile InvestigationRouting routing;
+	
+	private InvestigationRoutingCache() {
+	}
+	
+	/**
+	 * Get the current routing, building it when the cache is empty or out of date
+	 * 
+	 * @return
+	 */
+	public static InvestigationRouting getRouting() {
+		InvestigationRouting current = routing;
+		if (current != null && current.getVersion() == version.get()) {
+			return current;
+		}
+		synchronized (InvestigationRoutingCache.class) {
+			current = routing;
+			long currentVersion = version.get();
+			if (current == null || current.getVersion() != currentVersion) {
+				current = build(currentVersion);
+				routing = current;
+			}
+			return current;
+		}
+	}
+	
+	/**
+	 * Mark the cached routing out of date. When called inside a transaction the cache is
+	 * invalidated again once the transaction completes so a rebuild racing the commit is not kept.
+	 */
+	public static void invalidate() {
+		version.increment();
+	}
+	
+	private static InvestigationRouting build(long currentVersion) {
+		long start = System.currentTimeMillis();
+		ConceptGraph graph = Context.getService(HospitalCoreService.class).getConceptGraph();
+		Map<Integer, Integer> labIds = new HashMap<Integer, Integer>();
+		LabService ls = (LabService) Context.getService(LabService.class);
+		List<Lab> labs = ls.getAllLab();
+		for (Lab lab : labs) {
+			addInvestigations(labIds, graph, lab.getInvestigationsToDisplay(), lab.getLabId());
+		}
+		
+		Map<Integer, Integer> radiologyDepartmentIds = new HashMap<Integer, Integer>();
+		RadiologyCoreService rcs = (RadiologyCoreService) Context.getService(RadiologyCoreService.class);
+		List<RadiologyDepartment> departments = rcs.getAllRadiologyDepartments();
+		for (RadiologyDepartment department : departments) {
+			addInvestigations(radiologyDepartmentIds, graph, department.getInvestigations(), department.getId());
+		}
+		
+		if (log.isDebugEnabled()) {
+			log.debug("Built investigation routing version " + currentVersion + " with " + labIds.size()
+			        + " lab and " + radiologyDepartmentIds.size() + " radiology concepts in "
+			        + (System.currentTimeMillis() - start) + " ms");
+		}
+		return new InvestigationRouting(currentVersion, labIds, radiologyDepartmentIds);
+	}
+	
+	private static void addInvestigations(Map<Integer, Integer> ids, ConceptGraph graph, Set<Concept> investigations,
+	                                      Integer ownerId) {
+		if (investigations == null) {
+			return;
+		}
+		for (Concept investigation : investigations) {
+			for (int conceptId : graph.getDescendantIds(investigation.getConceptId())) {
+				if (!ids.containsKey(conceptId)) {
+					ids.put(conceptId, ownerId);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,123 @@
+/**
+ *  Copyright 2010 Society for Health Information Systems Programmes, India (HISP India)
+ *
+ *  This file is part of Hospital-core module.
+ *
+ *  Hospital-core module is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  Hospital-core module is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Hospital-core module.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+
+package org.openmrs.module.hospitalcore.concept;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable index from a concept id to the ids of the labs showing it, as an investigation, a
+ * confidential test or an answer below one of them. Concept ids are kept sorted in an int array and
+ * the lab ids in one array next to it, in the order the labs were given.
+ */
+public class LabConceptIndex {
+	
+	private static final int[] EMPTY = new int[0];
+	
+	private final long version;
+	
+	private final int[] conceptIds;
+	
+	private final int[] labOffsets;
+	
+	private final int[] labIds;
+	
+	/**
+	 * @param version version of the cache the index is built for
+	 * @param labIdsByConcept lab ids by concept id, in the order of the labs
+	 */
+	public LabConceptIndex(long version, Map<Integer, List<Integer>> labIdsByConcept) {
+		this.version = version;
+		Map<Integer, List<Integer>> sorted = new TreeMap<Integer, List<Integer>>(labIdsByConcept);
+		conceptIds = new int[sorted.size()];
+		labOffsets = new int[sorted.size() + 1];
+		List<Integer> allLabIds = new ArrayList<Integer>();
+		int i = 0;
+		for (Map.Entry<Integer, List<Integer>> entry : sorted.entrySet()) {
+			conceptIds[i] = entry.getKey();
+			labOffsets[i] = allLabIds.size();
+			allLabIds.addAll(entry.getValue());
+			i++;
+		}
+		labOffsets[i] = allLabIds.size();
+		labIds = new int[allLabIds.size()];
+		for (int j = 0; j < labIds.length; j++) {
+			labIds[j] = allLabIds.get(j);
+		}
+	}
+	
+	/**
+	 * Version of the cache this index was built for
+	 * 
+	 * @return
+	 */
+	public long getVersion() {
+		return version;
+	}
+	
+	/**
+	 * Get the ids of the labs showing a concept, in the order of the labs
+	 * 
+	 * @param conceptId
+	 * @return
+	 */
+	public int[] getLabIds(int conceptId) {
+		int index = Arrays.binarySearch(conceptIds, conceptId);
+		if (index < 0) {
+			return EMPTY;
+		}
+		int[] ids = new int[labOffsets[index + 1] - labOffsets[index]];
+		System.arraycopy(labIds, labOffsets[index], ids, 0, ids.length);
+		return ids;
+	}
+	
+	/**
+	 * See whether a lab shows a concept
+	 * 
+	 * @param conceptId
+	 * @param labId
+	 * @return
+	 */
+	public boolean contains(int conceptId, int labId) {
+		int index = Arrays.binarySearch(conceptIds, conceptId);
+		if (index < 0) {
+			return false;
+		}
+		for (int i = labOffsets[index]; i < labOffsets[index + 1]; i++) {
+			if (labIds[i] == labId) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Get the number of concepts shown by any lab
+	 * 
+	 * @return
+	 */
+	public int getConceptCount() {
+		return conceptIds.length;
+	}
+}
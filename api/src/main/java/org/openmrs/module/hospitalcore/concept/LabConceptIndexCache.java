@@ -0,0 +1,130 @@
+/**
+ *  Copyright 2010 Society for Health Information Systems Programmes, India (HISP India)
+ *
+ *  This file is part of Hospital-core module.
+ *
+ *  Hospital-core module is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  Hospital-core module is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Hospital-core module.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+
+package org.openmrs.module.hospitalcore.concept;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.Concept;
+import org.openmrs.ConceptAnswer;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.hospitalcore.LabService;
+import org.openmrs.module.hospitalcore.model.Lab;
+import org.openmrs.module.hospitalcore.util.CacheVersion;
+
+/**
+ * Shared cache of the {@link LabConceptIndex} used to find the lab of an order. The index is built
+ * from all labs, following the answers of coded concepts as far as they go, and is rebuilt lazily
+ * after {@link #invalidate()} has been called.
+ */
+public class LabConceptIndexCache {
+	
+	private static Log log = LogFactory.getLog(LabConceptIndexCache.class);
+	
+	private static final CacheVersion version = new CacheVersion();
+	
+	private static volatile LabConceptIndex index;
+	
+	private LabConceptIndexCache() {
+	}
+	
+	/**
+	 * Get the current index, building it when the cache is empty or out of date
+	 * 
+	 * @return
+	 */
+	public static LabConceptIndex getIndex() {
+		LabConceptIndex current = index;
+		if (current != null && current.getVersion() == version.get()) {
+			return current;
+		}
+		synchronized (LabConceptIndexCache.class) {
+			current = index;
+			long currentVersion = version.get();
+			if (current == null || current.getVersion() != currentVersion) {
+				current = build(currentVersion);
+				index = current;
+			}
+			return current;
+		}
+	}
+	
+	/**
+	 * Mark the cached index out of date
+	 */
+	public static void invalidate() {
+		version.increment();
+	}
+	
+	private static LabConceptIndex build(long currentVersion) {
+		long start = System.currentTimeMillis();
+		Map<Integer, List<Integer>> labIds = new HashMap<Integer, List<Integer>>();
+		List<Lab> labs = Context.getService(LabService.class).getAllLab();
+		for (Lab lab : labs) {
+			Set<Integer> conceptIds = new HashSet<Integer>();
+			addConcepts(conceptIds, lab.getInvestigationsToDisplay());
+			addConcepts(conceptIds, lab.getConfidentialTestsToDisplay());
+			for (Integer conceptId : conceptIds) {
+				List<Integer> ids = labIds.get(conceptId);
+				if (ids == null) {
+					ids = new ArrayList<Integer>(1);
+					labIds.put(conceptId, ids);
+				}
+				ids.add(lab.getLabId());
+			}
+		}
+		LabConceptIndex built = new LabConceptIndex(currentVersion, labIds);
+		if (log.isDebugEnabled()) {
+			log.debug("Built lab concept index version " + currentVersion + " with " + built.getConceptCount()
+			        + " concepts in " + (System.currentTimeMillis() - start) + " ms");
+		}
+		return built;
+	}
+	
+	/**
+	 * Add the concepts and the answers below them, each concept expanded once so cycles in the
+	 * dictionary do not loop
+	 */
+	private static void addConcepts(Set<Integer> conceptIds, Set<Concept> concepts) {
+		if (concepts == null) {
+			return;
+		}
+		LinkedList<Concept> pending = new LinkedList<Concept>(concepts);
+		while (!pending.isEmpty()) {
+			Concept concept = pending.removeFirst();
+			if (concept == null || !conceptIds.add(concept.getConceptId())) {
+				continue;
+			}
+			if (concept.getDatatype() != null && concept.getDatatype().isCoded() && concept.getAnswers() != null) {
+				for (ConceptAnswer answer : concept.getAnswers()) {
+					pending.add(answer.getAnswerConcept());
+				}
+			}
+		}
+	}
+}
@@ -24,8 +24,10 @@ package org.openmrs.module.hospitalcore.concept;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
@@ -33,6 +35,7 @@ import org.openmrs.Concept;
 import org.openmrs.ConceptAnswer;
 import org.openmrs.ConceptSet;
 import org.openmrs.api.context.Context;
+import org.openmrs.module.hospitalcore.HospitalCoreService;
 
 public class TestTree {
 
@@ -40,6 +43,7 @@ public class TestTree {
 	private boolean buildTreeSuccessful = false;
 	private Set<Integer> conceptIDSet = new TreeSet<Integer>();
 	private List<ConceptNode> flatList = new ArrayList<ConceptNode>();
+	private Map<Integer, ConceptNode> nodeIndex = new HashMap<Integer, ConceptNode>();
 
 	/**
 	 * Constructor using a lab concept then building the tree of lab and its sub
@@ -55,6 +59,28 @@ public class TestTree {
 		flatList = asList();
 	}
 
+	/**
+	 * Constructor using a lab concept then building the tree of lab and its sub
+	 * tests from a concept graph snapshot. The sub tests are loaded in one
+	 * query instead of walking the answers and sets of every node.
+	 * 
+	 * @param labConcept
+	 *            concept of the lab
+	 * @param graph
+	 *            snapshot from HospitalCoreService.getConceptGraph()
+	 */
+	public TestTree(Concept labConcept, ConceptGraph graph) {
+		root = new ConceptNode(labConcept);
+		for (int conceptId : graph.getDescendantIds(labConcept.getConceptId())) {
+			conceptIDSet.add(conceptId);
+		}
+		Map<Integer, Concept> concepts = Context.getService(
+				HospitalCoreService.class).getConcepts(conceptIDSet);
+		buildTestTree(root, graph, concepts);
+		buildTreeSuccessful = true;
+		flatList = asList();
+	}
+
 	/**
 	 * Constructor using a lab concept then building the tree of lab and its sub
 	 * tests, it should find the concept using the concept name.
@@ -91,6 +117,10 @@ public class TestTree {
 	 * @return
 	 */
 	public boolean contains(Concept concept) {
+		ConceptNode node = nodeIndex.get(concept.getId());
+		if (node != root) {
+			return node != null;
+		}
 		return conceptIDSet.contains(concept.getId());
 	}
 
@@ -137,23 +167,50 @@ public class TestTree {
 				|| (node.getConcept().getConceptClass().getName()
 						.equals("LabSet"))) {
 			for (ConceptAnswer ca : node.getConcept().getAnswers()) {
-				Concept c = ca.getAnswerConcept();
-				ConceptNode child = new ConceptNode(c, node);
-				node.getChildNodes().add(child);
-				conceptIDSet.add(c.getConceptId());
-				buildTestTree(child);
+				addChild(node, ca.getAnswerConcept());
 			}
 
 			for (ConceptSet cs : node.getConcept().getConceptSets()) {
-				Concept c = cs.getConcept();
+				addChild(node, cs.getConcept());
+			}
+		}
+	}
+
+	private void addChild(ConceptNode node, Concept c) {
+		conceptIDSet.add(c.getConceptId());
+		if (!isAncestor(node, c.getConceptId())) {
+			ConceptNode child = new ConceptNode(c, node);
+			node.getChildNodes().add(child);
+			buildTestTree(child);
+		}
+	}
+
+	private void buildTestTree(ConceptNode node, ConceptGraph graph,
+			Map<Integer, Concept> concepts) {
+		for (int conceptId : graph.getChildIds(node.getConcept()
+				.getConceptId())) {
+			Concept c = concepts.get(conceptId);
+			if ((c != null) && !isAncestor(node, conceptId)) {
 				ConceptNode child = new ConceptNode(c, node);
 				node.getChildNodes().add(child);
-				conceptIDSet.add(c.getConceptId());
-				buildTestTree(child);
+				buildTestTree(child, graph, concepts);
 			}
 		}
 	}
 
+	/**
+	 * Concept dictionaries may contain cycles, a concept already on the path
+	 * from the root is not expanded again
+	 */
+	private boolean isAncestor(ConceptNode node, Integer conceptId) {
+		for (ConceptNode n = node; n != null; n = n.getParent()) {
+			if (n.getConcept().getConceptId().equals(conceptId)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * Get the concept id set
 	 * 
@@ -177,6 +234,9 @@ public class TestTree {
 		Set<ConceptNode> set = new HashSet<ConceptNode>();
 		convertToList(set, root);
 		list.addAll(set);
+		for (ConceptNode node : list) {
+			nodeIndex.put(node.getConcept().getConceptId(), node);
+		}
 		Collections.sort(list, new Comparator<ConceptNode>() {
 
 			public int compare(ConceptNode o1, ConceptNode o2) {
@@ -202,12 +262,7 @@ public class TestTree {
 	 * @return
 	 */
 	public ConceptNode findNode(Concept concept) {
-		for (int i = 0; i < flatList.size(); i++) {
-			ConceptNode node = flatList.get(i);
-			if (node.getConcept().getConceptId().equals(concept.getConceptId()))
-				return node;
-		}
-		return null;
+		return nodeIndex.get(concept.getConceptId());
 	}
 
 	/**
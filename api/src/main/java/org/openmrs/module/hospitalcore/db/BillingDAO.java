@@ -20,6 +20,7 @@
 
 package org.openmrs.module.hospitalcore.db;
 
+import java.util.Date;
 import java.util.List;
 
 import org.hibernate.SessionFactory;
@@ -38,6 +39,7 @@ import org.openmrs.module.hospitalcore.model.PatientServiceBillItem;
 import org.openmrs.module.hospitalcore.model.Receipt;
 import org.openmrs.module.hospitalcore.model.Tender;
 import org.openmrs.module.hospitalcore.model.TenderBill;
+import org.openmrs.module.hospitalcore.util.BillingDailyTotal;
 
 /**
  *
@@ -220,7 +222,16 @@ public interface BillingDAO {
 	
 	public Receipt createReceipt(Receipt receipt) throws DAOException;
 	
-	public void updateReceipt() throws DAOException;
+	/**
+	 * Give a receipt to the next chunk of bills of one type having none
+	 * 
+	 * @param billType simple name of the bill entity, e.g. PatientServiceBill
+	 * @param afterBillId only bills with a greater id, null to start from the first bill
+	 * @param chunkSize
+	 * @return ids of the updated bills in ascending order, empty when there is none left
+	 * @throws DAOException
+	 */
+	public List<Integer> updateReceipts(String billType, Integer afterBillId, int chunkSize) throws DAOException;
 	
 	public void updateOldBills();
 	
@@ -232,4 +243,52 @@ public interface BillingDAO {
 	
 	//New Requirement add Paid bill & Free bill Both 
 	public PatientServiceBillItem getPatientServiceBillItem(Integer billId,String name) throws DAOException;
+	
+	/**
+	 * The totals of one bill per day, service and creator as stored, without writing the pending
+	 * changes of the session. Read before a bill is saved, they are what the daily totals hold
+	 * for it.
+	 * 
+	 * @param billType simple name of the bill entity, e.g. PatientServiceBill
+	 * @param billId null for a new bill
+	 * @return the totals of the bill, empty for a new or voided bill
+	 * @throws DAOException
+	 */
+	public List<BillingDailyTotal> getBillingDailyTotals(String billType, Integer billId) throws DAOException;
+	
+	/**
+	 * Add the difference between the totals of a bill after writing the pending changes of the
+	 * session and its totals before the save to the daily billing totals. The totals before keep
+	 * their own day and creator, so a bill moved to another day or creator is taken back from the
+	 * old ones and added to the new ones.
+	 * 
+	 * @param billType simple name of the bill entity, e.g. PatientServiceBill
+	 * @param billId
+	 * @param before the totals of the bill from {@link #getBillingDailyTotals(String, Integer)}
+	 *            read before it was saved
+	 * @throws DAOException
+	 */
+	public void addBillingDailyTotals(String billType, Integer billId, List<BillingDailyTotal> before)
+	                                                                                                 throws DAOException;
+	
+	/**
+	 * Compute the daily billing totals of the bills created in a range again
+	 * 
+	 * @param start
+	 * @param end exclusive
+	 * @return the number of total rows written
+	 * @throws DAOException
+	 */
+	public int rebuildBillingDailyTotals(Date start, Date end) throws DAOException;
+	
+	/**
+	 * @param start
+	 * @param end exclusive
+	 * @param billType null for all bill types
+	 * @param groupBy the dimensions to split the totals by, see {@link BillingDailyTotal}
+	 * @return the totals per bill type and dimensions, in that order
+	 * @throws DAOException
+	 */
+	public List<BillingDailyTotal> listBillingDailyTotals(Date start, Date end, String billType, List<String> groupBy)
+	                                                                                                                  throws DAOException;
 }
@@ -21,9 +21,12 @@
 
 package org.openmrs.module.hospitalcore.db;
 
+import java.io.IOException;
 import java.math.BigInteger;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.openmrs.Concept;
@@ -33,9 +36,11 @@ import org.openmrs.Obs;
 import org.openmrs.Patient;
 import org.openmrs.PersonAttribute;
 import org.openmrs.api.db.DAOException;
+import org.openmrs.module.hospitalcore.concept.ConceptGraph;
 import org.openmrs.module.hospitalcore.concept.ConceptModel;
 import org.openmrs.module.hospitalcore.model.CoreForm;
 import org.openmrs.module.hospitalcore.model.PatientSearch;
+import org.openmrs.module.hospitalcore.util.PatientCSVWriter;
 
 public interface HospitalCoreDAO {
 
@@ -44,6 +49,21 @@ public interface HospitalCoreDAO {
 	public Integer buildConcepts(List<ConceptModel> conceptModels);
 	public List<Patient> searchPatient(String nameOrIdentifier,String gender, int age , int rangeAge, String date, int rangeDay,String relativeName) throws DAOException;
 	
+	/**
+	 * Get one page of patients matching the search, ordered by patient id
+	 * @param afterPatientId when not null only patients after this id are returned (keyset paging)
+	 * @param min first row, used when paging by offset
+	 * @param max page size, 0 for no limit
+	 * @return
+	 */
+	public List<Patient> searchPatient(String nameOrIdentifier,String gender, int age , int rangeAge, String date, int rangeDay,String relativeName, Integer afterPatientId, int min, int max) throws DAOException;
+	
+	/**
+	 * Count patients matching the search
+	 * @return
+	 */
+	public Integer countPatient(String nameOrIdentifier,String gender, int age , int rangeAge, String date, int rangeDay,String relativeName) throws DAOException;
+	
 	/**
 	 * Search patients
 	 * @param hql
@@ -65,6 +85,13 @@ public interface HospitalCoreDAO {
 	 */
 	public List<PersonAttribute> getPersonAttributes(Integer patientId);
 	
+	/**
+	 * Get all attributes of many patients in one query
+	 * @param patientIds
+	 * @return attributes grouped by patient id
+	 */
+	public Map<Integer, List<PersonAttribute>> getPersonAttributes(Collection<Integer> patientIds);
+	
 	/**
 	 * Get last visit encounter
 	 * @param patient
@@ -113,6 +140,21 @@ public interface HospitalCoreDAO {
 	 */
 	public PatientSearch savePatientSearch(PatientSearch patientSearch);
 	
+	/**
+	 * Replace the search grams of a patient with the grams of its current
+	 * identifier and full name
+	 * @param patientSearch
+	 */
+	public void indexPatientSearch(PatientSearch patientSearch);
+	
+	/**
+	 * Index the next batch of patients ordered by patient id
+	 * @param afterPatientId last patient id of the previous batch, null to start from the beginning
+	 * @param batchSize
+	 * @return ids of the indexed patients in ascending order, empty when nothing was left to index
+	 */
+	public List<Integer> indexPatientSearches(Integer afterPatientId, int batchSize);
+	
 	/**
 	 * 
 	 * Auto generated method comment
@@ -122,6 +164,13 @@ public interface HospitalCoreDAO {
 	 */
 	public java.util.Date getLastVisitTime (int patientID);
 	
+	/**
+	 * Get last visit time of many patients in one query
+	 * @param patientIds
+	 * @return last visit time by patient id, patients without encounter are left out
+	 */
+	public Map<Integer, Date> getLastVisitTimes(Collection<Integer> patientIds);
+	
 	//ghanshyam,22-oct-2013,New Requirement #2940 Dealing with dead patient
 	public PatientSearch getPatient(int patientID);
 	
@@ -130,4 +179,28 @@ public interface HospitalCoreDAO {
 	public Set<Encounter> getEncountersByPatientAndDate(String date,Set<EncounterType> encounterTypes);
 	public Set<Encounter>getEncountersByPatientAndDateFromObs(String date);
 	public List<Obs> getObsInstanceForDiagnosis(Encounter encounter,Concept concept) throws DAOException;
+	
+	/**
+	 * Stream the OPD and IPD visits of a period to the writer with forward only cursors
+	 * @param fromDate inclusive
+	 * @param toDate exclusive
+	 * @param opdWardConceptId concept of the "OPD WARD" obs, null to skip OPD visits
+	 * @param writer
+	 * @throws IOException
+	 */
+	public void writePatientVisits(Date fromDate, Date toDate, Integer opdWardConceptId, PatientCSVWriter writer) throws IOException;
+	
+	/**
+	 * Load the concept answer and concept set edges of the dictionary in one query
+	 * @param version version stamped on the snapshot
+	 * @return
+	 */
+	public ConceptGraph getConceptGraph(long version);
+	
+	/**
+	 * Get many concepts in one query
+	 * @param conceptIds
+	 * @return concepts by concept id
+	 */
+	public Map<Integer, Concept> getConcepts(Collection<Integer> conceptIds);
 }
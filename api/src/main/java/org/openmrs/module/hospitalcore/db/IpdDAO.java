@@ -22,7 +22,9 @@
 package org.openmrs.module.hospitalcore.db;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import org.openmrs.Concept;
 import org.openmrs.Encounter;
@@ -35,6 +37,9 @@ import org.openmrs.module.hospitalcore.model.IpdPatientAdmitted;
 import org.openmrs.module.hospitalcore.model.IpdPatientAdmittedLog;
 import org.openmrs.module.hospitalcore.model.IpdPatientVitalStatistics;
 import org.openmrs.module.hospitalcore.model.WardBedStrength;
+import org.openmrs.module.hospitalcore.util.AdmissionCursor;
+import org.openmrs.module.hospitalcore.util.KeysetPage;
+import org.openmrs.module.hospitalcore.util.VitalReading;
 
 public interface IpdDAO {
 	
@@ -73,7 +78,25 @@ public interface IpdDAO {
 	//Vital stastics for ipd patient
 	public IpdPatientVitalStatistics saveIpdPatientVitalStatistics(IpdPatientVitalStatistics vitalStatistics) throws DAOException;
 	public List<IpdPatientVitalStatistics> getIpdPatientVitalStatistics(Integer patientId,Integer patientAdmissionLogId) throws DAOException;
+	public List<VitalReading> getVitalReadings(Integer patientId, Integer patientAdmissionLogId) throws DAOException;
+	public Map<Integer, VitalReading> getLatestVitalReadings(Collection<Integer> admissionLogIds) throws DAOException;
 	public List<Concept> getDiet() throws DAOException;
 	public List<IpdPatientAdmitted> getBedAvailability(Concept wardId,String bedNo);
+	/**
+	 * @return rows of id, ward concept id, bed and status of every admitted patient
+	 */
+	public List<Object[]> listAdmittedBeds() throws DAOException;
+	public List<IpdPatientAdmitted> getIpdPatientAdmitted(Collection<Integer> ids) throws DAOException;
+	public KeysetPage<IpdPatientAdmission> searchIpdPatientAdmissionPage(String patientSearch, ArrayList<Integer> userIds, String fromDate, String toDate, String wardId, String status, AdmissionCursor after, int pageSize) throws DAOException;
+	public int countIpdPatientAdmission(String patientSearch, ArrayList<Integer> userIds, String fromDate, String toDate, String wardId, String status) throws DAOException;
+	public KeysetPage<IpdPatientAdmitted> searchIpdPatientAdmittedPage(String patientSearch, ArrayList<Integer> userIds, String fromDate, String toDate, String wardId, String status, AdmissionCursor after, int pageSize) throws DAOException;
+	public int countIpdPatientAdmitted(String patientSearch, ArrayList<Integer> userIds, String fromDate, String toDate, String wardId, String status) throws DAOException;
+	public KeysetPage<IpdPatientAdmissionLog> listIpdPatientAdmissionLogPage(Integer patientId, Integer admissionWardId, String status, AdmissionCursor after, int pageSize) throws DAOException;
+	public int countIpdPatientAdmissionLog(Integer patientId, Integer admissionWardId, String status) throws DAOException;
+	public int removeIpdPatientAdmitted(Collection<Integer> ids) throws DAOException;
+	/**
+	 * @return bed strength by ward concept id
+	 */
+	public Map<Integer, Integer> getBedStrengths() throws DAOException;
 	public IpdPatientAdmission getIpdPatientAdmissionByPatient(Patient patient);
 }
@@ -65,5 +65,12 @@ public interface LabDAO {
 	
 	public List<LabTest> getLatestLabTestByDate(Date today,Date nextDay, Lab lab ) throws DAOException;
 	
+	/**
+	 * Reserve sample numbers of a lab for a day
+	 * 
+	 * @return the first number reserved, the others follow it
+	 */
+	public int reserveSampleNumbers(Lab lab, Date date, int count) throws DAOException;
+	
 	public void deleteLabTest(LabTest labtest) throws DAOException;
 }
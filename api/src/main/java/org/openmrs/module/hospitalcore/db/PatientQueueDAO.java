@@ -22,6 +22,7 @@
 
 package org.openmrs.module.hospitalcore.db;
 
+import java.util.Date;
 import java.util.List;
 //New Requirement "Editable Dashboard" ~Wasib//
 import org.openmrs.Concept;
@@ -33,6 +34,7 @@ import org.openmrs.api.APIException;
 import org.openmrs.api.db.DAOException;
 import org.openmrs.module.hospitalcore.model.OpdPatientQueue;
 import org.openmrs.module.hospitalcore.model.OpdPatientQueueLog;
+import org.openmrs.module.hospitalcore.util.OpdQueueEntry;
 
 /**
  * <p> Class: PatientQueueDAO </p>
@@ -51,10 +53,13 @@ public interface PatientQueueDAO {
 	public void deleteOpdPatientQueue(OpdPatientQueue opdPatientQueue) throws DAOException;
 	public List<OpdPatientQueue> listOpdPatientQueue(String patientName ,  Integer referralConceptId,String status, int min, int max) throws DAOException;
 	public Integer countOpdPatientQueue(String patientName , String searchType,Integer referralConceptId,String status) throws DAOException;
+	public List<OpdQueueEntry> listOpdQueueEntries(Date from, Date to) throws DAOException;
+	public List<OpdPatientQueue> getOpdPatientQueues(List<Integer> ids) throws DAOException;
 	//opd patient queue log
 	public OpdPatientQueueLog saveOpdPatientQueueLog(OpdPatientQueueLog opdPatientQueueLog) throws DAOException ;
 	public OpdPatientQueueLog getOpdPatientQueueLogById(Integer id) throws DAOException;
 	public List<OpdPatientQueue> getAllPatientInQueue() throws DAOException ;
+	public int moveOpdPatientQueueToLog(Date before, int batchSize) throws DAOException;
 	public OpdPatientQueue getOpdPatientQueue(String patientIdentifier,Integer opdConceptId) throws DAOException;
 	
 	//New Requirement "Editable Dashboard" ~Wasib//
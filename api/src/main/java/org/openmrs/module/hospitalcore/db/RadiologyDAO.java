@@ -21,6 +21,7 @@
 package org.openmrs.module.hospitalcore.db;
 
 import java.text.ParseException;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Set;
@@ -114,15 +115,15 @@ public interface RadiologyDAO {
 	 * @param orderStartDate
 	 * @param orderType
 	 * @param tests
-	 * @param patients
+	 * @param phrase
+	 *            patient name or identifier, ignored when blank
 	 * @param page
 	 * @param pageSize
-	 *            TODO
 	 * @return
 	 * @throws ParseException
 	 */
 	public List<Order> getOrders(Date orderStartDate, OrderType orderType,
-			Set<Concept> tests, List<Patient> patients, int page, int pageSize)
+			Set<Concept> tests, String phrase, int page, int pageSize)
 			throws ParseException;
 
 	/**
@@ -131,13 +132,12 @@ public interface RadiologyDAO {
 	 * @param orderStartDate
 	 * @param orderType
 	 * @param tests
-	 * @param patients
-	 * @param page
+	 * @param phrase
 	 * @return
 	 * @throws ParseException
 	 */
 	public Integer countOrders(Date orderStartDate, OrderType orderType,
-			Set<Concept> tests, List<Patient> patients) throws ParseException;
+			Set<Concept> tests, String phrase) throws ParseException;
 
 	/**
 	 * Save radiology test
@@ -177,6 +177,15 @@ public interface RadiologyDAO {
 	 */
 	public RadiologyTest getRadiologyTestByOrder(Order order);
 
+	/**
+	 * Get the radiology tests of the given orders
+	 * 
+	 * @param orders
+	 * @return
+	 */
+	public List<RadiologyTest> getRadiologyTestsByOrders(
+			Collection<Order> orders);
+
 	/**
 	 * Get radiology tests by date and status
 	 * 
@@ -194,33 +203,53 @@ public interface RadiologyDAO {
 	 * @param date
 	 * @param status
 	 * @param concepts
+	 * @param phrase
+	 *            patient name or identifier, ignored when blank
 	 * @param page
-	 *            TODO
 	 * @param pageSize
-	 *            TODO
 	 * @return
 	 * @throws ParseException
 	 */
 	public List<RadiologyTest> getRadiologyTests(Date date, String status,
-			Set<Concept> concepts, List<Patient> patients, int page,
+			Set<Concept> concepts, String phrase, int page, int pageSize)
+			throws ParseException;
+
+	/**
+	 * Get radiology tests by date
+	 * 
+	 * @param date
+	 * @param phrase
+	 *            patient name or identifier, ignored when blank
+	 * @param conceptIds
+	 *            the allowed test concepts, <code>null</code> for all tests
+	 * @param page
+	 * @param pageSize
+	 *            0 to get all tests
+	 * @return
+	 * @throws ParseException
+	 */
+	public List<RadiologyTest> getRadiologyTestsByDate(Date date,
+			String phrase, Collection<Integer> conceptIds, int page,
 			int pageSize) throws ParseException;
 
 	/**
-	 * Get radiology tets by date
+	 * Count radiology tests by date
 	 * 
 	 * @param date
+	 * @param phrase
+	 * @param conceptIds
 	 * @return
 	 * @throws ParseException
 	 */
-	public abstract List<RadiologyTest> getRadiologyTestsByDate(Date date)
-			throws ParseException;
+	public Integer countRadiologyTestsByDate(Date date, String phrase,
+			Collection<Integer> conceptIds) throws ParseException;
 
 	/**
 	 * Get radiology tests by discontinued date
 	 * 
 	 * @param date
 	 * @param concepts 
-	 * @param patients 
+	 * @param phrase 
 	 * @param page 
 	 * @param pageSize
 	 * 
@@ -228,20 +257,19 @@ public interface RadiologyDAO {
 	 * @throws ParseException
 	 */
 	public List<RadiologyTest> getRadiologyTestsByDiscontinuedDate(Date date,
-			Set<Concept> concepts, List<Patient> patients, int page,
-			int pageSize) throws ParseException;
+			Set<Concept> concepts, String phrase, int page, int pageSize)
+			throws ParseException;
 
 	/**
 	 * Count radiology tests by discontinued date
 	 * @param date
 	 * @param concepts
-	 * @param patients
+	 * @param phrase
 	 * @return
 	 * @throws ParseException
 	 */
 	public Integer countRadiologyTestsByDiscontinuedDate(Date date,
-			Set<Concept> concepts, List<Patient> patients)
-			throws ParseException;
+			Set<Concept> concepts, String phrase) throws ParseException;
 
 	/**
 	 * Get radiology test by date and patient
@@ -271,13 +299,12 @@ public interface RadiologyDAO {
 	 * @param date
 	 * @param status
 	 * @param concepts
-	 * @param patients
+	 * @param phrase
 	 * @return
 	 * @throws ParseException
 	 */
 	public Integer countRadiologyTests(Date date, String status,
-			Set<Concept> concepts, List<Patient> patients)
-			throws ParseException;
+			Set<Concept> concepts, String phrase) throws ParseException;
 	
 	/**
 	 * Get Radiology Template by id
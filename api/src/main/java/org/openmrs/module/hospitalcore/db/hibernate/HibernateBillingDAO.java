@@ -20,24 +20,31 @@
 
 package org.openmrs.module.hospitalcore.db.hibernate;
 
+import java.math.BigDecimal;
 import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hibernate.Criteria;
+import org.hibernate.EntityMode;
+import org.hibernate.FetchMode;
+import org.hibernate.FlushMode;
+import org.hibernate.SQLQuery;
 import org.hibernate.SessionFactory;
 import org.hibernate.Transaction;
 import org.hibernate.classic.Session;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
-import org.openmrs.GlobalProperty;
+import org.hibernate.metadata.ClassMetadata;
 import org.openmrs.Patient;
 import org.openmrs.api.context.Context;
 import org.openmrs.api.db.DAOException;
-import org.openmrs.module.hospitalcore.BillingService;
 import org.openmrs.module.hospitalcore.db.BillingDAO;
 import org.openmrs.module.hospitalcore.model.Ambulance;
 import org.openmrs.module.hospitalcore.model.AmbulanceBill;
@@ -52,6 +59,7 @@ import org.openmrs.module.hospitalcore.model.PatientServiceBillItem;
 import org.openmrs.module.hospitalcore.model.Receipt;
 import org.openmrs.module.hospitalcore.model.Tender;
 import org.openmrs.module.hospitalcore.model.TenderBill;
+import org.openmrs.module.hospitalcore.util.BillingDailyTotal;
 import org.openmrs.module.hospitalcore.util.PatientUtils;
 
 /**
@@ -300,7 +308,7 @@ public class HibernateBillingDAO implements BillingDAO {
 	public TenderBill getTenderBillById(Integer tenderBillId) throws DAOException {
 		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(TenderBill.class);
 		criteria.add(Restrictions.eq("tenderBillId", tenderBillId));
-		return (TenderBill) criteria.uniqueResult();
+		return (TenderBill) fetchBillItems(criteria).uniqueResult();
 	}
 	
 	/**
@@ -409,7 +417,7 @@ public class HibernateBillingDAO implements BillingDAO {
 	public AmbulanceBill getAmbulanceBillById(Integer ambulanceBillId) throws DAOException {
 		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(AmbulanceBill.class);
 		criteria.add(Restrictions.eq("ambulanceBillId", ambulanceBillId));
-		return (AmbulanceBill) criteria.uniqueResult();
+		return (AmbulanceBill) fetchBillItems(criteria).uniqueResult();
 	}
 	
 	/**
@@ -502,7 +510,7 @@ public class HibernateBillingDAO implements BillingDAO {
 	public PatientServiceBill getPatientServiceBillById(Integer patientServiceBillId) throws DAOException {
 		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(PatientServiceBill.class);
 		criteria.add(Restrictions.eq("patientServiceBillId", patientServiceBillId));
-		return (PatientServiceBill) criteria.uniqueResult();
+		return (PatientServiceBill) fetchBillItems(criteria).uniqueResult();
 	}
 	
 	/**
@@ -647,97 +655,41 @@ public class HibernateBillingDAO implements BillingDAO {
 	}
 	
 	public Receipt createReceipt(Receipt receipt) throws DAOException {
-		return (Receipt) sessionFactory.getCurrentSession().merge(receipt);
+		// the id comes from a block reserved by ReceiptIdGenerator, the insert
+		// waits for the flush of the bill
+		sessionFactory.getCurrentSession().save(receipt);
+		return receipt;
 	}
 	
-	public void updateReceipt() {
+	public List<Integer> updateReceipts(String billType, Integer afterBillId, int chunkSize) throws DAOException {
+		ClassMetadata metadata = sessionFactory.getClassMetadata(Receipt.class.getPackage().getName() + "." + billType);
+		if (metadata == null) {
+			throw new DAOException("Unknown bill type " + billType);
+		}
+		String idProperty = metadata.getIdentifierPropertyName();
+		Session session = sessionFactory.getCurrentSession();
+		Criteria criteria = session.createCriteria(metadata.getEntityName());
+		if (afterBillId != null) {
+			criteria.add(Restrictions.gt(idProperty, afterBillId));
+		}
+		criteria.add(Restrictions.isNull("receipt"));
+		criteria.addOrder(Order.asc(idProperty));
+		criteria.setMaxResults(chunkSize);
+		List<Object> bills = criteria.list();
 		
-		GlobalProperty isUpdated = Context.getAdministrationService().getGlobalPropertyObject("billing.updatedReceiptIds");
-		if ("false".equalsIgnoreCase(isUpdated.getPropertyValue())) {
-			try {
-				GlobalProperty encounterTypeId = Context.getAdministrationService().getGlobalPropertyObject(
-				    "billing.encounterTypeId");
-				if (encounterTypeId == null || !"6".equalsIgnoreCase(encounterTypeId.getPropertyValue())) {
-					encounterTypeId.setPropertyValue("6");
-					Context.getAdministrationService().saveGlobalProperty(encounterTypeId);
-				}
-			}
-			catch (Exception e) {
-				e.printStackTrace();
-			}
-			// update receipt for old bills
-			isUpdated.setPropertyValue("updating");
-			log.info("Start updating receipt ID for old BillingService ");
-			BillingService billingService = Context.getService(BillingService.class);
-			List<AmbulanceBill> ambulanceBills = billingService.getAllAmbulanceBill();
-			Session session = sessionFactory.getCurrentSession();
-			Transaction tx = session.beginTransaction();
-			tx.begin();
-			int i = 0;
-			for (AmbulanceBill bill : ambulanceBills) {
-				if (bill.getReceipt() == null) {
-					i++;
-					bill.setReceipt(billingService.createReceipt());
-					billingService.saveAmbulanceBill(bill);
-					if (i % 20 == 0) { // 20, same as the JDBC batch size
-						// flush a batch of inserts and release memory:
-						session.flush();
-						session.clear();
-					}
-				}
-			}
-			List<TenderBill> tenderBills = billingService.getAllTenderBill();
-			log.info("Start updating receipt ID for old TenderBill ");
-			i = 0;
-			for (TenderBill bill : tenderBills) {
-				if (bill.getReceipt() == null) {
-					i++;
-					bill.setReceipt(billingService.createReceipt());
-					billingService.saveTenderBill(bill);
-					if (i % 20 == 0) { // 20, same as the JDBC batch size
-						// flush a batch of inserts and release memory:
-						session.flush();
-						session.clear();
-					}
-				}
-			}
-			List<PatientServiceBill> patientServiceBills = billingService.getAllPatientServiceBill();
-			log.info("Start updating receipt ID for old PatientServiceBill ");
-			i = 0;
-			for (PatientServiceBill bill : patientServiceBills) {
-				if (bill.getReceipt() == null) {
-					i++;
-					bill.setReceipt(billingService.createReceipt());
-					billingService.savePatientServiceBill(bill);
-					if (i % 20 == 0) { // 20, same as the JDBC batch size
-						// flush a batch of inserts and release memory:
-						session.flush();
-						session.clear();
-					}
-				}
-			}
-			
-			List<MiscellaneousServiceBill> miscellaneousBills = billingService.getAllMiscellaneousServiceBill();
-			log.info("Start updating receipt ID for old MiscellaneousServiceBill ");
-			i = 0;
-			for (MiscellaneousServiceBill bill : miscellaneousBills) {
-				if (bill.getReceipt() == null) {
-					i++;
-					bill.setReceipt(billingService.createReceipt());
-					billingService.saveMiscellaneousServiceBill(bill);
-					if (i % 20 == 0) { // 20, same as the JDBC batch size
-						// flush a batch of inserts and release memory:
-						session.flush();
-						session.clear();
-					}
-				}
-			}
-			
-			isUpdated.setPropertyValue("true");
-			Context.getAdministrationService().saveGlobalProperty(isUpdated);
-			tx.commit();
-			log.info("End updating receipt ID for old bills ");
+		List<Integer> billIds = new ArrayList<Integer>();
+		Date paidDate = new Date();
+		for (Object bill : bills) {
+			Receipt receipt = new Receipt();
+			receipt.setPaidDate(paidDate);
+			session.save(receipt);
+			metadata.setPropertyValue(bill, "receipt", receipt, EntityMode.POJO);
+			billIds.add((Integer) metadata.getIdentifier(bill, EntityMode.POJO));
 		}
+		// flush the chunk and release memory
+		session.flush();
+		session.clear();
+		return billIds;
 	}
 	
 	public void updateOldBills() {
@@ -781,7 +733,7 @@ public class HibernateBillingDAO implements BillingDAO {
 		receipt.setId(patientServiceBillReceiptId);
 		
 		criteria.add(Restrictions.eq("receipt", receipt));
-		return (PatientServiceBill) criteria.uniqueResult();
+		return (PatientServiceBill) fetchBillItems(criteria).uniqueResult();
 	}
 	
 	public IndoorPatientServiceBill saveIndoorPatientServiceBill(
@@ -802,7 +754,7 @@ public class HibernateBillingDAO implements BillingDAO {
 				IndoorPatientServiceBill.class);
 		criteria.add(Restrictions.eq("indoorPatientServiceBillId",
 				indoorPatientServiceBillId));
-		return (IndoorPatientServiceBill) criteria.uniqueResult();
+		return (IndoorPatientServiceBill) fetchBillItems(criteria).uniqueResult();
 	}
 	
 	//New Requirement add Paid bill & Free bill Both 
@@ -817,4 +769,265 @@ public class HibernateBillingDAO implements BillingDAO {
 		return (PatientServiceBillItem) criteria.uniqueResult();
 	}
 	
+	/**
+	 * The bill types with the id column of their bills and the query of their totals per day,
+	 * service and creator. %s is the condition on the bills b.
+	 */
+	private static final String[][] BILL_TOTALS = {
+	        { "PatientServiceBill", "patient_service_bill_id",
+	                "SELECT DATE(b.created_date), :billType, COALESCE(i.service_id, 0), COALESCE(b.creator, 0),"
+	                        + " SUM(COALESCE(i.amount, 0)), SUM(COALESCE(i.actual_amount, i.amount, 0)),"
+	                        + " SUM(COALESCE(i.amount, 0) - COALESCE(i.actual_amount, i.amount, 0)),"
+	                        + " SUM(COALESCE(i.quantity, 1))"
+	                        + " FROM billing_patient_service_bill b JOIN billing_patient_service_bill_item i"
+	                        + " ON i.patient_service_bill_id = b.patient_service_bill_id"
+	                        + " WHERE b.voided = 0 AND i.voided = 0 AND b.created_date IS NOT NULL AND %s"
+	                        + " GROUP BY DATE(b.created_date), i.service_id, b.creator" },
+	        { "MiscellaneousServiceBill", "id",
+	                "SELECT DATE(b.created_date), :billType, COALESCE(b.service_id, 0), COALESCE(b.creator, 0),"
+	                        + " SUM(COALESCE(b.amount, 0)), SUM(COALESCE(b.amount, 0)), 0,"
+	                        + " SUM(COALESCE(b.quantity, 1))"
+	                        + " FROM billing_miscellaneous_service_bill b"
+	                        + " WHERE b.voided = 0 AND b.created_date IS NOT NULL AND %s"
+	                        + " GROUP BY DATE(b.created_date), b.service_id, b.creator" },
+	        { "AmbulanceBill", "ambulance__bill_id",
+	                "SELECT DATE(b.created_date), :billType, COALESCE(i.ambulance_id, 0), COALESCE(b.creator, 0),"
+	                        + " SUM(COALESCE(i.amount, 0)), SUM(COALESCE(i.amount, 0)), 0,"
+	                        + " SUM(COALESCE(i.number_of_trip, 1))"
+	                        + " FROM billing_ambulance_bill b JOIN billing_ambulance_bill_item i"
+	                        + " ON i.ambulance_bill_id = b.ambulance__bill_id"
+	                        + " WHERE b.voided = 0 AND i.voided = 0 AND b.created_date IS NOT NULL AND %s"
+	                        + " GROUP BY DATE(b.created_date), i.ambulance_id, b.creator" },
+	        { "TenderBill", "tender_bill_id",
+	                "SELECT DATE(b.created_date), :billType, COALESCE(i.tender_id, 0), COALESCE(b.creator, 0),"
+	                        + " SUM(COALESCE(i.amount, 0)), SUM(COALESCE(i.amount, 0)), 0,"
+	                        + " SUM(COALESCE(i.quantity, 1))"
+	                        + " FROM billing_tender_bill b JOIN billing_tender_bill_item i"
+	                        + " ON i.tender_bill_id = b.tender_bill_id"
+	                        + " WHERE b.voided = 0 AND i.voided = 0 AND b.created_date IS NOT NULL AND %s"
+	                        + " GROUP BY DATE(b.created_date), i.tender_id, b.creator" } };
+	
+	private static final String INSERT_BILLING_DAILY_TOTALS = "INSERT INTO billing_daily_aggregate"
+	        + " (sale_date, bill_type, service_id, creator, amount, actual_amount, waiver, item_count) %s"
+	        + " ON DUPLICATE KEY UPDATE"
+	        + " billing_daily_aggregate.amount = billing_daily_aggregate.amount + VALUES(amount),"
+	        + " billing_daily_aggregate.actual_amount = billing_daily_aggregate.actual_amount + VALUES(actual_amount),"
+	        + " billing_daily_aggregate.waiver = billing_daily_aggregate.waiver + VALUES(waiver),"
+	        + " billing_daily_aggregate.item_count = billing_daily_aggregate.item_count + VALUES(item_count)";
+	
+	public List<BillingDailyTotal> getBillingDailyTotals(String billType, Integer billId) throws DAOException {
+		Session session = sessionFactory.getCurrentSession();
+		FlushMode flushMode = session.getFlushMode();
+		session.setFlushMode(FlushMode.MANUAL);
+		try {
+			return getBillTotals(session, billType, billId);
+		} finally {
+			session.setFlushMode(flushMode);
+		}
+	}
+	
+	public void addBillingDailyTotals(String billType, Integer billId, List<BillingDailyTotal> before)
+	                                                                                                 throws DAOException {
+		Session session = sessionFactory.getCurrentSession();
+		session.flush();
+		Map<String, BillingDailyTotal> delta = new LinkedHashMap<String, BillingDailyTotal>();
+		for (BillingDailyTotal total : getBillTotals(session, billType, billId)) {
+			addTotal(delta, total, 1);
+		}
+		for (BillingDailyTotal total : before) {
+			addTotal(delta, total, -1);
+		}
+		StringBuilder values = new StringBuilder("VALUES ");
+		List<BillingDailyTotal> rows = new ArrayList<BillingDailyTotal>();
+		for (BillingDailyTotal total : delta.values()) {
+			if (total.getCount() == 0 && total.getAmount().signum() == 0 && total.getActualAmount().signum() == 0) {
+				continue;
+			}
+			int i = rows.size();
+			values.append(i > 0 ? ", " : "").append("(:day").append(i).append(", :billType, :service").append(i)
+			        .append(", :creator").append(i).append(", :amount").append(i).append(", :actualAmount").append(i)
+			        .append(", :waiver").append(i).append(", :count").append(i).append(")");
+			rows.add(total);
+		}
+		if (rows.isEmpty()) {
+			return;
+		}
+		SQLQuery query = session.createSQLQuery(String.format(INSERT_BILLING_DAILY_TOTALS, values));
+		query.setString("billType", billType);
+		for (int i = 0; i < rows.size(); i++) {
+			BillingDailyTotal total = rows.get(i);
+			query.setDate("day" + i, total.getDay());
+			query.setInteger("service" + i, total.getServiceId());
+			query.setInteger("creator" + i, total.getCreatorId());
+			query.setBigDecimal("amount" + i, total.getAmount());
+			query.setBigDecimal("actualAmount" + i, total.getActualAmount());
+			query.setBigDecimal("waiver" + i, total.getWaiver());
+			query.setLong("count" + i, total.getCount());
+		}
+		query.executeUpdate();
+	}
+	
+	public int rebuildBillingDailyTotals(Date start, Date end) throws DAOException {
+		Session session = sessionFactory.getCurrentSession();
+		session.flush();
+		session.createSQLQuery("DELETE FROM billing_daily_aggregate WHERE sale_date >= :start AND sale_date < :end")
+		        .setDate("start", start).setDate("end", end).executeUpdate();
+		int rows = 0;
+		for (String[] totals : BILL_TOTALS) {
+			String select = String.format(totals[2], "b.created_date >= :start AND b.created_date < :end");
+			rows += session.createSQLQuery(String.format(INSERT_BILLING_DAILY_TOTALS, select))
+			        .setString("billType", totals[0]).setTimestamp("start", start)
+			        .setTimestamp("end", end).executeUpdate();
+		}
+		return rows;
+	}
+	
+	@SuppressWarnings("unchecked")
+	public List<BillingDailyTotal> listBillingDailyTotals(Date start, Date end, String billType, List<String> groupBy)
+	                                                                                                                  throws DAOException {
+		StringBuilder columns = new StringBuilder("a.bill_type");
+		for (String dimension : groupBy) {
+			columns.append(", ").append(getDimensionColumn(dimension));
+		}
+		StringBuilder sql = new StringBuilder("SELECT ").append(columns).append(
+		    ", SUM(a.amount), SUM(a.actual_amount), SUM(a.waiver), SUM(a.item_count) FROM billing_daily_aggregate a");
+		if (groupBy.contains(BillingDailyTotal.BY_CATEGORY)) {
+			sql.append(" LEFT JOIN billing_billable_service s");
+			sql.append(" ON a.bill_type = 'PatientServiceBill' AND s.service_id = a.service_id");
+		}
+		sql.append(" WHERE a.sale_date >= :start AND a.sale_date < :end");
+		if (billType != null) {
+			sql.append(" AND a.bill_type = :billType");
+		}
+		// rows taken back to nothing by edited or voided bills are left until a rebuild
+		sql.append(" GROUP BY ").append(columns);
+		sql.append(" HAVING SUM(a.item_count) <> 0 OR SUM(a.amount) <> 0");
+		sql.append(" ORDER BY ").append(columns);
+		
+		SQLQuery query = sessionFactory.getCurrentSession().createSQLQuery(sql.toString());
+		query.setDate("start", start).setDate("end", end);
+		if (billType != null) {
+			query.setString("billType", billType);
+		}
+		List<Object[]> rows = query.list();
+		List<BillingDailyTotal> totals = new ArrayList<BillingDailyTotal>(rows.size());
+		for (Object[] row : rows) {
+			BillingDailyTotal total = new BillingDailyTotal();
+			total.setBillType((String) row[0]);
+			int column = 1;
+			for (String dimension : groupBy) {
+				Object value = row[column++];
+				if (BillingDailyTotal.BY_DAY.equals(dimension)) {
+					total.setDay((Date) value);
+				} else if (BillingDailyTotal.BY_SERVICE.equals(dimension)) {
+					total.setServiceId(toInteger(value));
+				} else if (BillingDailyTotal.BY_CREATOR.equals(dimension)) {
+					total.setCreatorId(toInteger(value));
+				} else {
+					total.setCategoryId(toInteger(value));
+				}
+			}
+			total.setAmount(toBigDecimal(row[column++]));
+			total.setActualAmount(toBigDecimal(row[column++]));
+			total.setWaiver(toBigDecimal(row[column++]));
+			total.setCount(((Number) row[column]).longValue());
+			totals.add(total);
+		}
+		return totals;
+	}
+	
+	/**
+	 * The items of bills are lazy and batch loaded for lists, a single bill is shown or printed
+	 * with all its items, so they are joined in the same select
+	 */
+	private static Criteria fetchBillItems(Criteria criteria) {
+		criteria.setFetchMode("billItems", FetchMode.JOIN);
+		criteria.setResultTransformer(Criteria.DISTINCT_ROOT_ENTITY);
+		return criteria;
+	}
+	
+	/**
+	 * The totals of one bill per day, service and creator as stored
+	 */
+	@SuppressWarnings("unchecked")
+	private List<BillingDailyTotal> getBillTotals(Session session, String billType, Integer billId) {
+		List<BillingDailyTotal> totals = new ArrayList<BillingDailyTotal>();
+		if (billId == null) {
+			return totals;
+		}
+		String[] bill = getBillTotals(billType);
+		String select = String.format(bill[2], "b." + bill[1] + " = :billId");
+		List<Object[]> rows = session.createSQLQuery(select).setString("billType", billType)
+		        .setInteger("billId", billId).list();
+		for (Object[] row : rows) {
+			BillingDailyTotal total = new BillingDailyTotal();
+			total.setBillType(billType);
+			total.setDay((Date) row[0]);
+			total.setServiceId(toInteger(row[2]));
+			total.setCreatorId(toInteger(row[3]));
+			total.setAmount(toBigDecimal(row[4]));
+			total.setActualAmount(toBigDecimal(row[5]));
+			total.setWaiver(toBigDecimal(row[6]));
+			total.setCount(((Number) row[7]).longValue());
+			totals.add(total);
+		}
+		return totals;
+	}
+	
+	/**
+	 * Add sign times a total to the total of the same day, service and creator
+	 */
+	private static void addTotal(Map<String, BillingDailyTotal> totals, BillingDailyTotal total, int sign) {
+		String key = total.getDay().getTime() + "/" + total.getServiceId() + "/" + total.getCreatorId();
+		BillingDailyTotal sum = totals.get(key);
+		if (sum == null) {
+			sum = new BillingDailyTotal();
+			sum.setDay(total.getDay());
+			sum.setServiceId(total.getServiceId());
+			sum.setCreatorId(total.getCreatorId());
+			sum.setAmount(BigDecimal.ZERO);
+			sum.setActualAmount(BigDecimal.ZERO);
+			sum.setWaiver(BigDecimal.ZERO);
+			totals.put(key, sum);
+		}
+		BigDecimal factor = BigDecimal.valueOf(sign);
+		sum.setAmount(sum.getAmount().add(total.getAmount().multiply(factor)));
+		sum.setActualAmount(sum.getActualAmount().add(total.getActualAmount().multiply(factor)));
+		sum.setWaiver(sum.getWaiver().add(total.getWaiver().multiply(factor)));
+		sum.setCount(sum.getCount() + sign * total.getCount());
+	}
+	
+	private String[] getBillTotals(String billType) {
+		for (String[] totals : BILL_TOTALS) {
+			if (totals[0].equals(billType)) {
+				return totals;
+			}
+		}
+		throw new DAOException("Unknown bill type " + billType);
+	}
+	
+	private String getDimensionColumn(String dimension) {
+		if (BillingDailyTotal.BY_DAY.equals(dimension)) {
+			return "a.sale_date";
+		} else if (BillingDailyTotal.BY_SERVICE.equals(dimension)) {
+			return "a.service_id";
+		} else if (BillingDailyTotal.BY_CREATOR.equals(dimension)) {
+			return "a.creator";
+		} else if (BillingDailyTotal.BY_CATEGORY.equals(dimension)) {
+			return "s.category";
+		}
+		throw new DAOException("Unknown dimension " + dimension);
+	}
+	
+	private static Integer toInteger(Object value) {
+		return value == null ? null : ((Number) value).intValue();
+	}
+	
+	private static BigDecimal toBigDecimal(Object value) {
+		if (value == null || value instanceof BigDecimal) {
+			return (BigDecimal) value;
+		}
+		return new BigDecimal(value.toString());
+	}
+	
 }
@@ -20,13 +20,18 @@
 
 package org.openmrs.module.hospitalcore.db.hibernate;
 
+import java.io.IOException;
 import java.math.BigInteger;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
 
@@ -34,6 +39,8 @@ import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang.StringUtils;
 import org.hibernate.Criteria;
 import org.hibernate.Query;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.SessionFactory;
 import org.hibernate.classic.Session;
 import org.hibernate.criterion.Order;
@@ -51,20 +58,34 @@ import org.openmrs.PersonName;
 import org.openmrs.api.context.Context;
 import org.openmrs.api.db.DAOException;
 import org.openmrs.module.hospitalcore.HospitalCoreService;
+import org.openmrs.module.hospitalcore.concept.ConceptGraph;
 import org.openmrs.module.hospitalcore.concept.ConceptModel;
 import org.openmrs.module.hospitalcore.concept.Mapping;
 import org.openmrs.module.hospitalcore.db.HospitalCoreDAO;
 import org.openmrs.module.hospitalcore.model.CoreForm;
+import org.openmrs.module.hospitalcore.model.PatientCSV;
 import org.openmrs.module.hospitalcore.model.PatientSearch;
 import org.openmrs.module.hospitalcore.util.DateUtils;
-
-import java.text.ParseException;
+import org.openmrs.module.hospitalcore.util.DayRange;
+import org.openmrs.module.hospitalcore.util.PatientCSVWriter;
+import org.openmrs.module.hospitalcore.util.PatientSearchTokenizer;
 
 public class HibernateHospitalCoreDAO implements HospitalCoreDAO {
 
-	SimpleDateFormat formatter = new SimpleDateFormat("dd/MM/yyyy HH:mm:ss");
+	private static final int MOBILE_ATTRIBUTE_TYPE_ID = 16;
+
+	private static final int CONCEPT_BATCH = 1000;
 
-	SimpleDateFormat formatterExt = new SimpleDateFormat("dd/MM/yyyy");
+	private static final String PATIENT_VISIT_SELECT = "SELECT e.encounter_id, "
+			+ "(SELECT pi.identifier FROM patient_identifier pi WHERE pi.patient_id = e.patient_id AND pi.voided = 0 "
+			+ "ORDER BY pi.preferred DESC, pi.patient_identifier_id LIMIT 1), "
+			+ "(SELECT CONCAT(IFNULL(pn.given_name, ''), ' ', IFNULL(pn.middle_name, ''), ' ', IFNULL(pn.family_name, '')) "
+			+ "FROM person_name pn WHERE pn.person_id = e.patient_id AND pn.voided = 0 "
+			+ "ORDER BY pn.preferred DESC, pn.person_name_id LIMIT 1), "
+			+ "(SELECT pa.value FROM person_attribute pa WHERE pa.person_id = e.patient_id "
+			+ "AND pa.person_attribute_type_id = :mobileAttributeTypeId AND pa.voided = 0 "
+			+ "ORDER BY pa.person_attribute_id DESC LIMIT 1), "
+			+ "p.gender, p.birthdate, ";
 
 	private SessionFactory sessionFactory;
 
@@ -98,20 +119,9 @@ public class HibernateHospitalCoreDAO implements HospitalCoreDAO {
 				.add(Restrictions.eq("obs.person.personId", personId))
 				.add(Restrictions.eq("obs.concept.conceptId", conceptId))
 				.add(Restrictions.isNull("obs.obsGroup"));
-		String date = formatterExt.format(new Date());
-		String startFromDate = date + " 00:00:00";
-		String endFromDate = date + " 23:59:59";
-		try {
-			criteria.add(Restrictions.and(
-					Restrictions.ge("obs.dateCreated",
-							formatter.parse(startFromDate)),
-					Restrictions.le("obs.dateCreated",
-							formatter.parse(endFromDate))));
-		} catch (Exception e) {
-			// TODO: handle exception
-			System.out.println("Error convert date: " + e.toString());
-			e.printStackTrace();
-		}
+		DayRange today = DayRange.today();
+		criteria.add(Restrictions.ge("obs.dateCreated", today.getStart()));
+		criteria.add(Restrictions.lt("obs.dateCreated", today.getEnd()));
 
 		List<Obs> list = criteria.list();
 		return CollectionUtils.isNotEmpty(list) ? list.get(0) : null;
@@ -152,86 +162,173 @@ public class HibernateHospitalCoreDAO implements HospitalCoreDAO {
 		// tx.commit();
 	}
 
+	/**
+	 * Search patients through the denormalized <code>patient_search</code>
+	 * projection. Names are matched by prefix so the name indexes can be used,
+	 * identifiers and full names are matched as "contains" through the
+	 * <code>patient_search_ngram</code> table. Every value is bound as a
+	 * parameter and age is turned into a birthdate range so the database is
+	 * free to pick the indexes.
+	 */
 	public List<Patient> searchPatient(String nameOrIdentifier, String gender,
 			int age, int rangeAge, String date, int rangeDay,
 			String relativeName) throws DAOException {
-		List<Patient> patients = new Vector<Patient>();
+		return searchPatient(nameOrIdentifier, gender, age, rangeAge, date,
+				rangeDay, relativeName, null, 0, 0);
+	}
+
+	/**
+	 * @see org.openmrs.module.hospitalcore.db.HospitalCoreDAO#searchPatient(java.lang.String,
+	 *      java.lang.String, int, int, java.lang.String, int,
+	 *      java.lang.String, java.lang.Integer, int, int)
+	 */
+	public List<Patient> searchPatient(String nameOrIdentifier, String gender,
+			int age, int rangeAge, String date, int rangeDay,
+			String relativeName, Integer afterPatientId, int min, int max)
+			throws DAOException {
+		Query query = createSearchPatientQuery(
+				"SELECT ps.patient_id, ps.identifier, ps.given_name, ps.middle_name, ps.family_name, ps.gender, ps.birthdate, ps.age, ps.person_name_id, ps.dead ",
+				"ORDER BY ps.patient_id ASC", nameOrIdentifier, gender, age,
+				rangeAge, date, rangeDay, relativeName, afterPatientId);
+		if (max > 0) {
+			query.setFirstResult(min).setMaxResults(max);
+		}
+		return toPatients(query.list());
+	}
 
-		String hql = "SELECT DISTINCT p.patient_id,pi.identifier,pn.given_name ,pn.middle_name ,pn.family_name ,ps.gender,ps.birthdate ,EXTRACT(YEAR FROM (FROM_DAYS(DATEDIFF(NOW(),ps.birthdate)))) age,pn.person_name_id FROM patient p "
-				+ "INNER JOIN person ps ON p.patient_id = ps.person_id "
-				+ "INNER JOIN patient_identifier pi ON p.patient_id = pi.patient_id "
-				+ "INNER JOIN person_name pn ON p.patient_id = pn.person_id "
-				+ "INNER JOIN person_attribute pa ON p.patient_id= pa.person_id "
-				+ "INNER JOIN person_attribute_type pat ON pa.person_attribute_type_id = pat.person_attribute_type_id "
-				+ "WHERE (pi.identifier like '%"
-				+ nameOrIdentifier
-				+ "%' "
-				+ "OR pn.given_name like '"
-				+ nameOrIdentifier
-				+ "%' "
-				+ "OR pn.middle_name like '"
-				+ nameOrIdentifier
-				+ "%' "
-				+ "OR pn.family_name like '" + nameOrIdentifier + "%') ";
+	/**
+	 * @see org.openmrs.module.hospitalcore.db.HospitalCoreDAO#countPatient(java.lang.String,
+	 *      java.lang.String, int, int, java.lang.String, int,
+	 *      java.lang.String)
+	 */
+	public Integer countPatient(String nameOrIdentifier, String gender,
+			int age, int rangeAge, String date, int rangeDay,
+			String relativeName) throws DAOException {
+		Query query = createSearchPatientQuery("SELECT COUNT(*) ", "",
+				nameOrIdentifier, gender, age, rangeAge, date, rangeDay,
+				relativeName, null);
+		Number count = (Number) query.uniqueResult();
+		return count == null ? 0 : count.intValue();
+	}
+
+	private Query createSearchPatientQuery(String select, String order,
+			String nameOrIdentifier, String gender, int age, int rangeAge,
+			String date, int rangeDay, String relativeName,
+			Integer afterPatientId) {
+		String phrase = StringUtils.trimToEmpty(nameOrIdentifier);
+		String prefix = PatientSearchTokenizer.escapeLike(phrase) + "%";
+		String infix = "%" + PatientSearchTokenizer.escapeLike(phrase) + "%";
+		boolean gramSearch = PatientSearchTokenizer.isGramSearchable(phrase);
+		Set<String> grams = PatientSearchTokenizer.getGrams(phrase);
+
+		String sql = select + getSearchPatientMatchSql(gramSearch);
+		if (afterPatientId != null) {
+			sql += "AND ps.patient_id > :afterPatientId ";
+		}
 		if (StringUtils.isNotBlank(gender)) {
-			hql += " AND ps.gender = '" + gender + "' ";
+			sql += "AND ps.gender = :gender ";
 		}
 		if (StringUtils.isNotBlank(relativeName)) {
-			hql += " AND pat.name = 'Father/Husband Name' AND pa.value like '"
-					+ relativeName + "' ";
+			sql += "AND EXISTS (SELECT 1 FROM person_attribute pa "
+					+ "INNER JOIN person_attribute_type pat ON pa.person_attribute_type_id = pat.person_attribute_type_id "
+					+ "WHERE pa.person_id = ps.patient_id AND pat.name = 'Father/Husband Name' AND pa.value LIKE :relativeName) ";
 		}
+		Date birthdateFrom = null;
+		Date birthdateTo = null;
 		if (StringUtils.isNotBlank(date)) {
-			String startDate = DateUtils.getDateFromRange(date, -rangeDay)
-					+ " 00:00:00";
-			String endtDate = DateUtils.getDateFromRange(date, rangeDay)
-					+ " 23:59:59";
-			hql += " AND ps.birthdate BETWEEN '" + startDate + "' AND '"
-					+ endtDate + "' ";
+			Date day = DateUtils.getDateFromStr(date);
+			if (day != null) {
+				birthdateFrom = addDays(day, -rangeDay);
+				birthdateTo = addDays(day, rangeDay + 1);
+				sql += "AND ps.birthdate >= :dateFrom AND ps.birthdate < :dateTo ";
+			}
 		}
 		if (age > 0) {
-			hql += " AND EXTRACT(YEAR FROM (FROM_DAYS(DATEDIFF(NOW(),ps.birthdate)))) >="
-					+ (age - rangeAge)
-					+ " AND EXTRACT(YEAR FROM (FROM_DAYS(DATEDIFF(NOW(),ps.birthdate)))) <= "
-					+ (age + rangeAge) + " ";
+			sql += "AND ps.birthdate > :ageFrom AND ps.birthdate <= :ageTo ";
+		}
+		sql += order;
+
+		Query query = sessionFactory.getCurrentSession().createSQLQuery(sql);
+		query.setString("prefix", prefix);
+		// without grams an identifier can only be matched by its prefix
+		query.setString("identifierMatch", gramSearch ? infix : prefix);
+		if (gramSearch) {
+			query.setParameterList("grams", grams);
+			query.setInteger("gramCount", grams.size());
 		}
-		hql += " ORDER BY p.patient_id ASC";
+		if (afterPatientId != null) {
+			query.setInteger("afterPatientId", afterPatientId);
+		}
+		if (StringUtils.isNotBlank(gender)) {
+			query.setString("gender", gender);
+		}
+		if (StringUtils.isNotBlank(relativeName)) {
+			query.setString("relativeName", relativeName);
+		}
+		if (birthdateFrom != null) {
+			query.setTimestamp("dateFrom", birthdateFrom);
+			query.setTimestamp("dateTo", birthdateTo);
+		}
+		if (age > 0) {
+			Calendar today = Calendar.getInstance();
+			today.set(Calendar.HOUR_OF_DAY, 0);
+			today.set(Calendar.MINUTE, 0);
+			today.set(Calendar.SECOND, 0);
+			today.set(Calendar.MILLISECOND, 0);
+			Calendar oldest = (Calendar) today.clone();
+			oldest.add(Calendar.YEAR, -(age + rangeAge + 1));
+			Calendar youngest = (Calendar) today.clone();
+			youngest.add(Calendar.YEAR, -(age - rangeAge));
+			query.setTimestamp("ageFrom", oldest.getTime());
+			query.setTimestamp("ageTo", youngest.getTime());
+		}
+		return query;
+	}
 
-		Query query = sessionFactory.getCurrentSession().createSQLQuery(hql);
-		List l = query.list();
-		if (CollectionUtils.isNotEmpty(l))
-			for (Object obj : l) {
-				Object[] obss = (Object[]) obj;
-				if (obss != null && obss.length > 0) {
-					Person person = new Person((Integer) obss[0]);
-					PersonName personName = new PersonName((Integer) obss[8]);
-					personName.setGivenName((String) obss[2]);
-					personName.setMiddleName((String) obss[3]);
-					personName.setFamilyName((String) obss[4]);
-					personName.setPerson(person);
-					Set<PersonName> names = new HashSet<PersonName>();
-					names.add(personName);
-					person.setNames(names);
-					Patient patient = new Patient(person);
-					PatientIdentifier patientIdentifier = new PatientIdentifier();
-					patientIdentifier.setPatient(patient);
-					patientIdentifier.setIdentifier((String) obss[1]);
-					Set<PatientIdentifier> identifier = new HashSet<PatientIdentifier>();
-					identifier.add(patientIdentifier);
-					patient.setIdentifiers(identifier);
-					patient.setGender((String) obss[5]);
-					patient.setBirthdate((Date) obss[6]);
-					patients.add(patient);
-				}
+	/**
+	 * The FROM and WHERE of the patient search on the name or identifier
+	 * alone, bound to :prefix, :identifierMatch and, with grams, :grams and
+	 * :gramCount
+	 * 
+	 * @param gramSearch
+	 *            whether the phrase is looked up in patient_search_ngram
+	 * @return
+	 */
+	static String getSearchPatientMatchSql(boolean gramSearch) {
+		String sql = "FROM (SELECT patient_id FROM patient_search WHERE identifier LIKE :prefix "
+				+ "UNION SELECT patient_id FROM patient_search WHERE fullname LIKE :prefix "
+				+ "UNION SELECT patient_id FROM patient_search WHERE given_name LIKE :prefix "
+				+ "UNION SELECT patient_id FROM patient_search WHERE middle_name LIKE :prefix "
+				+ "UNION SELECT patient_id FROM patient_search WHERE family_name LIKE :prefix ";
+		if (gramSearch) {
+			sql += "UNION SELECT g.patient_id FROM patient_search_ngram g WHERE g.gram IN (:grams) "
+					+ "GROUP BY g.patient_id HAVING COUNT(DISTINCT g.gram) = :gramCount ";
+		}
+		return sql
+				+ ") matched INNER JOIN patient_search ps ON ps.patient_id = matched.patient_id "
+				+ "WHERE (ps.given_name LIKE :prefix OR ps.middle_name LIKE :prefix OR ps.family_name LIKE :prefix "
+				+ "OR ps.identifier LIKE :identifierMatch OR ps.fullname LIKE :identifierMatch) ";
+	}
 
-			}
-		return patients;
+	private Date addDays(Date date, int days) {
+		Calendar calendar = Calendar.getInstance();
+		calendar.setTime(date);
+		calendar.add(Calendar.DAY_OF_MONTH, days);
+		return calendar.getTime();
 	}
 
 	@SuppressWarnings("rawtypes")
 	public List<Patient> searchPatient(String hql) {
-		List<Patient> patients = new Vector<Patient>();
 		Query query = sessionFactory.getCurrentSession().createSQLQuery(hql);
-		List list = query.list();
+		return toPatients(query.list());
+	}
+
+	/**
+	 * Build light weight patients from the rows of a patient search query
+	 */
+	@SuppressWarnings("rawtypes")
+	private List<Patient> toPatients(List list) {
+		List<Patient> patients = new Vector<Patient>();
 		if (CollectionUtils.isNotEmpty(list))
 			for (Object obj : list) {
 				Object[] obss = (Object[]) obj;
@@ -315,6 +412,94 @@ public class HibernateHospitalCoreDAO implements HospitalCoreDAO {
 		return attributes;
 	}
 
+	/**
+	 * @see org.openmrs.module.hospitalcore.db.HospitalCoreDAO#getPersonAttributes(java.util.Collection)
+	 */
+	@SuppressWarnings("rawtypes")
+	public Map<Integer, List<PersonAttribute>> getPersonAttributes(
+			Collection<Integer> patientIds) {
+		Map<Integer, List<PersonAttribute>> attributes = new HashMap<Integer, List<PersonAttribute>>();
+		if (CollectionUtils.isEmpty(patientIds)) {
+			return attributes;
+		}
+		String sql = "SELECT pa.person_id, pa.person_attribute_type_id, pa.`value` FROM person_attribute pa "
+				+ "WHERE pa.person_id IN (:patientIds) AND pa.voided = 0";
+		Query query = sessionFactory.getCurrentSession().createSQLQuery(sql);
+		query.setParameterList("patientIds", patientIds);
+		List l = query.list();
+		for (Object obj : l) {
+			Object[] obss = (Object[]) obj;
+			Integer patientId = (Integer) obss[0];
+			PersonAttribute attribute = new PersonAttribute();
+			attribute.setAttributeType(new PersonAttributeType(
+					(Integer) obss[1]));
+			attribute.setValue((String) obss[2]);
+			List<PersonAttribute> patientAttributes = attributes.get(patientId);
+			if (patientAttributes == null) {
+				patientAttributes = new ArrayList<PersonAttribute>();
+				attributes.put(patientId, patientAttributes);
+			}
+			patientAttributes.add(attribute);
+		}
+		return attributes;
+	}
+
+	public ConceptGraph getConceptGraph(long version) {
+		String sql = "SELECT ca.concept_id, ca.answer_concept FROM concept_answer ca "
+				+ "INNER JOIN concept c ON c.concept_id = ca.concept_id "
+				+ "INNER JOIN concept_class cc ON cc.concept_class_id = c.class_id "
+				+ "WHERE cc.name <> 'Test' AND ca.answer_concept IS NOT NULL "
+				+ "UNION ALL "
+				+ "SELECT cs.concept_set, cs.concept_id FROM concept_set cs "
+				+ "INNER JOIN concept c ON c.concept_id = cs.concept_set "
+				+ "INNER JOIN concept_class cc ON cc.concept_class_id = c.class_id "
+				+ "WHERE cc.name <> 'Test'";
+		Query query = sessionFactory.getCurrentSession().createSQLQuery(sql);
+		query.setFetchSize(Integer.MIN_VALUE);
+		int[] parentIds = new int[1024];
+		int[] childIds = new int[1024];
+		int count = 0;
+		ScrollableResults results = query.scroll(ScrollMode.FORWARD_ONLY);
+		try {
+			while (results.next()) {
+				if (count == parentIds.length) {
+					int[] grownParents = new int[count * 2];
+					int[] grownChildren = new int[count * 2];
+					System.arraycopy(parentIds, 0, grownParents, 0, count);
+					System.arraycopy(childIds, 0, grownChildren, 0, count);
+					parentIds = grownParents;
+					childIds = grownChildren;
+				}
+				parentIds[count] = ((Number) results.get(0)).intValue();
+				childIds[count] = ((Number) results.get(1)).intValue();
+				count++;
+			}
+		} finally {
+			results.close();
+		}
+		return new ConceptGraph(version, parentIds, childIds, count);
+	}
+
+	public Map<Integer, Concept> getConcepts(Collection<Integer> conceptIds) {
+		Map<Integer, Concept> concepts = new HashMap<Integer, Concept>();
+		if (CollectionUtils.isEmpty(conceptIds)) {
+			return concepts;
+		}
+		List<Integer> ids = new ArrayList<Integer>(conceptIds);
+		for (int from = 0; from < ids.size(); from += CONCEPT_BATCH) {
+			List<Integer> batch = ids.subList(from,
+					Math.min(from + CONCEPT_BATCH, ids.size()));
+			Criteria criteria = sessionFactory.getCurrentSession()
+					.createCriteria(Concept.class);
+			criteria.add(Restrictions.in("conceptId", batch));
+			List<Concept> l = criteria.list();
+			for (Concept concept : l) {
+				concepts.put(concept.getConceptId(), concept);
+			}
+		}
+		return concepts;
+	}
+
 	public Encounter getLastVisitEncounter(Patient patient,
 			List<EncounterType> types) {
 		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(
@@ -368,6 +553,59 @@ public class HibernateHospitalCoreDAO implements HospitalCoreDAO {
 				patientSearch);
 	}
 
+	/**
+	 * @see org.openmrs.module.hospitalcore.db.HospitalCoreDAO#indexPatientSearch(org.openmrs.module.hospitalcore.model.PatientSearch)
+	 */
+	public void indexPatientSearch(PatientSearch patientSearch) {
+		Session session = sessionFactory.getCurrentSession();
+		session.createSQLQuery(
+				"DELETE FROM patient_search_ngram WHERE patient_id = :patientId")
+				.setInteger("patientId", patientSearch.getPatientId())
+				.executeUpdate();
+		Set<String> grams = PatientSearchTokenizer.getGrams(
+				patientSearch.getIdentifier(), patientSearch.getFullname());
+		if (grams.isEmpty()) {
+			return;
+		}
+		// IGNORE: grams equal under the column collation share one row
+		String sql = "INSERT IGNORE INTO patient_search_ngram (gram, patient_id) VALUES ";
+		for (int i = 0; i < grams.size(); i++) {
+			sql += (i > 0 ? ", " : "") + "(:gram" + i + ", :patientId)";
+		}
+		Query query = session.createSQLQuery(sql);
+		query.setInteger("patientId", patientSearch.getPatientId());
+		int i = 0;
+		for (String gram : grams) {
+			query.setString("gram" + i++, gram);
+		}
+		query.executeUpdate();
+	}
+
+	/**
+	 * @see org.openmrs.module.hospitalcore.db.HospitalCoreDAO#indexPatientSearches(java.lang.Integer,
+	 *      int)
+	 */
+	@SuppressWarnings("unchecked")
+	public List<Integer> indexPatientSearches(Integer afterPatientId,
+			int batchSize) {
+		Session session = sessionFactory.getCurrentSession();
+		Criteria criteria = session.createCriteria(PatientSearch.class);
+		if (afterPatientId != null) {
+			criteria.add(Restrictions.gt("patientId", afterPatientId));
+		}
+		criteria.addOrder(Order.asc("patientId"));
+		criteria.setMaxResults(batchSize);
+		List<PatientSearch> batch = criteria.list();
+		List<Integer> patientIds = new ArrayList<Integer>();
+		for (PatientSearch patientSearch : batch) {
+			indexPatientSearch(patientSearch);
+			patientIds.add(patientSearch.getPatientId());
+		}
+		session.flush();
+		session.clear();
+		return patientIds;
+	}
+
 	/**
 	 * @see org.openmrs.module.hospitalcore.db.HospitalCoreDAO#getLastVisitTime(int)
 	 */
@@ -389,6 +627,30 @@ public class HibernateHospitalCoreDAO implements HospitalCoreDAO {
 				.getEncounterDatetime());
 	}
 
+	/**
+	 * @see org.openmrs.module.hospitalcore.db.HospitalCoreDAO#getLastVisitTimes(java.util.Collection)
+	 */
+	@SuppressWarnings("rawtypes")
+	public Map<Integer, Date> getLastVisitTimes(Collection<Integer> patientIds) {
+		Map<Integer, Date> lastVisitTimes = new HashMap<Integer, Date>();
+		if (CollectionUtils.isEmpty(patientIds)) {
+			return lastVisitTimes;
+		}
+		// same rule as getLastVisitTime: the highest encounterId wins
+		String sql = "SELECT e.patient_id, e.encounter_datetime FROM encounter e "
+				+ "INNER JOIN (SELECT MAX(encounter_id) encounter_id FROM encounter "
+				+ "WHERE patient_id IN (:patientIds) GROUP BY patient_id) last "
+				+ "ON last.encounter_id = e.encounter_id";
+		Query query = sessionFactory.getCurrentSession().createSQLQuery(sql);
+		query.setParameterList("patientIds", patientIds);
+		List l = query.list();
+		for (Object obj : l) {
+			Object[] obss = (Object[]) obj;
+			lastVisitTimes.put((Integer) obss[0], (Date) obss[1]);
+		}
+		return lastVisitTimes;
+	}
+
 	// ghanshyam,22-oct-2013,New Requirement #2940 Dealing with dead patient
 	public PatientSearch getPatient(int patientID) {
 		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(
@@ -430,19 +692,10 @@ public class HibernateHospitalCoreDAO implements HospitalCoreDAO {
 			Set<EncounterType> encounterTypes) {
 		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(
 				Encounter.class);
-		String startFromDate = date + " 00:00:00";
-		;
-		String endFromDate = date + " 23:59:59";
-		try {
-			criteria.add(Restrictions.and(
-					Restrictions.ge("encounterDatetime",
-							formatter.parse(startFromDate)),
-					Restrictions.le("encounterDatetime",
-							formatter.parse(endFromDate))));
-			criteria.add(Restrictions.in("encounterType", encounterTypes));
-		} catch (ParseException e) {
-			e.printStackTrace();
-		}
+		DayRange day = DayRange.parse(date);
+		criteria.add(Restrictions.ge("encounterDatetime", day.getStart()));
+		criteria.add(Restrictions.lt("encounterDatetime", day.getEnd()));
+		criteria.add(Restrictions.in("encounterType", encounterTypes));
 		List<Encounter> enc = criteria.list();
 		Set<Encounter> dops = new LinkedHashSet<Encounter>();
 		for (Encounter o : enc) {
@@ -456,19 +709,9 @@ public class HibernateHospitalCoreDAO implements HospitalCoreDAO {
 		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(
 				Encounter.class);
 
-		String startFromDate = date + " 00:00:00";
-		
-		String endFromDate = date + " 23:59:59";
-
-		try {
-			criteria.add(Restrictions.and(
-					Restrictions.ge("encounterDatetime",
-							formatter.parse(startFromDate)),
-					Restrictions.le("encounterDatetime",
-							formatter.parse(endFromDate))));
-		} catch (ParseException e) {
-			e.printStackTrace();
-		}
+		DayRange day = DayRange.parse(date);
+		criteria.add(Restrictions.ge("encounterDatetime", day.getStart()));
+		criteria.add(Restrictions.lt("encounterDatetime", day.getEnd()));
 		List<Encounter> enc = criteria.list();
 		Set<Encounter> dops = new LinkedHashSet<Encounter>();
 		for (Encounter o : enc) {
@@ -483,6 +726,95 @@ public class HibernateHospitalCoreDAO implements HospitalCoreDAO {
 		return dops;
 	}
 
+	/**
+	 * @see org.openmrs.module.hospitalcore.db.HospitalCoreDAO#writePatientVisits(java.util.Date,
+	 *      java.util.Date, java.lang.Integer,
+	 *      org.openmrs.module.hospitalcore.util.PatientCSVWriter)
+	 */
+	public void writePatientVisits(Date fromDate, Date toDate,
+			Integer opdWardConceptId, PatientCSVWriter writer)
+			throws IOException {
+		// OPD visits: the last "OPD WARD" obs of a registration encounter wins
+		if (opdWardConceptId != null) {
+			String sql = PATIENT_VISIT_SELECT
+					+ "o.obs_datetime, o.value_coded, '2' "
+					+ "FROM encounter e "
+					+ "INNER JOIN encounter_type et ON et.encounter_type_id = e.encounter_type "
+					+ "INNER JOIN person p ON p.person_id = e.patient_id "
+					+ "INNER JOIN obs o ON o.encounter_id = e.encounter_id AND o.concept_id = :opdWardConceptId AND o.voided = 0 "
+					+ "WHERE et.name IN ('REGINITIAL', 'REGREVISIT') "
+					+ "AND e.encounter_datetime >= :fromDate AND e.encounter_datetime < :toDate "
+					+ "ORDER BY e.encounter_id, o.obs_id";
+			Query query = sessionFactory.getCurrentSession().createSQLQuery(
+					sql);
+			query.setInteger("opdWardConceptId", opdWardConceptId);
+			writePatientVisits(query, fromDate, toDate, writer);
+		}
+
+		// IPD visits: admissions still in 'admitted' status
+		String sql = PATIENT_VISIT_SELECT
+				+ "e.encounter_datetime, al.admission_ward_id, '1' "
+				+ "FROM encounter e "
+				+ "INNER JOIN encounter_type et ON et.encounter_type_id = e.encounter_type "
+				+ "INNER JOIN person p ON p.person_id = e.patient_id "
+				+ "INNER JOIN ipd_patient_admission_log al ON al.ipd_encounter_id = e.encounter_id "
+				+ "WHERE et.name = 'IPDENCOUNTER' AND al.status = 'admitted' "
+				+ "AND e.encounter_datetime >= :fromDate AND e.encounter_datetime < :toDate "
+				+ "ORDER BY e.encounter_id";
+		Query query = sessionFactory.getCurrentSession().createSQLQuery(sql);
+		writePatientVisits(query, fromDate, toDate, writer);
+	}
+
+	private void writePatientVisits(Query query, Date fromDate, Date toDate,
+			PatientCSVWriter writer) throws IOException {
+		query.setInteger("mobileAttributeTypeId", MOBILE_ATTRIBUTE_TYPE_ID);
+		query.setTimestamp("fromDate", fromDate);
+		query.setTimestamp("toDate", toDate);
+		// MySQL only streams rows with this fetch size, any other value
+		// buffers the whole result set in the driver
+		query.setFetchSize(Integer.MIN_VALUE);
+		ScrollableResults results = query.scroll(ScrollMode.FORWARD_ONLY);
+		SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+		SimpleDateFormat timeFormat = new SimpleDateFormat("HHmm");
+		Calendar calendar = Calendar.getInstance();
+		try {
+			PatientCSV pending = null;
+			while (results.next()) {
+				Object[] row = results.get();
+				String encId = row[0].toString();
+				if (pending != null && !pending.getEncId().equals(encId)) {
+					writer.write(pending);
+				}
+				pending = new PatientCSV();
+				pending.setEncId(encId);
+				pending.setPatientidentifier((String) row[1]);
+				pending.setPatientName((String) row[2]);
+				pending.setMobile(StringUtils.isBlank((String) row[3]) ? "0"
+						: (String) row[3]);
+				String gender = (String) row[4];
+				pending.setGender("M".equals(gender) ? "1" : "F"
+						.equals(gender) ? "2" : "O".equals(gender) ? "3" : "");
+				Date visitDatetime = (Date) row[6];
+				pending.setVisitDate(dateFormat.format(visitDatetime));
+				pending.setVisitTime(timeFormat.format(visitDatetime));
+				pending.setDept(row[7] == null ? null : row[7].toString());
+				pending.setPatientType(row[8].toString());
+				if (row[5] != null) {
+					calendar.setTime((Date) row[5]);
+					int birthYear = calendar.get(Calendar.YEAR);
+					calendar.setTime(visitDatetime);
+					pending.setAge(String.valueOf(Math.max(1,
+							calendar.get(Calendar.YEAR) - birthYear)));
+				}
+			}
+			if (pending != null) {
+				writer.write(pending);
+			}
+		} finally {
+			results.close();
+		}
+	}
+
 	public List<Obs> getObsInstanceForDiagnosis(Encounter encounter,
 			Concept concept) {
 		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(
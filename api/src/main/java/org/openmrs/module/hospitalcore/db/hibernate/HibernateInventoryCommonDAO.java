@@ -23,12 +23,12 @@
 
 package org.openmrs.module.hospitalcore.db.hibernate;
 
-import java.text.SimpleDateFormat;
 import java.util.List;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hibernate.Criteria;
+import org.hibernate.FetchMode;
 import org.hibernate.SessionFactory;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Restrictions;
@@ -44,13 +44,10 @@ import org.openmrs.module.hospitalcore.model.InventoryDrugFormulation;
 import org.openmrs.module.hospitalcore.model.InventoryStoreDrugPatient;
 import org.openmrs.module.hospitalcore.model.InventoryStoreDrugPatientDetail;
 import org.openmrs.module.hospitalcore.model.InventoryStoreDrugTransactionDetail;
+import org.openmrs.module.hospitalcore.util.DayRange;
 
 public class HibernateInventoryCommonDAO implements InventoryCommonDAO {
 	
-    SimpleDateFormat formatter = new SimpleDateFormat("dd/MM/yyyy HH:mm:ss");
-	
-	SimpleDateFormat formatterExt = new SimpleDateFormat("dd/MM/yyyy");
-
 	protected final Log log = LogFactory.getLog(getClass());
 
 	/**
@@ -86,15 +83,13 @@ public class HibernateInventoryCommonDAO implements InventoryCommonDAO {
 				InventoryStoreDrugPatient.class);
 		criteria.add(Restrictions.eq("patient", patient));
 		if(!date.equals("all")){
-			String startDate = date + " 00:00:00";
-			String endDate = date + " 23:59:59";
 			try {
-				criteria.add(Restrictions.and(Restrictions.ge("createdOn", formatter.parse(startDate)),
-					    Restrictions.le("createdOn", formatter.parse(endDate))));
+				DayRange day = DayRange.parse(date);
+				criteria.add(Restrictions.ge("createdOn", day.getStart()));
+				criteria.add(Restrictions.lt("createdOn", day.getEnd()));
 			}
-			catch (Exception e) {
-				// TODO: handle exception
-				e.printStackTrace();
+			catch (IllegalArgumentException e) {
+				log.error("Error convert date: " + e.toString());
 			}
 		}
 		else{
@@ -111,6 +106,10 @@ public class HibernateInventoryCommonDAO implements InventoryCommonDAO {
 		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(
 				InventoryStoreDrugPatientDetail.class);
 		criteria.add(Restrictions.eq("storeDrugPatient", isdpd));
+		// the dashboard shows the drug and formulation of every detail
+		criteria.setFetchMode("transactionDetail", FetchMode.JOIN);
+		criteria.setFetchMode("transactionDetail.drug", FetchMode.JOIN);
+		criteria.setFetchMode("transactionDetail.formulation", FetchMode.JOIN);
 
 		return criteria.list();
 	}
@@ -119,6 +118,11 @@ public class HibernateInventoryCommonDAO implements InventoryCommonDAO {
 		Criteria criteria = sessionFactory.getCurrentSession()
 				.createCriteria(InventoryDrug.class, "drug")
 				.add(Restrictions.eq("drug.name", name));
+		// the drug is looked up to be issued, with its unit and formulations
+		criteria.setFetchMode("unit", FetchMode.JOIN);
+		criteria.setFetchMode("category", FetchMode.JOIN);
+		criteria.setFetchMode("formulations", FetchMode.JOIN);
+		criteria.setResultTransformer(Criteria.DISTINCT_ROOT_ENTITY);
 		return (InventoryDrug) criteria.uniqueResult();
 	}
 	
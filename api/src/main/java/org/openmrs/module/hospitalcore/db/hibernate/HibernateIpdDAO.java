@@ -20,18 +20,25 @@
 
 package org.openmrs.module.hospitalcore.db.hibernate;
 
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hibernate.Criteria;
+import org.hibernate.EntityMode;
 import org.hibernate.SessionFactory;
+import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.metadata.ClassMetadata;
 import org.openmrs.Concept;
 import org.openmrs.ConceptClass;
 import org.openmrs.Encounter;
@@ -46,9 +53,12 @@ import org.openmrs.module.hospitalcore.model.IpdPatientAdmitted;
 import org.openmrs.module.hospitalcore.model.IpdPatientAdmittedLog;
 import org.openmrs.module.hospitalcore.model.IpdPatientVitalStatistics;
 import org.openmrs.module.hospitalcore.model.WardBedStrength;
+import org.openmrs.module.hospitalcore.util.AdmissionCursor;
+import org.openmrs.module.hospitalcore.util.DayRange;
+import org.openmrs.module.hospitalcore.util.KeysetPage;
+import org.openmrs.module.hospitalcore.util.VitalReading;
 
 public class HibernateIpdDAO implements IpdDAO {
-	SimpleDateFormat formatter = new SimpleDateFormat("dd/MM/yyyy HH:mm:ss");
 	protected final Log log = LogFactory.getLog(getClass());
 
 	/**
@@ -76,6 +86,33 @@ public class HibernateIpdDAO implements IpdDAO {
 	public List<IpdPatientAdmissionLog> listIpdPatientAdmissionLog(
 			Integer patientId, Integer admissionWardId, String status,
 			Integer min, Integer max) throws DAOException {
+		Criteria criteria = createAdmissionLogSearch(patientId,
+				admissionWardId, status);
+		if (max > 0) {
+			criteria.setFirstResult(min).setMaxResults(max);
+		}
+		criteria.addOrder(Order.desc("ipdPatientAdmissionLog.admissionDate"));
+		List<IpdPatientAdmissionLog> list = criteria.list();
+		return list;
+	}
+
+	public KeysetPage<IpdPatientAdmissionLog> listIpdPatientAdmissionLogPage(
+			Integer patientId, Integer admissionWardId, String status,
+			AdmissionCursor after, int pageSize) throws DAOException {
+		Criteria criteria = createAdmissionLogSearch(patientId,
+				admissionWardId, status);
+		return getPage(criteria, "ipdPatientAdmissionLog", true, after,
+				pageSize, IpdPatientAdmissionLog.class);
+	}
+
+	public int countIpdPatientAdmissionLog(Integer patientId,
+			Integer admissionWardId, String status) throws DAOException {
+		return count(createAdmissionLogSearch(patientId, admissionWardId,
+				status));
+	}
+
+	private Criteria createAdmissionLogSearch(Integer patientId,
+			Integer admissionWardId, String status) {
 		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(
 				IpdPatientAdmissionLog.class, "ipdPatientAdmissionLog");
 		if (patientId != null && patientId > 0) {
@@ -91,12 +128,7 @@ public class HibernateIpdDAO implements IpdDAO {
 			criteria.add(Restrictions.eq("ipdPatientAdmissionLog.status",
 					status));
 		}
-		if (max > 0) {
-			criteria.setFirstResult(min).setMaxResults(max);
-		}
-		criteria.addOrder(Order.desc("ipdPatientAdmissionLog.admissionDate"));
-		List<IpdPatientAdmissionLog> list = criteria.list();
-		return list;
+		return criteria;
 	}
 
 	@SuppressWarnings("unchecked")
@@ -187,71 +219,42 @@ public class HibernateIpdDAO implements IpdDAO {
 	}
 
 	// New Requirement load choose ipd page
+	@SuppressWarnings("unchecked")
 	public List<IpdPatientAdmission> searchIpdPatientAdmission(
 			String patientSearch, ArrayList<Integer> userIds, String fromDate,
 			String toDate, String wardId, String status) throws APIException {
+		Criteria criteria = createAdmissionSearch(patientSearch, userIds,
+				fromDate, toDate, wardId, status);
+		criteria.addOrder(Order.asc("patientAdmission.admissionDate"));
+		List<IpdPatientAdmission> list = criteria.list();
+		return list;
+	}
+
+	public KeysetPage<IpdPatientAdmission> searchIpdPatientAdmissionPage(
+			String patientSearch, ArrayList<Integer> userIds, String fromDate,
+			String toDate, String wardId, String status,
+			AdmissionCursor after, int pageSize) throws DAOException {
+		Criteria criteria = createAdmissionSearch(patientSearch, userIds,
+				fromDate, toDate, wardId, status);
+		return getPage(criteria, "patientAdmission", false, after, pageSize,
+				IpdPatientAdmission.class);
+	}
+
+	public int countIpdPatientAdmission(String patientSearch,
+			ArrayList<Integer> userIds, String fromDate, String toDate,
+			String wardId, String status) throws DAOException {
+		return count(createAdmissionSearch(patientSearch, userIds, fromDate,
+				toDate, wardId, status));
+	}
+
+	private Criteria createAdmissionSearch(String patientSearch,
+			ArrayList<Integer> userIds, String fromDate, String toDate,
+			String wardId, String status) {
 		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(
 				IpdPatientAdmission.class, "patientAdmission");
-		if (StringUtils.isNotBlank(fromDate) && StringUtils.isBlank(toDate)) {
-			String startFromDate = fromDate + " 00:00:00";
-			String endFromDate = fromDate + " 23:59:59";
-			try {
-				criteria.add(Restrictions.and(Restrictions.ge(
-						"patientAdmission.admissionDate",
-						formatter.parse(startFromDate)), Restrictions.le(
-						"patientAdmission.admissionDate",
-						formatter.parse(endFromDate))));
-			} catch (Exception e) {
-				// TODO: handle exception
-				log.error("Error convert date: " + e.toString());
-				e.printStackTrace();
-			}
-		} else if (StringUtils.isBlank(fromDate)
-				&& StringUtils.isNotBlank(toDate)) {
-			String startToDate = toDate + " 00:00:00";
-			String endToDate = toDate + " 23:59:59";
-			try {
-				criteria.add(Restrictions.and(Restrictions.ge(
-						"patientAdmission.admissionDate",
-						formatter.parse(startToDate)), Restrictions.le(
-						"patientAdmission.admissionDate",
-						formatter.parse(endToDate))));
-			} catch (Exception e) {
-				// TODO: handle exception
-				log.error("Error convert date: " + e.toString());
-				e.printStackTrace();
-			}
-		} else if (StringUtils.isNotBlank(fromDate)
-				&& StringUtils.isNotBlank(toDate)) {
-			String startToDate = fromDate + " 00:00:00";
-			String endToDate = toDate + " 23:59:59";
-			try {
-				criteria.add(Restrictions.and(Restrictions.ge(
-						"patientAdmission.admissionDate",
-						formatter.parse(startToDate)), Restrictions.le(
-						"patientAdmission.admissionDate",
-						formatter.parse(endToDate))));
-			} catch (Exception e) {
-				// TODO: handle exception
-				log.error("Error convert date: " + e.toString());
-				e.printStackTrace();
-			}
-		}
-
-		String prefix = Context.getAdministrationService().getGlobalProperty(
-				"registration.identifier_prefix");
-		if (StringUtils.isNotBlank(patientSearch)) {
-			if (patientSearch.contains("-") && !patientSearch.contains(prefix)) {
-				patientSearch = prefix + patientSearch;
-			}
-			if (patientSearch.contains(prefix)) {
-				criteria.add(Restrictions.eq(
-						"patientAdmission.patientIdentifier", patientSearch));
-			} else {
-				criteria.add(Restrictions.like("patientAdmission.patientName",
-						"%" + patientSearch + "%"));
-			}
-		}
+		addDayRange(criteria, "patientAdmission.admissionDate", fromDate,
+				toDate);
+		addPatientSearch(criteria, "patientAdmission", patientSearch);
 
 		if (CollectionUtils.isNotEmpty(userIds)) {
 			criteria.createAlias("patientAdmission.opdAmittedUser", "user");
@@ -264,77 +267,146 @@ public class HibernateIpdDAO implements IpdDAO {
 		if (StringUtils.isNotBlank(status)) {
 			criteria.add(Restrictions.eq("patientAdmission.status", status));
 		}
-		criteria.addOrder(Order.asc("patientAdmission.admissionDate"));
-		List<IpdPatientAdmission> list = criteria.list();
-		return list;
+		return criteria;
+	}
+
+	/**
+	 * Match the identifier when the search has the identifier prefix or a
+	 * dash, otherwise any part of the name
+	 */
+	private void addPatientSearch(Criteria criteria, String alias,
+			String patientSearch) {
+		if (StringUtils.isBlank(patientSearch)) {
+			return;
+		}
+		String prefix = Context.getAdministrationService().getGlobalProperty(
+				"registration.identifier_prefix");
+		if (patientSearch.contains("-") && !patientSearch.contains(prefix)) {
+			patientSearch = prefix + patientSearch;
+		}
+		if (patientSearch.contains(prefix)) {
+			criteria.add(Restrictions.eq(alias + ".patientIdentifier",
+					patientSearch));
+		} else {
+			criteria.add(Restrictions.like(alias + ".patientName", "%"
+					+ patientSearch + "%"));
+		}
+	}
+
+	/**
+	 * Read the page after a cursor, ordered by admission date and id
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> KeysetPage<T> getPage(Criteria criteria, String alias,
+			boolean descending, AdmissionCursor after, int pageSize,
+			Class<T> type) {
+		String date = alias + ".admissionDate";
+		String id = alias + ".id";
+		if (after != null) {
+			criteria.add(after(date, id, descending, after));
+		}
+		criteria.addOrder(descending ? Order.desc(date) : Order.asc(date));
+		criteria.addOrder(descending ? Order.desc(id) : Order.asc(id));
+		// one more row tells whether there is a next page
+		criteria.setMaxResults(pageSize + 1);
+		List<T> rows = criteria.list();
+		if (rows.size() <= pageSize) {
+			return new KeysetPage<T>(rows, null);
+		}
+		List<T> items = new ArrayList<T>(rows.subList(0, pageSize));
+		T last = items.get(pageSize - 1);
+		ClassMetadata metadata = sessionFactory.getClassMetadata(type);
+		AdmissionCursor next = new AdmissionCursor((Date) metadata
+				.getPropertyValue(last, "admissionDate", EntityMode.POJO),
+				(Integer) metadata.getIdentifier(last, EntityMode.POJO));
+		return new KeysetPage<T>(items, next.toString());
 	}
 
+	/**
+	 * Rows after a cursor in the order of admission date and id. MySQL sorts
+	 * null dates before all others, so admissions without a date come first
+	 * in ascending and last in descending order.
+	 */
+	private Criterion after(String date, String id, boolean descending,
+			AdmissionCursor cursor) {
+		Date admissionDate = cursor.getAdmissionDate();
+		Criterion nextId = descending ? Restrictions.lt(id, cursor.getId())
+				: Restrictions.gt(id, cursor.getId());
+		if (admissionDate == null) {
+			Criterion sameDate = Restrictions.and(Restrictions.isNull(date),
+					nextId);
+			return descending ? sameDate : Restrictions.or(sameDate,
+					Restrictions.isNotNull(date));
+		}
+		Criterion next = Restrictions.or(descending ? Restrictions.lt(date,
+				admissionDate) : Restrictions.gt(date, admissionDate),
+				Restrictions.and(Restrictions.eq(date, admissionDate), nextId));
+		return descending ? Restrictions.or(next, Restrictions.isNull(date))
+				: next;
+	}
+
+	private int count(Criteria criteria) {
+		Number count = (Number) criteria.setProjection(Projections.rowCount())
+				.uniqueResult();
+		return count != null ? count.intValue() : 0;
+	}
+
+	/**
+	 * Restrict a date property to the days from <code>fromDate</code> to
+	 * <code>toDate</code>. A blank bound means the range is only the other
+	 * day.
+	 */
+	private void addDayRange(Criteria criteria, String property,
+			String fromDate, String toDate) {
+		if (StringUtils.isBlank(fromDate) && StringUtils.isBlank(toDate)) {
+			return;
+		}
+		try {
+			DayRange days = DayRange.parse(
+					StringUtils.isBlank(fromDate) ? toDate : fromDate,
+					StringUtils.isBlank(toDate) ? fromDate : toDate);
+			criteria.add(Restrictions.ge(property, days.getStart()));
+			criteria.add(Restrictions.lt(property, days.getEnd()));
+		} catch (IllegalArgumentException e) {
+			log.error("Error convert date: " + e.toString());
+		}
+	}
+
+	@SuppressWarnings("unchecked")
 	public List<IpdPatientAdmitted> searchIpdPatientAdmitted(
 			String patientSearch, ArrayList<Integer> userIds, String fromDate,
 			String toDate, String wardId, String status) throws APIException {
+		return createAdmittedSearch(patientSearch, userIds, fromDate, toDate,
+				wardId, status).list();
+	}
+
+	public KeysetPage<IpdPatientAdmitted> searchIpdPatientAdmittedPage(
+			String patientSearch, ArrayList<Integer> userIds, String fromDate,
+			String toDate, String wardId, String status,
+			AdmissionCursor after, int pageSize) throws DAOException {
+		Criteria criteria = createAdmittedSearch(patientSearch, userIds,
+				fromDate, toDate, wardId, status);
+		return getPage(criteria, "patientAdmitted", false, after, pageSize,
+				IpdPatientAdmitted.class);
+	}
+
+	public int countIpdPatientAdmitted(String patientSearch,
+			ArrayList<Integer> userIds, String fromDate, String toDate,
+			String wardId, String status) throws DAOException {
+		return count(createAdmittedSearch(patientSearch, userIds, fromDate,
+				toDate, wardId, status));
+	}
+
+	private Criteria createAdmittedSearch(String patientSearch,
+			ArrayList<Integer> userIds, String fromDate, String toDate,
+			String wardId, String status) {
 		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(
 				IpdPatientAdmitted.class, "patientAdmitted");
 
-		if (!StringUtils.isBlank(fromDate) && StringUtils.isBlank(toDate)) {
-			String startFromDate = fromDate + " 00:00:00";
-			String endFromDate = fromDate + " 23:59:59";
-			try {
-				criteria.add(Restrictions.and(Restrictions.ge(
-						"patientAdmitted.admissionDate",
-						formatter.parse(startFromDate)), Restrictions.le(
-						"patientAdmitted.admissionDate",
-						formatter.parse(endFromDate))));
-			} catch (Exception e) {
-				// TODO: handle exception
-				log.error("Error convert date: " + e.toString());
-				e.printStackTrace();
-			}
-		} else if (StringUtils.isBlank(fromDate)
-				&& !StringUtils.isBlank(toDate)) {
-			String startToDate = toDate + " 00:00:00";
-			String endToDate = toDate + " 23:59:59";
-			try {
-				criteria.add(Restrictions.and(Restrictions.ge(
-						"patientAdmitted.admissionDate",
-						formatter.parse(startToDate)), Restrictions.le(
-						"patientAdmitted.admissionDate",
-						formatter.parse(endToDate))));
-			} catch (Exception e) {
-				// TODO: handle exception
-				log.error("Error convert date: " + e.toString());
-				e.printStackTrace();
-			}
-		} else if (!StringUtils.isBlank(fromDate)
-				&& !StringUtils.isBlank(toDate)) {
-			String startToDate = fromDate + " 00:00:00";
-			String endToDate = toDate + " 23:59:59";
-			try {
-				criteria.add(Restrictions.and(Restrictions.ge(
-						"patientAdmitted.admissionDate",
-						formatter.parse(startToDate)), Restrictions.le(
-						"patientAdmitted.admissionDate",
-						formatter.parse(endToDate))));
-			} catch (Exception e) {
-				// TODO: handle exception
-				log.error("Error convert date: " + e.toString());
-				e.printStackTrace();
-			}
-		}
+		addDayRange(criteria, "patientAdmitted.admissionDate", fromDate,
+				toDate);
 		// New Requirement load choose ipd page
-		String prefix = Context.getAdministrationService().getGlobalProperty(
-				"registration.identifier_prefix");
-		if (StringUtils.isNotBlank(patientSearch)) {
-			if (patientSearch.contains("-") && !patientSearch.contains(prefix)) {
-				patientSearch = prefix + patientSearch;
-			}
-			if (patientSearch.contains(prefix)) {
-				criteria.add(Restrictions.eq(
-						"patientAdmitted.patientIdentifier", patientSearch));
-			} else {
-				criteria.add(Restrictions.like("patientAdmitted.patientName",
-						"%" + patientSearch + "%"));
-			}
-		}
+		addPatientSearch(criteria, "patientAdmitted", patientSearch);
 
 		if (CollectionUtils.isNotEmpty(userIds)) {
 			criteria.createAlias("patientAdmitted.ipdAdmittedUser", "user");
@@ -347,7 +419,7 @@ public class HibernateIpdDAO implements IpdDAO {
 		if (StringUtils.isNotBlank(status)) {
 			criteria.add(Restrictions.eq("patientAdmitted.status", status));
 		}
-		return criteria.list();
+		return criteria;
 	}
 
 	public void removeIpdPatientAdmission(IpdPatientAdmission admission)
@@ -360,6 +432,28 @@ public class HibernateIpdDAO implements IpdDAO {
 		sessionFactory.getCurrentSession().delete(admitted);
 	}
 
+	@SuppressWarnings("unchecked")
+	public List<IpdPatientAdmitted> getIpdPatientAdmitted(
+			Collection<Integer> ids) throws DAOException {
+		if (CollectionUtils.isEmpty(ids)) {
+			return new ArrayList<IpdPatientAdmitted>();
+		}
+		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(
+				IpdPatientAdmitted.class);
+		criteria.add(Restrictions.in("id", ids));
+		return criteria.list();
+	}
+
+	public int removeIpdPatientAdmitted(Collection<Integer> ids)
+			throws DAOException {
+		if (CollectionUtils.isEmpty(ids)) {
+			return 0;
+		}
+		return sessionFactory.getCurrentSession().createQuery(
+				"delete from IpdPatientAdmitted where id in (:ids)")
+				.setParameterList("ids", ids).executeUpdate();
+	}
+
 	@SuppressWarnings("unchecked")
 	public List<IpdPatientAdmittedLog> listAdmittedLogByPatientId(
 			Integer patientId) throws DAOException {
@@ -413,6 +507,47 @@ public class HibernateIpdDAO implements IpdDAO {
 				patientAdmissionLogId));
 		return criteria.list();
 	}
+
+	@SuppressWarnings("unchecked")
+	public List<VitalReading> getVitalReadings(Integer patientId,
+			Integer patientAdmissionLogId) throws DAOException {
+		List<Object[]> rows = sessionFactory.getCurrentSession().createQuery(
+				"select v.createdOn, v.bloodPressure, v.pulseRate, v.temperature"
+						+ " from IpdPatientVitalStatistics v"
+						+ " where v.ipdPatientAdmissionLog.id = :admissionLogId"
+						+ " and v.patient.personId = :patientId"
+						+ " order by v.createdOn, v.id").setInteger(
+				"admissionLogId", patientAdmissionLogId).setInteger(
+				"patientId", patientId).list();
+		List<VitalReading> readings = new ArrayList<VitalReading>(rows.size());
+		for (Object[] row : rows) {
+			readings.add(VitalReading.parse((Date) row[0], (String) row[1],
+					(String) row[2], (String) row[3]));
+		}
+		return readings;
+	}
+
+	@SuppressWarnings("unchecked")
+	public Map<Integer, VitalReading> getLatestVitalReadings(
+			Collection<Integer> admissionLogIds) throws DAOException {
+		Map<Integer, VitalReading> readings = new HashMap<Integer, VitalReading>();
+		if (CollectionUtils.isEmpty(admissionLogIds)) {
+			return readings;
+		}
+		List<Object[]> rows = sessionFactory.getCurrentSession().createQuery(
+				"select v.ipdPatientAdmissionLog.id, v.createdOn, v.bloodPressure, v.pulseRate, v.temperature"
+						+ " from IpdPatientVitalStatistics v"
+						+ " where v.ipdPatientAdmissionLog.id in (:ids)"
+						+ " and v.createdOn = (select max(l.createdOn) from IpdPatientVitalStatistics l"
+						+ " where l.ipdPatientAdmissionLog = v.ipdPatientAdmissionLog)"
+						+ " order by v.id").setParameterList("ids",
+				admissionLogIds).list();
+		for (Object[] row : rows) {
+			readings.put((Integer) row[0], VitalReading.parse((Date) row[1],
+					(String) row[2], (String) row[3], (String) row[4]));
+		}
+		return readings;
+	}
 	public List<Concept> getDiet() throws DAOException {
 		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(
 				Concept.class, "con");
@@ -428,6 +563,28 @@ public class HibernateIpdDAO implements IpdDAO {
 		criteria.add(Restrictions.eq("bed", bedNo));
 		return criteria.list();
 	}
+
+	@SuppressWarnings("unchecked")
+	public List<Object[]> listAdmittedBeds() throws DAOException {
+		return sessionFactory.getCurrentSession().createQuery(
+				"select a.id, a.admittedWard.conceptId, a.bed, a.status"
+						+ " from IpdPatientAdmitted a").list();
+	}
+
+	@SuppressWarnings("unchecked")
+	public Map<Integer, Integer> getBedStrengths() throws DAOException {
+		List<Object[]> rows = sessionFactory.getCurrentSession().createQuery(
+				"select s.ward.conceptId, s.bedStrength from WardBedStrength s"
+						+ " order by s.wardBedStrengthId").list();
+		Map<Integer, Integer> bedStrengths = new HashMap<Integer, Integer>();
+		for (Object[] row : rows) {
+			// the first row of a ward, as getWardBedStrengthByWardId
+			if (!bedStrengths.containsKey(row[0])) {
+				bedStrengths.put((Integer) row[0], (Integer) row[1]);
+			}
+		}
+		return bedStrengths;
+	}
 	
 	public IpdPatientAdmission getIpdPatientAdmissionByPatient(Patient patient)
 	throws DAOException {
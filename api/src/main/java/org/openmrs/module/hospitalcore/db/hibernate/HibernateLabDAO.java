@@ -24,7 +24,9 @@ package org.openmrs.module.hospitalcore.db.hibernate;
 import java.util.Date;
 import java.util.List;
 
+import org.apache.commons.lang.math.NumberUtils;
 import org.hibernate.Criteria;
+import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.criterion.Restrictions;
 import org.openmrs.Order;
@@ -33,6 +35,7 @@ import org.openmrs.api.db.DAOException;
 import org.openmrs.module.hospitalcore.db.LabDAO;
 import org.openmrs.module.hospitalcore.model.Lab;
 import org.openmrs.module.hospitalcore.model.LabTest;
+import org.openmrs.module.hospitalcore.util.DayRange;
 
 public class HibernateLabDAO implements LabDAO {
 
@@ -132,6 +135,60 @@ public class HibernateLabDAO implements LabDAO {
 	public void deleteLabTest(LabTest labtest) throws DAOException {
 		sessionFactory.getCurrentSession().delete(labtest);
 	}
+	
+	/**
+	 * Creates the sequence of a lab and day or advances it in one statement,
+	 * and keeps the row locked until the accept is committed, so numbers are
+	 * neither shared nor lost. LAST_INSERT_ID is left at the new next value.
+	 */
+	static final String RESERVE_SAMPLE_NUMBERS = "INSERT INTO simplelabentry_sample_sequence (lab_id, sample_date, next_val)"
+			+ " VALUES (:labId, :day, LAST_INSERT_ID(:lastNumber + 1 + :count))"
+			+ " ON DUPLICATE KEY UPDATE next_val = LAST_INSERT_ID(next_val + :count)";
+	
+	static final String COUNT_SAMPLE_SEQUENCES = "SELECT COUNT(*) FROM simplelabentry_sample_sequence"
+			+ " WHERE lab_id = :labId AND sample_date = :day";
+	
+	public int reserveSampleNumbers(Lab lab, Date date, int count) throws DAOException {
+		Session session = sessionFactory.getCurrentSession();
+		DayRange day = DayRange.of(date);
+		// the numbers given out before the lab had a sequence for the day are
+		// only looked up for the first accept, a plain read which locks nothing
+		Number sequences = (Number) session.createSQLQuery(COUNT_SAMPLE_SEQUENCES)
+				.setInteger("labId", lab.getLabId())
+				.setDate("day", day.getStart())
+				.uniqueResult();
+		int lastNumber = sequences.intValue() > 0 ? 0 : getLastSampleNumber(session, lab, day);
+		session.createSQLQuery(RESERVE_SAMPLE_NUMBERS)
+				.setInteger("labId", lab.getLabId())
+				.setDate("day", day.getStart())
+				.setInteger("lastNumber", lastNumber)
+				.setInteger("count", count)
+				.executeUpdate();
+		Number limit = (Number) session.createSQLQuery("SELECT LAST_INSERT_ID()").uniqueResult();
+		return limit.intValue() - count;
+	}
+	
+	/**
+	 * The highest sample number given out before the lab had a sequence for
+	 * the day
+	 */
+	@SuppressWarnings("unchecked")
+	private int getLastSampleNumber(Session session, Lab lab, DayRange day) {
+		List<String> sampleNumbers = session.createQuery("select t.sampleNumber from LabTest t"
+				+ " where t.lab = :lab and t.acceptDate >= :start and t.acceptDate < :end")
+				.setEntity("lab", lab)
+				.setDate("start", day.getStart())
+				.setDate("end", day.getEnd())
+				.list();
+		int last = 0;
+		for (String sampleNumber : sampleNumbers) {
+			if (sampleNumber != null) {
+				last = Math.max(last, NumberUtils.toInt(
+						sampleNumber.substring(sampleNumber.lastIndexOf('-') + 1)));
+			}
+		}
+		return last;
+	}
 
 	
 }
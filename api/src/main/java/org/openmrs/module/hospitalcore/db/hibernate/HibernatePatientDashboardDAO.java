@@ -20,10 +20,7 @@
 
 package org.openmrs.module.hospitalcore.db.hibernate;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
 
@@ -55,9 +52,9 @@ import org.openmrs.module.hospitalcore.model.InventoryDrug;
 import org.openmrs.module.hospitalcore.model.OpdDrugOrder;
 import org.openmrs.module.hospitalcore.model.OpdPatientQueueLog;
 import org.openmrs.module.hospitalcore.model.OpdTestOrder;
+import org.openmrs.module.hospitalcore.util.DayRange;
 
 public class HibernatePatientDashboardDAO implements PatientDashboardDAO {
-	SimpleDateFormat formatter = new SimpleDateFormat("dd/MM/yyyy HH:mm:ss");
 	protected final Log log = LogFactory.getLog(getClass());
 
 	/**
@@ -99,23 +96,13 @@ public class HibernatePatientDashboardDAO implements PatientDashboardDAO {
 			if (orderStartDate != null)
 				hql += " and ";
 		}
+		DayRange day = null;
 		if (orderStartDate != null) {
-			SimpleDateFormat sdf = Context.getDateFormat();
-
-			// Date orderdate = orderStartDate;
-			// Calendar cal = Calendar.getInstance();
-			// cal.setTime(orderdate);
-			// System.out.println("orderdate = " + cal.getTime());
-			// cal.roll( Calendar.DATE, +1 );
-			String startDate = sdf.format(orderStartDate) + " 00:00:00";
-			String endDate = sdf.format(orderStartDate) + " 23:59:59";
-			hql += " ((o.startDate is null and o.encounter.encounterDatetime BETWEEN '"
-					+ startDate
-					+ "' AND '"
-					+ endDate
-					+ "' ) OR (    o.startDate is not null and  o.startDate  BETWEEN '"
-					+ startDate + "' AND '" + endDate + "'  )  )";
-
+			day = DayRange.of(orderStartDate);
+			hql += " ((o.startDate is null and o.encounter.encounterDatetime >= :dayStart"
+					+ " and o.encounter.encounterDatetime < :dayEnd)"
+					+ " OR (o.startDate is not null and o.startDate >= :dayStart"
+					+ " and o.startDate < :dayEnd))";
 		}
 
 		hql += " order by o.startDate asc";
@@ -130,6 +117,10 @@ public class HibernatePatientDashboardDAO implements PatientDashboardDAO {
 		}
 		if (location != null)
 			query.setParameter("location", location);
+		if (day != null) {
+			query.setTimestamp("dayStart", day.getStart());
+			query.setTimestamp("dayEnd", day.getEnd());
+		}
 
 		return (List<Order>) query.list();
 	}
@@ -159,28 +150,19 @@ public class HibernatePatientDashboardDAO implements PatientDashboardDAO {
 			crit.add(Expression.eq("location", location));
 		}
 		if (StringUtils.isNotBlank(date)) {
-			String startDate = "";
-			String endDate = "";
-			if ("recent".equalsIgnoreCase(date)) {
-				SimpleDateFormat formatter = Context.getDateFormat();
-				Calendar cal = Calendar.getInstance();
-				String today = Context.getDateFormat().format(cal.getTime());
-				cal.set(Calendar.DATE, cal.get(Calendar.DATE) - 1);
-				date = formatter.format(cal.getTime());
-				startDate = date + " 00:00:00";
-				endDate = today + " 23:59:59";
-			} else {
-				startDate = date + " 00:00:00";
-				endDate = date + " 23:59:59";
-			}
 			try {
-				crit.add(Restrictions.and(
-						Restrictions.ge("encounterDatetime",
-								formatter.parseObject(startDate)),
-						Restrictions.le("encounterDatetime",
-								formatter.parseObject(endDate))));
-			} catch (ParseException e) {
-				e.printStackTrace();
+				DayRange days;
+				if ("recent".equalsIgnoreCase(date)) {
+					DayRange today = DayRange.today();
+					days = DayRange.between(today.shift(-1).getStart(),
+							today.getStart());
+				} else {
+					days = DayRange.parse(date);
+				}
+				crit.add(Restrictions.ge("encounterDatetime", days.getStart()));
+				crit.add(Restrictions.lt("encounterDatetime", days.getEnd()));
+			} catch (IllegalArgumentException e) {
+				log.error("Error convert date: " + e.toString());
 			}
 		}
 		crit.add(Expression.eq("voided", false));
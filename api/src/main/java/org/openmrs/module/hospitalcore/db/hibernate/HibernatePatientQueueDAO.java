@@ -21,15 +21,19 @@
 
 package org.openmrs.module.hospitalcore.db.hibernate;
 
-import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 //New Requirement "Editable Dashboard" //
 import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang.StringUtils;
 import org.hibernate.Criteria;
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Projections;
@@ -45,12 +49,10 @@ import org.openmrs.api.db.DAOException;
 import org.openmrs.module.hospitalcore.db.PatientQueueDAO;
 import org.openmrs.module.hospitalcore.model.OpdPatientQueue;
 import org.openmrs.module.hospitalcore.model.OpdPatientQueueLog;
+import org.openmrs.module.hospitalcore.util.DayRange;
+import org.openmrs.module.hospitalcore.util.OpdQueueEntry;
 
 public class HibernatePatientQueueDAO implements PatientQueueDAO {
-	SimpleDateFormat formatter = new SimpleDateFormat("dd/MM/yyyy HH:mm:ss");
-	SimpleDateFormat formatterExt = new SimpleDateFormat("dd/MM/yyyy");
-	//New Requirement "Editable Dashboard"//
-	SimpleDateFormat formatter1 = new SimpleDateFormat("dd-MM-yyyy HH:mm:ss");
 	/**
 	 * Hibernate session factory
 	 */
@@ -87,18 +89,9 @@ public class HibernatePatientQueueDAO implements PatientQueueDAO {
 				.createAlias("queue.opdConcept", "opdConcept");
 		criteria.add(Restrictions.eq("queue.patientIdentifier", patientIdentifier));
 		criteria.add(Restrictions.eq("opdConcept.conceptId", opdConceptId));
-		String date = formatterExt.format(new Date());
-		String startFromDate = date + " 00:00:00";
-		String endFromDate = date + " 23:59:59";
-		try {
-			criteria.add(Restrictions.and(Restrictions.ge(
-					"queue.createdOn", formatter.parse(startFromDate)), Restrictions.le(
-					"queue.createdOn", formatter.parse(endFromDate))));
-		} catch (Exception e) {
-			// TODO: handle exception
-			System.out.println("Error convert date: "+ e.toString());
-			e.printStackTrace();
-		}
+		DayRange today = DayRange.today();
+		criteria.add(Restrictions.ge("queue.createdOn", today.getStart()));
+		criteria.add(Restrictions.lt("queue.createdOn", today.getEnd()));
 		criteria.addOrder(Order.desc("queue.createdOn"));
 		
 		List<OpdPatientQueue> list = criteria.list();
@@ -124,18 +117,9 @@ public class HibernatePatientQueueDAO implements PatientQueueDAO {
 		}
 		//only get data if that's current date
 		//we need this because maybe cron-job not work normal
-		String date = formatterExt.format(new Date());
-		String startFromDate = date + " 00:00:00";
-		String endFromDate = date + " 23:59:59";
-		try {
-			criteria.add(Restrictions.and(Restrictions.ge(
-					"opdPatientQueue.createdOn", formatter.parse(startFromDate)), Restrictions.le(
-					"opdPatientQueue.createdOn", formatter.parse(endFromDate))));
-		} catch (Exception e) {
-			// TODO: handle exception
-			System.out.println("Error convert date: "+ e.toString());
-			e.printStackTrace();
-		}
+		DayRange today = DayRange.today();
+		criteria.add(Restrictions.ge("opdPatientQueue.createdOn", today.getStart()));
+		criteria.add(Restrictions.lt("opdPatientQueue.createdOn", today.getEnd()));
 		criteria.addOrder(Order.asc("opdPatientQueue.createdOn"));
 		if(max > 0){
 			criteria.setFirstResult(min).setMaxResults(max);
@@ -159,22 +143,48 @@ public class HibernatePatientQueueDAO implements PatientQueueDAO {
 		}
 		//only get data if that's current date
 		//we need this because maybe cron-job not work normal
-		String date = formatterExt.format(new Date());
-		String startFromDate = date + " 00:00:00";
-		String endFromDate = date + " 23:59:59";
-		try {
-			criteria.add(Restrictions.and(Restrictions.ge(
-					"opdPatientQueue.createdOn", formatter.parse(startFromDate)), Restrictions.le(
-					"opdPatientQueue.createdOn", formatter.parse(endFromDate))));
-		} catch (Exception e) {
-			// TODO: handle exception
-			System.out.println("Error convert date: "+ e.toString());
-			e.printStackTrace();
-		}
+		DayRange today = DayRange.today();
+		criteria.add(Restrictions.ge("opdPatientQueue.createdOn", today.getStart()));
+		criteria.add(Restrictions.lt("opdPatientQueue.createdOn", today.getEnd()));
 		Number rs =  (Number) criteria.setProjection( Projections.rowCount() ).uniqueResult();
 		return rs != null ? rs.intValue() : 0;
 	}
 	
+	@SuppressWarnings("unchecked")
+	public List<OpdQueueEntry> listOpdQueueEntries(Date from, Date to) throws DAOException {
+		String hql = "select q.id, q.opdConcept.conceptId, q.createdOn, q.patientIdentifier, q.patientName, q.status"
+				+ " from OpdPatientQueue q where q.createdOn >= :from and q.createdOn < :to";
+		List<Object[]> rows = sessionFactory.getCurrentSession().createQuery(hql)
+				.setTimestamp("from", from).setTimestamp("to", to).list();
+		List<OpdQueueEntry> entries = new ArrayList<OpdQueueEntry>(rows.size());
+		for (Object[] row : rows) {
+			entries.add(new OpdQueueEntry((Integer) row[0], (Integer) row[1], (Date) row[2],
+					(String) row[3], (String) row[4], (String) row[5]));
+		}
+		return entries;
+	}
+	
+	@SuppressWarnings("unchecked")
+	public List<OpdPatientQueue> getOpdPatientQueues(List<Integer> ids) throws DAOException {
+		if (CollectionUtils.isEmpty(ids)) {
+			return new ArrayList<OpdPatientQueue>();
+		}
+		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(OpdPatientQueue.class);
+		criteria.add(Restrictions.in("id", ids));
+		Map<Integer, OpdPatientQueue> loaded = new HashMap<Integer, OpdPatientQueue>();
+		for (OpdPatientQueue opdPatientQueue : (List<OpdPatientQueue>) criteria.list()) {
+			loaded.put(opdPatientQueue.getId(), opdPatientQueue);
+		}
+		List<OpdPatientQueue> list = new ArrayList<OpdPatientQueue>(ids.size());
+		for (Integer id : ids) {
+			OpdPatientQueue opdPatientQueue = loaded.get(id);
+			if (opdPatientQueue != null) {
+				list.add(opdPatientQueue);
+			}
+		}
+		return list;
+	}
+	
 	//patient queue log
 	public OpdPatientQueueLog saveOpdPatientQueueLog(OpdPatientQueueLog opdPatientQueueLog) throws DAOException {
 		return (OpdPatientQueueLog) sessionFactory.getCurrentSession().merge(opdPatientQueueLog);
@@ -227,18 +237,32 @@ public class HibernatePatientQueueDAO implements PatientQueueDAO {
 	public List<OpdPatientQueue> getAllPatientInQueue() throws DAOException {
 		//for sure everything always get less than one date
 		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(OpdPatientQueue.class,"opdPatientQueue");
-		String date = formatterExt.format(new Date());
-		String startFromDate = date + " 00:00:00";
-		try {
-			criteria.add(Restrictions.lt(
-					"opdPatientQueue.createdOn", formatter.parse(startFromDate)));
-		} catch (Exception e) {
-			// TODO: handle exception
-			System.out.println("Error convert date: "+ e.toString());
-			e.printStackTrace();
-		}
+		criteria.add(Restrictions.lt("opdPatientQueue.createdOn",
+				DayRange.today().getStart()));
 		return criteria.list();
 	}
+	
+	@SuppressWarnings("unchecked")
+	public int moveOpdPatientQueueToLog(Date before, int batchSize) throws DAOException {
+		Session session = sessionFactory.getCurrentSession();
+		List<Integer> ids = session
+				.createSQLQuery("SELECT id FROM opd_patient_queue WHERE created_on < :before")
+				.addScalar("id", Hibernate.INTEGER).setTimestamp("before", before)
+				.setMaxResults(batchSize).list();
+		if (ids.isEmpty()) {
+			return 0;
+		}
+		// same columns copyTo fills, the encounter is set later by the OPD
+		session.createSQLQuery("INSERT INTO opd_patient_queue_log"
+				+ " (user, patient_id, referral_concept_id, opd_concept_id, created_on, opd_concept_name, patient_name,"
+				+ " referral_concept_name, sex, status, patient_identifier, birth_date, encounter_id)"
+				+ " SELECT user, patient_id, referral_concept_id, opd_concept_id, created_on, opd_concept_name, patient_name,"
+				+ " referral_concept_name, sex, status, patient_identifier, birth_date, NULL"
+				+ " FROM opd_patient_queue WHERE id IN (:ids) ORDER BY id")
+				.setParameterList("ids", ids).executeUpdate();
+		return session.createSQLQuery("DELETE FROM opd_patient_queue WHERE id IN (:ids)")
+				.setParameterList("ids", ids).executeUpdate();
+	}
 
 		// TODO Auto-generated method stub
 	
@@ -246,25 +270,10 @@ public class HibernatePatientQueueDAO implements PatientQueueDAO {
 	public List<Obs> getAllDiagnosis(Integer personId) 
 			throws DAOException {
 				 Criteria criteria = sessionFactory.getCurrentSession().createCriteria(Obs.class,"obs");
-				 String toDdate = formatter1.format(new Date());
-				
-				 Date date1 = new Date(); 
-				
-				 Date oldDate = new Date(date1.getTime() - TimeUnit.HOURS.toMillis(24));
-				 String fromDate = formatter1.format(oldDate);
-				
-				 
-				try {
-					criteria.add(Restrictions.lt(
-							"obs.obsDatetime", formatter1.parse(toDdate)));
-					criteria.add(Restrictions.gt(
-							"obs.obsDatetime", formatter1.parse(fromDate)));
-					
-				} catch (Exception e) {
-					// TODO: handle exception
-					System.out.println("Error convert date: "+ e.toString());
-					e.printStackTrace();
-				}
+				 Date now = new Date();
+				 Date oldDate = new Date(now.getTime() - TimeUnit.HOURS.toMillis(24));
+				 criteria.add(Restrictions.lt("obs.obsDatetime", now));
+				 criteria.add(Restrictions.gt("obs.obsDatetime", oldDate));
 				
 				criteria.add(Restrictions.eq(
 						"obs.personId",personId));
@@ -23,7 +23,6 @@
 
 package org.openmrs.module.hospitalcore.db.hibernate;
 
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -39,13 +38,10 @@ import org.openmrs.Patient;
 import org.openmrs.api.db.DAOException;
 import org.openmrs.module.hospitalcore.db.RadiologyCommonDAO;
 import org.openmrs.module.hospitalcore.model.RadiologyTest;
+import org.openmrs.module.hospitalcore.util.DayRange;
 
 public class HibernateRadiologyCommonDAO implements RadiologyCommonDAO {
 
-	SimpleDateFormat formatter = new SimpleDateFormat("dd/MM/yyyy HH:mm:ss");
-
-	SimpleDateFormat formatterExt = new SimpleDateFormat("dd/MM/yyyy");
-
 	protected final Log log = LogFactory.getLog(getClass());
 
 	/**
@@ -91,19 +87,12 @@ public class HibernateRadiologyCommonDAO implements RadiologyCommonDAO {
 				RadiologyTest.class, "radiologytest");
 		criteria.add(Restrictions.eq("patient", patient));
 		if(!date.equals("all")){
-		String dat = date;
-		String startFromDate = dat + " 00:00:00";
-		String endFromDate = dat + " 23:59:59";
 		try {
-			criteria.add(Restrictions.and(
-					Restrictions.ge("radiologytest.date",
-							formatter.parse(startFromDate)),
-					Restrictions.le("radiologytest.date",
-							formatter.parse(endFromDate))));
-		} catch (Exception e) {
-			// TODO: handle exception
-			System.out.println("Error convert date: " + e.toString());
-			e.printStackTrace();
+			DayRange day = DayRange.parse(date);
+			criteria.add(Restrictions.ge("radiologytest.date", day.getStart()));
+			criteria.add(Restrictions.lt("radiologytest.date", day.getEnd()));
+		} catch (IllegalArgumentException e) {
+			log.error("Error convert date: " + e.toString());
 		}
 		}
 		criteria.add(Restrictions.eq("status", "completed"));
@@ -116,19 +105,12 @@ public class HibernateRadiologyCommonDAO implements RadiologyCommonDAO {
 		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(
 				RadiologyTest.class, "radiologytest");
 		criteria.add(Restrictions.eq("patient", patient));
-		String dat = date;
-		String startFromDate = dat + " 00:00:00";
-		String endFromDate = dat + " 23:59:59";
 		try {
-			criteria.add(Restrictions.and(
-					Restrictions.ge("radiologytest.date",
-							formatter.parse(startFromDate)),
-					Restrictions.le("radiologytest.date",
-							formatter.parse(endFromDate))));
-		} catch (Exception e) {
-			// TODO: handle exception
-			System.out.println("Error convert date: " + e.toString());
-			e.printStackTrace();
+			DayRange day = DayRange.parse(date);
+			criteria.add(Restrictions.ge("radiologytest.date", day.getStart()));
+			criteria.add(Restrictions.lt("radiologytest.date", day.getEnd()));
+		} catch (IllegalArgumentException e) {
+			log.error("Error convert date: " + e.toString());
 		}
 		criteria.add(Restrictions.eq("status", "completed"));
 		Collection<ConceptAnswer> conanss = concept.getAnswers();
@@ -147,19 +129,12 @@ public class HibernateRadiologyCommonDAO implements RadiologyCommonDAO {
 				RadiologyTest.class, "radiologytest");
 		criteria.add(Restrictions.eq("patient", patient));
 		criteria.add(Restrictions.eq("concept", concept));
-		String dat = date;
-		String startFromDate = dat + " 00:00:00";
-		String endFromDate = dat + " 23:59:59";
 		try {
-			criteria.add(Restrictions.and(
-					Restrictions.ge("radiologytest.date",
-							formatter.parse(startFromDate)),
-					Restrictions.le("radiologytest.date",
-							formatter.parse(endFromDate))));
-		} catch (Exception e) {
-			// TODO: handle exception
-			System.out.println("Error convert date: " + e.toString());
-			e.printStackTrace();
+			DayRange day = DayRange.parse(date);
+			criteria.add(Restrictions.ge("radiologytest.date", day.getStart()));
+			criteria.add(Restrictions.lt("radiologytest.date", day.getEnd()));
+		} catch (IllegalArgumentException e) {
+			log.error("Error convert date: " + e.toString());
 		}
 		criteria.add(Restrictions.eq("status", "completed"));
 		//ghanshyam,date:25-april-2013 Feedback #1302 Add Radiology record of patient in patientdashboard(note:added below sorting criteria)
@@ -21,17 +21,22 @@
 package org.openmrs.module.hospitalcore.db.hibernate;
 
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.commons.collections.CollectionUtils;
+import org.apache.commons.lang.StringUtils;
 import org.hibernate.Criteria;
+import org.hibernate.EntityMode;
+import org.hibernate.Query;
 import org.hibernate.SessionFactory;
-import org.hibernate.criterion.Expression;
-import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.metadata.ClassMetadata;
 import org.openmrs.Concept;
 import org.openmrs.Encounter;
 import org.openmrs.Order;
@@ -45,6 +50,8 @@ import org.openmrs.module.hospitalcore.form.RadiologyForm;
 import org.openmrs.module.hospitalcore.model.RadiologyDepartment;
 import org.openmrs.module.hospitalcore.model.RadiologyTest;
 import org.openmrs.module.hospitalcore.template.RadiologyTemplate;
+import org.openmrs.module.hospitalcore.util.DayRange;
+import org.openmrs.module.hospitalcore.util.PatientSearchTokenizer;
 import org.openmrs.module.hospitalcore.util.RadiologyConstants;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -120,53 +127,24 @@ public class HibernateRadiologyDAO implements RadiologyDAO {
 	// ORDER
 	//
 	public Integer countOrders(Date orderStartDate, OrderType orderType,
-			Set<Concept> tests, List<Patient> patients) throws ParseException {
-		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(
-				Order.class);
-		SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
-		String startDate = sdf.format(orderStartDate) + " 00:00:00";
-		String endDate = sdf.format(orderStartDate) + " 23:59:59";
-		criteria.add(Restrictions.eq("orderType", orderType));
-		SimpleDateFormat dateTimeFormatter = new SimpleDateFormat(
-				"yyyy-MM-dd hh:mm:ss");
-		criteria.add(Expression.between("startDate",
-				dateTimeFormatter.parse(startDate),
-				dateTimeFormatter.parse(endDate)));
-		criteria.add(Restrictions.eq("discontinued", false));
-		criteria.add(Restrictions.in("concept", tests));
-		if (!CollectionUtils.isEmpty(patients))
-			criteria.add(Restrictions.in("patient", patients));
-		Number rs = (Number) criteria.setProjection(Projections.rowCount())
-				.uniqueResult();
-		return rs != null ? rs.intValue() : 0;
+			Set<Concept> tests, String phrase) throws ParseException {
+		if (CollectionUtils.isEmpty(tests))
+			return 0;
+		return countWorklist(createWorklistQuery("SELECT COUNT(*) ", "",
+				Worklist.ORDERS, orderStartDate, orderType.getOrderTypeId(),
+				null, getConceptIds(tests), phrase));
 	}
 
-	@SuppressWarnings("unchecked")
 	public List<Order> getOrders(Date orderStartDate, OrderType orderType,
-			Set<Concept> tests, List<Patient> patients, int page, int pageSize)
+			Set<Concept> tests, String phrase, int page, int pageSize)
 			throws ParseException {
-		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(
-				Order.class);
-		SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
-		String startDate = sdf.format(orderStartDate) + " 00:00:00";
-		String endDate = sdf.format(orderStartDate) + " 23:59:59";
-		criteria.add(Restrictions.eq("orderType", orderType));
-		SimpleDateFormat dateTimeFormatter = new SimpleDateFormat(
-				"yyyy-MM-dd hh:mm:ss");
-		criteria.add(Expression.between("startDate",
-				dateTimeFormatter.parse(startDate),
-				dateTimeFormatter.parse(endDate)));
-		criteria.add(Restrictions.eq("discontinued", false));
-		criteria.add(Restrictions.in("concept", tests));
-		//ghanshyam-kesav 16-08-2012 Bug #323 [BILLING] When a bill with a lab\radiology order is edited the order is re-sent
-		criteria.add(Restrictions.isNull("dateVoided"));
-		if (!CollectionUtils.isEmpty(patients))
-			criteria.add(Restrictions.in("patient", patients));
-		criteria.addOrder(org.hibernate.criterion.Order.asc("startDate"));
-		int firstResult = (page - 1) * pageSize;
-		criteria.setFirstResult(firstResult);
-		criteria.setMaxResults(pageSize);
-		return criteria.list();
+		if (CollectionUtils.isEmpty(tests))
+			return new ArrayList<Order>();
+		Query query = createWorklistQuery("SELECT o.order_id ",
+				"ORDER BY o.start_date ASC, o.order_id ASC", Worklist.ORDERS,
+				orderStartDate, orderType.getOrderTypeId(), null,
+				getConceptIds(tests), phrase);
+		return loadWorklistPage(Order.class, "orderId", query, page, pageSize);
 	}
 
 	//
@@ -202,139 +180,90 @@ public class HibernateRadiologyDAO implements RadiologyDAO {
 	}
 
 	@SuppressWarnings("unchecked")
-	public List<RadiologyTest> getRadiologyTestsByDateAndStatus(Date date,
-			String status) throws ParseException {
+	public List<RadiologyTest> getRadiologyTestsByOrders(
+			Collection<Order> orders) {
+		if (CollectionUtils.isEmpty(orders))
+			return new ArrayList<RadiologyTest>();
 		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(
 				RadiologyTest.class);
-		SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
-		String startDate = sdf.format(date) + " 00:00:00";
-		String endDate = sdf.format(date) + " 23:59:59";
-
-		SimpleDateFormat dateTimeFormatter = new SimpleDateFormat(
-				"yyyy-MM-dd hh:mm:ss");
-		criteria.add(Expression.between("date",
-				dateTimeFormatter.parse(startDate),
-				dateTimeFormatter.parse(endDate)));
-		criteria.add(Restrictions.eq("status", status));
-
+		criteria.add(Restrictions.in("order", orders));
 		return criteria.list();
 	}
 
 	@SuppressWarnings("unchecked")
-	public List<RadiologyTest> getRadiologyTests(Date date, String status,
-			Set<Concept> concepts, List<Patient> patients, int page,
-			int pageSize) throws ParseException {
+	public List<RadiologyTest> getRadiologyTestsByDateAndStatus(Date date,
+			String status) throws ParseException {
 		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(
 				RadiologyTest.class);
-		SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
-		String startDate = sdf.format(date) + " 00:00:00";
-		String endDate = sdf.format(date) + " 23:59:59";
-
-		SimpleDateFormat dateTimeFormatter = new SimpleDateFormat(
-				"yyyy-MM-dd hh:mm:ss");
-		criteria.add(Expression.between("date",
-				dateTimeFormatter.parse(startDate),
-				dateTimeFormatter.parse(endDate)));
+		DayRange day = DayRange.of(date);
+		criteria.add(Restrictions.ge("date", day.getStart()));
+		criteria.add(Restrictions.lt("date", day.getEnd()));
 		criteria.add(Restrictions.eq("status", status));
-		criteria.add(Restrictions.in("concept", concepts));
-		if (!CollectionUtils.isEmpty(patients))
-			criteria.add(Restrictions.in("patient", patients));
-		int firstResult = (page - 1) * pageSize;
-		criteria.setFirstResult(firstResult);
-		criteria.setMaxResults(pageSize);
+
 		return criteria.list();
 	}
 
-	public Integer countRadiologyTests(Date date, String status,
-			Set<Concept> concepts, List<Patient> patients)
+	public List<RadiologyTest> getRadiologyTests(Date date, String status,
+			Set<Concept> concepts, String phrase, int page, int pageSize)
 			throws ParseException {
-		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(
-				RadiologyTest.class);
-		SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
-		String startDate = sdf.format(date) + " 00:00:00";
-		String endDate = sdf.format(date) + " 23:59:59";
-
-		SimpleDateFormat dateTimeFormatter = new SimpleDateFormat(
-				"yyyy-MM-dd hh:mm:ss");
-		criteria.add(Expression.between("date",
-				dateTimeFormatter.parse(startDate),
-				dateTimeFormatter.parse(endDate)));
-		criteria.add(Restrictions.eq("status", status));
-		criteria.add(Restrictions.in("concept", concepts));
-		if (!CollectionUtils.isEmpty(patients))
-			criteria.add(Restrictions.in("patient", patients));
-		Number rs = (Number) criteria.setProjection(Projections.rowCount())
-				.uniqueResult();
-		return rs != null ? rs.intValue() : 0;
+		if (CollectionUtils.isEmpty(concepts))
+			return new ArrayList<RadiologyTest>();
+		Query query = createWorklistQuery("SELECT t.test_id ",
+				"ORDER BY t.date ASC, t.test_id ASC", Worklist.TESTS, date,
+				null, status, getConceptIds(concepts), phrase);
+		return loadWorklistPage(RadiologyTest.class, "id", query, page,
+				pageSize);
 	}
 
-	@SuppressWarnings("unchecked")
-	public List<RadiologyTest> getRadiologyTestsByDate(Date date)
-			throws ParseException {
-		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(
-				RadiologyTest.class);
-		SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
-		String startDate = sdf.format(date) + " 00:00:00";
-		String endDate = sdf.format(date) + " 23:59:59";
-
-		SimpleDateFormat dateTimeFormatter = new SimpleDateFormat(
-				"yyyy-MM-dd hh:mm:ss");
-		criteria.add(Expression.between("date",
-				dateTimeFormatter.parse(startDate),
-				dateTimeFormatter.parse(endDate)));
-
-		return criteria.list();
+	public Integer countRadiologyTests(Date date, String status,
+			Set<Concept> concepts, String phrase) throws ParseException {
+		if (CollectionUtils.isEmpty(concepts))
+			return 0;
+		return countWorklist(createWorklistQuery("SELECT COUNT(*) ", "",
+				Worklist.TESTS, date, null, status, getConceptIds(concepts),
+				phrase));
 	}
 
-	@SuppressWarnings("unchecked")
-	public List<RadiologyTest> getRadiologyTestsByDiscontinuedDate(Date date,
-			Set<Concept> concepts, List<Patient> patients, int page,
+	public List<RadiologyTest> getRadiologyTestsByDate(Date date,
+			String phrase, Collection<Integer> conceptIds, int page,
 			int pageSize) throws ParseException {
-		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(
-				RadiologyTest.class);
-		Criteria orderCriteria = criteria.createCriteria("order");
-		SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
-		String startDate = sdf.format(date) + " 00:00:00";
-		String endDate = sdf.format(date) + " 23:59:59";
-
-		SimpleDateFormat dateTimeFormatter = new SimpleDateFormat(
-				"yyyy-MM-dd hh:mm:ss");
-		orderCriteria.add(Expression.between("discontinuedDate",
-				dateTimeFormatter.parse(startDate),
-				dateTimeFormatter.parse(endDate)));
-
-		criteria.add(Restrictions.in("concept", concepts));
-		if (!CollectionUtils.isEmpty(patients))
-			criteria.add(Restrictions.in("patient", patients));
-		int firstResult = (page - 1) * pageSize;
-		criteria.setFirstResult(firstResult);
-		criteria.setMaxResults(pageSize);
+		if (conceptIds != null && conceptIds.isEmpty())
+			return new ArrayList<RadiologyTest>();
+		Query query = createWorklistQuery("SELECT t.test_id ",
+				"ORDER BY t.date ASC, t.test_id ASC", Worklist.TESTS, date,
+				null, null, conceptIds, phrase);
+		return loadWorklistPage(RadiologyTest.class, "id", query, page,
+				pageSize);
+	}
 
-		return criteria.list();
+	public Integer countRadiologyTestsByDate(Date date, String phrase,
+			Collection<Integer> conceptIds) throws ParseException {
+		if (conceptIds != null && conceptIds.isEmpty())
+			return 0;
+		return countWorklist(createWorklistQuery("SELECT COUNT(*) ", "",
+				Worklist.TESTS, date, null, null, conceptIds, phrase));
 	}
 
-	public Integer countRadiologyTestsByDiscontinuedDate(Date date,
-			Set<Concept> concepts, List<Patient> patients)
+	public List<RadiologyTest> getRadiologyTestsByDiscontinuedDate(Date date,
+			Set<Concept> concepts, String phrase, int page, int pageSize)
 			throws ParseException {
-		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(
-				RadiologyTest.class);
-		Criteria orderCriteria = criteria.createCriteria("order");
-		SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
-		String startDate = sdf.format(date) + " 00:00:00";
-		String endDate = sdf.format(date) + " 23:59:59";
-
-		SimpleDateFormat dateTimeFormatter = new SimpleDateFormat(
-				"yyyy-MM-dd hh:mm:ss");
-		orderCriteria.add(Expression.between("discontinuedDate",
-				dateTimeFormatter.parse(startDate),
-				dateTimeFormatter.parse(endDate)));
+		if (CollectionUtils.isEmpty(concepts))
+			return new ArrayList<RadiologyTest>();
+		Query query = createWorklistQuery("SELECT t.test_id ",
+				"ORDER BY o.discontinued_date ASC, t.test_id ASC",
+				Worklist.COMPLETED_TESTS, date, null, null,
+				getConceptIds(concepts), phrase);
+		return loadWorklistPage(RadiologyTest.class, "id", query, page,
+				pageSize);
+	}
 
-		criteria.add(Restrictions.in("concept", concepts));
-		if (!CollectionUtils.isEmpty(patients))
-			criteria.add(Restrictions.in("patient", patients));
-		Number rs = (Number) criteria.setProjection(Projections.rowCount())
-				.uniqueResult();
-		return rs != null ? rs.intValue() : 0;
+	public Integer countRadiologyTestsByDiscontinuedDate(Date date,
+			Set<Concept> concepts, String phrase) throws ParseException {
+		if (CollectionUtils.isEmpty(concepts))
+			return 0;
+		return countWorklist(createWorklistQuery("SELECT COUNT(*) ", "",
+				Worklist.COMPLETED_TESTS, date, null, null,
+				getConceptIds(concepts), phrase));
 	}
 
 	@SuppressWarnings("unchecked")
@@ -343,19 +272,148 @@ public class HibernateRadiologyDAO implements RadiologyDAO {
 		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(
 				RadiologyTest.class);
 		Criteria orderCriteria = criteria.createCriteria("order");
-		SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
-		String startDate = sdf.format(date) + " 00:00:00";
-		String endDate = sdf.format(date) + " 23:59:59";
-
-		SimpleDateFormat dateTimeFormatter = new SimpleDateFormat(
-				"yyyy-MM-dd hh:mm:ss");
-		orderCriteria.add(Expression.between("discontinuedDate",
-				dateTimeFormatter.parse(startDate),
-				dateTimeFormatter.parse(endDate)));
+		DayRange day = DayRange.of(date);
+		orderCriteria.add(Restrictions.ge("discontinuedDate", day.getStart()));
+		orderCriteria.add(Restrictions.lt("discontinuedDate", day.getEnd()));
 		criteria.add(Restrictions.eq("patient", patient));
 		return criteria.list();
 	}
 
+	//
+	// WORKLIST
+	//
+	/**
+	 * The lists a radiology department works through. Each one is driven by
+	 * a single day on an indexed date column.
+	 */
+	private enum Worklist {
+		/** not yet accepted orders, by start date */
+		ORDERS,
+		/** radiology tests, by the date they were accepted */
+		TESTS,
+		/** radiology tests, by the date their order was completed */
+		COMPLETED_TESTS
+	}
+
+	/**
+	 * Build one worklist query. Date, status, tests and the patient phrase
+	 * are all matched by the database: the phrase is looked up in the
+	 * denormalized <code>patient_search</code> projection, names by prefix
+	 * and identifiers and full names as "contains", so a page never depends
+	 * on how many patients match the phrase.
+	 */
+	private Query createWorklistQuery(String select, String order,
+			Worklist worklist, Date date, Integer orderTypeId, String status,
+			Collection<Integer> conceptIds, String phrase) {
+		boolean phraseSearch = StringUtils.isNotBlank(phrase);
+		String sql = select;
+		String alias;
+		if (worklist == Worklist.ORDERS) {
+			alias = "o";
+			sql += "FROM orders o ";
+		} else if (worklist == Worklist.COMPLETED_TESTS) {
+			alias = "t";
+			sql += "FROM radiology_test t INNER JOIN orders o ON o.order_id = t.order_id ";
+		} else {
+			alias = "t";
+			sql += "FROM radiology_test t ";
+		}
+		if (phraseSearch) {
+			sql += "INNER JOIN patient_search ps ON ps.patient_id = "
+					+ alias + ".patient_id ";
+		}
+		if (worklist == Worklist.ORDERS) {
+			sql += "WHERE o.order_type_id = :orderTypeId "
+					+ "AND o.start_date >= :dateFrom AND o.start_date < :dateTo "
+					+ "AND o.discontinued = 0 AND o.date_voided IS NULL ";
+		} else if (worklist == Worklist.COMPLETED_TESTS) {
+			sql += "WHERE o.discontinued_date >= :dateFrom AND o.discontinued_date < :dateTo ";
+		} else {
+			sql += "WHERE t.date >= :dateFrom AND t.date < :dateTo ";
+		}
+		if (status != null) {
+			sql += "AND t.status = :status ";
+		}
+		if (conceptIds != null) {
+			sql += "AND " + alias + ".concept_id IN (:conceptIds) ";
+		}
+		if (phraseSearch) {
+			sql += "AND (ps.given_name LIKE :prefix OR ps.middle_name LIKE :prefix OR ps.family_name LIKE :prefix "
+					+ "OR ps.identifier LIKE :infix OR ps.fullname LIKE :infix) ";
+		}
+		sql += order;
+
+		Query query = sessionFactory.getCurrentSession().createSQLQuery(sql);
+		DayRange day = DayRange.of(date);
+		query.setTimestamp("dateFrom", day.getStart());
+		query.setTimestamp("dateTo", day.getEnd());
+		if (orderTypeId != null) {
+			query.setInteger("orderTypeId", orderTypeId);
+		}
+		if (status != null) {
+			query.setString("status", status);
+		}
+		if (conceptIds != null) {
+			query.setParameterList("conceptIds", conceptIds);
+		}
+		if (phraseSearch) {
+			String escaped = PatientSearchTokenizer.escapeLike(phrase.trim());
+			query.setString("prefix", escaped + "%");
+			query.setString("infix", "%" + escaped + "%");
+		}
+		return query;
+	}
+
+	private Integer countWorklist(Query query) {
+		Number count = (Number) query.uniqueResult();
+		return count == null ? 0 : count.intValue();
+	}
+
+	/**
+	 * Load the entities of one worklist page, kept in the order of the
+	 * worklist query. A page size of 0 loads the whole list.
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> List<T> loadWorklistPage(Class<T> type, String idProperty,
+			Query query, int page, int pageSize) {
+		if (pageSize > 0) {
+			query.setFirstResult((page - 1) * pageSize);
+			query.setMaxResults(pageSize);
+		}
+		List<Integer> ids = new ArrayList<Integer>();
+		for (Object id : query.list()) {
+			ids.add(((Number) id).intValue());
+		}
+		List<T> result = new ArrayList<T>(ids.size());
+		if (ids.isEmpty()) {
+			return result;
+		}
+		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(
+				type);
+		criteria.add(Restrictions.in(idProperty, ids));
+		ClassMetadata metadata = sessionFactory.getClassMetadata(type);
+		Map<Object, T> entities = new HashMap<Object, T>();
+		for (Object entity : criteria.list()) {
+			entities.put(metadata.getIdentifier(entity, EntityMode.POJO),
+					(T) entity);
+		}
+		for (Integer id : ids) {
+			T entity = entities.get(id);
+			if (entity != null) {
+				result.add(entity);
+			}
+		}
+		return result;
+	}
+
+	private List<Integer> getConceptIds(Set<Concept> concepts) {
+		List<Integer> conceptIds = new ArrayList<Integer>(concepts.size());
+		for (Concept concept : concepts) {
+			conceptIds.add(concept.getConceptId());
+		}
+		return conceptIds;
+	}
+
 	@Transactional(readOnly = true)
 	public void createConceptsForXrayDefaultForm() {
 		HospitalCoreService hcs = (HospitalCoreService) Context
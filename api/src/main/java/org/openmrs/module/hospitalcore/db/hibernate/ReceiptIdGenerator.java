@@ -0,0 +1,201 @@
+/**
+ *  Copyright 2010 Society for Health Information Systems Programmes, India (HISP India)
+ *
+ *  This file is part of Hospital-core module.
+ *
+ *  Hospital-core module is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  Hospital-core module is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Hospital-core module.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+
+package org.openmrs.module.hospitalcore.db.hibernate;
+
+import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hibernate.HibernateException;
+import org.hibernate.MappingException;
+import org.hibernate.connection.ConnectionProvider;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.SessionImplementor;
+import org.hibernate.id.Configurable;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.type.Type;
+import org.hibernate.util.PropertiesHelper;
+
+/**
+ * Hi/lo identifier generator for receipts. Each node reserves a block of ids
+ * from a row of the billing_receipt_sequence table in a short transaction of
+ * its own and hands them out from memory without locking, so concurrent
+ * counters only meet in the database once per block. Ids left in a block
+ * when the node stops are skipped, receipt ids may have gaps but are never
+ * reused.
+ */
+public class ReceiptIdGenerator implements IdentifierGenerator, Configurable {
+
+	public static final String BLOCK_SIZE = "block_size";
+
+	public static final String SEQUENCE_NAME = "sequence_name";
+
+	private static final int DEFAULT_BLOCK_SIZE = 50;
+
+	private static final String RESERVE_SQL = "UPDATE billing_receipt_sequence "
+			+ "SET next_val = LAST_INSERT_ID(next_val + ?) WHERE sequence_name = ?";
+
+	private static final String LAST_INSERT_ID_SQL = "SELECT LAST_INSERT_ID()";
+
+	private static Log log = LogFactory.getLog(ReceiptIdGenerator.class);
+
+	private final AtomicReference<Block> block = new AtomicReference<Block>();
+
+	private int blockSize;
+
+	private String sequenceName;
+
+	public void configure(Type type, Properties params, Dialect dialect)
+			throws MappingException {
+		blockSize = PropertiesHelper.getInt(BLOCK_SIZE, params,
+				DEFAULT_BLOCK_SIZE);
+		sequenceName = PropertiesHelper.getString(SEQUENCE_NAME, params,
+				"billing_receipt");
+	}
+
+	public Serializable generate(final SessionImplementor session,
+			Object object) throws HibernateException {
+		return next(new BlockSource() {
+
+			public long reserve(int size) {
+				return reserveInDatabase(session, size);
+			}
+		});
+	}
+
+	/**
+	 * Hand out the next id, reserving a new block from the source once the
+	 * current one is used up. The ids of one node increase, as every block
+	 * lies above the blocks reserved before it.
+	 */
+	Integer next(BlockSource source) {
+		while (true) {
+			Block current = block.get();
+			if (current != null) {
+				long id = current.next.getAndIncrement();
+				if (id < current.limit) {
+					return Integer.valueOf((int) id);
+				}
+			}
+			synchronized (this) {
+				if (block.get() == current) {
+					long limit = source.reserve(blockSize);
+					block.set(new Block(limit - blockSize, limit));
+				}
+			}
+		}
+	}
+
+	private long reserveInDatabase(SessionImplementor session, int size) {
+		ConnectionProvider connectionProvider = session.getFactory()
+				.getConnectionProvider();
+		Connection connection = null;
+		try {
+			connection = connectionProvider.getConnection();
+			boolean autoCommit = connection.getAutoCommit();
+			connection.setAutoCommit(false);
+			try {
+				PreparedStatement update = connection
+						.prepareStatement(RESERVE_SQL);
+				try {
+					update.setInt(1, size);
+					update.setString(2, sequenceName);
+					if (update.executeUpdate() != 1) {
+						throw new HibernateException(
+								"No row for sequence " + sequenceName
+										+ " in billing_receipt_sequence");
+					}
+				} finally {
+					update.close();
+				}
+				long limit;
+				PreparedStatement select = connection
+						.prepareStatement(LAST_INSERT_ID_SQL);
+				try {
+					ResultSet rs = select.executeQuery();
+					rs.next();
+					limit = rs.getLong(1);
+					rs.close();
+				} finally {
+					select.close();
+				}
+				connection.commit();
+				if (log.isDebugEnabled()) {
+					log.debug("Reserved receipt ids " + (limit - size)
+							+ " to " + (limit - 1));
+				}
+				return limit;
+			} catch (SQLException e) {
+				connection.rollback();
+				throw e;
+			} finally {
+				connection.setAutoCommit(autoCommit);
+			}
+		} catch (SQLException e) {
+			throw new HibernateException("Could not reserve receipt ids", e);
+		} finally {
+			if (connection != null) {
+				try {
+					connectionProvider.closeConnection(connection);
+				} catch (SQLException e) {
+					log.warn("Could not close connection", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reserves blocks of ids, the sequence row in the database outside of
+	 * tests
+	 */
+	interface BlockSource {
+
+		/**
+		 * Reserve the next block of ids
+		 * 
+		 * @param size
+		 * @return the end of the block, exclusive
+		 */
+		long reserve(int size);
+	}
+
+	/**
+	 * Ids from next (inclusive) to limit (exclusive)
+	 */
+	private static class Block {
+
+		private final AtomicLong next;
+
+		private final long limit;
+
+		Block(long next, long limit) {
+			this.next = new AtomicLong(next);
+			this.limit = limit;
+		}
+	}
+}
@@ -21,15 +21,12 @@
 package org.openmrs.module.hospitalcore.impl;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Date;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
-import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.Concept;
@@ -37,6 +34,7 @@ import org.openmrs.ConceptAnswer;
 import org.openmrs.ConceptClass;
 import org.openmrs.ConceptSet;
 import org.openmrs.Encounter;
+import org.openmrs.GlobalProperty;
 import org.openmrs.EncounterType;
 import org.openmrs.Location;
 import org.openmrs.Order;
@@ -47,9 +45,9 @@ import org.openmrs.api.context.Context;
 import org.openmrs.api.impl.BaseOpenmrsService;
 import org.openmrs.module.hospitalcore.BillingConstants;
 import org.openmrs.module.hospitalcore.BillingService;
-import org.openmrs.module.hospitalcore.LabService;
-import org.openmrs.module.hospitalcore.RadiologyCoreService;
-import org.openmrs.module.hospitalcore.concept.TestTree;
+import org.openmrs.module.hospitalcore.HospitalCoreService;
+import org.openmrs.module.hospitalcore.concept.InvestigationRouting;
+import org.openmrs.module.hospitalcore.concept.InvestigationRoutingCache;
 import org.openmrs.module.hospitalcore.db.BillingDAO;
 import org.openmrs.module.hospitalcore.model.Ambulance;
 import org.openmrs.module.hospitalcore.model.AmbulanceBill;
@@ -58,19 +56,22 @@ import org.openmrs.module.hospitalcore.model.Company;
 import org.openmrs.module.hospitalcore.model.Driver;
 import org.openmrs.module.hospitalcore.model.IndoorPatientServiceBill;
 import org.openmrs.module.hospitalcore.model.IndoorPatientServiceBillItem;
-import org.openmrs.module.hospitalcore.model.Lab;
 import org.openmrs.module.hospitalcore.model.MiscellaneousService;
 import org.openmrs.module.hospitalcore.model.MiscellaneousServiceBill;
 import org.openmrs.module.hospitalcore.model.PatientServiceBill;
 import org.openmrs.module.hospitalcore.model.PatientServiceBillItem;
-import org.openmrs.module.hospitalcore.model.RadiologyDepartment;
 import org.openmrs.module.hospitalcore.model.Receipt;
 import org.openmrs.module.hospitalcore.model.Tender;
 import org.openmrs.module.hospitalcore.model.TenderBill;
-import org.openmrs.module.hospitalcore.util.ConceptAnswerComparator;
-import org.openmrs.module.hospitalcore.util.ConceptSetComparator;
+import org.openmrs.module.hospitalcore.util.BillingDailyTotal;
+import org.openmrs.module.hospitalcore.util.DayRange;
 import org.openmrs.module.hospitalcore.util.GlobalPropertyUtil;
 import org.openmrs.module.hospitalcore.util.HospitalCoreConstants;
+import org.openmrs.module.hospitalcore.util.RadiologyWorklistCache;
+import org.openmrs.module.hospitalcore.util.ReceiptMigration;
+import org.openmrs.module.hospitalcore.util.ServiceCatalogue;
+import org.openmrs.module.hospitalcore.util.ServiceCatalogueCache;
+import org.openmrs.module.hospitalcore.util.ServiceCatalogueNode;
 
 public class BillingServiceImpl extends BaseOpenmrsService implements BillingService {
 	
@@ -273,7 +274,11 @@ public class BillingServiceImpl extends BaseOpenmrsService implements BillingSer
 	 * @see org.openmrs.module.billing.BillingService#saveTenderBill(org.openmrs.module.billing.model.TenderBill)
 	 */
 	public TenderBill saveTenderBill(TenderBill tenderBill) throws APIException {
-		return dao.saveTenderBill(tenderBill);
+		String billType = TenderBill.class.getSimpleName();
+		List<BillingDailyTotal> before = dao.getBillingDailyTotals(billType, tenderBill.getTenderBillId());
+		TenderBill bill = dao.saveTenderBill(tenderBill);
+		dao.addBillingDailyTotals(billType, bill.getTenderBillId(), before);
+		return bill;
 	}
 	
 	/**
@@ -350,7 +355,11 @@ public class BillingServiceImpl extends BaseOpenmrsService implements BillingSer
 	 * @see org.openmrs.module.billing.BillingService#saveAmbulanceBill(org.openmrs.module.billing.model.AmbulanceBill)
 	 */
 	public AmbulanceBill saveAmbulanceBill(AmbulanceBill ambulanceBill) throws APIException {
-		return dao.saveAmbulanceBill(ambulanceBill);
+		String billType = AmbulanceBill.class.getSimpleName();
+		List<BillingDailyTotal> before = dao.getBillingDailyTotals(billType, ambulanceBill.getAmbulanceBillId());
+		AmbulanceBill bill = dao.saveAmbulanceBill(ambulanceBill);
+		dao.addBillingDailyTotals(billType, bill.getAmbulanceBillId(), before);
+		return bill;
 	}
 	
 	/**
@@ -380,113 +389,7 @@ public class BillingServiceImpl extends BaseOpenmrsService implements BillingSer
 	 *      java.util.Map, int)
 	 */
 	public String traversServices(Concept con, Map<Integer, BillableService> services) {
-		if (con == null)
-			return null;
-		Collection<ConceptAnswer> answers = con.getAnswers();
-		ConceptClass conceptClass = con.getConceptClass();
-		if (answers != null && answers.size() > 0 && !conceptClass.getName().equalsIgnoreCase("Test")
-		        && !conceptClass.getName().equalsIgnoreCase("labset")) {
-			
-			String rs = "";
-			rs += "<ul>";
-			String child = null;
-			for (ConceptAnswer ca : answers) {
-				if (ca.getConcept() == con) {
-					Concept tmpAnswerConcept = ca.getAnswerConcept();
-					ConceptClass tmpConceptClass = tmpAnswerConcept.getConceptClass();
-					
-					Integer id = tmpAnswerConcept.getConceptId();
-					if (ca.getAnswerConcept().getAnswers() == null || ca.getAnswerConcept().getAnswers().size() == 0
-					        || tmpConceptClass.getName().equalsIgnoreCase("Test")
-					        || tmpConceptClass.getName().equalsIgnoreCase("labset")
-					        || tmpConceptClass.getName().equalsIgnoreCase("Procedure")) {
-						rs += "<li>";
-						rs += "<input   name='cons' type='checkbox'  value='" + id + "' >";
-						rs += "<label>" + tmpAnswerConcept.getName() + "</label>";
-						rs += "<input id='" + id + "_concept'  name='" + id + "_concept'  type='hidden' value='" + id + "'>";
-						rs += "<input id='" + id + "_name'      name='" + id + "_name'      type='hidden' value='"
-						        + tmpAnswerConcept.getName() + "'>";
-						rs += "<input id='" + id + "_shortname' name='" + id + "_shortname' type='hidden' value='"
-						        + tmpAnswerConcept.getName().getShortName() + "'>";
-						BillableService s = services.get(id);
-						if (s != null) {
-							rs += "<span style='vertical-align:middle;'>";
-							rs += "&nbsp;&nbsp;<input onblur='updatePrice(this)'  type='text' class='priceField' id='" + id
-							        + "_price' name='" + id + "_price' value=" + s.getPrice() + ">";
-							rs += "</span>";
-						} else {
-							rs += "<input onblur='updatePrice(this)' type='text' class='priceField' id='" + id
-							        + "_price' name='" + id + "_price' value=''>";
-						}
-					} else {
-						rs += "<li>";
-						rs += "<input   name='cons' type='checkbox'  value='" + id + "' >";
-						rs += "<label>" + tmpAnswerConcept.getName() + "</label>";
-						rs += "<input id='" + id + "_concept'  name='" + id + "_concept'  type='hidden' value='" + id + "'>";
-						rs += "<input id='" + id + "_name'      name='" + id + "_name'      type='hidden' value='"
-						        + tmpAnswerConcept.getName() + "'>";
-						rs += "<input id='" + id + "_shortname' name='" + id + "_shortname' type='hidden' value='"
-						        + tmpAnswerConcept.getName().getShortName() + "'>";
-						
-					}
-				}
-				child = traversServices(ca.getAnswerConcept(), services);
-				
-				if (child != null)
-					rs += child;
-				rs += "</li>";
-			}
-			rs += "</ul>";
-			return rs;
-		} else if (con.getConceptSets() != null && con.getConceptSets().size() > 0
-		        && !conceptClass.getName().equalsIgnoreCase("Test") && !conceptClass.getName().equalsIgnoreCase("labset")) {
-			String rs = "";
-			rs += "<ul>";
-			String child = null;
-			for (ConceptSet ca : con.getConceptSets()) {
-				if (ca.getConceptSet() == con) {
-					Integer id = ca.getConcept().getConceptId();
-					ConceptClass tmpConceptClass = ca.getConcept().getConceptClass();
-					if (ca.getConcept().getConceptSets() == null || ca.getConceptSet().getConceptSets().size() == 0
-					        || tmpConceptClass.getName().equalsIgnoreCase("Test")
-					        || tmpConceptClass.getName().equalsIgnoreCase("labset")
-					        || tmpConceptClass.getName().equalsIgnoreCase("Procedure")) {
-						rs += "<li>";
-						rs += "<input name='cons' type='checkbox'  value='" + id + "' >";
-						rs += "<label>" + ca.getConcept().getName() + "</label>";
-						rs += "<input id='" + id + "_concept' name='" + id + "_concept' type='hidden' value='" + id + "'>";
-						rs += "<input id='" + id + "_name' name='" + id + "_name' type='hidden' value='"
-						        + ca.getConcept().getName() + "'>";
-						rs += "<input id='" + id + "_shortname'    name='" + id + "_shortname'    type='hidden' value='"
-						        + ca.getConcept().getName().getShortName() + "'>";
-						BillableService s = services.get(id);
-						if (s != null) {
-							rs += "<input onblure='updatePrice(this)'  type='text' class='priceField' id='" + id
-							        + "_price' name='" + id + "_price' value=" + s.getPrice() + ">";
-						} else {
-							rs += "<input onblur='updatePrice(this)'  class='priceField' type='text' id='" + id
-							        + "_price' name='" + id + "_price' value=''>";
-						}
-					} else {
-						rs += "<li>";
-						rs += "<input name='cons' type='checkbox'  value='" + id + "' >";
-						rs += "<label>" + ca.getConcept().getName() + "</label>";
-						rs += "<input id='" + id + "_concept' name='" + id + "_concept' type='hidden' value='" + id + "'>";
-						rs += "<input id='" + id + "_name' name='" + id + "_name' type='hidden' value='"
-						        + ca.getConcept().getName() + "'>";
-						rs += "<input id='" + id + "_shortname'    name='" + id + "_shortname'    type='hidden' value='"
-						        + ca.getConcept().getName().getShortName() + "'>";
-					}
-				}
-				child = traversServices(ca.getConcept(), services);
-				if (child != null)
-					rs += child;
-				rs += "</li>";
-			}
-			rs += "</ul>";
-			return rs;
-		}
-		return null;
+		return ServiceCatalogue.renderServices(getServiceNode(con), services);
 	}
 	
 	/**
@@ -514,7 +417,9 @@ public class BillingServiceImpl extends BaseOpenmrsService implements BillingSer
 	 * @see org.openmrs.module.billing.BillingService#saveService(org.openmrs.module.billing.model.BillableService)
 	 */
 	public BillableService saveService(BillableService service) throws APIException {
-		return dao.saveService(service);
+		BillableService saved = dao.saveService(service);
+		ServiceCatalogueCache.invalidateServices();
+		return saved;
 	}
 	
 	/**
@@ -524,6 +429,7 @@ public class BillingServiceImpl extends BaseOpenmrsService implements BillingSer
 		for (BillableService service : services) {
 			dao.saveService(service);
 		}
+		ServiceCatalogueCache.invalidateServices();
 	}
 	
 	/**
@@ -533,159 +439,23 @@ public class BillingServiceImpl extends BaseOpenmrsService implements BillingSer
 	public String traversTab(Concept concept, Map<Integer, BillableService> mapServices, int count) throws APIException {
 		Integer rootConcept = Integer.valueOf(Context.getAdministrationService().getGlobalProperty(
 		    BillingConstants.GLOBAL_PROPRETY_SERVICE_CONCEPT));
-		Collection<ConceptAnswer> answers = concept.getAnswers();
-		Collection<ConceptSet> conceptSets = concept.getConceptSets();
-		ConceptClass conceptClass = concept.getConceptClass();
-		BillableService service = mapServices.get(concept.getConceptId());
-		if ((service == null || service.getDisable()) && concept.getConceptId().intValue() != rootConcept.intValue()) {
-			return null;
-		}
-		String content = "";
-		String tabsLi = "";
-		String header = "";
-		
-		if (answers != null && answers.size() > 0 && !conceptClass.getName().equalsIgnoreCase("Test")
-		        && !conceptClass.getName().equalsIgnoreCase("labset")) {
-			// show children
-			List<ConceptAnswer> children = new ArrayList(answers);
-			Collections.sort(children, new ConceptAnswerComparator());
-			
-			List<ConceptAnswer> noChild = new ArrayList<ConceptAnswer>();
-			BillableService s = null;
-			for (ConceptAnswer ca : children) {
-				if (ca.getConcept() == concept) {
-					Concept tmpAnswerConcept = ca.getAnswerConcept();
-					s = mapServices.get(tmpAnswerConcept.getId());
-					if (s != null && !s.getDisable()) {
-						ConceptClass tmpConceptClass = tmpAnswerConcept.getConceptClass();
-						if (tmpAnswerConcept.getAnswers() == null || tmpAnswerConcept.getAnswers().size() == 0
-						        || tmpConceptClass.getName().equalsIgnoreCase("Test")
-						        || tmpConceptClass.getName().equalsIgnoreCase("labset")
-						        || tmpConceptClass.getName().equalsIgnoreCase("Procedure")) {
-							noChild.add(ca);
-						} else {
-							String name = StringUtils.isBlank(tmpAnswerConcept.getName().getShortName()) ? tmpAnswerConcept
-							        .getName().getName() : tmpAnswerConcept.getName().getShortName();
-							tabsLi += "<li><a title='" + tmpAnswerConcept.getName().getName() + "' href='#fragment-"
-							        + tmpAnswerConcept.getConceptId() + "'><span>" + name + "</span></a></li>";
-						}
-					}
-				}
-			}
-			ConceptAnswer tmpConcept = null;
-			if (noChild.size() > 0) {
-				for (int i = 1; i < noChild.size() + 1; i++) {
-					tmpConcept = noChild.get(i - 1);
-					BillableService tmpService = mapServices.get(tmpConcept.getAnswerConcept().getConceptId());
-					if (tmpService != null && !tmpService.getDisable()) {
-						String tmp = "addToBill(\"" + tmpService.getConceptId() + "\",  \"" + tmpService.getName() + "\", "
-						        + tmpService.getPrice() + ", 1);";
-						String name = StringUtils.isBlank(tmpService.getShortName()) ? tmpService.getName() : tmpService
-						        .getShortName();
-						header += "<div title='" + tmpService.getName() + "' id='box_" + tmpService.getConceptId()
-						        + "' class='udiv boxNormal' onclick='" + tmp + "' >" + name + "</div>";
-					}
-				}
-			}
-			
-			if (!"".equals(tabsLi)) {
-				header += "<div id='container-" + count + "' class='divContainer'>";
-				count = count + 1;
-				header += "<ul>";
-				header += tabsLi;
-				header += "</ul>";
-				
-				String tmp = null;
-				for (ConceptAnswer c : children) {
-					Concept tmpC = c.getAnswerConcept();
-					if ((tmpC.getAnswers() != null && tmpC.getAnswers().size() > 0)
-					        || (tmpC.getConceptSets() != null && tmpC.getConceptSets().size() > 0)) {
-						tmp = null;
-						tmp = traversTab(tmpC, mapServices, count);
-						if (tmp != null) {
-							content += "<div id='fragment-" + tmpC.getConceptId() + "'>";
-							content += tmp;
-							content += "</div>";
-						}
-					}
-					count++;
-				}
-				if (!"".equals(content))
-					header += content;
-				header += " </div>";
-			}
-		} else if (conceptSets != null && conceptSets.size() > 0 && !conceptClass.getName().equalsIgnoreCase("Test")
-		        && !conceptClass.getName().equalsIgnoreCase("labset")) {
-			// show children
-			
-			List<ConceptSet> children = new ArrayList(conceptSets);
-			Collections.sort(children, new ConceptSetComparator());
-			List<ConceptSet> noChild = new ArrayList<ConceptSet>();
-			BillableService s = null;
-			for (ConceptSet ca : children) {
-				if (ca.getConceptSet() == concept) {
-					Concept tmpConceptSet = ca.getConcept();
-					s = mapServices.get(tmpConceptSet.getId());
-					if (s != null && !s.getDisable()) {
-						ConceptClass tmpConceptClass = ca.getConcept().getConceptClass();
-						if (tmpConceptSet.getConceptSets() == null || tmpConceptSet.getConceptSets().size() == 0
-						        || tmpConceptClass.getName().equalsIgnoreCase("Test")
-						        || tmpConceptClass.getName().equalsIgnoreCase("labset")
-						        || tmpConceptClass.getName().equalsIgnoreCase("Procedure")) {
-							noChild.add(ca);
-						} else {
-							String name = StringUtils.isBlank(tmpConceptSet.getName().getShortName()) ? tmpConceptSet
-							        .getName().getName() : tmpConceptSet.getName().getShortName();
-							tabsLi += "<li><a title='" + tmpConceptSet.getName().getName() + "' href='#fragment-"
-							        + tmpConceptSet.getConceptId() + "'><span>" + name + "</span></a></li>";
-						}
-					}
-				}
-			}
-			ConceptSet tmpConcept = null;
-			if (noChild.size() > 0) {
-				for (int i = 1; i < noChild.size() + 1; i++) {
-					tmpConcept = noChild.get(i - 1);
-					BillableService tmpService = mapServices.get(tmpConcept.getConcept().getConceptId());
-					if (tmpService != null && !tmpService.getDisable()) {
-						String tmp = "addToBill(\"" + tmpService.getConceptId() + "\",  \"" + tmpService.getName() + "\", "
-						        + tmpService.getPrice() + ", 1);";
-						String name = StringUtils.isBlank(tmpService.getShortName()) ? tmpService.getName() : tmpService
-						        .getShortName();
-						header += "<div title='" + tmpService.getName() + "' id='box_" + tmpService.getConceptId()
-						        + "' class='udiv boxNormal' onclick='" + tmp + "' >" + name + "</div>";
-					}
-				}
-			}
-			
-			if (!"".equals(tabsLi)) {
-				header += "<div id='container-" + count + "' class='divContainer'>";
-				count = count + 1;
-				header += "<ul>";
-				header += tabsLi;
-				header += "</ul>";
-				
-				String tmp = null;
-				for (ConceptSet c : conceptSets) {
-					Concept tmpC = c.getConcept();
-					if ((tmpC.getAnswers() != null && tmpC.getAnswers().size() > 0)
-					        || (tmpC.getConceptSets() != null && tmpC.getConceptSets().size() > 0)) {
-						tmp = null;
-						tmp = traversTab(tmpC, mapServices, count);
-						if (tmp != null) {
-							content += "<div id='fragment-" + tmpC.getConceptId() + "'>";
-							content += tmp;
-							content += "</div>";
-						}
-					}
-					count++;
-				}
-				if (!"".equals(content))
-					header += content;
-				header += " </div>";
-			}
+		return ServiceCatalogue.renderTab(getServiceNode(concept), mapServices, count, rootConcept);
+	}
+	
+	/**
+	 * The configured service root is compiled once in ServiceCatalogueCache, other concepts are
+	 * compiled on each call
+	 */
+	private ServiceCatalogueNode getServiceNode(Concept concept) {
+		Integer rootConceptId = GlobalPropertyUtil.getInteger(BillingConstants.GLOBAL_PROPRETY_SERVICE_CONCEPT, null);
+		if (rootConceptId != null && rootConceptId.equals(concept.getConceptId())) {
+			return ServiceCatalogueCache.getRoot();
 		}
-		return header;
+		return ServiceCatalogueNode.compile(concept);
+	}
+	
+	public ServiceCatalogue getServiceCatalogue() throws APIException {
+		return ServiceCatalogueCache.getCatalogue(this);
 	}
 	
 	/**
@@ -721,7 +491,12 @@ public class BillingServiceImpl extends BaseOpenmrsService implements BillingSer
 	 * @see org.openmrs.module.billing.BillingService#savePatientServiceBill(org.openmrs.module.billing.model.PatientServiceBill)
 	 */
 	public PatientServiceBill savePatientServiceBill(PatientServiceBill patientServiceBill) throws APIException {
-		return dao.savePatientServiceBill(patientServiceBill);
+		String billType = PatientServiceBill.class.getSimpleName();
+		List<BillingDailyTotal> before = dao.getBillingDailyTotals(billType,
+		    patientServiceBill.getPatientServiceBillId());
+		PatientServiceBill bill = dao.savePatientServiceBill(patientServiceBill);
+		dao.addBillingDailyTotals(billType, bill.getPatientServiceBillId(), before);
+		return bill;
 	}
 	
 	/**
@@ -861,62 +636,49 @@ public class BillingServiceImpl extends BaseOpenmrsService implements BillingSer
 	// }
 	
 	public void saveBillEncounterAndOrder(PatientServiceBill bill) throws APIException {
-		Set<Integer> labConceptIds = getLabConceptIds();
-		Set<Integer> radiologyConceptIds = getRadiologyConceptIds();
-		
-		String labEncounterTypeText = GlobalPropertyUtil.getString(BillingConstants.GLOBAL_PROPRETY_LAB_ENCOUNTER_TYPE,
-		    "LABENCOUNTER");
-		EncounterType labEncounterType = Context.getEncounterService().getEncounterType(labEncounterTypeText);
-		
-		String radiologyEncounterTypeText = GlobalPropertyUtil.getString(
-		    BillingConstants.GLOBAL_PROPRETY_RADIOLOGY_ENCOUNTER_TYPE, "RADIOLOGYENCOUNTER");
-		EncounterType radiologyEncounterType = Context.getEncounterService().getEncounterType(radiologyEncounterTypeText);
-		
-		Integer labOrderTypeId = GlobalPropertyUtil.getInteger(BillingConstants.GLOBAL_PROPRETY_LAB_ORDER_TYPE, 2);
-		OrderType labOrderType = Context.getOrderService().getOrderType(labOrderTypeId);
-		
-		Integer radiologyOrderTypeId = GlobalPropertyUtil.getInteger(BillingConstants.GLOBAL_PROPRETY_RADIOLOGY_ORDER_TYPE,
-		    8);
-		OrderType radiologyOrderType = Context.getOrderService().getOrderType(radiologyOrderTypeId);
+		List<Integer> conceptIds = new ArrayList<Integer>();
+		for (PatientServiceBillItem item : bill.getBillItems()) {
+			conceptIds.add(item.getService().getConceptId());
+		}
+		BillOrderContext context = new BillOrderContext(conceptIds);
 		
 		Encounter labEncounter = null;
 		Encounter radiologyEncounter = null;
 		
-		// Get medical examination class
-		Integer medicalExaminationClassId = GlobalPropertyUtil.getInteger(
-		    HospitalCoreConstants.PROPERTY_MEDICAL_EXAMINATION, 9);
-		ConceptClass medicalExaminationClass = Context.getConceptService().getConceptClass(medicalExaminationClassId);
-		
 		for (PatientServiceBillItem item : bill.getBillItems()) {
-			Concept concept = Context.getConceptService().getConcept(item.getService().getConceptId());
+			Concept concept = context.getConcept(item.getService().getConceptId());
 			
 			// If item is a medical examination set
-			if (concept.getConceptClass().equals(medicalExaminationClass)) {
+			if (concept.getConceptClass().equals(context.medicalExaminationClass)) {
 				Collection<ConceptSet> conceptSets = concept.getConceptSets();
 				if (conceptSets != null && conceptSets.size() > 0) {
 					for (ConceptSet con : conceptSets) {
-						if (labConceptIds.contains(con.getConcept().getConceptId())) {
-							labEncounter = getEncounter(bill, labEncounter, labEncounterType);
-							Order order = addOrder(labEncounter, con.getConcept(), bill, labOrderType);
+						if (context.routing.isLabInvestigation(con.getConcept().getConceptId())) {
+							labEncounter = getEncounter(bill, labEncounter, context.labEncounterType, context.location);
+							Order order = addOrder(labEncounter, con.getConcept(), bill, context.labOrderType);
 							item.setOrder(order);
 							
-						} else if (radiologyConceptIds.contains(con.getConcept().getConceptId())) {
-							radiologyEncounter = getEncounter(bill, radiologyEncounter, radiologyEncounterType);
-							Order order = addOrder(radiologyEncounter, con.getConcept(), bill, radiologyOrderType);
+						} else if (context.routing.isRadiologyInvestigation(con.getConcept().getConceptId())) {
+							radiologyEncounter = getEncounter(bill, radiologyEncounter, context.radiologyEncounterType,
+							    context.location);
+							Order order = addOrder(radiologyEncounter, con.getConcept(), bill, context.radiologyOrderType);
 							item.setOrder(order);
+							RadiologyWorklistCache.markChanged(order);
 						}
 					}
 				}
 			} else {
-				if (labConceptIds.contains(concept.getConceptId())) {
-					labEncounter = getEncounter(bill, labEncounter, labEncounterType);
-					Order order = addOrder(labEncounter, concept, bill, labOrderType);
+				if (context.routing.isLabInvestigation(concept.getConceptId())) {
+					labEncounter = getEncounter(bill, labEncounter, context.labEncounterType, context.location);
+					Order order = addOrder(labEncounter, concept, bill, context.labOrderType);
 					item.setOrder(order);
 					
-				} else if (radiologyConceptIds.contains(concept.getConceptId())) {
-					radiologyEncounter = getEncounter(bill, radiologyEncounter, radiologyEncounterType);
-					Order order = addOrder(radiologyEncounter, concept, bill, radiologyOrderType);
+				} else if (context.routing.isRadiologyInvestigation(concept.getConceptId())) {
+					radiologyEncounter = getEncounter(bill, radiologyEncounter, context.radiologyEncounterType,
+					    context.location);
+					Order order = addOrder(radiologyEncounter, concept, bill, context.radiologyOrderType);
 					item.setOrder(order);
+					RadiologyWorklistCache.markChanged(order);
 				}
 			}
 		}
@@ -930,40 +692,11 @@ public class BillingServiceImpl extends BaseOpenmrsService implements BillingSer
 		savePatientServiceBill(bill);
 	}
 	
-	private Set<Integer> getLabConceptIds() {
-		Set<Integer> conceptIdSet = new HashSet<Integer>();
-		LabService ls = (LabService) Context.getService(LabService.class);
-		List<Lab> labs = ls.getAllLab();
-		for (Lab lab : labs) {
-			conceptIdSet.addAll(getConceptIdSet(lab.getInvestigationsToDisplay()));
-		}
-		return conceptIdSet;
-	}
-	
-	private Set<Integer> getRadiologyConceptIds() {
-		Set<Integer> conceptIdSet = new HashSet<Integer>();
-		RadiologyCoreService rcs = (RadiologyCoreService) Context.getService(RadiologyCoreService.class);
-		List<RadiologyDepartment> departments = rcs.getAllRadiologyDepartments();
-		for (RadiologyDepartment department : departments) {
-			conceptIdSet.addAll(getConceptIdSet(department.getInvestigations()));
-		}
-		return conceptIdSet;
-	}
-	
-	private Set<Integer> getConceptIdSet(Set<Concept> concepts) {
-		Set<Integer> conceptIdSet = new HashSet<Integer>();
-		for (Concept concept : concepts) {
-			TestTree tree = new TestTree(concept);
-			conceptIdSet.addAll(tree.getConceptIDSet());
-		}
-		return conceptIdSet;
-	}
-	
-	private Encounter getEncounter(PatientServiceBill bill, Encounter encounter, EncounterType encounterType) {
+	private Encounter getEncounter(PatientServiceBill bill, Encounter encounter, EncounterType encounterType,
+	                               Location location) {
 		if (encounter == null) {
 			Encounter enc = new Encounter();
 			enc.setCreator(bill.getCreator());
-			Location location = Context.getLocationService().getLocation(1);
 			enc.setLocation(location);
 			enc.setDateCreated(new Date());
 			enc.setEncounterDatetime(new Date());
@@ -1007,6 +740,7 @@ public class BillingServiceImpl extends BaseOpenmrsService implements BillingSer
 	
 	public void disableService(Integer conceptId) throws APIException {
 		dao.disableService(conceptId);
+		ServiceCatalogueCache.invalidateServices();
 	}
 	
 	/**
@@ -1056,7 +790,11 @@ public class BillingServiceImpl extends BaseOpenmrsService implements BillingSer
 	
 	public MiscellaneousServiceBill saveMiscellaneousServiceBill(MiscellaneousServiceBill MiscellaneousServiceBill)
 	                                                                                                               throws APIException {
-		return dao.saveMiscellaneousServiceBill(MiscellaneousServiceBill);
+		String billType = MiscellaneousServiceBill.class.getSimpleName();
+		List<BillingDailyTotal> before = dao.getBillingDailyTotals(billType, MiscellaneousServiceBill.getId());
+		MiscellaneousServiceBill bill = dao.saveMiscellaneousServiceBill(MiscellaneousServiceBill);
+		dao.addBillingDailyTotals(billType, bill.getId(), before);
+		return bill;
 	}
 	
 	public void deleteMiscellaneousService(MiscellaneousService miscellaneousService) throws APIException {
@@ -1084,7 +822,28 @@ public class BillingServiceImpl extends BaseOpenmrsService implements BillingSer
 	}
 	
 	public void updateReceipt() throws APIException {
-		dao.updateReceipt();
+		String status = GlobalPropertyUtil.getString(BillingConstants.GLOBAL_PROPRETY_UPDATED_RECEIPT_IDS, null);
+		if (!"false".equalsIgnoreCase(status) && !"updating".equalsIgnoreCase(status)) {
+			return;
+		}
+		GlobalProperty encounterTypeId = Context.getAdministrationService().getGlobalPropertyObject(
+		    "billing.encounterTypeId");
+		if (encounterTypeId != null && !"6".equalsIgnoreCase(encounterTypeId.getPropertyValue())) {
+			encounterTypeId.setPropertyValue("6");
+			Context.getAdministrationService().saveGlobalProperty(encounterTypeId);
+		}
+		GlobalPropertyUtil.setString(BillingConstants.GLOBAL_PROPRETY_UPDATED_RECEIPT_IDS, "updating");
+		ReceiptMigration.start();
+	}
+	
+	public List<Integer> updateReceipts(String billType, Integer afterBillId, int chunkSize) throws APIException {
+		List<Integer> billIds = dao.updateReceipts(billType, afterBillId, chunkSize);
+		if (!billIds.isEmpty()) {
+			GlobalPropertyUtil.saveGlobalProperty(BillingConstants.GLOBAL_PROPRETY_RECEIPT_MIGRATION_CHECKPOINT,
+			    "Last bill given a receipt by the receipt migration, <bill type>:<bill id>", billType + ":"
+			            + billIds.get(billIds.size() - 1));
+		}
+		return billIds;
 	}
 	
 	public void updateOldBills() {
@@ -1111,62 +870,49 @@ public class BillingServiceImpl extends BaseOpenmrsService implements BillingSer
 	}
 	
 	public void saveBillEncounterAndOrderForIndoorPatient(IndoorPatientServiceBill bill) throws APIException {
-		Set<Integer> labConceptIds = getLabConceptIds();
-		Set<Integer> radiologyConceptIds = getRadiologyConceptIds();
-		
-		String labEncounterTypeText = GlobalPropertyUtil.getString(BillingConstants.GLOBAL_PROPRETY_LAB_ENCOUNTER_TYPE,
-		    "LABENCOUNTER");
-		EncounterType labEncounterType = Context.getEncounterService().getEncounterType(labEncounterTypeText);
-		
-		String radiologyEncounterTypeText = GlobalPropertyUtil.getString(
-		    BillingConstants.GLOBAL_PROPRETY_RADIOLOGY_ENCOUNTER_TYPE, "RADIOLOGYENCOUNTER");
-		EncounterType radiologyEncounterType = Context.getEncounterService().getEncounterType(radiologyEncounterTypeText);
-		
-		Integer labOrderTypeId = GlobalPropertyUtil.getInteger(BillingConstants.GLOBAL_PROPRETY_LAB_ORDER_TYPE, 2);
-		OrderType labOrderType = Context.getOrderService().getOrderType(labOrderTypeId);
-		
-		Integer radiologyOrderTypeId = GlobalPropertyUtil.getInteger(BillingConstants.GLOBAL_PROPRETY_RADIOLOGY_ORDER_TYPE,
-		    8);
-		OrderType radiologyOrderType = Context.getOrderService().getOrderType(radiologyOrderTypeId);
+		List<Integer> conceptIds = new ArrayList<Integer>();
+		for (IndoorPatientServiceBillItem item : bill.getBillItems()) {
+			conceptIds.add(item.getService().getConceptId());
+		}
+		BillOrderContext context = new BillOrderContext(conceptIds);
 		
 		Encounter labEncounter = null;
 		Encounter radiologyEncounter = null;
 		
-		// Get medical examination class
-		Integer medicalExaminationClassId = GlobalPropertyUtil.getInteger(
-		    HospitalCoreConstants.PROPERTY_MEDICAL_EXAMINATION, 9);
-		ConceptClass medicalExaminationClass = Context.getConceptService().getConceptClass(medicalExaminationClassId);
-		
 		for (IndoorPatientServiceBillItem item : bill.getBillItems()) {
-			Concept concept = Context.getConceptService().getConcept(item.getService().getConceptId());
+			Concept concept = context.getConcept(item.getService().getConceptId());
 			
 			// If item is a medical examination set
-			if (concept.getConceptClass().equals(medicalExaminationClass)) {
+			if (concept.getConceptClass().equals(context.medicalExaminationClass)) {
 				Collection<ConceptSet> conceptSets = concept.getConceptSets();
 				if (conceptSets != null && conceptSets.size() > 0) {
 					for (ConceptSet con : conceptSets) {
-						if (labConceptIds.contains(con.getConcept().getConceptId())) {
-							labEncounter = getEncounter(bill, labEncounter, labEncounterType);
-							Order order = addOrder(labEncounter, con.getConcept(), bill, labOrderType);
+						if (context.routing.isLabInvestigation(con.getConcept().getConceptId())) {
+							labEncounter = getEncounter(bill, labEncounter, context.labEncounterType, context.location);
+							Order order = addOrder(labEncounter, con.getConcept(), bill, context.labOrderType);
 							item.setOrder(order);
 							
-						} else if (radiologyConceptIds.contains(con.getConcept().getConceptId())) {
-							radiologyEncounter = getEncounter(bill, radiologyEncounter, radiologyEncounterType);
-							Order order = addOrder(radiologyEncounter, con.getConcept(), bill, radiologyOrderType);
+						} else if (context.routing.isRadiologyInvestigation(con.getConcept().getConceptId())) {
+							radiologyEncounter = getEncounter(bill, radiologyEncounter, context.radiologyEncounterType,
+							    context.location);
+							Order order = addOrder(radiologyEncounter, con.getConcept(), bill, context.radiologyOrderType);
 							item.setOrder(order);
+							RadiologyWorklistCache.markChanged(order);
 						}
 					}
 				}
 			} else {
-				if (labConceptIds.contains(concept.getConceptId())) {
-					labEncounter = getEncounter(bill, labEncounter, labEncounterType);
-					Order order = addOrder(labEncounter, concept, bill, labOrderType);
+				if (context.routing.isLabInvestigation(concept.getConceptId())) {
+					labEncounter = getEncounter(bill, labEncounter, context.labEncounterType, context.location);
+					Order order = addOrder(labEncounter, concept, bill, context.labOrderType);
 					item.setOrder(order);
 					
-				} else if (radiologyConceptIds.contains(concept.getConceptId())) {
-					radiologyEncounter = getEncounter(bill, radiologyEncounter, radiologyEncounterType);
-					Order order = addOrder(radiologyEncounter, concept, bill, radiologyOrderType);
+				} else if (context.routing.isRadiologyInvestigation(concept.getConceptId())) {
+					radiologyEncounter = getEncounter(bill, radiologyEncounter, context.radiologyEncounterType,
+					    context.location);
+					Order order = addOrder(radiologyEncounter, concept, bill, context.radiologyOrderType);
 					item.setOrder(order);
+					RadiologyWorklistCache.markChanged(order);
 				}
 			}
 		}
@@ -1182,11 +928,11 @@ public class BillingServiceImpl extends BaseOpenmrsService implements BillingSer
 		saveIndoorPatientServiceBill(bill);
 	}
 	
-	private Encounter getEncounter(IndoorPatientServiceBill bill, Encounter encounter, EncounterType encounterType) {
+	private Encounter getEncounter(IndoorPatientServiceBill bill, Encounter encounter, EncounterType encounterType,
+	                               Location location) {
 		if (encounter == null) {
 			Encounter enc = new Encounter();
 			enc.setCreator(bill.getCreator());
-			Location location = Context.getLocationService().getLocation(1);
 			enc.setLocation(location);
 			enc.setDateCreated(new Date());
 			enc.setEncounterDatetime(new Date());
@@ -1218,4 +964,87 @@ public class BillingServiceImpl extends BaseOpenmrsService implements BillingSer
 	public PatientServiceBillItem getPatientServiceBillItem(Integer billId,String name) throws APIException {
 		return dao.getPatientServiceBillItem(billId,name);
 	}
+	
+	public List<BillingDailyTotal> listBillingDailyTotals(Date fromDate, Date toDate, String billType, String... groupBy)
+	                                                                                                                     throws APIException {
+		DayRange days = DayRange.between(fromDate, toDate);
+		List<String> dimensions = groupBy == null ? new ArrayList<String>() : Arrays.asList(groupBy);
+		return dao.listBillingDailyTotals(days.getStart(), days.getEnd(), billType, dimensions);
+	}
+	
+	public int rebuildBillingDailyTotals(Date fromDate, Date toDate) throws APIException {
+		DayRange days = DayRange.between(fromDate, toDate);
+		// through the service proxy, so every day commits on its own
+		BillingService service = Context.getService(BillingService.class);
+		int rows = 0;
+		for (Date day = days.getStart(); day.before(days.getEnd()); day = DayRange.of(day).getEnd()) {
+			rows += service.rebuildBillingDailyTotalsOfDay(day);
+		}
+		log.info("Rebuilt " + rows + " daily billing totals from " + days.getStart() + " to " + days.getEnd());
+		return rows;
+	}
+	
+	public int rebuildBillingDailyTotalsOfDay(Date day) throws APIException {
+		DayRange range = DayRange.of(day);
+		return dao.rebuildBillingDailyTotals(range.getStart(), range.getEnd());
+	}
+	
+	/**
+	 * Everything needed to turn the items of one bill into orders, resolved once per bill. The
+	 * concepts of all items are loaded in one query.
+	 */
+	private static class BillOrderContext {
+		
+		private InvestigationRouting routing;
+		
+		private EncounterType labEncounterType;
+		
+		private EncounterType radiologyEncounterType;
+		
+		private OrderType labOrderType;
+		
+		private OrderType radiologyOrderType;
+		
+		private ConceptClass medicalExaminationClass;
+		
+		private Location location;
+		
+		private Map<Integer, Concept> concepts;
+		
+		BillOrderContext(Collection<Integer> conceptIds) {
+			routing = InvestigationRoutingCache.getRouting();
+			
+			String labEncounterTypeText = GlobalPropertyUtil.getString(
+			    BillingConstants.GLOBAL_PROPRETY_LAB_ENCOUNTER_TYPE, "LABENCOUNTER");
+			labEncounterType = Context.getEncounterService().getEncounterType(labEncounterTypeText);
+			
+			String radiologyEncounterTypeText = GlobalPropertyUtil.getString(
+			    BillingConstants.GLOBAL_PROPRETY_RADIOLOGY_ENCOUNTER_TYPE, "RADIOLOGYENCOUNTER");
+			radiologyEncounterType = Context.getEncounterService().getEncounterType(radiologyEncounterTypeText);
+			
+			Integer labOrderTypeId = GlobalPropertyUtil.getInteger(BillingConstants.GLOBAL_PROPRETY_LAB_ORDER_TYPE, 2);
+			labOrderType = Context.getOrderService().getOrderType(labOrderTypeId);
+			
+			Integer radiologyOrderTypeId = GlobalPropertyUtil.getInteger(
+			    BillingConstants.GLOBAL_PROPRETY_RADIOLOGY_ORDER_TYPE, 8);
+			radiologyOrderType = Context.getOrderService().getOrderType(radiologyOrderTypeId);
+			
+			// Get medical examination class
+			Integer medicalExaminationClassId = GlobalPropertyUtil.getInteger(
+			    HospitalCoreConstants.PROPERTY_MEDICAL_EXAMINATION, 9);
+			medicalExaminationClass = Context.getConceptService().getConceptClass(medicalExaminationClassId);
+			
+			location = Context.getLocationService().getLocation(1);
+			
+			concepts = Context.getService(HospitalCoreService.class).getConcepts(conceptIds);
+		}
+		
+		Concept getConcept(Integer conceptId) {
+			Concept concept = concepts.get(conceptId);
+			if (concept == null) {
+				concept = Context.getConceptService().getConcept(conceptId);
+			}
+			return concept;
+		}
+	}
 }
@@ -23,13 +23,16 @@ package org.openmrs.module.hospitalcore.impl;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Writer;
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
@@ -64,13 +67,17 @@ import org.openmrs.api.ConceptService;
 import org.openmrs.api.context.Context;
 import org.openmrs.api.impl.BaseOpenmrsService;
 import org.openmrs.module.hospitalcore.HospitalCoreService;
+import org.openmrs.module.hospitalcore.concept.ConceptGraph;
+import org.openmrs.module.hospitalcore.concept.ConceptGraphCache;
 import org.openmrs.module.hospitalcore.concept.ConceptModel;
 import org.openmrs.module.hospitalcore.concept.Mapping;
 import org.openmrs.module.hospitalcore.concept.Synonym;
 import org.openmrs.module.hospitalcore.db.HospitalCoreDAO;
 import org.openmrs.module.hospitalcore.model.CoreForm;
 import org.openmrs.module.hospitalcore.model.PatientSearch;
+import org.openmrs.module.hospitalcore.util.GlobalPropertyUtil;
 import org.openmrs.module.hospitalcore.util.HospitalCoreConstants;
+import org.openmrs.module.hospitalcore.util.PatientCSVWriter;
 import org.w3c.dom.Document;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
@@ -85,6 +92,8 @@ public class HospitalCoreServiceImpl extends BaseOpenmrsService implements
 	public HospitalCoreServiceImpl() {
 	}
 
+	private static final int PATIENT_SEARCH_INDEX_BATCH = 1000;
+
 	protected HospitalCoreDAO dao;
 
 	public List<Obs> listObsGroup(Integer personId, Integer conceptId,
@@ -661,6 +670,21 @@ public class HospitalCoreServiceImpl extends BaseOpenmrsService implements
 				rangeDay, relativeName);
 	}
 
+	public List<Patient> searchPatient(String nameOrIdentifier, String gender,
+			int age, int rangeAge, String date, int rangeDay,
+			String relativeName, Integer afterPatientId, int min, int max)
+			throws APIException {
+		return dao.searchPatient(nameOrIdentifier, gender, age, rangeAge, date,
+				rangeDay, relativeName, afterPatientId, min, max);
+	}
+
+	public Integer countPatient(String nameOrIdentifier, String gender,
+			int age, int rangeAge, String date, int rangeDay,
+			String relativeName) throws APIException {
+		return dao.countPatient(nameOrIdentifier, gender, age, rangeAge, date,
+				rangeDay, relativeName);
+	}
+
 	public List<Patient> searchPatient(String hql) {
 		return dao.searchPatient(hql);
 	}
@@ -673,6 +697,11 @@ public class HospitalCoreServiceImpl extends BaseOpenmrsService implements
 		return dao.getPersonAttributes(patientId);
 	}
 
+	public Map<Integer, List<PersonAttribute>> getPersonAttributes(
+			Collection<Integer> patientIds) {
+		return dao.getPersonAttributes(patientIds);
+	}
+
 	public Encounter getLastVisitEncounter(Patient patient,
 			List<EncounterType> types) {
 		return dao.getLastVisitEncounter(patient, types);
@@ -730,7 +759,28 @@ public class HospitalCoreServiceImpl extends BaseOpenmrsService implements
 	 * Save patientSearch
 	 */
 	public PatientSearch savePatientSearch(PatientSearch patientSearch){
-		return dao.savePatientSearch(patientSearch);
+		PatientSearch saved = dao.savePatientSearch(patientSearch);
+		dao.indexPatientSearch(saved);
+		return saved;
+	}
+
+	public Integer rebuildPatientSearchIndex() {
+		// through the service proxy, so every batch commits on its own
+		HospitalCoreService service = Context.getService(HospitalCoreService.class);
+		int indexed = 0;
+		Integer lastPatientId = null;
+		List<Integer> patientIds;
+		while (!(patientIds = service.rebuildPatientSearchIndexBatch(lastPatientId,
+				PATIENT_SEARCH_INDEX_BATCH)).isEmpty()) {
+			indexed += patientIds.size();
+			lastPatientId = patientIds.get(patientIds.size() - 1);
+			log.info("Indexed patient search up to patient " + lastPatientId);
+		}
+		return indexed;
+	}
+
+	public List<Integer> rebuildPatientSearchIndexBatch(Integer afterPatientId, int batchSize) {
+		return dao.indexPatientSearches(afterPatientId, batchSize);
 	}
 
 	/**
@@ -740,6 +790,11 @@ public class HospitalCoreServiceImpl extends BaseOpenmrsService implements
 	public java.util.Date getLastVisitTime(int patientID) {
 	    return dao.getLastVisitTime(patientID);
     }
+
+	public Map<Integer, java.util.Date> getLastVisitTimes(
+			Collection<Integer> patientIds) {
+		return dao.getLastVisitTimes(patientIds);
+	}
 	
 	//ghanshyam,22-oct-2013,New Requirement #2940 Dealing with dead patient
 	public PatientSearch getPatient(int patientID){
@@ -761,5 +816,32 @@ public class HospitalCoreServiceImpl extends BaseOpenmrsService implements
 		return dao.getObsInstanceForDiagnosis(encounter,concept);
 	}
 
+	public int writePatientVisitsCSV(Date fromDate, Date toDate,
+			Writer writer) throws IOException {
+		writer.write(PatientCSVWriter.HEADER);
+		writer.write("\n");
+		return writePatientVisits(fromDate, toDate, writer);
+	}
+
+	public int writePatientVisits(Date fromDate, Date toDate, Writer writer)
+			throws IOException {
+		Concept opdWard = Context.getConceptService().getConcept("OPD WARD");
+		PatientCSVWriter csv = new PatientCSVWriter(writer,
+				GlobalPropertyUtil.getString(
+						HospitalCoreConstants.PROPERTY_HOSPITAL_NIN_NUMBER,
+						null));
+		dao.writePatientVisits(fromDate, toDate,
+				opdWard != null ? opdWard.getConceptId() : null, csv);
+		csv.flush();
+		return csv.getRowCount();
+	}
+
+	public ConceptGraph getConceptGraph() {
+		return ConceptGraphCache.getGraph(dao);
+	}
+
+	public Map<Integer, Concept> getConcepts(Collection<Integer> conceptIds) {
+		return dao.getConcepts(conceptIds);
+	}
 
 }
@@ -21,8 +21,12 @@
 package org.openmrs.module.hospitalcore.impl;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 
 import org.openmrs.Concept;
 import org.openmrs.Encounter;
@@ -41,7 +45,17 @@ import org.openmrs.module.hospitalcore.model.IpdPatientAdmitted;
 import org.openmrs.module.hospitalcore.model.IpdPatientAdmittedLog;
 import org.openmrs.module.hospitalcore.model.IpdPatientVitalStatistics;
 import org.openmrs.module.hospitalcore.model.WardBedStrength;
+import org.openmrs.module.hospitalcore.util.AdmissionCursor;
 import org.openmrs.module.hospitalcore.util.HospitalCoreConstants;
+import org.openmrs.module.hospitalcore.util.IpdBulkResult;
+import org.openmrs.module.hospitalcore.util.KeysetPage;
+import org.openmrs.module.hospitalcore.util.PagingUtil;
+import org.openmrs.module.hospitalcore.util.VitalLatestCache;
+import org.openmrs.module.hospitalcore.util.VitalReading;
+import org.openmrs.module.hospitalcore.util.VitalSeries;
+import org.openmrs.module.hospitalcore.util.WardCensus;
+import org.openmrs.module.hospitalcore.util.WardCensusCache;
+import org.openmrs.module.hospitalcore.util.WardOccupancy;
 
 public class IpdServiceImpl extends BaseOpenmrsService implements IpdService {
 	public IpdServiceImpl() {
@@ -66,6 +80,19 @@ public class IpdServiceImpl extends BaseOpenmrsService implements IpdService {
 				status, min, max);
 	}
 
+	public KeysetPage<IpdPatientAdmissionLog> listIpdPatientAdmissionLogPage(
+			Integer patientId, Integer admissionWardId, String status,
+			String cursor, int pageSize) throws APIException {
+		return dao.listIpdPatientAdmissionLogPage(patientId, admissionWardId,
+				status, parseCursor(cursor), getPageSize(pageSize));
+	}
+
+	public int countIpdPatientAdmissionLog(Integer patientId,
+			Integer admissionWardId, String status) throws APIException {
+		return dao.countIpdPatientAdmissionLog(patientId, admissionWardId,
+				status);
+	}
+
 	public List<IpdPatientAdmitted> getAllIpdPatientAdmitted()
 			throws APIException {
 		return dao.getAllIpdPatientAdmitted();
@@ -119,7 +146,9 @@ public class IpdServiceImpl extends BaseOpenmrsService implements IpdService {
 
 	public IpdPatientAdmitted saveIpdPatientAdmitted(IpdPatientAdmitted admitted)
 			throws APIException {
-		return dao.saveIpdPatientAdmitted(admitted);
+		IpdPatientAdmitted saved = dao.saveIpdPatientAdmitted(admitted);
+		WardCensusCache.put(saved);
+		return saved;
 	}
 
 	public IpdPatientAdmittedLog saveIpdPatientAdmittedLog(
@@ -142,6 +171,50 @@ public class IpdServiceImpl extends BaseOpenmrsService implements IpdService {
 				toDate, wardId, status);
 	}
 
+	public KeysetPage<IpdPatientAdmission> searchIpdPatientAdmissionPage(
+			String patientSearch, ArrayList<Integer> userIds, String fromDate,
+			String toDate, String wardId, String status, String cursor,
+			int pageSize) throws APIException {
+		return dao.searchIpdPatientAdmissionPage(patientSearch, userIds,
+				fromDate, toDate, wardId, status, parseCursor(cursor),
+				getPageSize(pageSize));
+	}
+
+	public int countIpdPatientAdmission(String patientSearch,
+			ArrayList<Integer> userIds, String fromDate, String toDate,
+			String wardId, String status) throws APIException {
+		return dao.countIpdPatientAdmission(patientSearch, userIds, fromDate,
+				toDate, wardId, status);
+	}
+
+	public KeysetPage<IpdPatientAdmitted> searchIpdPatientAdmittedPage(
+			String patientSearch, ArrayList<Integer> userIds, String fromDate,
+			String toDate, String wardId, String status, String cursor,
+			int pageSize) throws APIException {
+		return dao.searchIpdPatientAdmittedPage(patientSearch, userIds,
+				fromDate, toDate, wardId, status, parseCursor(cursor),
+				getPageSize(pageSize));
+	}
+
+	public int countIpdPatientAdmitted(String patientSearch,
+			ArrayList<Integer> userIds, String fromDate, String toDate,
+			String wardId, String status) throws APIException {
+		return dao.countIpdPatientAdmitted(patientSearch, userIds, fromDate,
+				toDate, wardId, status);
+	}
+
+	private AdmissionCursor parseCursor(String cursor) {
+		try {
+			return AdmissionCursor.parse(cursor);
+		} catch (IllegalArgumentException e) {
+			throw new APIException(e.getMessage(), e);
+		}
+	}
+
+	private int getPageSize(int pageSize) {
+		return pageSize > 0 ? pageSize : PagingUtil.DEFAULT_PAGE_SIZE;
+	}
+
 	public void removeIpdPatientAdmission(IpdPatientAdmission admission)
 			throws APIException {
 		dao.removeIpdPatientAdmission(admission);
@@ -151,6 +224,7 @@ public class IpdServiceImpl extends BaseOpenmrsService implements IpdService {
 	public void removeIpdPatientAdmitted(IpdPatientAdmitted admitted)
 			throws APIException {
 		dao.removeIpdPatientAdmitted(admitted);
+		WardCensusCache.remove(admitted);
 	}
 
 	public IpdPatientAdmitted transfer(Integer id, Integer wardId,
@@ -161,21 +235,186 @@ public class IpdServiceImpl extends BaseOpenmrsService implements IpdService {
 			throw new APIException("Can not found IpdPatientAdmitted with id :"
 					+ id);
 
+		Concept ward = getWard(wardId);
+		User user = getDoctor(doctorId);
+
+		IpdPatientAdmittedLog log = newAdmittedLog(from,
+				IpdPatientAdmitted.STATUS_TRANSFER);
+		log.setComments(comments);
+		log = saveIpdPatientAdmittedLog(log);
+		if (log.getId() != null) {
+			removeIpdPatientAdmitted(from);
+		}
+
+		IpdPatientAdmitted to = newAdmitted(from, ward, bed, user, log);
+		to = saveIpdPatientAdmitted(to);
+
+		return to;
+	}
+
+	public IpdBulkResult transfer(Map<Integer, String> beds, Integer wardId,
+			Integer doctorId, String comments) throws APIException {
+		Concept ward = getWard(wardId);
+		User user = getDoctor(doctorId);
+
+		IpdBulkResult result = new IpdBulkResult();
+		List<IpdPatientAdmitted> transferred = getAdmitted(beds.keySet(),
+				result);
+		removeAdmitted(transferred);
+		for (IpdPatientAdmitted from : transferred) {
+			IpdPatientAdmittedLog log = newAdmittedLog(from,
+					IpdPatientAdmitted.STATUS_TRANSFER);
+			log.setComments(comments);
+			log = saveIpdPatientAdmittedLog(log);
+			IpdPatientAdmitted to = saveIpdPatientAdmitted(newAdmitted(from,
+					ward, beds.get(from.getId()), user, log));
+			result.done(from.getId(), log, to);
+		}
+		return result;
+	}
+
+	public IpdPatientAdmittedLog discharge(Integer id, Integer outComeConceptId)
+			throws APIException {
+
+		Concept outComeConcept = Context.getConceptService().getConcept(
+				outComeConceptId);
+		IpdPatientAdmitted admitted = getIpdPatientAdmitted(id);
+		IpdPatientAdmittedLog log = newAdmittedLog(admitted,
+				IpdPatientAdmitted.STATUS_DISCHARGE);
+		log.setAdmissionOutCome(outComeConcept.getName().getName());
+		log = saveIpdPatientAdmittedLog(log);
+		if (log.getId() != null) {
+			// CHUYEN set status of admissionLog = discharge
+			IpdPatientAdmissionLog admissionLog = admitted
+					.getPatientAdmissionLog();
+			admissionLog.setStatus(IpdPatientAdmitted.STATUS_DISCHARGE);
+			saveIpdPatientAdmissionLog(admissionLog);
+			removeIpdPatientAdmitted(admitted);
+
+			// save discharge info to encounter
+			Concept conVisitOutCome = Context.getConceptService().getConcept(
+					HospitalCoreConstants.CONCEPT_ADMISSION_OUTCOME);
+			Location location = new Location(1);
+
+			Encounter ipdEncounter = admissionLog.getIpdEncounter();
+
+			Obs dischargeObs = newDischargeObs(ipdEncounter, conVisitOutCome,
+					outComeConcept, location);
+			dischargeObs = Context.getObsService().saveObs(dischargeObs,
+					"update obs dischargeObs if need");
+			ipdEncounter.addObs(dischargeObs);
+			Context.getEncounterService().saveEncounter(ipdEncounter);
+
+		}
+
+		return log;
+	}
+
+	public IpdBulkResult discharge(List<Integer> ids, Integer outComeConceptId)
+			throws APIException {
+		Concept outComeConcept = Context.getConceptService().getConcept(
+				outComeConceptId);
+		if (outComeConcept == null)
+			throw new APIException("Can not find outcome with id : "
+					+ outComeConceptId);
+		Concept conVisitOutCome = Context.getConceptService().getConcept(
+				HospitalCoreConstants.CONCEPT_ADMISSION_OUTCOME);
+		Location location = new Location(1);
+
+		IpdBulkResult result = new IpdBulkResult();
+		List<IpdPatientAdmitted> discharged = new ArrayList<IpdPatientAdmitted>();
+		for (IpdPatientAdmitted admitted : getAdmitted(ids, result)) {
+			IpdPatientAdmissionLog admissionLog = admitted
+					.getPatientAdmissionLog();
+			if (admissionLog == null || admissionLog.getIpdEncounter() == null) {
+				result.failed(admitted.getId(),
+						"Can not find IPD encounter of IpdPatientAdmitted with id : "
+								+ admitted.getId());
+			} else {
+				discharged.add(admitted);
+			}
+		}
+		removeAdmitted(discharged);
+		for (IpdPatientAdmitted admitted : discharged) {
+			IpdPatientAdmittedLog log = newAdmittedLog(admitted,
+					IpdPatientAdmitted.STATUS_DISCHARGE);
+			log.setAdmissionOutCome(outComeConcept.getName().getName());
+			log = saveIpdPatientAdmittedLog(log);
+
+			// the admission log is flushed with the transaction
+			IpdPatientAdmissionLog admissionLog = admitted
+					.getPatientAdmissionLog();
+			admissionLog.setStatus(IpdPatientAdmitted.STATUS_DISCHARGE);
+
+			// the obs belongs to the encounter already, so the encounter
+			// itself is not saved again
+			Encounter ipdEncounter = admissionLog.getIpdEncounter();
+			Obs dischargeObs = Context.getObsService().saveObs(
+					newDischargeObs(ipdEncounter, conVisitOutCome,
+							outComeConcept, location),
+					"update obs dischargeObs if need");
+			ipdEncounter.addObs(dischargeObs);
+			result.done(admitted.getId(), log, null);
+		}
+		return result;
+	}
+
+	private Concept getWard(Integer wardId) {
 		Concept ward = Context.getConceptService().getConcept(wardId);
 		if (ward == null)
 			throw new APIException("Can not find IPD Ward with id : " + wardId);
+		return ward;
+	}
 
+	private User getDoctor(Integer doctorId) {
 		User user = Context.getUserService().getUser(doctorId);
 		if (user == null)
 			throw new APIException("Can not find Doctor with user id :"
 					+ doctorId);
+		return user;
+	}
 
+	/**
+	 * Load admitted patients in the order of the ids, reporting the ids not
+	 * found
+	 */
+	private List<IpdPatientAdmitted> getAdmitted(Collection<Integer> ids,
+			IpdBulkResult result) {
+		Map<Integer, IpdPatientAdmitted> loaded = new HashMap<Integer, IpdPatientAdmitted>();
+		for (IpdPatientAdmitted admitted : dao.getIpdPatientAdmitted(ids)) {
+			loaded.put(admitted.getId(), admitted);
+		}
+		List<IpdPatientAdmitted> admitted = new ArrayList<IpdPatientAdmitted>();
+		for (Integer id : new LinkedHashSet<Integer>(ids)) {
+			if (loaded.containsKey(id)) {
+				admitted.add(loaded.get(id));
+			} else {
+				result.failed(id, "Can not found IpdPatientAdmitted with id :"
+						+ id);
+			}
+		}
+		return admitted;
+	}
+
+	/**
+	 * Remove admitted patients with a single delete
+	 */
+	private void removeAdmitted(List<IpdPatientAdmitted> admitted) {
+		List<Integer> ids = new ArrayList<Integer>();
+		for (IpdPatientAdmitted patientAdmitted : admitted) {
+			ids.add(patientAdmitted.getId());
+			WardCensusCache.remove(patientAdmitted);
+		}
+		dao.removeIpdPatientAdmitted(ids);
+	}
+
+	private IpdPatientAdmittedLog newAdmittedLog(IpdPatientAdmitted from,
+			String status) {
 		IpdPatientAdmittedLog log = new IpdPatientAdmittedLog();
 		log.setAdmissionDate(new Date());
 		log.setAdmittedWard(from.getAdmittedWard());
 		log.setBasicPay(from.getBasicPay());
 		log.setBed(from.getBed());
-		log.setComments(comments);
 		log.setBirthDate(from.getBirthDate());
 		log.setCaste(from.getCaste());
 		log.setFatherName(from.getFatherName());
@@ -190,12 +429,12 @@ public class IpdServiceImpl extends BaseOpenmrsService implements IpdService {
 		log.setPatientAdmissionLog(from.getPatientAdmissionLog());
 		log.setPatientName(from.getPatientName());
 		log.setUser(Context.getAuthenticatedUser());
-		log.setStatus(IpdPatientAdmitted.STATUS_TRANSFER);
-		log = saveIpdPatientAdmittedLog(log);
-		if (log.getId() != null) {
-			removeIpdPatientAdmitted(from);
-		}
+		log.setStatus(status);
+		return log;
+	}
 
+	private IpdPatientAdmitted newAdmitted(IpdPatientAdmitted from,
+			Concept ward, String bed, User doctor, IpdPatientAdmittedLog log) {
 		IpdPatientAdmitted to = new IpdPatientAdmitted();
 		to.setAdmissionDate(new Date());
 		to.setAdmittedWard(ward);
@@ -206,82 +445,30 @@ public class IpdServiceImpl extends BaseOpenmrsService implements IpdService {
 		to.setFatherName(from.getFatherName());
 		to.setGender(from.getGender());
 		to.setUser(Context.getAuthenticatedUser());
-		to.setIpdAdmittedUser(user);
+		to.setIpdAdmittedUser(doctor);
 		to.setMonthlyIncome(from.getMonthlyIncome());
 		to.setPatient(from.getPatient());
 		to.setPatientAddress(from.getPatientAddress());
 		to.setPatientIdentifier(from.getPatientIdentifier());
-		to.setPatientAdmissionLog(from.getPatientAdmissionLog());
 		to.setPatientName(from.getPatientName());
 		to.setStatus(IpdPatientAdmitted.STATUS_ADMITTED);
 		to.setPatientAdmissionLog(log.getPatientAdmissionLog());
 		to.setPatientAdmittedLogTransferFrom(log);
-		to = saveIpdPatientAdmitted(to);
-
 		return to;
 	}
 
-	public IpdPatientAdmittedLog discharge(Integer id, Integer outComeConceptId)
-			throws APIException {
-
-		Concept outComeConcept = Context.getConceptService().getConcept(
-				outComeConceptId);
-		IpdPatientAdmitted admitted = getIpdPatientAdmitted(id);
-		IpdPatientAdmittedLog log = new IpdPatientAdmittedLog();
-		log.setAdmissionDate(new Date());
-		log.setAdmittedWard(admitted.getAdmittedWard());
-		log.setBasicPay(admitted.getBasicPay());
-		log.setBed(admitted.getBed());
-		log.setBirthDate(admitted.getBirthDate());
-		log.setCaste(admitted.getCaste());
-		log.setFatherName(admitted.getFatherName());
-		log.setUser(Context.getAuthenticatedUser());
-		log.setGender(admitted.getGender());
-		log.setIpdAdmittedUser(admitted.getIpdAdmittedUser());
-		log.setMonthlyIncome(admitted.getMonthlyIncome());
-		log.setPatient(admitted.getPatient());
-		log.setPatientAddress(admitted.getPatientAddress());
-		log.setPatientIdentifier(admitted.getPatientIdentifier());
-		log.setPatientAdmissionLog(admitted.getPatientAdmissionLog());
-		log.setPatientName(admitted.getPatientName());
-		log.setPatientAdmittedLogTransferFrom(admitted
-				.getPatientAdmittedLogTransferFrom());
-		log.setStatus(IpdPatientAdmitted.STATUS_DISCHARGE);
-		log.setAdmissionOutCome(outComeConcept.getName().getName());
-		log = saveIpdPatientAdmittedLog(log);
-		if (log.getId() != null) {
-			// CHUYEN set status of admissionLog = discharge
-			IpdPatientAdmissionLog admissionLog = admitted
-					.getPatientAdmissionLog();
-			admissionLog.setStatus(IpdPatientAdmitted.STATUS_DISCHARGE);
-			saveIpdPatientAdmissionLog(admissionLog);
-			removeIpdPatientAdmitted(admitted);
-
-			// save discharge info to encounter
-			Concept conVisitOutCome = Context.getConceptService().getConcept(
-					HospitalCoreConstants.CONCEPT_ADMISSION_OUTCOME);
-			Location location = new Location(1);
-
-			Encounter ipdEncounter = admissionLog.getIpdEncounter();
-
-			Obs dischargeObs = new Obs();
-
-			dischargeObs.setConcept(conVisitOutCome);
-			dischargeObs.setValueCoded(outComeConcept);
-			dischargeObs.setCreator(Context.getAuthenticatedUser());
-			dischargeObs.setObsDatetime(new Date());
-			dischargeObs.setLocation(location);
-			dischargeObs.setDateCreated(new Date());
-			dischargeObs.setPatient(ipdEncounter.getPatient());
-			dischargeObs.setEncounter(ipdEncounter);
-			dischargeObs = Context.getObsService().saveObs(dischargeObs,
-					"update obs dischargeObs if need");
-			ipdEncounter.addObs(dischargeObs);
-			Context.getEncounterService().saveEncounter(ipdEncounter);
-
-		}
-
-		return log;
+	private Obs newDischargeObs(Encounter ipdEncounter,
+			Concept conVisitOutCome, Concept outComeConcept, Location location) {
+		Obs dischargeObs = new Obs();
+		dischargeObs.setConcept(conVisitOutCome);
+		dischargeObs.setValueCoded(outComeConcept);
+		dischargeObs.setCreator(Context.getAuthenticatedUser());
+		dischargeObs.setObsDatetime(new Date());
+		dischargeObs.setLocation(location);
+		dischargeObs.setDateCreated(new Date());
+		dischargeObs.setPatient(ipdEncounter.getPatient());
+		dischargeObs.setEncounter(ipdEncounter);
+		return dischargeObs;
 	}
 
 	public List<IpdPatientAdmittedLog> listAdmittedLogByPatientId(
@@ -298,6 +485,7 @@ public class IpdServiceImpl extends BaseOpenmrsService implements IpdService {
 			throws APIException {
 
 		dao.saveWardBedStrength(wardBedStrength);
+		WardCensusCache.setBedStrength(wardBedStrength);
 
 	}
 
@@ -310,7 +498,15 @@ public class IpdServiceImpl extends BaseOpenmrsService implements IpdService {
 	
 	public IpdPatientVitalStatistics saveIpdPatientVitalStatistics(
 			IpdPatientVitalStatistics vitalStatistics) throws APIException {
-		return dao.saveIpdPatientVitalStatistics(vitalStatistics);
+		IpdPatientVitalStatistics saved = dao
+				.saveIpdPatientVitalStatistics(vitalStatistics);
+		if (saved.getIpdPatientAdmissionLog() != null) {
+			VitalLatestCache.put(saved.getIpdPatientAdmissionLog().getId(),
+					VitalReading.parse(saved.getCreatedOn(), saved
+							.getBloodPressure(), saved.getPulseRate(), saved
+							.getTemperature()));
+		}
+		return saved;
 	}
 	public List<IpdPatientVitalStatistics> getIpdPatientVitalStatistics(
 			Integer patientId, Integer patientAdmissionLogId)
@@ -318,11 +514,67 @@ public class IpdServiceImpl extends BaseOpenmrsService implements IpdService {
 		return dao.getIpdPatientVitalStatistics(patientId,
 				patientAdmissionLogId);
 	}
+	public VitalSeries getVitalSeries(Integer patientId,
+			Integer patientAdmissionLogId, int maxPoints) throws APIException {
+		return VitalSeries.downsample(dao.getVitalReadings(patientId,
+				patientAdmissionLogId), maxPoints);
+	}
+	public Map<Integer, VitalReading> getLatestVitalReadings(
+			Collection<Integer> admissionLogIds) throws APIException {
+		List<Integer> missing = new ArrayList<Integer>();
+		Map<Integer, VitalReading> readings = VitalLatestCache.get(
+				admissionLogIds, missing);
+		if (!missing.isEmpty()) {
+			Map<Integer, VitalReading> loaded = dao
+					.getLatestVitalReadings(missing);
+			VitalLatestCache.putAll(missing, loaded);
+			readings.putAll(loaded);
+		}
+		return readings;
+	}
 	public List<Concept> getDiet() throws APIException {
 		return dao.getDiet();
 	}
 	public List<IpdPatientAdmitted> getBedAvailability(Concept wardId,String bedNo) throws APIException {
-		return dao.getBedAvailability(wardId,bedNo);
+		List<IpdPatientAdmitted> admitted = new ArrayList<IpdPatientAdmitted>();
+		if (wardId == null) {
+			return admitted;
+		}
+		for (Integer id : getWardCensus().getAdmittedIds(wardId.getConceptId(), bedNo)) {
+			IpdPatientAdmitted patientAdmitted = dao.getIpdPatientAdmitted(id);
+			if (patientAdmitted != null) {
+				admitted.add(patientAdmitted);
+			}
+		}
+		return admitted;
+	}
+
+	public boolean isBedOccupied(Integer wardId, String bed) throws APIException {
+		return getWardCensus().isOccupied(wardId, bed);
+	}
+
+	public WardOccupancy getWardOccupancy(Integer wardId) throws APIException {
+		return getWardCensus().getOccupancy(wardId);
+	}
+
+	public List<WardOccupancy> getWardOccupancies() throws APIException {
+		return getWardCensus().getOccupancies();
+	}
+
+	/**
+	 * The ward census, loaded from the database when it is missing or
+	 * expired
+	 */
+	private WardCensus getWardCensus() {
+		synchronized (WardCensusCache.class) {
+			WardCensus census = WardCensusCache.getCensus();
+			if (census == null || census.isExpired()) {
+				census = new WardCensus(dao.listAdmittedBeds(), dao
+						.getBedStrengths());
+				WardCensusCache.setCensus(census);
+			}
+			return census;
+		}
 	}
 	public IpdPatientAdmission getIpdPatientAdmissionByPatient(Patient patient) throws APIException {
 		return dao.getIpdPatientAdmissionByPatient(patient);
@@ -24,11 +24,12 @@ package org.openmrs.module.hospitalcore.impl;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 
-import org.apache.commons.lang.math.NumberUtils;
 import org.openmrs.Concept;
 import org.openmrs.ConceptAnswer;
 import org.openmrs.Order;
@@ -37,6 +38,9 @@ import org.openmrs.api.APIException;
 import org.openmrs.api.context.Context;
 import org.openmrs.api.impl.BaseOpenmrsService;
 import org.openmrs.module.hospitalcore.LabService;
+import org.openmrs.module.hospitalcore.concept.InvestigationRoutingCache;
+import org.openmrs.module.hospitalcore.concept.LabConceptIndex;
+import org.openmrs.module.hospitalcore.concept.LabConceptIndexCache;
 import org.openmrs.module.hospitalcore.db.LabDAO;
 import org.openmrs.module.hospitalcore.model.Lab;
 import org.openmrs.module.hospitalcore.model.LabTest;
@@ -53,7 +57,10 @@ public class LabServiceImpl extends BaseOpenmrsService implements LabService {
 	}
 
 	public Lab saveLab(Lab lab) throws APIException {
-		return dao.saveLab(lab);
+		Lab saved = dao.saveLab(lab);
+		InvestigationRoutingCache.invalidate();
+		LabConceptIndexCache.invalidate();
+		return saved;
 	}
 
 	public List<Lab> getAllActivelab() throws APIException {
@@ -91,6 +98,8 @@ public class LabServiceImpl extends BaseOpenmrsService implements LabService {
 
 	public void deleteLab(Lab lab) throws APIException {
 		dao.deleteLab(lab);
+		InvestigationRoutingCache.invalidate();
+		LabConceptIndexCache.invalidate();
 	}
 
 	public Lab getLabByRole(Role role) throws APIException {
@@ -103,38 +112,32 @@ public class LabServiceImpl extends BaseOpenmrsService implements LabService {
 
 	public Lab getLabByConcept(Concept concept, List<Lab> labs)
 			throws APIException {
+		LabConceptIndex index = LabConceptIndexCache.getIndex();
 		for (Lab lab : labs) {
-			Set<Concept> investigations = lab.getInvestigationsToDisplay();
-			for (Concept con : investigations) {
-				if (con.getId().equals(concept.getId())) {
-					return lab;
-				} else {
-					List<Concept> answers = getAnswers(con);
-					for (Concept ans : answers) {
-						if (concept.getId().equals(ans.getConceptId())) {
-							return lab;
-						}
-					}
-				}
-			}
-			Set<Concept> confidentialTests = lab
-					.getConfidentialTestsToDisplay();
-			for (Concept con : confidentialTests) {
-				if (con.getId().equals(concept.getId())) {
-					return lab;
-				} else {
-					List<Concept> answers = getAnswers(con);
-					for (Concept ans : answers) {
-						if (concept.getId().equals(ans.getConceptId())) {
-							return lab;
-						}
-					}
-				}
+			if (index.contains(concept.getConceptId(), lab.getLabId())) {
+				return lab;
 			}
 		}
 		return null;
 	}
 
+	public Map<Integer, Lab> getLabsByConcepts(Collection<Concept> concepts)
+			throws APIException {
+		Map<Integer, Lab> labs = new HashMap<Integer, Lab>();
+		for (Lab lab : getAllLab()) {
+			labs.put(lab.getLabId(), lab);
+		}
+		LabConceptIndex index = LabConceptIndexCache.getIndex();
+		Map<Integer, Lab> labsByConcept = new HashMap<Integer, Lab>();
+		for (Concept concept : concepts) {
+			int[] labIds = index.getLabIds(concept.getConceptId());
+			if (labIds.length > 0) {
+				labsByConcept.put(concept.getConceptId(), labs.get(labIds[0]));
+			}
+		}
+		return labsByConcept;
+	}
+
 	public List<LabTest> getLatestLabTestByDate(Lab lab, Date date)
 			throws APIException {
 		try {
@@ -155,15 +158,21 @@ public class LabServiceImpl extends BaseOpenmrsService implements LabService {
 	}
 
 	public String getNextSampleNumber(Lab lab, Date date) throws APIException {
-		List<LabTest> tests = getLatestLabTestByDate(lab, date);
-		if (tests != null && tests.size() > 0) {
-			LabTest test = tests.get(tests.size() - 1);
-			String sampleNumber = test.getSampleNumber();
-			sampleNumber = sampleNumber.substring(11);
-			int number = NumberUtils.toInt(sampleNumber) + 1;
-			return Context.getDateFormat().format(date) + "-" + number;
+		return reserveSampleNumbers(lab, date, 1).get(0);
+	}
+
+	public List<String> reserveSampleNumbers(Lab lab, Date date, int count)
+			throws APIException {
+		List<String> sampleNumbers = new ArrayList<String>();
+		if (count <= 0) {
+			return sampleNumbers;
+		}
+		int first = dao.reserveSampleNumbers(lab, date, count);
+		String prefix = Context.getDateFormat().format(date) + "-";
+		for (int number = first; number < first + count; number++) {
+			sampleNumbers.add(prefix + number);
 		}
-		return Context.getDateFormat().format(date) + "-" + 1;
+		return sampleNumbers;
 	}
 
 	public void deleteLabTest(LabTest labtest) throws APIException {
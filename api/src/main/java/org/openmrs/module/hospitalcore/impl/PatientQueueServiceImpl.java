@@ -22,19 +22,27 @@
 
 package org.openmrs.module.hospitalcore.impl;
 
+import java.util.Date;
 import java.util.List;
 //New Requirement "Editable Dashboard" //
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.openmrs.Concept;
 import org.openmrs.Encounter;
 import org.openmrs.Obs;
 import org.openmrs.Patient;
 import org.openmrs.Person;
 import org.openmrs.api.APIException;
+import org.openmrs.api.context.Context;
 import org.openmrs.api.impl.BaseOpenmrsService;
 import org.openmrs.module.hospitalcore.PatientQueueService;
 import org.openmrs.module.hospitalcore.db.PatientQueueDAO;
 import org.openmrs.module.hospitalcore.model.OpdPatientQueue;
 import org.openmrs.module.hospitalcore.model.OpdPatientQueueLog;
+import org.openmrs.module.hospitalcore.util.DayRange;
+import org.openmrs.module.hospitalcore.util.OpdQueue;
+import org.openmrs.module.hospitalcore.util.OpdQueueCache;
+import org.openmrs.module.hospitalcore.util.OpdQueueRollover;
 
 /**
  * <p> Class: PatientQueueServiceImpl </p>
@@ -47,6 +55,10 @@ import org.openmrs.module.hospitalcore.model.OpdPatientQueueLog;
  **/
 public class PatientQueueServiceImpl  extends BaseOpenmrsService implements PatientQueueService{
 	
+	private static final int ROLLOVER_BATCH_SIZE = 1000;
+	
+	private Log log = LogFactory.getLog(this.getClass());
+	
 	public PatientQueueServiceImpl() {
 	}
 
@@ -64,14 +76,16 @@ public class PatientQueueServiceImpl  extends BaseOpenmrsService implements Pati
 
 	public OpdPatientQueue saveOpdPatientQueue(OpdPatientQueue opdPatientQueue)
 			throws APIException {
-		// TODO Auto-generated method stub
-		return dao.saveOpdPatientQueue(opdPatientQueue);
+		OpdPatientQueue saved = dao.saveOpdPatientQueue(opdPatientQueue);
+		OpdQueueCache.put(saved);
+		return saved;
 	}
 
 	public OpdPatientQueue updateOpdPatientQueue(Integer id, String status)
 			throws APIException {
-		// TODO Auto-generated method stub
-		return dao.updateOpdPatientQueue(id, status);
+		OpdPatientQueue updated = dao.updateOpdPatientQueue(id, status);
+		OpdQueueCache.put(updated);
+		return updated;
 	}
 
 	public OpdPatientQueue getOpdPatientQueueById(Integer id)
@@ -82,21 +96,35 @@ public class PatientQueueServiceImpl  extends BaseOpenmrsService implements Pati
 
 	public void deleteOpdPatientQueue(OpdPatientQueue opdPatientQueue)
 			throws APIException {
-		// TODO Auto-generated method stub
 		dao.deleteOpdPatientQueue(opdPatientQueue);
+		OpdQueueCache.remove(opdPatientQueue);
 	}
 
 	public List<OpdPatientQueue> listOpdPatientQueue(String patientName,
 			Integer referralConceptId, String status, int min, int max)
 			throws APIException {
-		// TODO Auto-generated method stub
-		return dao.listOpdPatientQueue(patientName, referralConceptId, status, min, max);
+		List<Integer> ids = getOpdQueue().list(patientName, referralConceptId, status, min, max);
+		return dao.getOpdPatientQueues(ids);
 	}
 
 	public Integer countOpdPatientQueue(String patientName, String searchType,
 			Integer referralConceptId, String status) throws APIException {
-		// TODO Auto-generated method stub
-		return dao.countOpdPatientQueue(patientName, searchType,referralConceptId, status);
+		return getOpdQueue().count(patientName, referralConceptId, status);
+	}
+	
+	/**
+	 * Today's queue, loaded from the database when it is missing or expired
+	 */
+	private OpdQueue getOpdQueue() {
+		synchronized (OpdQueueCache.class) {
+			OpdQueue queue = OpdQueueCache.getQueue();
+			if (queue == null || queue.isExpired()) {
+				DayRange today = DayRange.today();
+				queue = new OpdQueue(today, dao.listOpdQueueEntries(today.getStart(), today.getEnd()));
+				OpdQueueCache.setQueue(queue);
+			}
+			return queue;
+		}
 	}
 
 	public OpdPatientQueueLog saveOpdPatientQueueLog(
@@ -141,14 +169,38 @@ public class PatientQueueServiceImpl  extends BaseOpenmrsService implements Pati
 	}
 
 	public OpdPatientQueue getOpdPatientQueue(String patientIdentifier,Integer opdConceptId)throws APIException {
-		// TODO Auto-generated method stub
-		return dao.getOpdPatientQueue(patientIdentifier,opdConceptId);
+		Integer id = getOpdQueue().getLatestId(patientIdentifier, opdConceptId);
+		return id != null ? dao.getOpdPatientQueueById(id) : null;
 	}
 
 	public List<OpdPatientQueue> getAllPatientInQueue() throws APIException {
 		// TODO Auto-generated method stub
 		return dao.getAllPatientInQueue();
 	}
+	
+	public OpdQueueRollover rolloverOpdPatientQueue(int batchSize) throws APIException {
+		if (batchSize <= 0) {
+			batchSize = ROLLOVER_BATCH_SIZE;
+		}
+		OpdQueueRollover rollover = new OpdQueueRollover(DayRange.today().getStart());
+		// through the service proxy, so every batch commits on its own
+		PatientQueueService service = Context.getService(PatientQueueService.class);
+		int rows;
+		do {
+			long start = System.currentTimeMillis();
+			rows = service.rolloverOpdPatientQueueBatch(rollover.getBefore(), batchSize);
+			if (rows > 0) {
+				rollover.batchDone(rows, System.currentTimeMillis() - start);
+			}
+		} while (rows >= batchSize);
+		rollover.finish();
+		log.info(rollover);
+		return rollover;
+	}
+	
+	public int rolloverOpdPatientQueueBatch(Date before, int batchSize) throws APIException {
+		return dao.moveOpdPatientQueueToLog(before, batchSize);
+	}
 	//New Requirement "Editable Dashboard" ~Wasib//
 	public List<Obs> getAllDiagnosis(Integer personId)
 			throws APIException{
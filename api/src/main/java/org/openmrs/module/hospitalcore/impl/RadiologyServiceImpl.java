@@ -23,11 +23,13 @@ package org.openmrs.module.hospitalcore.impl;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.commons.collections.CollectionUtils;
-import org.apache.commons.lang.StringUtils;
 import org.openmrs.Concept;
 import org.openmrs.Encounter;
 import org.openmrs.Order;
@@ -37,17 +39,23 @@ import org.openmrs.Role;
 import org.openmrs.api.context.Context;
 import org.openmrs.api.impl.BaseOpenmrsService;
 import org.openmrs.module.hospitalcore.BillingConstants;
+import org.openmrs.module.hospitalcore.HospitalCoreService;
 import org.openmrs.module.hospitalcore.RadiologyService;
-import org.openmrs.module.hospitalcore.concept.ConceptNode;
-import org.openmrs.module.hospitalcore.concept.TestTree;
+import org.openmrs.module.hospitalcore.concept.ConceptGraph;
+import org.openmrs.module.hospitalcore.concept.InvestigationRoutingCache;
 import org.openmrs.module.hospitalcore.db.RadiologyDAO;
 import org.openmrs.module.hospitalcore.form.RadiologyForm;
 import org.openmrs.module.hospitalcore.model.RadiologyDepartment;
 import org.openmrs.module.hospitalcore.model.RadiologyTest;
 import org.openmrs.module.hospitalcore.template.RadiologyTemplate;
+import org.openmrs.module.hospitalcore.util.DayRange;
 import org.openmrs.module.hospitalcore.util.GlobalPropertyUtil;
-import org.openmrs.module.hospitalcore.util.PatientUtils;
 import org.openmrs.module.hospitalcore.util.RadiologyConstants;
+import org.openmrs.module.hospitalcore.util.RadiologyUtil;
+import org.openmrs.module.hospitalcore.util.RadiologyWorklist;
+import org.openmrs.module.hospitalcore.util.RadiologyWorklistCache;
+import org.openmrs.module.hospitalcore.util.RadiologyWorklistDelta;
+import org.openmrs.module.hospitalcore.util.TestModel;
 
 public class RadiologyServiceImpl extends BaseOpenmrsService implements
 		RadiologyService {
@@ -96,7 +104,10 @@ public class RadiologyServiceImpl extends BaseOpenmrsService implements
 	//
 	public RadiologyDepartment saveRadiologyDepartment(
 			RadiologyDepartment department) {
-		return dao.saveRadiologyDepartment(department);
+		RadiologyDepartment saved = dao.saveRadiologyDepartment(department);
+		InvestigationRoutingCache.invalidate();
+		RadiologyWorklistCache.invalidate();
+		return saved;
 	}
 
 	public RadiologyDepartment getRadiologyDepartmentById(Integer id) {
@@ -105,6 +116,8 @@ public class RadiologyServiceImpl extends BaseOpenmrsService implements
 
 	public void deleteRadiologyDepartment(RadiologyDepartment department) {
 		dao.deleteRadiologyDepartment(department);
+		InvestigationRoutingCache.invalidate();
+		RadiologyWorklistCache.invalidate();
 	}
 
 	public RadiologyDepartment getCurrentRadiologyDepartment() {
@@ -130,33 +143,25 @@ public class RadiologyServiceImpl extends BaseOpenmrsService implements
 	//
 	public List<Order> getOrders(Date startDate, String phrase,
 			Set<Concept> tests, int page) throws ParseException {
-
-		Integer radiologyOrderTypeId = GlobalPropertyUtil.getInteger(
-				BillingConstants.GLOBAL_PROPRETY_RADIOLOGY_ORDER_TYPE, 8);
-		OrderType orderType = Context.getOrderService().getOrderType(
-				radiologyOrderTypeId);
-
-		List<Patient> patients = null;
-		if (!StringUtils.isBlank(phrase)) {
-			patients = Context.getPatientService().getPatients(phrase);
-		}
-		List<Order> orders = dao.getOrders(startDate, orderType, tests,
-				patients, page, GlobalPropertyUtil.getInteger(
-						RadiologyConstants.PROPERTY_PAGESIZE, 20));
-		return orders;
+		return dao.getOrders(startDate, getRadiologyOrderType(), tests,
+				phrase, page, getPageSize());
 	}
 
 	public Integer countOrders(Date startDate, String phrase, Set<Concept> tests)
 			throws ParseException {
+		return dao.countOrders(startDate, getRadiologyOrderType(), tests,
+				phrase);
+	}
 
+	private OrderType getRadiologyOrderType() {
 		Integer radiologyOrderTypeId = GlobalPropertyUtil.getInteger(
 				BillingConstants.GLOBAL_PROPRETY_RADIOLOGY_ORDER_TYPE, 8);
-		OrderType orderType = Context.getOrderService().getOrderType(
-				radiologyOrderTypeId);
+		return Context.getOrderService().getOrderType(radiologyOrderTypeId);
+	}
 
-		List<Patient> patients = Context.getPatientService()
-				.getPatients(phrase);
-		return dao.countOrders(startDate, orderType, tests, patients);
+	private int getPageSize() {
+		return GlobalPropertyUtil.getInteger(
+				RadiologyConstants.PROPERTY_PAGESIZE, 20);
 	}
 
 	//
@@ -197,6 +202,7 @@ public class RadiologyServiceImpl extends BaseOpenmrsService implements
 			}
 
 			RadiologyTest acceptedTest = dao.saveRadiologyTest(test);
+			RadiologyWorklistCache.markChanged(order);
 			return acceptedTest.getId();
 		}
 		return -1;
@@ -207,6 +213,7 @@ public class RadiologyServiceImpl extends BaseOpenmrsService implements
 			if (test.getStatus().equalsIgnoreCase(
 					RadiologyConstants.TEST_STATUS_ACCEPTED)) {
 				dao.deleteRadiologyTest(test);
+				RadiologyWorklistCache.markChanged(test.getOrder());
 				return RadiologyConstants.UNACCEPT_TEST_RETURN_STATUS_SUCCESS;
 			} else {
 				// TODO: add more unaccept test return status here
@@ -229,6 +236,7 @@ public class RadiologyServiceImpl extends BaseOpenmrsService implements
 					order.setDateChanged(new Date());
 					deleteRadiologyTest(test);
 					Context.getOrderService().saveOrder(order);
+					RadiologyWorklistCache.markChanged(order);
 					return RadiologyConstants.RESCHEDULE_TEST_RETURN_STATUS_SUCCESS;
 				} else {
 					// TODO: add more reschedule test return status here
@@ -239,6 +247,7 @@ public class RadiologyServiceImpl extends BaseOpenmrsService implements
 				order.setChangedBy(Context.getAuthenticatedUser());
 				order.setDateChanged(new Date());
 				Context.getOrderService().saveOrder(order);
+				RadiologyWorklistCache.markChanged(order);
 				return RadiologyConstants.RESCHEDULE_TEST_RETURN_STATUS_SUCCESS;
 			}
 		}
@@ -253,94 +262,171 @@ public class RadiologyServiceImpl extends BaseOpenmrsService implements
 	public List<RadiologyTest> getAcceptedRadiologyTests(Date date,
 			String phrase, Set<Concept> allowableTests, int page)
 			throws ParseException {
-		List<Patient> patients = null;
-		if (!StringUtils.isBlank(phrase)) {
-			patients = Context.getPatientService().getPatients(phrase);
-		}
 		return dao.getRadiologyTests(date,
 				RadiologyConstants.TEST_STATUS_ACCEPTED, allowableTests,
-				patients, page, GlobalPropertyUtil.getInteger(
-						RadiologyConstants.PROPERTY_PAGESIZE, 20));
+				phrase, page, getPageSize());
 	}
 
 	public Integer countAcceptedRadiologyTests(Date date, String phrase,
 			Set<Concept> allowableTests) throws ParseException {
-		List<Patient> patients = null;
-		if (!StringUtils.isBlank(phrase)) {
-			patients = Context.getPatientService().getPatients(phrase);
-		}
 		return dao.countRadiologyTests(date,
 				RadiologyConstants.TEST_STATUS_ACCEPTED, allowableTests,
-				patients);
+				phrase);
 	}
 
 	public List<RadiologyTest> getCompletedRadiologyTests(Date date,
 			String phrase, Set<Concept> allowableTests, int page)
 			throws ParseException {
+		return dao.getRadiologyTestsByDiscontinuedDate(date, allowableTests,
+				phrase, page, getPageSize());
+	}
 
-		List<Patient> patients = null;
-		if (!StringUtils.isBlank(phrase)) {
-			patients = Context.getPatientService().getPatients(phrase);
-		}
+	public Integer countCompletedRadiologyTests(Date date, String phrase,
+			Set<Concept> allowableTests) throws ParseException {
+		return dao.countRadiologyTestsByDiscontinuedDate(date, allowableTests,
+				phrase);
+	}
 
-		List<RadiologyTest> tests = dao.getRadiologyTestsByDiscontinuedDate(
-				date, allowableTests, patients, page, GlobalPropertyUtil
-						.getInteger(RadiologyConstants.PROPERTY_PAGESIZE, 20));
+	public List<RadiologyTest> getAllRadiologyTestsByDate(Date date,
+			String phrase, Concept investigation) throws ParseException {
+		return dao.getRadiologyTestsByDate(date, phrase,
+				getInvestigationTestIds(investigation), 1, 0);
+	}
 
-		return tests;
+	public List<RadiologyTest> getAllRadiologyTestsByDate(Date date,
+			String phrase, Concept investigation, int page)
+			throws ParseException {
+		return dao.getRadiologyTestsByDate(date, phrase,
+				getInvestigationTestIds(investigation), page, getPageSize());
 	}
 
-	public Integer countCompletedRadiologyTests(Date date, String phrase,
-			Set<Concept> allowableTests) throws ParseException {
+	public Integer countAllRadiologyTestsByDate(Date date, String phrase,
+			Concept investigation) throws ParseException {
+		return dao.countRadiologyTestsByDate(date, phrase,
+				getInvestigationTestIds(investigation));
+	}
 
-		List<Patient> patients = null;
-		if (!StringUtils.isBlank(phrase)) {
-			patients = Context.getPatientService().getPatients(phrase);
+	/**
+	 * The tests of an investigation, <code>null</code> when every test is
+	 * allowed
+	 */
+	private List<Integer> getInvestigationTestIds(Concept investigation) {
+		if (investigation == null) {
+			return null;
+		}
+		int[] childIds = Context.getService(HospitalCoreService.class)
+				.getConceptGraph().getChildIds(investigation.getConceptId());
+		List<Integer> testIds = new ArrayList<Integer>(childIds.length);
+		for (int childId : childIds) {
+			testIds.add(childId);
 		}
+		return testIds;
+	}
 
-		return dao.countRadiologyTestsByDiscontinuedDate(date, allowableTests,
-				patients);
+	//
+	// WORKLIST
+	//
+	public RadiologyWorklistDelta getWorklistChanges(Date date,
+			long sinceVersion) throws ParseException {
+		RadiologyDepartment department = getCurrentRadiologyDepartment();
+		if (department == null) {
+			return null;
+		}
+		RadiologyWorklist worklist = RadiologyWorklistCache.getWorklist(
+				department.getId(), date);
+		synchronized (worklist) {
+			List<Integer> changedOrderIds = worklist.takeChangedOrderIds();
+			if (worklist.isExpired()) {
+				loadWorklist(worklist, getTestTreeMap(department));
+			} else if (!changedOrderIds.isEmpty()) {
+				Map<Concept, Set<Concept>> testTreeMap = getTestTreeMap(department);
+				Set<Concept> tests = getTests(testTreeMap);
+				OrderType orderType = getRadiologyOrderType();
+				for (Integer orderId : changedOrderIds) {
+					Order order = Context.getOrderService().getOrder(orderId);
+					TestModel model = null;
+					if (isOnWorklist(order, worklist, orderType, tests)) {
+						model = RadiologyUtil.generateModel(order,
+								dao.getRadiologyTestByOrder(order),
+								testTreeMap);
+					}
+					worklist.update(orderId, model);
+				}
+			}
+			return worklist.getChanges(sinceVersion);
+		}
+	}
 
+	private void loadWorklist(RadiologyWorklist worklist,
+			Map<Concept, Set<Concept>> testTreeMap) throws ParseException {
+		List<Order> orders = dao.getOrders(worklist.getDate(),
+				getRadiologyOrderType(), getTests(testTreeMap), null, 1, 0);
+		Map<Integer, RadiologyTest> testsByOrder = new HashMap<Integer, RadiologyTest>();
+		for (RadiologyTest test : dao.getRadiologyTestsByOrders(orders)) {
+			testsByOrder.put(test.getOrder().getOrderId(), test);
+		}
+		List<TestModel> models = new ArrayList<TestModel>(orders.size());
+		for (Order order : orders) {
+			models.add(RadiologyUtil.generateModel(order, testsByOrder
+					.get(order.getOrderId()), testTreeMap));
+		}
+		worklist.load(models);
 	}
 
-	public List<RadiologyTest> getAllRadiologyTestsByDate(Date date,
-			String phrase, Concept investigation) throws ParseException {
-		List<RadiologyTest> tests = dao.getRadiologyTestsByDate(date);
-		return filterRadiologyTests(tests, phrase, investigation);
-	}
-
-	private List<RadiologyTest> filterRadiologyTests(List<RadiologyTest> tests,
-			String phrase, Concept investigation) {
-
-		// patient filtered
-		List<RadiologyTest> patientFilteredOrders = new ArrayList<RadiologyTest>();
-		for (RadiologyTest test : tests) {
-			Patient patient = test.getPatient();
-			String fullname = PatientUtils.getFullName(patient).toLowerCase();
-			String identifier = patient.getPatientIdentifier().getIdentifier()
-					.toLowerCase();
-			phrase = phrase.toLowerCase();
-			if ((fullname.contains(phrase)) || (identifier.contains(phrase))) {
-				patientFilteredOrders.add(test);
+	/**
+	 * Map every investigation of the department to its tests
+	 */
+	private Map<Concept, Set<Concept>> getTestTreeMap(
+			RadiologyDepartment department) {
+		HospitalCoreService hcs = Context.getService(HospitalCoreService.class);
+		ConceptGraph graph = hcs.getConceptGraph();
+		Map<Concept, int[]> testIds = new HashMap<Concept, int[]>();
+		List<Integer> conceptIds = new ArrayList<Integer>();
+		for (Concept investigation : department.getInvestigations()) {
+			int[] ids = graph.getDescendantIds(investigation.getConceptId());
+			testIds.put(investigation, ids);
+			for (int id : ids) {
+				conceptIds.add(id);
 			}
 		}
-
-		// investigation filtered
-		List<RadiologyTest> investigationFilteredOrders = new ArrayList<RadiologyTest>();
-		if (investigation != null) {
-			TestTree tree = new TestTree(investigation);
-			Set<ConceptNode> nodes = tree.getRootNode().getChildNodes();
-			for (RadiologyTest test : patientFilteredOrders) {
-				ConceptNode node = new ConceptNode(test.getConcept());
-				if (nodes.contains(node)) {
-					investigationFilteredOrders.add(test);
+		Map<Integer, Concept> concepts = hcs.getConcepts(conceptIds);
+		Map<Concept, Set<Concept>> testTreeMap = new HashMap<Concept, Set<Concept>>();
+		for (Map.Entry<Concept, int[]> entry : testIds.entrySet()) {
+			Set<Concept> tests = new HashSet<Concept>();
+			for (int id : entry.getValue()) {
+				Concept test = concepts.get(id);
+				if (test != null) {
+					tests.add(test);
 				}
 			}
-		} else {
-			investigationFilteredOrders = patientFilteredOrders;
+			testTreeMap.put(entry.getKey(), tests);
 		}
+		return testTreeMap;
+	}
 
-		return investigationFilteredOrders;
+	private Set<Concept> getTests(Map<Concept, Set<Concept>> testTreeMap) {
+		Set<Concept> tests = new HashSet<Concept>();
+		for (Set<Concept> investigationTests : testTreeMap.values()) {
+			tests.addAll(investigationTests);
+		}
+		return tests;
+	}
+
+	/**
+	 * Whether an order is one of the not completed orders of the worklist's
+	 * day and department
+	 */
+	private boolean isOnWorklist(Order order, RadiologyWorklist worklist,
+			OrderType orderType, Set<Concept> tests) {
+		if (order == null || Boolean.TRUE.equals(order.getVoided())
+				|| Boolean.TRUE.equals(order.getDiscontinued())
+				|| order.getStartDate() == null || order.getOrderType() == null
+				|| !orderType.getOrderTypeId().equals(
+						order.getOrderType().getOrderTypeId())
+				|| !tests.contains(order.getConcept())) {
+			return false;
+		}
+		return DayRange.of(worklist.getDate()).contains(order.getStartDate());
 	}
 
 	public String completeTest(RadiologyTest test) {
@@ -357,6 +443,7 @@ public class RadiologyServiceImpl extends BaseOpenmrsService implements
 				Context.getOrderService().saveOrder(order);
 				test.setStatus(RadiologyConstants.TEST_STATUS_COMPLETED);
 				saveRadiologyTest(test);
+				RadiologyWorklistCache.markChanged(order);
 				return RadiologyConstants.COMPLETE_TEST_RETURN_STATUS_SUCCESS;
 			}
 		}
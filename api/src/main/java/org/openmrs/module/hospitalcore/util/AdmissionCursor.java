@@ -0,0 +1,84 @@
+/**
+ *  Copyright 2010 Society for Health Information Systems Programmes, India (HISP India)
+ *
+ *  This file is part of Hospital-core module.
+ *
+ *  Hospital-core module is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  Hospital-core module is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Hospital-core module.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+
+package org.openmrs.module.hospitalcore.util;
+
+import java.util.Date;
+
+/**
+ * Position in a list of admissions ordered by admission date and id. The
+ * next page starts right after it, however many rows were added before. An
+ * admission without a date is written as <code>null-id</code>.
+ */
+public class AdmissionCursor {
+
+	private final Date admissionDate;
+	private final Integer id;
+
+	private static final String NULL_DATE = "null";
+
+	public AdmissionCursor(Date admissionDate, Integer id) {
+		this.admissionDate = admissionDate;
+		this.id = id;
+	}
+
+	/**
+	 * Parse a cursor written by {@link #toString()}
+	 * 
+	 * @param cursor
+	 * @return null when the cursor is blank, the first page
+	 * @throws IllegalArgumentException
+	 *             when the cursor can not be read
+	 */
+	public static AdmissionCursor parse(String cursor) {
+		if (cursor == null || cursor.trim().length() == 0) {
+			return null;
+		}
+		int separator = cursor.indexOf('-', 1);
+		if (separator < 0) {
+			throw new IllegalArgumentException("Invalid admission cursor: "
+					+ cursor);
+		}
+		try {
+			String date = cursor.substring(0, separator);
+			return new AdmissionCursor(NULL_DATE.equals(date) ? null
+					: new Date(Long.parseLong(date)), Integer.valueOf(cursor
+					.substring(separator + 1)));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid admission cursor: "
+					+ cursor);
+		}
+	}
+
+	public Date getAdmissionDate() {
+		return admissionDate;
+	}
+
+	public Integer getId() {
+		return id;
+	}
+
+	@Override
+	public String toString() {
+		return (admissionDate == null ? NULL_DATE : Long
+				.toString(admissionDate.getTime()))
+				+ "-" + id;
+	}
+}
@@ -0,0 +1,137 @@
+/**
+ *  Copyright 2010 Society for Health Information Systems Programmes, India (HISP India)
+ *
+ *  This file is part of Hospital-core module.
+ *
+ *  Hospital-core module is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  Hospital-core module is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Hospital-core module.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+
+package org.openmrs.module.hospitalcore.util;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+/**
+ * The billing totals of one bill type over some days, split by the
+ * dimensions asked for. Dimensions not asked for are null.
+ * <p>
+ * Patient service bills are totalled per item and service, ambulance and
+ * tender bills per item and ambulance or tender, miscellaneous bills per
+ * bill and miscellaneous service. The waiver is the part of the price not
+ * charged, <code>amount - actualAmount</code>, and the count the quantity,
+ * or the number of trips for ambulances.
+ */
+public class BillingDailyTotal {
+
+	public static final String BY_DAY = "day";
+	public static final String BY_SERVICE = "service";
+	public static final String BY_CREATOR = "creator";
+	/**
+	 * The category concept of billable services, null for other bill types
+	 */
+	public static final String BY_CATEGORY = "category";
+
+	private String billType;
+	private Date day;
+	private Integer serviceId;
+	private Integer creatorId;
+	private Integer categoryId;
+	private BigDecimal amount;
+	private BigDecimal actualAmount;
+	private BigDecimal waiver;
+	private long count;
+
+	/**
+	 * @return simple name of the bill entity, e.g. PatientServiceBill
+	 */
+	public String getBillType() {
+		return billType;
+	}
+
+	public void setBillType(String billType) {
+		this.billType = billType;
+	}
+
+	public Date getDay() {
+		return day;
+	}
+
+	public void setDay(Date day) {
+		this.day = day;
+	}
+
+	/**
+	 * @return id of the billable service, miscellaneous service, ambulance
+	 *         or tender, depending on the bill type
+	 */
+	public Integer getServiceId() {
+		return serviceId;
+	}
+
+	public void setServiceId(Integer serviceId) {
+		this.serviceId = serviceId;
+	}
+
+	/**
+	 * @return user id of the cashier who made the bills
+	 */
+	public Integer getCreatorId() {
+		return creatorId;
+	}
+
+	public void setCreatorId(Integer creatorId) {
+		this.creatorId = creatorId;
+	}
+
+	public Integer getCategoryId() {
+		return categoryId;
+	}
+
+	public void setCategoryId(Integer categoryId) {
+		this.categoryId = categoryId;
+	}
+
+	public BigDecimal getAmount() {
+		return amount;
+	}
+
+	public void setAmount(BigDecimal amount) {
+		this.amount = amount;
+	}
+
+	public BigDecimal getActualAmount() {
+		return actualAmount;
+	}
+
+	public void setActualAmount(BigDecimal actualAmount) {
+		this.actualAmount = actualAmount;
+	}
+
+	public BigDecimal getWaiver() {
+		return waiver;
+	}
+
+	public void setWaiver(BigDecimal waiver) {
+		this.waiver = waiver;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public void setCount(long count) {
+		this.count = count;
+	}
+}
@@ -0,0 +1,62 @@
+/**
+ *  Copyright 2010 Society for Health Information Systems Programmes, India (HISP India)
+ *
+ *  This file is part of Hospital-core module.
+ *
+ *  Hospital-core module is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  Hospital-core module is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Hospital-core module.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+
+package org.openmrs.module.hospitalcore.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Version counter of an in-memory cache. Cached values remember the version
+ * they were built for and are rebuilt once it has moved on.
+ */
+public class CacheVersion {
+
+	private final AtomicLong version = new AtomicLong();
+
+	/**
+	 * Get the current version
+	 * 
+	 * @return
+	 */
+	public long get() {
+		return version.get();
+	}
+
+	/**
+	 * Move to a new version. When called inside a transaction the version
+	 * moves again once the transaction completes, so a value rebuilt from the
+	 * uncommitted state by another thread is not kept.
+	 */
+	public void increment() {
+		version.incrementAndGet();
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager
+					.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+						public void afterCompletion(int status) {
+							version.incrementAndGet();
+						}
+					});
+		}
+	}
+}
@@ -0,0 +1,217 @@
+/**
+ *  Copyright 2010 Society for Health Information Systems Programmes, India (HISP India)
+ *
+ *  This file is part of Hospital-core module.
+ *
+ *  Hospital-core module is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  Hospital-core module is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Hospital-core module.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+
+package org.openmrs.module.hospitalcore.util;
+
+import java.util.Calendar;
+import java.util.Date;
+
+/**
+ * An immutable range of whole days, from the start of the first day up to,
+ * but not including, the start of the day after the last one. Queries should
+ * use <code>start &lt;= value &lt; end</code>, which also covers the last
+ * second of a day that <code>"23:59:59"</code> bounds miss.
+ * <p>
+ * The ranges are computed with a calendar per thread, nothing is formatted
+ * or parsed, so they can be used from the singleton DAOs by any number of
+ * threads.
+ */
+public final class DayRange {
+
+	private static final ThreadLocal<Calendar> CALENDAR = new ThreadLocal<Calendar>() {
+
+		protected Calendar initialValue() {
+			return Calendar.getInstance();
+		}
+	};
+
+	private final long start;
+	private final long end;
+
+	private DayRange(long start, long end) {
+		this.start = start;
+		this.end = end;
+	}
+
+	/**
+	 * The day of the given date
+	 * 
+	 * @param date
+	 * @return
+	 */
+	public static DayRange of(Date date) {
+		return between(date, date);
+	}
+
+	/**
+	 * The current day
+	 * 
+	 * @return
+	 */
+	public static DayRange today() {
+		return of(new Date());
+	}
+
+	/**
+	 * The days from the day of <code>from</code> up to and including the day
+	 * of <code>to</code>
+	 * 
+	 * @param from
+	 * @param to
+	 * @return
+	 */
+	public static DayRange between(Date from, Date to) {
+		Calendar calendar = CALENDAR.get();
+		calendar.setTimeInMillis(from.getTime());
+		long start = truncate(calendar);
+		calendar.setTimeInMillis(to.getTime());
+		truncate(calendar);
+		calendar.add(Calendar.DAY_OF_MONTH, 1);
+		return new DayRange(start, truncate(calendar));
+	}
+
+	/**
+	 * The day of a date entered as <code>dd/MM/yyyy</code>
+	 * 
+	 * @param date
+	 * @return
+	 * @throws IllegalArgumentException
+	 *             if the date is not in the expected format
+	 */
+	public static DayRange parse(String date) {
+		Date day = toDate(date);
+		return between(day, day);
+	}
+
+	/**
+	 * The days between two dates entered as <code>dd/MM/yyyy</code>, both
+	 * included
+	 * 
+	 * @param from
+	 * @param to
+	 * @return
+	 * @throws IllegalArgumentException
+	 *             if a date is not in the expected format
+	 */
+	public static DayRange parse(String from, String to) {
+		return between(toDate(from), toDate(to));
+	}
+
+	/**
+	 * The start of the first day
+	 * 
+	 * @return
+	 */
+	public Date getStart() {
+		return new Date(start);
+	}
+
+	/**
+	 * The start of the day after the last day, excluded from the range
+	 * 
+	 * @return
+	 */
+	public Date getEnd() {
+		return new Date(end);
+	}
+
+	public long getStartMillis() {
+		return start;
+	}
+
+	public long getEndMillis() {
+		return end;
+	}
+
+	/**
+	 * Whether a date lies within the range
+	 * 
+	 * @param date
+	 * @return
+	 */
+	public boolean contains(Date date) {
+		long time = date.getTime();
+		return time >= start && time < end;
+	}
+
+	/**
+	 * The range moved by a number of days
+	 * 
+	 * @param days
+	 * @return
+	 */
+	public DayRange shift(int days) {
+		Calendar calendar = CALENDAR.get();
+		calendar.setTimeInMillis(start);
+		calendar.add(Calendar.DAY_OF_MONTH, days);
+		long shiftedStart = truncate(calendar);
+		calendar.setTimeInMillis(end);
+		calendar.add(Calendar.DAY_OF_MONTH, days);
+		return new DayRange(shiftedStart, truncate(calendar));
+	}
+
+	public boolean equals(Object obj) {
+		if (!(obj instanceof DayRange)) {
+			return false;
+		}
+		DayRange other = (DayRange) obj;
+		return start == other.start && end == other.end;
+	}
+
+	public int hashCode() {
+		return (int) (start ^ (start >>> 32)) * 31
+				+ (int) (end ^ (end >>> 32));
+	}
+
+	public String toString() {
+		return "[" + getStart() + ", " + getEnd() + ")";
+	}
+
+	/**
+	 * Move to the start of the day. Days without a midnight, where daylight
+	 * saving starts at 00:00, start at 01:00, so a day added to such a start
+	 * has to be truncated again.
+	 */
+	private static long truncate(Calendar calendar) {
+		calendar.set(Calendar.HOUR_OF_DAY, 0);
+		calendar.set(Calendar.MINUTE, 0);
+		calendar.set(Calendar.SECOND, 0);
+		calendar.set(Calendar.MILLISECOND, 0);
+		return calendar.getTimeInMillis();
+	}
+
+	private static Date toDate(String date) {
+		String[] parts = date == null ? new String[0] : date.trim().split("/");
+		if (parts.length != 3) {
+			throw new IllegalArgumentException("Invalid date: " + date);
+		}
+		try {
+			int day = Integer.parseInt(parts[0]);
+			int month = Integer.parseInt(parts[1]);
+			int year = Integer.parseInt(parts[2]);
+			Calendar calendar = CALENDAR.get();
+			calendar.clear();
+			calendar.set(year, month - 1, day);
+			return calendar.getTime();
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid date: " + date);
+		}
+	}
+}
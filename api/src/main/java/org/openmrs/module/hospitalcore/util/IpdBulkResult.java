@@ -0,0 +1,75 @@
+/**
+ *  Copyright 2010 Society for Health Information Systems Programmes, India (HISP India)
+ *
+ *  This file is part of Hospital-core module.
+ *
+ *  Hospital-core module is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  Hospital-core module is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Hospital-core module.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+
+package org.openmrs.module.hospitalcore.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.openmrs.module.hospitalcore.model.IpdPatientAdmitted;
+import org.openmrs.module.hospitalcore.model.IpdPatientAdmittedLog;
+
+/**
+ * The outcome of a bulk transfer or discharge, for each admitted patient
+ * id in the order they were given
+ */
+public class IpdBulkResult {
+
+	private final Map<Integer, IpdPatientAdmittedLog> logs = new LinkedHashMap<Integer, IpdPatientAdmittedLog>();
+	private final Map<Integer, IpdPatientAdmitted> admitted = new LinkedHashMap<Integer, IpdPatientAdmitted>();
+	private final Map<Integer, String> errors = new LinkedHashMap<Integer, String>();
+
+	public void done(Integer id, IpdPatientAdmittedLog log,
+			IpdPatientAdmitted newAdmitted) {
+		logs.put(id, log);
+		if (newAdmitted != null) {
+			admitted.put(id, newAdmitted);
+		}
+	}
+
+	public void failed(Integer id, String error) {
+		errors.put(id, error);
+	}
+
+	public boolean isDone(Integer id) {
+		return logs.containsKey(id);
+	}
+
+	/**
+	 * @return the log written for each patient transferred or discharged
+	 */
+	public Map<Integer, IpdPatientAdmittedLog> getLogs() {
+		return logs;
+	}
+
+	/**
+	 * @return the new admitted row of each patient transferred
+	 */
+	public Map<Integer, IpdPatientAdmitted> getAdmitted() {
+		return admitted;
+	}
+
+	/**
+	 * @return why a patient was skipped, by admitted id
+	 */
+	public Map<Integer, String> getErrors() {
+		return errors;
+	}
+}
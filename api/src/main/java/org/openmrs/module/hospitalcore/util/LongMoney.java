@@ -0,0 +1,371 @@
+/**
+ *  Copyright 2010 Society for Health Information Systems Programmes, India (HISP India)
+ *
+ *  This file is part of Hospital-core module.
+ *
+ *  Hospital-core module is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  Hospital-core module is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Hospital-core module.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+
+package org.openmrs.module.hospitalcore.util;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.Collection;
+import java.util.Currency;
+
+/**
+ * An amount of money kept as a <code>long</code> number of units of
+ * <code>10^-scale</code>, e.g. 12345 with scale 2 for 123.45, for totals over
+ * many bill items. Unlike {@link Money} adding or multiplying needs no
+ * {@link BigDecimal}. The static <code>sum</code> methods add up into a
+ * <code>long</code>: {@link #sum(long[])} creates no object at all, the sums
+ * of {@link BigDecimal} amounts still read one {@link BigInteger} per amount,
+ * see {@link #toUnits(BigDecimal, int)}.
+ * <p>
+ * The scale is between 0 and the decimals of the currency, like the amounts
+ * {@link Money} accepts, and the conversions from and to {@link Money} and
+ * {@link BigDecimal} are exact. {@link #times(double)} rounds to the decimals
+ * of the currency with the same result as {@link Money#times(double)}. Going
+ * past the range of a <code>long</code> throws an {@link ArithmeticException}
+ * instead of wrapping.
+ */
+public final class LongMoney implements Comparable<LongMoney>, Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final long[] POWERS_OF_TEN = new long[19];
+
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+		}
+	}
+
+	private final long units;
+	private final int scale;
+	private final Currency currency;
+	private final RoundingMode rounding;
+
+	public LongMoney(long units, int scale, Currency currency, RoundingMode rounding) {
+		if (currency == null) {
+			throw new IllegalArgumentException("Currency cannot be null");
+		}
+		if (rounding == null) {
+			throw new IllegalArgumentException("Rounding cannot be null");
+		}
+		if (scale < 0 || scale > currency.getDefaultFractionDigits()) {
+			throw new IllegalArgumentException("Scale is " + scale + ", but currency takes 0 to "
+					+ currency.getDefaultFractionDigits() + " decimals.");
+		}
+		this.units = units;
+		this.scale = scale;
+		this.currency = currency;
+		this.rounding = rounding;
+	}
+
+	/**
+	 * With the currency and rounding given to {@link Money#init}
+	 */
+	public LongMoney(long units, int scale) {
+		this(units, scale, Money.getDefaultCurrency(), Money.getDefaultRounding());
+	}
+
+	/**
+	 * @param amount
+	 *            with at most the decimals of the currency, a negative scale is
+	 *            taken as 0
+	 * @throws ArithmeticException
+	 *             if the amount does not fit in a <code>long</code>
+	 */
+	public static LongMoney valueOf(BigDecimal amount, Currency currency, RoundingMode rounding) {
+		int scale = Math.max(amount.scale(), 0);
+		return new LongMoney(toUnits(amount, scale), scale, currency, rounding);
+	}
+
+	public static LongMoney valueOf(Money money) {
+		return valueOf(money.getAmount(), money.getCurrency(), money.getRoundingStyle());
+	}
+
+	public Money toMoney() {
+		return new Money(getAmount(), currency, rounding);
+	}
+
+	public BigDecimal getAmount() {
+		return BigDecimal.valueOf(units, scale);
+	}
+
+	public long getUnits() {
+		return units;
+	}
+
+	public int getScale() {
+		return scale;
+	}
+
+	public Currency getCurrency() {
+		return currency;
+	}
+
+	public RoundingMode getRoundingStyle() {
+		return rounding;
+	}
+
+	public boolean isZero() {
+		return units == 0;
+	}
+
+	/**
+	 * The scale of the result is the larger of both scales, currencies must
+	 * match.
+	 */
+	public LongMoney plus(LongMoney that) {
+		checkCurrenciesMatch(currency, that);
+		int resultScale = Math.max(scale, that.scale);
+		return new LongMoney(add(rescale(units, scale, resultScale), rescale(that.units, that.scale, resultScale)),
+				resultScale, currency, rounding);
+	}
+
+	public LongMoney minus(LongMoney that) {
+		return plus(that.negate());
+	}
+
+	public LongMoney negate() {
+		return times(-1);
+	}
+
+	public LongMoney times(int factor) {
+		return new LongMoney(multiply(units, factor), scale, currency, rounding);
+	}
+
+	/**
+	 * Multiply by the decimal value of <code>Double.toString(factor)</code>
+	 * and round to the decimals of the currency, as {@link Money#times(double)}
+	 * does, e.g. for waiver percentages
+	 */
+	public LongMoney times(double factor) {
+		BigDecimal decimal = new BigDecimal(Double.toString(factor));
+		int digits = currency.getDefaultFractionDigits();
+		// units * unscaled * 10^-shift is the product at the decimals of the currency
+		int shift = scale + decimal.scale() - digits;
+		BigInteger unscaled = decimal.unscaledValue();
+		if (unscaled.bitLength() < 64 && shift >= 0 && shift < POWERS_OF_TEN.length
+				&& fits(units, unscaled.longValue())) {
+			long result = divide(units * unscaled.longValue(), POWERS_OF_TEN[shift], rounding);
+			return new LongMoney(result, digits, currency, rounding);
+		}
+		// larger than a long or a factor like 1.0E10
+		BigDecimal amount = getAmount().multiply(decimal).setScale(digits, rounding);
+		return new LongMoney(toUnits(amount, digits), digits, currency, rounding);
+	}
+
+	public String toString() {
+		return getAmount().toPlainString() + " " + currency.getSymbol();
+	}
+
+	/**
+	 * Sensitive to scale, like {@link Money#equals(Object)}
+	 */
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof LongMoney)) {
+			return false;
+		}
+		LongMoney that = (LongMoney) obj;
+		return units == that.units && scale == that.scale && currency.equals(that.currency)
+				&& rounding == that.rounding;
+	}
+
+	public int hashCode() {
+		int hash = (int) (units ^ (units >>> 32));
+		hash = 37 * hash + scale;
+		hash = 37 * hash + currency.hashCode();
+		return 37 * hash + rounding.hashCode();
+	}
+
+	public int compareTo(LongMoney that) {
+		int comparison;
+		if (scale == that.scale) {
+			comparison = units < that.units ? -1 : (units == that.units ? 0 : 1);
+		} else {
+			comparison = getAmount().compareTo(that.getAmount());
+		}
+		if (comparison != 0) {
+			return comparison;
+		}
+		comparison = currency.getCurrencyCode().compareTo(that.currency.getCurrencyCode());
+		if (comparison != 0) {
+			return comparison;
+		}
+		return rounding.compareTo(that.rounding);
+	}
+
+	/**
+	 * @return the sum of the units
+	 * @throws ArithmeticException
+	 *             if the sum does not fit in a <code>long</code>
+	 */
+	public static long sum(long[] units) {
+		long sum = 0;
+		for (int i = 0; i < units.length; i++) {
+			sum = add(sum, units[i]);
+		}
+		return sum;
+	}
+
+	/**
+	 * @param amounts
+	 *            e.g. the amounts of bill items, null amounts are left out
+	 * @param scale
+	 *            of the result, at least the scale of every amount
+	 * @return the sum in units of <code>10^-scale</code>
+	 * @throws ArithmeticException
+	 *             if an amount has more decimals or the sum does not fit in a
+	 *             <code>long</code>
+	 */
+	public static long sum(BigDecimal[] amounts, int scale) {
+		long sum = 0;
+		for (int i = 0; i < amounts.length; i++) {
+			if (amounts[i] != null) {
+				sum = add(sum, toUnits(amounts[i], scale));
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * @see #sum(BigDecimal[], int)
+	 */
+	public static long sum(Collection<BigDecimal> amounts, int scale) {
+		long sum = 0;
+		for (BigDecimal amount : amounts) {
+			if (amount != null) {
+				sum = add(sum, toUnits(amount, scale));
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * Sum amounts of one currency, like {@link Money#sum(Collection, Currency)}
+	 * 
+	 * @param currencyIfEmpty
+	 *            the currency all amounts must have, and of the zero returned
+	 *            when there is nothing to sum
+	 */
+	public static LongMoney sum(Collection<LongMoney> moneys, Currency currencyIfEmpty) {
+		// Money.sum adds to a zero of currencyIfEmpty, which takes its currency and default rounding
+		int scale = 0;
+		for (LongMoney money : moneys) {
+			checkCurrenciesMatch(currencyIfEmpty, money);
+			scale = Math.max(scale, money.scale);
+		}
+		long sum = 0;
+		for (LongMoney money : moneys) {
+			sum = add(sum, rescale(money.units, money.scale, scale));
+		}
+		return new LongMoney(sum, scale, currencyIfEmpty, Money.getDefaultRounding());
+	}
+
+	/**
+	 * Creates one {@link BigInteger} for the unscaled value, and a
+	 * {@link BigDecimal} first when the amount has another scale
+	 * 
+	 * @return the amount in units of <code>10^-scale</code>
+	 * @throws ArithmeticException
+	 *             if the amount has more decimals or does not fit in a
+	 *             <code>long</code>
+	 */
+	public static long toUnits(BigDecimal amount, int scale) {
+		BigInteger unscaled = (amount.scale() == scale ? amount : amount.setScale(scale)).unscaledValue();
+		if (unscaled.bitLength() > 63) {
+			throw new ArithmeticException("Amount " + amount + " is out of range");
+		}
+		return unscaled.longValue();
+	}
+
+	/**
+	 * Divide by a positive divisor, rounding as {@link BigDecimal} does
+	 */
+	static long divide(long dividend, long divisor, RoundingMode rounding) {
+		long quotient = dividend / divisor;
+		long remainder = dividend % divisor;
+		if (remainder == 0) {
+			return quotient;
+		}
+		int sign = dividend < 0 ? -1 : 1;
+		// |remainder| < divisor <= 10^18, so twice the remainder fits
+		long twice = Math.abs(remainder) * 2;
+		switch (rounding) {
+		case UNNECESSARY:
+			throw new ArithmeticException("Rounding necessary");
+		case DOWN:
+			return quotient;
+		case UP:
+			return quotient + sign;
+		case FLOOR:
+			return sign < 0 ? quotient - 1 : quotient;
+		case CEILING:
+			return sign > 0 ? quotient + 1 : quotient;
+		case HALF_UP:
+			return twice >= divisor ? quotient + sign : quotient;
+		case HALF_DOWN:
+			return twice > divisor ? quotient + sign : quotient;
+		default:
+			if (twice == divisor) {
+				return (quotient & 1) == 0 ? quotient : quotient + sign;
+			}
+			return twice > divisor ? quotient + sign : quotient;
+		}
+	}
+
+	private static void checkCurrenciesMatch(Currency currency, LongMoney that) {
+		if (!currency.equals(that.currency)) {
+			throw new Money.MismatchedCurrencyException(that.currency + " doesn't match the expected currency : "
+					+ currency);
+		}
+	}
+
+	private static long rescale(long units, int scale, int newScale) {
+		return scale == newScale ? units : multiply(units, POWERS_OF_TEN[newScale - scale]);
+	}
+
+	private static long add(long a, long b) {
+		long sum = a + b;
+		if (((a ^ sum) & (b ^ sum)) < 0) {
+			throw new ArithmeticException("Sum of money is out of range");
+		}
+		return sum;
+	}
+
+	private static long multiply(long a, long b) {
+		if (!fits(a, b)) {
+			throw new ArithmeticException("Product of money is out of range");
+		}
+		return a * b;
+	}
+
+	/**
+	 * @return whether the product fits in a <code>long</code>
+	 */
+	private static boolean fits(long a, long b) {
+		long product = a * b;
+		return a == 0 || (product / a == b && !(a == -1 && b == Long.MIN_VALUE));
+	}
+}
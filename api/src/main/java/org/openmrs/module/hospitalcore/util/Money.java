@@ -187,6 +187,12 @@ public final class Money implements Comparable<Money>, Serializable {
     this(aAmount, aCurrency, DEFAULT_ROUNDING);
   }
   
+  /** Return the currency set by {@link #init(Currency, RoundingMode)}. */
+  static Currency getDefaultCurrency() { return DEFAULT_CURRENCY; }
+  
+  /** Return the rounding style set by {@link #init(Currency, RoundingMode)}. */
+  static RoundingMode getDefaultRounding() { return DEFAULT_ROUNDING; }
+  
   /** Return the amount passed to the constructor. */
   public BigDecimal getAmount() { return fAmount; }
   
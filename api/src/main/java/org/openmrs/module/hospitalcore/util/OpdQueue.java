@@ -0,0 +1,230 @@
+/**
+ *  Copyright 2010 Society for Health Information Systems Programmes, India (HISP India)
+ *
+ *  This file is part of Hospital-core module.
+ *
+ *  Hospital-core module is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  Hospital-core module is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Hospital-core module.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+
+package org.openmrs.module.hospitalcore.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Today's OPD queue kept in memory, in order of arrival for every OPD and
+ * indexed by patient identifier. Counts and pages are worked out here; the
+ * patient queue service only loads the rows of the page it returns.
+ * <p>
+ * The database stays the source of truth: the queue is loaded from it on
+ * first use, again on a new day and every ten minutes to pick up changes
+ * made outside the patient queue service.
+ */
+public class OpdQueue {
+
+	private static final long MAX_AGE = 10 * 60 * 1000L;
+
+	private static final Comparator<OpdQueueEntry> ARRIVAL = new Comparator<OpdQueueEntry>() {
+
+		public int compare(OpdQueueEntry e1, OpdQueueEntry e2) {
+			if (e1.getCreatedOn() != e2.getCreatedOn()) {
+				return e1.getCreatedOn() < e2.getCreatedOn() ? -1 : 1;
+			}
+			return e1.getId().compareTo(e2.getId());
+		}
+	};
+
+	private final DayRange day;
+	private final long loadedAt = System.currentTimeMillis();
+	private final Map<Integer, OpdQueueEntry> entries = new HashMap<Integer, OpdQueueEntry>();
+	private final TreeSet<OpdQueueEntry> arrivals = new TreeSet<OpdQueueEntry>(
+			ARRIVAL);
+	private final Map<Integer, TreeSet<OpdQueueEntry>> opds = new HashMap<Integer, TreeSet<OpdQueueEntry>>();
+	private final Map<String, TreeSet<OpdQueueEntry>> identifiers = new HashMap<String, TreeSet<OpdQueueEntry>>();
+
+	public OpdQueue(DayRange day, List<OpdQueueEntry> entries) {
+		this.day = day;
+		for (OpdQueueEntry entry : entries) {
+			put(entry);
+		}
+	}
+
+	public DayRange getDay() {
+		return day;
+	}
+
+	/**
+	 * @return true when the queue is of another day or too old to be served
+	 */
+	public boolean isExpired() {
+		return !day.contains(new Date())
+				|| System.currentTimeMillis() - loadedAt > MAX_AGE;
+	}
+
+	/**
+	 * Add or replace a row. Rows created on another day are only removed.
+	 * 
+	 * @param entry
+	 */
+	public synchronized void put(OpdQueueEntry entry) {
+		if (entry.getId() == null) {
+			return;
+		}
+		remove(entry.getId());
+		if (!day.contains(new Date(entry.getCreatedOn()))) {
+			return;
+		}
+		entries.put(entry.getId(), entry);
+		arrivals.add(entry);
+		index(opds, entry.getOpdConceptId(), entry);
+		index(identifiers, entry.getIdentifier(), entry);
+	}
+
+	public synchronized void remove(Integer id) {
+		OpdQueueEntry entry = entries.remove(id);
+		if (entry == null) {
+			return;
+		}
+		arrivals.remove(entry);
+		unindex(opds, entry.getOpdConceptId(), entry);
+		unindex(identifiers, entry.getIdentifier(), entry);
+	}
+
+	/**
+	 * Ids of a page of the queue in order of arrival, matching the
+	 * identifier or the name when a search text is given
+	 * 
+	 * @param searchText
+	 * @param opdConceptId
+	 *            all OPDs when null or 0
+	 * @param status
+	 * @param min
+	 * @param max
+	 *            the whole queue when 0
+	 * @return
+	 */
+	public synchronized List<Integer> list(String searchText,
+			Integer opdConceptId, String status, int min, int max) {
+		String text = StringUtils.isBlank(searchText) ? null
+				: OpdQueueEntry.lower(searchText);
+		List<Integer> ids = new ArrayList<Integer>();
+		int skipped = 0;
+		for (OpdQueueEntry entry : getEntries(opdConceptId != null
+				&& opdConceptId > 0 ? opdConceptId : null)) {
+			if (text != null && entry.getIdentifier().indexOf(text) < 0
+					&& entry.getName().indexOf(text) < 0) {
+				continue;
+			}
+			if (!matches(entry, status)) {
+				continue;
+			}
+			if (max > 0 && skipped++ < min) {
+				continue;
+			}
+			ids.add(entry.getId());
+			if (max > 0 && ids.size() == max) {
+				break;
+			}
+		}
+		return ids;
+	}
+
+	/**
+	 * Count the rows matching the name, of one OPD when given
+	 * 
+	 * @param patientName
+	 * @param opdConceptId
+	 * @param status
+	 * @return
+	 */
+	public synchronized int count(String patientName, Integer opdConceptId,
+			String status) {
+		String name = StringUtils.isBlank(patientName) ? null : OpdQueueEntry
+				.lower(patientName);
+		if (name == null && StringUtils.isBlank(status)) {
+			return getEntries(opdConceptId).size();
+		}
+		int count = 0;
+		for (OpdQueueEntry entry : getEntries(opdConceptId)) {
+			if ((name == null || entry.getName().indexOf(name) >= 0)
+					&& matches(entry, status)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * The id of the latest row of a patient in an OPD
+	 * 
+	 * @param patientIdentifier
+	 * @param opdConceptId
+	 * @return null when the patient is not in that queue
+	 */
+	public synchronized Integer getLatestId(String patientIdentifier,
+			Integer opdConceptId) {
+		TreeSet<OpdQueueEntry> rows = identifiers.get(OpdQueueEntry
+				.lower(patientIdentifier));
+		if (rows == null) {
+			return null;
+		}
+		Integer id = null;
+		for (OpdQueueEntry entry : rows) {
+			if (opdConceptId != null
+					&& opdConceptId.equals(entry.getOpdConceptId())) {
+				id = entry.getId();
+			}
+		}
+		return id;
+	}
+
+	private TreeSet<OpdQueueEntry> getEntries(Integer opdConceptId) {
+		if (opdConceptId == null) {
+			return arrivals;
+		}
+		TreeSet<OpdQueueEntry> rows = opds.get(opdConceptId);
+		return rows != null ? rows : new TreeSet<OpdQueueEntry>(ARRIVAL);
+	}
+
+	private static boolean matches(OpdQueueEntry entry, String status) {
+		return StringUtils.isBlank(status)
+				|| status.equalsIgnoreCase(entry.getStatus());
+	}
+
+	private static <K> void index(Map<K, TreeSet<OpdQueueEntry>> index,
+			K key, OpdQueueEntry entry) {
+		TreeSet<OpdQueueEntry> rows = index.get(key);
+		if (rows == null) {
+			rows = new TreeSet<OpdQueueEntry>(ARRIVAL);
+			index.put(key, rows);
+		}
+		rows.add(entry);
+	}
+
+	private static <K> void unindex(Map<K, TreeSet<OpdQueueEntry>> index,
+			K key, OpdQueueEntry entry) {
+		TreeSet<OpdQueueEntry> rows = index.get(key);
+		if (rows != null && rows.remove(entry) && rows.isEmpty()) {
+			index.remove(key);
+		}
+	}
+}
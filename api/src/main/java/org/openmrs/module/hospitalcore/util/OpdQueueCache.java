@@ -0,0 +1,107 @@
+/**
+ *  Copyright 2010 Society for Health Information Systems Programmes, India (HISP India)
+ *
+ *  This file is part of Hospital-core module.
+ *
+ *  Hospital-core module is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  Hospital-core module is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Hospital-core module.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+
+package org.openmrs.module.hospitalcore.util;
+
+import org.openmrs.module.hospitalcore.model.OpdPatientQueue;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Holds today's OPD queue. Changes are applied once their transaction is
+ * committed, so the queue never shows rows that were rolled back.
+ * <p>
+ * Loading and changing the queue both lock this class, so a change
+ * committed while the queue is being loaded is applied to the new queue.
+ */
+public class OpdQueueCache {
+
+	private static OpdQueue queue;
+
+	/**
+	 * @return the queue, null when it was never loaded or invalidated
+	 */
+	public static synchronized OpdQueue getQueue() {
+		return queue;
+	}
+
+	public static synchronized void setQueue(OpdQueue opdQueue) {
+		queue = opdQueue;
+	}
+
+	/**
+	 * Put a saved queue row in the queue
+	 * 
+	 * @param opdPatientQueue
+	 */
+	public static void put(OpdPatientQueue opdPatientQueue) {
+		final OpdQueueEntry entry = OpdQueueEntry.of(opdPatientQueue);
+		afterCommit(new Runnable() {
+
+			public void run() {
+				synchronized (OpdQueueCache.class) {
+					if (queue != null) {
+						queue.put(entry);
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Remove a deleted queue row from the queue
+	 * 
+	 * @param opdPatientQueue
+	 */
+	public static void remove(OpdPatientQueue opdPatientQueue) {
+		final Integer id = opdPatientQueue.getId();
+		afterCommit(new Runnable() {
+
+			public void run() {
+				synchronized (OpdQueueCache.class) {
+					if (queue != null) {
+						queue.remove(id);
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Drop the queue, it is loaded again on next use
+	 */
+	public static synchronized void invalidate() {
+		queue = null;
+	}
+
+	private static void afterCommit(final Runnable change) {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager
+					.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+						public void afterCommit() {
+							change.run();
+						}
+					});
+		} else {
+			change.run();
+		}
+	}
+}
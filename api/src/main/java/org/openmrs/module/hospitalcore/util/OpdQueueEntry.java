@@ -0,0 +1,90 @@
+/**
+ *  Copyright 2010 Society for Health Information Systems Programmes, India (HISP India)
+ *
+ *  This file is part of Hospital-core module.
+ *
+ *  Hospital-core module is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  Hospital-core module is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Hospital-core module.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+
+package org.openmrs.module.hospitalcore.util;
+
+import java.util.Date;
+
+import org.openmrs.module.hospitalcore.model.OpdPatientQueue;
+
+/**
+ * The fields of an OPD queue row the in-memory queue filters and sorts on
+ */
+public class OpdQueueEntry {
+
+	private final Integer id;
+	private final Integer opdConceptId;
+	private final long createdOn;
+	private final String identifier;
+	private final String name;
+	private final String status;
+
+	public OpdQueueEntry(Integer id, Integer opdConceptId, Date createdOn,
+			String identifier, String name, String status) {
+		this.id = id;
+		this.opdConceptId = opdConceptId;
+		this.createdOn = createdOn != null ? createdOn.getTime() : 0;
+		this.identifier = lower(identifier);
+		this.name = lower(name);
+		this.status = status;
+	}
+
+	public static OpdQueueEntry of(OpdPatientQueue queue) {
+		Integer opdConceptId = queue.getOpdConcept() != null ? queue
+				.getOpdConcept().getConceptId() : null;
+		return new OpdQueueEntry(queue.getId(), opdConceptId, queue
+				.getCreatedOn(), queue.getPatientIdentifier(), queue
+				.getPatientName(), queue.getStatus());
+	}
+
+	public Integer getId() {
+		return id;
+	}
+
+	public Integer getOpdConceptId() {
+		return opdConceptId;
+	}
+
+	public long getCreatedOn() {
+		return createdOn;
+	}
+
+	/**
+	 * @return the patient identifier in lower case
+	 */
+	public String getIdentifier() {
+		return identifier;
+	}
+
+	/**
+	 * @return the patient name in lower case
+	 */
+	public String getName() {
+		return name;
+	}
+
+	public String getStatus() {
+		return status;
+	}
+
+	static String lower(String text) {
+		return text != null ? text.toLowerCase() : "";
+	}
+}
@@ -0,0 +1,86 @@
+/**
+ *  Copyright 2010 Society for Health Information Systems Programmes, India (HISP India)
+ *
+ *  This file is part of Hospital-core module.
+ *
+ *  Hospital-core module is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  Hospital-core module is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Hospital-core module.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+
+package org.openmrs.module.hospitalcore.util;
+
+import java.util.Date;
+
+/**
+ * Outcome of moving the OPD queue rows of past days to the queue log
+ */
+public class OpdQueueRollover {
+
+	private Date before;
+
+	private int rows;
+
+	private int batches;
+
+	private long slowestBatchMillis;
+
+	private long startedAt = System.currentTimeMillis();
+
+	private long durationMillis;
+
+	public OpdQueueRollover(Date before) {
+		this.before = before;
+	}
+
+	public void batchDone(int batchRows, long batchMillis) {
+		rows += batchRows;
+		batches++;
+		slowestBatchMillis = Math.max(slowestBatchMillis, batchMillis);
+	}
+
+	public void finish() {
+		durationMillis = System.currentTimeMillis() - startedAt;
+	}
+
+	/**
+	 * @return rows created before this date were moved
+	 */
+	public Date getBefore() {
+		return before;
+	}
+
+	public int getRows() {
+		return rows;
+	}
+
+	public int getBatches() {
+		return batches;
+	}
+
+	public long getSlowestBatchMillis() {
+		return slowestBatchMillis;
+	}
+
+	public long getDurationMillis() {
+		return durationMillis;
+	}
+
+	@Override
+	public String toString() {
+		return "OpdQueueRollover [before=" + before + ", rows=" + rows
+				+ ", batches=" + batches + ", slowestBatchMillis="
+				+ slowestBatchMillis + ", durationMillis=" + durationMillis
+				+ "]";
+	}
+}
@@ -0,0 +1,92 @@
+/**
+ *  Copyright 2010 Society for Health Information Systems Programmes, India (HISP India)
+ *
+ *  This file is part of Hospital-core module.
+ *
+ *  Hospital-core module is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  Hospital-core module is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Hospital-core module.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+
+package org.openmrs.module.hospitalcore.util;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import org.openmrs.module.hospitalcore.model.PatientCSV;
+
+/**
+ * Writes the daily patient visit report one record at a time. The underlying
+ * writer is flushed every {@link #FLUSH_ROWS} rows so a long export never
+ * keeps more than one chunk in memory.
+ */
+public class PatientCSVWriter {
+
+	public static final String HEADER = "ninID,patientID,visitID,patientName,mobile,landline,visitDate,visitTime,departmentID,patientTypeID,gender,age";
+
+	public static final int FLUSH_ROWS = 500;
+
+	private Writer writer;
+
+	private String ninId;
+
+	private int rowCount;
+
+	public PatientCSVWriter(Writer writer, String ninId) {
+		this.writer = writer;
+		this.ninId = ninId;
+	}
+
+	/**
+	 * Write one visit. Records without a visit date are not reported, values
+	 * that are not known, like the age of a patient without birthdate, are
+	 * written as empty fields.
+	 * 
+	 * @param record
+	 * @throws IOException
+	 */
+	public void write(PatientCSV record) throws IOException {
+		if (record.getVisitDate() == null) {
+			return;
+		}
+		writer.write(field(ninId) + "," + field(record.getPatientidentifier())
+				+ "," + field(record.getEncId()) + ","
+				+ field(record.getPatientName()) + ","
+				+ field(record.getMobile()) + "," + field(record.getMobile())
+				+ "," + field(record.getVisitDate()) + ","
+				+ field(record.getVisitTime()) + "," + field(record.getDept())
+				+ "," + field(record.getPatientType()) + ","
+				+ field(record.getGender()) + "," + field(record.getAge()));
+		writer.write("\n");
+		rowCount++;
+		if (rowCount % FLUSH_ROWS == 0) {
+			writer.flush();
+		}
+	}
+
+	private static String field(String value) {
+		return value == null ? "" : value;
+	}
+
+	public void flush() throws IOException {
+		writer.flush();
+	}
+
+	public String getNinId() {
+		return ninId;
+	}
+
+	public int getRowCount() {
+		return rowCount;
+	}
+}
@@ -0,0 +1,85 @@
+/**
+ *  Copyright 2010 Society for Health Information Systems Programmes, India (HISP India)
+ *
+ *  This file is part of Hospital-core module.
+ *
+ *  Hospital-core module is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  Hospital-core module is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Hospital-core module.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+
+package org.openmrs.module.hospitalcore.util;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Splits patient names and identifiers into the fixed length grams stored in
+ * the <code>patient_search_ngram</code> table. A phrase matches a patient
+ * only if every gram of the phrase is present for that patient, so the gram
+ * table can answer "contains" searches that a plain index can not.
+ */
+public class PatientSearchTokenizer {
+
+	public static final int GRAM_SIZE = 3;
+
+	/**
+	 * Get the distinct lower case grams of all given values
+	 * 
+	 * @param values
+	 * @return
+	 */
+	public static Set<String> getGrams(String... values) {
+		Set<String> grams = new LinkedHashSet<String>();
+		for (String value : values) {
+			String normalized = normalize(value);
+			for (int i = 0; i + GRAM_SIZE <= normalized.length(); i++) {
+				grams.add(normalized.substring(i, i + GRAM_SIZE));
+			}
+		}
+		return grams;
+	}
+
+	/**
+	 * Whether the phrase is long enough to be looked up in the gram table
+	 * 
+	 * @param phrase
+	 * @return
+	 */
+	public static boolean isGramSearchable(String phrase) {
+		return normalize(phrase).length() >= GRAM_SIZE;
+	}
+
+	/**
+	 * Escape the LIKE wildcards of a phrase entered by the user
+	 * 
+	 * @param phrase
+	 * @return
+	 */
+	public static String escapeLike(String phrase) {
+		if (phrase == null) {
+			return "";
+		}
+		return phrase.replace("\\", "\\\\").replace("%", "\\%")
+				.replace("_", "\\_");
+	}
+
+	private static String normalize(String value) {
+		if (StringUtils.isBlank(value)) {
+			return "";
+		}
+		return value.trim().toLowerCase();
+	}
+}
@@ -0,0 +1,239 @@
+/**
+ *  Copyright 2010 Society for Health Information Systems Programmes, India (HISP India)
+ *
+ *  This file is part of Hospital-core module.
+ *
+ *  Hospital-core module is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  Hospital-core module is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Hospital-core module.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+
+package org.openmrs.module.hospitalcore.util;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.APIException;
+import org.openmrs.api.context.Context;
+import org.openmrs.api.context.UserContext;
+import org.openmrs.module.hospitalcore.HospitalCoreService;
+
+/**
+ * Exports the patient visit report of a date range. The range is split into
+ * day or week partitions which are queried in parallel, each in its own
+ * Hibernate session, and written to the output in date order. Only a few
+ * partitions are buffered at any time, so the size of the range does not
+ * change the memory needed.
+ */
+public class PatientVisitCSVExporter {
+
+	public static final String PARTITION_DAY = "day";
+
+	public static final String PARTITION_WEEK = "week";
+
+	private static final int THREADS = 4;
+
+	private static final int MAX_PENDING_PARTITIONS = THREADS * 2;
+
+	private static final long PROGRESS_RETENTION = 60 * 60 * 1000L;
+
+	private static Log log = LogFactory.getLog(PatientVisitCSVExporter.class);
+
+	private static ExecutorService executor;
+
+	private static Map<String, PatientVisitExportProgress> progresses = new ConcurrentHashMap<String, PatientVisitExportProgress>();
+
+	/**
+	 * Export the visits between fromDate (inclusive) and toDate (exclusive)
+	 * 
+	 * @param fromDate
+	 * @param toDate
+	 * @param partition
+	 *            {@link #PARTITION_DAY} or {@link #PARTITION_WEEK}
+	 * @param exportId
+	 *            key to read the progress with, may be null
+	 * @param writer
+	 * @return number of written visits
+	 * @throws IOException
+	 */
+	public static int export(Date fromDate, Date toDate, String partition,
+			String exportId, Writer writer) throws IOException {
+		List<Date[]> partitions = getPartitions(fromDate, toDate, partition);
+		PatientVisitExportProgress progress = new PatientVisitExportProgress(
+				partitions.size());
+		if (exportId != null) {
+			purgeProgresses();
+			progresses.put(exportId, progress);
+		}
+
+		UserContext userContext = Context.getUserContext();
+		LinkedList<Future<String>> pending = new LinkedList<Future<String>>();
+		try {
+			writer.write(PatientCSVWriter.HEADER);
+			writer.write("\n");
+			for (Date[] range : partitions) {
+				pending.add(getExecutor().submit(
+						new PartitionTask(range[0], range[1], userContext,
+								progress)));
+				if (pending.size() >= MAX_PENDING_PARTITIONS) {
+					writer.write(pending.removeFirst().get());
+					writer.flush();
+				}
+			}
+			while (!pending.isEmpty()) {
+				writer.write(pending.removeFirst().get());
+				writer.flush();
+			}
+			progress.finish(null);
+			log.info("Exported " + progress.getRows() + " visits in "
+					+ partitions.size() + " partitions");
+			return progress.getRows();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw fail(progress, pending, e);
+		} catch (ExecutionException e) {
+			throw fail(progress, pending, e.getCause());
+		} catch (IOException e) {
+			fail(progress, pending, e);
+			throw e;
+		}
+	}
+
+	/**
+	 * Get the progress of an export started with the given id
+	 * 
+	 * @param exportId
+	 * @return null unless such an export ran within the last hour
+	 */
+	public static PatientVisitExportProgress getProgress(String exportId) {
+		return progresses.get(exportId);
+	}
+
+	public static synchronized void shutdown() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	static List<Date[]> getPartitions(Date fromDate, Date toDate,
+			String partition) {
+		int days = PARTITION_WEEK.equals(partition) ? 7 : 1;
+		List<Date[]> partitions = new ArrayList<Date[]>();
+		Calendar calendar = Calendar.getInstance();
+		calendar.setTime(fromDate);
+		while (calendar.getTime().before(toDate)) {
+			Date start = calendar.getTime();
+			calendar.add(Calendar.DAY_OF_MONTH, days);
+			Date end = calendar.getTime().before(toDate) ? calendar.getTime()
+					: toDate;
+			partitions.add(new Date[] { start, end });
+		}
+		return partitions;
+	}
+
+	private static APIException fail(PatientVisitExportProgress progress,
+			List<Future<String>> pending, Throwable cause) {
+		for (Future<String> future : pending) {
+			future.cancel(true);
+		}
+		progress.finish(String.valueOf(cause.getMessage()));
+		log.error("Patient visit export failed", cause);
+		return new APIException("Patient visit export failed", cause);
+	}
+
+	private static void purgeProgresses() {
+		long now = System.currentTimeMillis();
+		Iterator<PatientVisitExportProgress> iterator = progresses.values()
+				.iterator();
+		while (iterator.hasNext()) {
+			PatientVisitExportProgress progress = iterator.next();
+			if (progress.isFinished()
+					&& now - progress.getFinishedOn().getTime() > PROGRESS_RETENTION) {
+				iterator.remove();
+			}
+		}
+	}
+
+	private static synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(THREADS,
+					new ThreadFactory() {
+
+						private int count;
+
+						public Thread newThread(Runnable runnable) {
+							Thread thread = new Thread(runnable,
+									"hospitalcore-visit-export-" + ++count);
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+		}
+		return executor;
+	}
+
+	/**
+	 * Writes one partition into memory using a session of its own
+	 */
+	private static class PartitionTask implements Callable<String> {
+
+		private Date fromDate;
+
+		private Date toDate;
+
+		private UserContext userContext;
+
+		private PatientVisitExportProgress progress;
+
+		PartitionTask(Date fromDate, Date toDate, UserContext userContext,
+				PatientVisitExportProgress progress) {
+			this.fromDate = fromDate;
+			this.toDate = toDate;
+			this.userContext = userContext;
+			this.progress = progress;
+		}
+
+		public String call() throws Exception {
+			Context.openSession();
+			try {
+				Context.setUserContext(userContext);
+				StringWriter out = new StringWriter();
+				int rows = Context.getService(HospitalCoreService.class)
+						.writePatientVisits(fromDate, toDate, out);
+				progress.partitionDone(rows);
+				return out.toString();
+			} finally {
+				Context.clearUserContext();
+				Context.closeSession();
+			}
+		}
+	}
+}
@@ -0,0 +1,99 @@
+/**
+ *  Copyright 2010 Society for Health Information Systems Programmes, India (HISP India)
+ *
+ *  This file is part of Hospital-core module.
+ *
+ *  Hospital-core module is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  Hospital-core module is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Hospital-core module.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+
+package org.openmrs.module.hospitalcore.util;
+
+import java.util.Date;
+
+import org.apache.commons.lang.StringEscapeUtils;
+
+/**
+ * Progress of a running patient visit export, read by the page that started
+ * the export while the file is being written.
+ */
+public class PatientVisitExportProgress {
+
+	private int totalPartitions;
+
+	private volatile int donePartitions;
+
+	private volatile int rows;
+
+	private Date startedOn = new Date();
+
+	private volatile Date finishedOn;
+
+	private volatile String error;
+
+	public PatientVisitExportProgress(int totalPartitions) {
+		this.totalPartitions = totalPartitions;
+	}
+
+	synchronized void partitionDone(int partitionRows) {
+		donePartitions++;
+		rows += partitionRows;
+	}
+
+	void finish(String error) {
+		this.error = error;
+		this.finishedOn = new Date();
+	}
+
+	public int getTotalPartitions() {
+		return totalPartitions;
+	}
+
+	public int getDonePartitions() {
+		return donePartitions;
+	}
+
+	public int getRows() {
+		return rows;
+	}
+
+	public Date getStartedOn() {
+		return startedOn;
+	}
+
+	public Date getFinishedOn() {
+		return finishedOn;
+	}
+
+	public boolean isFinished() {
+		return finishedOn != null;
+	}
+
+	public String getError() {
+		return error;
+	}
+
+	/**
+	 * The progress as JSON. escapeJava, not escapeJavaScript, because JSON
+	 * does not allow the \' that escapeJavaScript writes.
+	 */
+	public String toString() {
+		return "{\"donePartitions\": " + donePartitions
+				+ ", \"totalPartitions\": " + totalPartitions + ", \"rows\": "
+				+ rows + ", \"finished\": " + isFinished()
+				+ (error != null ? ", \"error\": \""
+						+ StringEscapeUtils.escapeJava(error) + "\"" : "")
+				+ "}";
+	}
+}
@@ -36,7 +36,9 @@ import org.openmrs.Encounter;
 import org.openmrs.Obs;
 import org.openmrs.Order;
 import org.openmrs.api.context.Context;
+import org.openmrs.module.hospitalcore.HospitalCoreService;
 import org.openmrs.module.hospitalcore.RadiologyService;
+import org.openmrs.module.hospitalcore.concept.ConceptGraph;
 import org.openmrs.module.hospitalcore.concept.TestTree;
 import org.openmrs.module.hospitalcore.form.RadiologyForm;
 import org.openmrs.module.hospitalcore.model.RadiologyDepartment;
@@ -149,17 +151,26 @@ public class RadiologyUtil {
 	public static List<TestTree> getAllTestTrees() {
 		List<TestTree> trees = new ArrayList<TestTree>();
 		Set<Concept> concepts = getAllInvestigations();
+		ConceptGraph graph = Context.getService(HospitalCoreService.class)
+				.getConceptGraph();
 		for (Concept concept : concepts) {
-			TestTree tree = new TestTree(concept);
+			TestTree tree = new TestTree(concept, graph);
 			trees.add(tree);
 		}
 		return trees;
 	}
 
-	/*
-	 * REFACTORING
+	/**
+	 * Generate a single test model from an order and its radiology test
+	 * 
+	 * @param order
+	 * @param test
+	 *            the radiology test of the order, <code>null</code> if the
+	 *            order is not accepted yet
+	 * @param testTreeMap
+	 * @return
 	 */
-	private static TestModel generateModel(Order order, RadiologyTest test,
+	public static TestModel generateModel(Order order, RadiologyTest test,
 			Map<Concept, Set<Concept>> testTreeMap) {
 
 		TestModel tm = new TestModel();
@@ -0,0 +1,197 @@
+/**
+ *  Copyright 2010 Society for Health Information Systems Programmes, India (HISP India)
+ *
+ *  This file is part of Hospital-core module.
+ *
+ *  Hospital-core module is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  Hospital-core module is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Hospital-core module.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+
+package org.openmrs.module.hospitalcore.util;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The worklist of one radiology department for one day, kept in memory so
+ * polling screens only receive what changed since their last poll. Every
+ * change gets a new version; orders that leave the list are remembered as
+ * removed with the version they left at.
+ * <p>
+ * Changed orders are only marked here. The radiology service reloads them
+ * on the next poll, so the worklist never holds uncommitted state.
+ */
+public class RadiologyWorklist {
+
+	/**
+	 * The worklist is reloaded completely after this time, to pick up
+	 * changes made outside the radiology and billing services.
+	 */
+	private static final long MAX_AGE = 10 * 60 * 1000L;
+
+	/**
+	 * Shared by all worklists and started from the clock, so a version never
+	 * repeats, not even after a restart
+	 */
+	private static final AtomicLong VERSIONS = new AtomicLong(System
+			.currentTimeMillis());
+
+	private final Integer departmentId;
+	private final Date date;
+	private final Map<Integer, Boolean> changedOrderIds = new ConcurrentHashMap<Integer, Boolean>();
+	private final Map<Integer, TestModel> models = new LinkedHashMap<Integer, TestModel>();
+	private final Map<Integer, Long> versions = new LinkedHashMap<Integer, Long>();
+	private final Map<Integer, Long> removed = new LinkedHashMap<Integer, Long>();
+	private long baseVersion;
+	private long version;
+	private long loadedAt;
+	private volatile long lastAccess = System.currentTimeMillis();
+
+	public RadiologyWorklist(Integer departmentId, Date date) {
+		this.departmentId = departmentId;
+		this.date = date;
+	}
+
+	public Integer getDepartmentId() {
+		return departmentId;
+	}
+
+	/**
+	 * The start of the day of this worklist
+	 * 
+	 * @return
+	 */
+	public Date getDate() {
+		return date;
+	}
+
+	/**
+	 * Whether the worklist has to be loaded completely
+	 * 
+	 * @return
+	 */
+	public synchronized boolean isExpired() {
+		return loadedAt == 0
+				|| System.currentTimeMillis() - loadedAt > MAX_AGE;
+	}
+
+	/**
+	 * Replace the whole worklist. Clients get a reset on their next poll.
+	 * 
+	 * @param orderModels
+	 *            the test models of the orders, in worklist order
+	 */
+	public synchronized void load(List<TestModel> orderModels) {
+		models.clear();
+		versions.clear();
+		removed.clear();
+		baseVersion = VERSIONS.incrementAndGet();
+		version = baseVersion;
+		for (TestModel model : orderModels) {
+			models.put(model.getOrderId(), model);
+			versions.put(model.getOrderId(), baseVersion);
+		}
+		loadedAt = System.currentTimeMillis();
+	}
+
+	/**
+	 * Put the current state of an order into the worklist
+	 * 
+	 * @param orderId
+	 * @param model
+	 *            the test model, <code>null</code> if the order is not on
+	 *            this worklist (anymore)
+	 */
+	public synchronized void update(Integer orderId, TestModel model) {
+		if (model != null) {
+			version = VERSIONS.incrementAndGet();
+			models.put(orderId, model);
+			versions.put(orderId, version);
+			removed.remove(orderId);
+		} else if (models.containsKey(orderId)) {
+			version = VERSIONS.incrementAndGet();
+			models.remove(orderId);
+			versions.remove(orderId);
+			removed.put(orderId, version);
+		}
+	}
+
+	/**
+	 * Get the changes since the given version
+	 * 
+	 * @param sinceVersion
+	 *            the version of the previous delta, 0 for the whole
+	 *            worklist
+	 * @return
+	 */
+	public synchronized RadiologyWorklistDelta getChanges(long sinceVersion) {
+		lastAccess = System.currentTimeMillis();
+		List<TestModel> changed = new ArrayList<TestModel>();
+		List<Integer> removedOrderIds = new ArrayList<Integer>();
+		boolean reset = sinceVersion < baseVersion || sinceVersion > version;
+		for (Map.Entry<Integer, Long> entry : versions.entrySet()) {
+			if (reset || entry.getValue() > sinceVersion) {
+				changed.add(models.get(entry.getKey()));
+			}
+		}
+		if (!reset) {
+			for (Map.Entry<Integer, Long> entry : removed.entrySet()) {
+				if (entry.getValue() > sinceVersion) {
+					removedOrderIds.add(entry.getKey());
+				}
+			}
+		}
+		return new RadiologyWorklistDelta(version, reset, changed,
+				removedOrderIds);
+	}
+
+	/**
+	 * Mark an order as changed, it is reloaded on the next poll
+	 * 
+	 * @param orderId
+	 */
+	public void markChanged(Integer orderId) {
+		changedOrderIds.put(orderId, Boolean.TRUE);
+	}
+
+	/**
+	 * Take the orders marked as changed since the last call
+	 * 
+	 * @return
+	 */
+	public List<Integer> takeChangedOrderIds() {
+		List<Integer> orderIds = new ArrayList<Integer>();
+		Iterator<Integer> iterator = changedOrderIds.keySet().iterator();
+		while (iterator.hasNext()) {
+			orderIds.add(iterator.next());
+			iterator.remove();
+		}
+		return orderIds;
+	}
+
+	/**
+	 * The last time a client asked for changes
+	 * 
+	 * @return
+	 */
+	public long getLastAccess() {
+		return lastAccess;
+	}
+}
@@ -0,0 +1,123 @@
+/**
+ *  Copyright 2010 Society for Health Information Systems Programmes, India (HISP India)
+ *
+ *  This file is part of Hospital-core module.
+ *
+ *  Hospital-core module is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  Hospital-core module is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Hospital-core module.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+
+package org.openmrs.module.hospitalcore.util;
+
+import java.util.Date;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.openmrs.Order;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * The radiology worklists currently polled, one per department and day.
+ * Worklists nobody asked for within an hour are dropped.
+ */
+public class RadiologyWorklistCache {
+
+	private static final long MAX_IDLE = 60 * 60 * 1000L;
+
+	private static final ConcurrentMap<String, RadiologyWorklist> worklists = new ConcurrentHashMap<String, RadiologyWorklist>();
+
+	/**
+	 * Get the worklist of a department for the day of the given date
+	 * 
+	 * @param departmentId
+	 * @param date
+	 * @return
+	 */
+	public static RadiologyWorklist getWorklist(Integer departmentId, Date date) {
+		evictIdle();
+		Date day = DayRange.of(date).getStart();
+		String key = departmentId + ":" + day.getTime();
+		RadiologyWorklist worklist = worklists.get(key);
+		if (worklist == null) {
+			RadiologyWorklist created = new RadiologyWorklist(departmentId,
+					day);
+			worklist = worklists.putIfAbsent(key, created);
+			if (worklist == null) {
+				worklist = created;
+			}
+		}
+		return worklist;
+	}
+
+	/**
+	 * Mark an order as changed on every worklist. Inside a transaction the
+	 * order is marked once the transaction is committed, so a new order
+	 * already has its id.
+	 * 
+	 * @param order
+	 */
+	public static void markChanged(final Order order) {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager
+					.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+						public void afterCommit() {
+							markChanged(order.getOrderId());
+						}
+					});
+		} else {
+			markChanged(order.getOrderId());
+		}
+	}
+
+	/**
+	 * Drop all worklists, used when the investigations of the departments
+	 * change. Inside a transaction the worklists are dropped again once the
+	 * transaction completes, so a worklist another thread built from the
+	 * uncommitted departments is not kept.
+	 */
+	public static void invalidate() {
+		worklists.clear();
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager
+					.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+						public void afterCompletion(int status) {
+							worklists.clear();
+						}
+					});
+		}
+	}
+
+	private static void markChanged(Integer orderId) {
+		if (orderId == null) {
+			return;
+		}
+		for (RadiologyWorklist worklist : worklists.values()) {
+			worklist.markChanged(orderId);
+		}
+	}
+
+	private static void evictIdle() {
+		long now = System.currentTimeMillis();
+		Iterator<RadiologyWorklist> iterator = worklists.values().iterator();
+		while (iterator.hasNext()) {
+			if (now - iterator.next().getLastAccess() > MAX_IDLE) {
+				iterator.remove();
+			}
+		}
+	}
+}
@@ -0,0 +1,92 @@
+/**
+ *  Copyright 2010 Society for Health Information Systems Programmes, India (HISP India)
+ *
+ *  This file is part of Hospital-core module.
+ *
+ *  Hospital-core module is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  Hospital-core module is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Hospital-core module.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+
+package org.openmrs.module.hospitalcore.util;
+
+import java.util.List;
+
+/**
+ * The changes of a radiology worklist since a version a client has already
+ * seen. When the client's version is no longer known, for example after the
+ * worklist was reloaded, the delta is a reset holding the whole worklist.
+ */
+public class RadiologyWorklistDelta {
+
+	private final long version;
+	private final boolean reset;
+	private final List<TestModel> changed;
+	private final List<Integer> removedOrderIds;
+
+	public RadiologyWorklistDelta(long version, boolean reset,
+			List<TestModel> changed, List<Integer> removedOrderIds) {
+		this.version = version;
+		this.reset = reset;
+		this.changed = changed;
+		this.removedOrderIds = removedOrderIds;
+	}
+
+	/**
+	 * The version to ask the next changes for
+	 * 
+	 * @return
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Whether the client has to drop its worklist and use the changed
+	 * tests as the whole worklist
+	 * 
+	 * @return
+	 */
+	public boolean isReset() {
+		return reset;
+	}
+
+	/**
+	 * Tests that were added or changed. The models are shared with the
+	 * worklist and must not be modified.
+	 * 
+	 * @return
+	 */
+	public List<TestModel> getChanged() {
+		return changed;
+	}
+
+	/**
+	 * Orders that left the worklist, because they were completed,
+	 * rescheduled to another day or voided
+	 * 
+	 * @return
+	 */
+	public List<Integer> getRemovedOrderIds() {
+		return removedOrderIds;
+	}
+
+	/**
+	 * Whether nothing changed since the client's version
+	 * 
+	 * @return
+	 */
+	public boolean isEmpty() {
+		return !reset && changed.isEmpty() && removedOrderIds.isEmpty();
+	}
+}
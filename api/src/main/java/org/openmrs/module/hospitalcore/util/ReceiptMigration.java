@@ -0,0 +1,188 @@
+/**
+ *  Copyright 2010 Society for Health Information Systems Programmes, India (HISP India)
+ *
+ *  This file is part of Hospital-core module.
+ *
+ *  Hospital-core module is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  Hospital-core module is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Hospital-core module.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+
+package org.openmrs.module.hospitalcore.util;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+import org.openmrs.api.context.UserContext;
+import org.openmrs.module.hospitalcore.BillingConstants;
+import org.openmrs.module.hospitalcore.BillingService;
+import org.openmrs.util.OpenmrsConstants;
+
+/**
+ * Gives a receipt to every old bill without one. The bills are processed in
+ * chunks of ascending ids on a background thread, each chunk in its own
+ * transaction together with a checkpoint global property, so the migration
+ * can run on a live system and resumes where it stopped after a restart.
+ */
+public class ReceiptMigration {
+
+	private static final int DEFAULT_CHUNK_SIZE = 500;
+
+	private static Log log = LogFactory.getLog(ReceiptMigration.class);
+
+	private static ExecutorService executor;
+
+	private static Future<?> running;
+
+	private static volatile String status = "not started";
+
+	/**
+	 * Start the migration unless it is already running
+	 * 
+	 * @return false if it was already running
+	 */
+	public static synchronized boolean start() {
+		if (running != null && !running.isDone()) {
+			return false;
+		}
+		UserContext userContext = Context.isSessionOpen() ? Context
+				.getUserContext() : null;
+		running = getExecutor().submit(new MigrationTask(userContext));
+		return true;
+	}
+
+	/**
+	 * Get a line describing the progress of the migration
+	 * 
+	 * @return
+	 */
+	public static String getStatus() {
+		return status;
+	}
+
+	public static synchronized void shutdown() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+			running = null;
+		}
+	}
+
+	private static synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable,
+							"hospitalcore-receipt-migration");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return executor;
+	}
+
+	private static class MigrationTask implements Runnable {
+
+		private UserContext userContext;
+
+		MigrationTask(UserContext userContext) {
+			this.userContext = userContext;
+		}
+
+		public void run() {
+			Context.openSession();
+			try {
+				if (userContext != null) {
+					Context.setUserContext(userContext);
+				}
+				Context.addProxyPrivilege(BillingConstants.PRIV_ADD_BILL);
+				Context.addProxyPrivilege(OpenmrsConstants.PRIV_MANAGE_GLOBAL_PROPERTIES);
+				migrate();
+			} catch (Exception e) {
+				status = "failed: " + e.getMessage();
+				log.error("Receipt migration failed, it will resume from the last checkpoint", e);
+			} finally {
+				Context.removeProxyPrivilege(BillingConstants.PRIV_ADD_BILL);
+				Context.removeProxyPrivilege(OpenmrsConstants.PRIV_MANAGE_GLOBAL_PROPERTIES);
+				Context.clearUserContext();
+				Context.closeSession();
+			}
+		}
+
+		private void migrate() {
+			BillingService billingService = Context
+					.getService(BillingService.class);
+			int chunkSize = GlobalPropertyUtil.getInteger(
+					BillingConstants.GLOBAL_PROPRETY_RECEIPT_MIGRATION_CHUNK_SIZE,
+					DEFAULT_CHUNK_SIZE);
+			String[] billTypes = BillingConstants.RECEIPT_MIGRATION_BILL_TYPES;
+
+			// resume from the checkpoint, <bill type>:<last bill id>
+			int stage = 0;
+			Integer afterBillId = null;
+			String checkpoint = GlobalPropertyUtil.getString(
+					BillingConstants.GLOBAL_PROPRETY_RECEIPT_MIGRATION_CHECKPOINT,
+					"");
+			if (StringUtils.isNotBlank(checkpoint)) {
+				String billType = StringUtils.substringBefore(checkpoint, ":");
+				int index = Arrays.asList(billTypes).indexOf(billType);
+				if (index >= 0) {
+					stage = index;
+					afterBillId = NumberUtils.toInt(
+							StringUtils.substringAfter(checkpoint, ":"), 0);
+					log.info("Resuming receipt migration after " + checkpoint);
+				}
+			}
+
+			long start = System.currentTimeMillis();
+			int updated = 0;
+			for (; stage < billTypes.length; stage++) {
+				String billType = billTypes[stage];
+				List<Integer> billIds;
+				while (!(billIds = billingService.updateReceipts(billType,
+						afterBillId, chunkSize)).isEmpty()) {
+					updated += billIds.size();
+					afterBillId = billIds.get(billIds.size() - 1);
+					long seconds = Math.max(1,
+							(System.currentTimeMillis() - start) / 1000);
+					status = "updated " + updated + " bills, " + billType
+							+ " up to " + afterBillId + ", " + updated
+							/ seconds + " bills/s";
+					log.info("Receipt migration " + status);
+					if (Thread.currentThread().isInterrupted()) {
+						status = "stopped, " + status;
+						return;
+					}
+				}
+				afterBillId = null;
+			}
+
+			GlobalPropertyUtil.setString(
+					BillingConstants.GLOBAL_PROPRETY_UPDATED_RECEIPT_IDS, "true");
+			status = "finished, updated " + updated + " bills in "
+					+ (System.currentTimeMillis() - start) / 1000 + " s";
+			log.info("Receipt migration " + status);
+		}
+	}
+}
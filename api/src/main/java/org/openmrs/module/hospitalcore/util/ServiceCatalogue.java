@@ -0,0 +1,322 @@
+/**
+ *  Copyright 2010 Society for Health Information Systems Programmes, India (HISP India)
+ *
+ *  This file is part of Hospital-core module.
+ *
+ *  Hospital-core module is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  Hospital-core module is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Hospital-core module.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+
+package org.openmrs.module.hospitalcore.util;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang.StringUtils;
+import org.openmrs.module.hospitalcore.model.BillableService;
+
+/**
+ * Pre-rendered billable service tree of the billing counter. Instances are
+ * immutable and shared, see {@link ServiceCatalogueCache}. The render methods
+ * produce the same markup BillingService.traversTab and traversServices always
+ * did.
+ */
+public class ServiceCatalogue {
+
+	private final long conceptVersion;
+
+	private final long serviceVersion;
+
+	private final Integer rootConceptId;
+
+	private final String eTag;
+
+	private final String tabs;
+
+	private final String services;
+
+	public ServiceCatalogue(long conceptVersion, long serviceVersion,
+			Integer rootConceptId, String eTag, String tabs, String services) {
+		this.conceptVersion = conceptVersion;
+		this.serviceVersion = serviceVersion;
+		this.rootConceptId = rootConceptId;
+		this.eTag = eTag;
+		this.tabs = tabs;
+		this.services = services;
+	}
+
+	public long getConceptVersion() {
+		return conceptVersion;
+	}
+
+	public long getServiceVersion() {
+		return serviceVersion;
+	}
+
+	public Integer getRootConceptId() {
+		return rootConceptId;
+	}
+
+	/**
+	 * Entity tag of this version of the catalogue, quoted for the ETag header
+	 * 
+	 * @return
+	 */
+	public String getETag() {
+		return eTag;
+	}
+
+	/**
+	 * The billing counter tabs, as traversTab renders the root service concept
+	 * 
+	 * @return
+	 */
+	public String getTabs() {
+		return tabs;
+	}
+
+	/**
+	 * The service price list, as traversServices renders the root service
+	 * concept
+	 * 
+	 * @return
+	 */
+	public String getServices() {
+		return services;
+	}
+
+	/**
+	 * Render the tabs of the billing counter below a node
+	 * 
+	 * @param node
+	 * @param mapServices
+	 *            services by concept id
+	 * @param count
+	 *            number of the first tab container
+	 * @param rootConceptId
+	 *            root service concept, shown even without a service
+	 * @return null if the node has no enabled service
+	 */
+	public static String renderTab(ServiceCatalogueNode node,
+			Map<Integer, BillableService> mapServices, int count,
+			Integer rootConceptId) {
+		return renderTab(node, mapServices, count, rootConceptId,
+				new HashSet<Integer>());
+	}
+
+	private static String renderTab(ServiceCatalogueNode node,
+			Map<Integer, BillableService> mapServices, int count,
+			Integer rootConceptId, Set<Integer> path) {
+		BillableService service = mapServices.get(node.getConceptId());
+		if ((service == null || service.getDisable())
+				&& node.getConceptId().intValue() != rootConceptId.intValue()) {
+			return null;
+		}
+		if (!path.add(node.getConceptId())) {
+			return null;
+		}
+		StringBuilder header = new StringBuilder();
+		if (!node.isClass("Test") && !node.isClass("labset")) {
+			if (node.hasAnswers()) {
+				count = renderTabChildren(header, node.getSortedAnswers(),
+						node.getSortedAnswers(), true, mapServices, count,
+						rootConceptId, path);
+			} else if (node.hasSetMembers()) {
+				count = renderTabChildren(header, node.getSortedSetMembers(),
+						node.getSetMembers(), false, mapServices, count,
+						rootConceptId, path);
+			}
+		}
+		path.remove(node.getConceptId());
+		return header.toString();
+	}
+
+	private static int renderTabChildren(StringBuilder header,
+			List<ServiceCatalogueNode> children,
+			List<ServiceCatalogueNode> fragments, boolean answers,
+			Map<Integer, BillableService> mapServices, int count,
+			Integer rootConceptId, Set<Integer> path) {
+		StringBuilder tabsLi = new StringBuilder();
+		List<ServiceCatalogueNode> noChild = new ArrayList<ServiceCatalogueNode>();
+		for (ServiceCatalogueNode child : children) {
+			BillableService s = mapServices.get(child.getConceptId());
+			if (s != null && !s.getDisable()) {
+				boolean hasChildren = answers ? child.hasAnswers() : child
+						.hasSetMembers();
+				if (!hasChildren || child.isClass("Test")
+						|| child.isClass("labset")
+						|| child.isClass("Procedure")) {
+					noChild.add(child);
+				} else {
+					String name = StringUtils.isBlank(child.getShortName()) ? child
+							.getName() : child.getShortName();
+					tabsLi.append("<li><a title='").append(child.getName())
+							.append("' href='#fragment-")
+							.append(child.getConceptId()).append("'><span>")
+							.append(name).append("</span></a></li>");
+				}
+			}
+		}
+		for (ServiceCatalogueNode child : noChild) {
+			BillableService tmpService = mapServices.get(child.getConceptId());
+			if (tmpService != null && !tmpService.getDisable()) {
+				String tmp = "addToBill(\"" + tmpService.getConceptId()
+						+ "\",  \"" + tmpService.getName() + "\", "
+						+ tmpService.getPrice() + ", 1);";
+				String name = StringUtils.isBlank(tmpService.getShortName()) ? tmpService
+						.getName() : tmpService.getShortName();
+				header.append("<div title='").append(tmpService.getName())
+						.append("' id='box_").append(tmpService.getConceptId())
+						.append("' class='udiv boxNormal' onclick='")
+						.append(tmp).append("' >").append(name)
+						.append("</div>");
+			}
+		}
+
+		if (tabsLi.length() > 0) {
+			header.append("<div id='container-").append(count)
+					.append("' class='divContainer'>");
+			count = count + 1;
+			header.append("<ul>").append(tabsLi).append("</ul>");
+			for (ServiceCatalogueNode c : fragments) {
+				if (c.hasAnswers() || c.hasSetMembers()) {
+					String tmp = renderTab(c, mapServices, count,
+							rootConceptId, path);
+					if (tmp != null) {
+						header.append("<div id='fragment-")
+								.append(c.getConceptId()).append("'>")
+								.append(tmp).append("</div>");
+					}
+				}
+				count++;
+			}
+			header.append(" </div>");
+		}
+		return count;
+	}
+
+	/**
+	 * Render the price list of the services below a node
+	 * 
+	 * @param node
+	 * @param services
+	 *            services by concept id
+	 * @return null if the node has no children to show
+	 */
+	public static String renderServices(ServiceCatalogueNode node,
+			Map<Integer, BillableService> services) {
+		StringBuilder rs = new StringBuilder();
+		return renderServices(node, services, rs, new HashSet<Integer>()) ? rs
+				.toString() : null;
+	}
+
+	private static boolean renderServices(ServiceCatalogueNode node,
+			Map<Integer, BillableService> services, StringBuilder rs,
+			Set<Integer> path) {
+		if (node == null || node.isClass("Test") || node.isClass("labset")) {
+			return false;
+		}
+		boolean answers = node.hasAnswers();
+		if (!answers && !node.hasSetMembers()) {
+			return false;
+		}
+		if (!path.add(node.getConceptId())) {
+			return false;
+		}
+		rs.append("<ul>");
+		for (ServiceCatalogueNode child : answers ? node.getAnswers() : node
+				.getSetMembers()) {
+			Integer id = child.getConceptId();
+			// set members only look at the class to find the leaves
+			boolean leaf = (answers && !child.hasAnswers())
+					|| child.isClass("Test") || child.isClass("labset")
+					|| child.isClass("Procedure");
+			if (answers) {
+				rs.append("<li>");
+				rs.append("<input   name='cons' type='checkbox'  value='")
+						.append(id).append("' >");
+				rs.append("<label>").append(child.getLabel())
+						.append("</label>");
+				rs.append("<input id='").append(id)
+						.append("_concept'  name='").append(id)
+						.append("_concept'  type='hidden' value='").append(id)
+						.append("'>");
+				rs.append("<input id='").append(id)
+						.append("_name'      name='").append(id)
+						.append("_name'      type='hidden' value='")
+						.append(child.getLabel()).append("'>");
+				rs.append("<input id='").append(id)
+						.append("_shortname' name='").append(id)
+						.append("_shortname' type='hidden' value='")
+						.append(child.getShortName()).append("'>");
+				if (leaf) {
+					BillableService s = services.get(id);
+					if (s != null) {
+						rs.append("<span style='vertical-align:middle;'>");
+						rs.append(
+								"&nbsp;&nbsp;<input onblur='updatePrice(this)'  type='text' class='priceField' id='")
+								.append(id).append("_price' name='").append(id)
+								.append("_price' value=").append(s.getPrice())
+								.append(">");
+						rs.append("</span>");
+					} else {
+						rs.append(
+								"<input onblur='updatePrice(this)' type='text' class='priceField' id='")
+								.append(id).append("_price' name='").append(id)
+								.append("_price' value=''>");
+					}
+				}
+			} else {
+				rs.append("<li>");
+				rs.append("<input name='cons' type='checkbox'  value='")
+						.append(id).append("' >");
+				rs.append("<label>").append(child.getLabel())
+						.append("</label>");
+				rs.append("<input id='").append(id).append("_concept' name='")
+						.append(id).append("_concept' type='hidden' value='")
+						.append(id).append("'>");
+				rs.append("<input id='").append(id).append("_name' name='")
+						.append(id).append("_name' type='hidden' value='")
+						.append(child.getLabel()).append("'>");
+				rs.append("<input id='").append(id)
+						.append("_shortname'    name='").append(id)
+						.append("_shortname'    type='hidden' value='")
+						.append(child.getShortName()).append("'>");
+				if (leaf) {
+					BillableService s = services.get(id);
+					if (s != null) {
+						rs.append(
+								"<input onblure='updatePrice(this)'  type='text' class='priceField' id='")
+								.append(id).append("_price' name='").append(id)
+								.append("_price' value=").append(s.getPrice())
+								.append(">");
+					} else {
+						rs.append(
+								"<input onblur='updatePrice(this)'  class='priceField' type='text' id='")
+								.append(id).append("_price' name='").append(id)
+								.append("_price' value=''>");
+					}
+				}
+			}
+			renderServices(child, services, rs, path);
+			rs.append("</li>");
+		}
+		rs.append("</ul>");
+		path.remove(node.getConceptId());
+		return true;
+	}
+}
@@ -0,0 +1,171 @@
+/**
+ *  Copyright 2010 Society for Health Information Systems Programmes, India (HISP India)
+ *
+ *  This file is part of Hospital-core module.
+ *
+ *  Hospital-core module is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  Hospital-core module is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Hospital-core module.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+
+package org.openmrs.module.hospitalcore.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.Concept;
+import org.openmrs.api.APIException;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.hospitalcore.BillingConstants;
+import org.openmrs.module.hospitalcore.BillingService;
+import org.openmrs.module.hospitalcore.model.BillableService;
+
+/**
+ * Shared cache of the {@link ServiceCatalogue}. The service concept tree is
+ * compiled again only when the concept dictionary changes. A change of price
+ * or availability only renders the compiled tree again, which needs no
+ * concept loads.
+ */
+public class ServiceCatalogueCache {
+
+	private static Log log = LogFactory.getLog(ServiceCatalogueCache.class);
+
+	/**
+	 * Distinguishes the entity tags of different runs of the application
+	 */
+	private static final String EPOCH = Long.toString(
+			System.currentTimeMillis(), 36);
+
+	private static final CacheVersion conceptVersion = new CacheVersion();
+
+	private static final CacheVersion serviceVersion = new CacheVersion();
+
+	private static volatile ServiceCatalogue catalogue;
+
+	private static ServiceCatalogueNode root;
+
+	private static long rootVersion = -1;
+
+	private ServiceCatalogueCache() {
+	}
+
+	/**
+	 * Get the current catalogue, rendering it again when services or
+	 * concepts changed since it was built
+	 * 
+	 * @param billingService
+	 * @return
+	 */
+	public static ServiceCatalogue getCatalogue(BillingService billingService) {
+		Integer rootConceptId = getRootConceptId();
+		ServiceCatalogue current = catalogue;
+		if (isCurrent(current, rootConceptId)) {
+			return current;
+		}
+		synchronized (ServiceCatalogueCache.class) {
+			current = catalogue;
+			if (isCurrent(current, rootConceptId)) {
+				return current;
+			}
+			long start = System.currentTimeMillis();
+			long concepts = conceptVersion.get();
+			long prices = serviceVersion.get();
+			ServiceCatalogueNode node = getRoot(rootConceptId);
+
+			Map<Integer, BillableService> mapServices = new HashMap<Integer, BillableService>();
+			for (BillableService service : billingService.getAllServices()) {
+				mapServices.put(service.getConceptId(), service);
+			}
+			String tabs = ServiceCatalogue.renderTab(node, mapServices, 1,
+					rootConceptId);
+			String list = ServiceCatalogue.renderServices(node, mapServices);
+			String eTag = "\"" + EPOCH + "-" + concepts + "-" + prices + "\"";
+			current = new ServiceCatalogue(concepts, prices, rootConceptId,
+					eTag, tabs, list);
+			catalogue = current;
+			if (log.isDebugEnabled()) {
+				log.debug("Rendered service catalogue " + eTag + " in "
+						+ (System.currentTimeMillis() - start) + " ms");
+			}
+			return current;
+		}
+	}
+
+	/**
+	 * Get the compiled service tree of the configured root concept, compiling
+	 * it again when concepts changed since it was compiled. The tree holds no
+	 * prices, render it with the services of the caller.
+	 * 
+	 * @return
+	 */
+	public static ServiceCatalogueNode getRoot() {
+		return getRoot(getRootConceptId());
+	}
+
+	/**
+	 * Get the configured service root concept id
+	 * 
+	 * @return
+	 */
+	public static Integer getRootConceptId() {
+		Integer rootConceptId = GlobalPropertyUtil.getInteger(
+				BillingConstants.GLOBAL_PROPRETY_SERVICE_CONCEPT, null);
+		if (rootConceptId == null) {
+			throw new APIException(
+					BillingConstants.GLOBAL_PROPRETY_SERVICE_CONCEPT
+							+ " is not set");
+		}
+		return rootConceptId;
+	}
+
+	private static synchronized ServiceCatalogueNode getRoot(
+			Integer rootConceptId) {
+		long concepts = conceptVersion.get();
+		if (root == null || rootVersion != concepts
+				|| !rootConceptId.equals(root.getConceptId())) {
+			Concept rootConcept = Context.getConceptService().getConcept(
+					rootConceptId);
+			if (rootConcept == null) {
+				throw new APIException("No service concept " + rootConceptId);
+			}
+			root = ServiceCatalogueNode.compile(rootConcept);
+			rootVersion = concepts;
+		}
+		return root;
+	}
+
+	/**
+	 * Render the catalogue again on next use, prices or availability changed
+	 */
+	public static void invalidateServices() {
+		serviceVersion.increment();
+	}
+
+	/**
+	 * Compile the service tree again on next use, the concept dictionary
+	 * changed
+	 */
+	public static void invalidateConcepts() {
+		conceptVersion.increment();
+	}
+
+	private static boolean isCurrent(ServiceCatalogue current,
+			Integer rootConceptId) {
+		return current != null
+				&& current.getConceptVersion() == conceptVersion.get()
+				&& current.getServiceVersion() == serviceVersion.get()
+				&& rootConceptId.equals(current.getRootConceptId());
+	}
+}
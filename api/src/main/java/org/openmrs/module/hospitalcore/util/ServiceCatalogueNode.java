@@ -0,0 +1,204 @@
+/**
+ *  Copyright 2010 Society for Health Information Systems Programmes, India (HISP India)
+ *
+ *  This file is part of Hospital-core module.
+ *
+ *  Hospital-core module is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  Hospital-core module is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Hospital-core module.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+
+package org.openmrs.module.hospitalcore.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openmrs.Concept;
+import org.openmrs.ConceptAnswer;
+import org.openmrs.ConceptSet;
+
+/**
+ * Concept of the billable service tree with what the billing counter needs to
+ * render it, compiled once so rendering does not touch Hibernate. Children of
+ * Test and LabSet concepts are not compiled because they are never shown.
+ */
+public class ServiceCatalogueNode {
+
+	private static final Comparator<ServiceCatalogueNode> BY_NAME = new Comparator<ServiceCatalogueNode>() {
+
+		public int compare(ServiceCatalogueNode o1, ServiceCatalogueNode o2) {
+			return o1.getName().compareTo(o2.getName());
+		}
+	};
+
+	private Integer conceptId;
+
+	private String name;
+
+	private String label;
+
+	private String shortName;
+
+	private String className;
+
+	private boolean hasAnswers;
+
+	private boolean hasSetMembers;
+
+	private List<ServiceCatalogueNode> answers = Collections.emptyList();
+
+	private List<ServiceCatalogueNode> sortedAnswers = Collections.emptyList();
+
+	private List<ServiceCatalogueNode> setMembers = Collections.emptyList();
+
+	private List<ServiceCatalogueNode> sortedSetMembers = Collections.emptyList();
+
+	private ServiceCatalogueNode() {
+	}
+
+	/**
+	 * Compile the tree below a concept. A concept reached twice is compiled
+	 * once and shared.
+	 * 
+	 * @param concept
+	 * @return
+	 */
+	public static ServiceCatalogueNode compile(Concept concept) {
+		if (concept == null) {
+			return null;
+		}
+		return compile(concept, new HashMap<Integer, ServiceCatalogueNode>());
+	}
+
+	private static ServiceCatalogueNode compile(Concept concept,
+			Map<Integer, ServiceCatalogueNode> compiled) {
+		ServiceCatalogueNode node = compiled.get(concept.getConceptId());
+		if (node != null) {
+			return node;
+		}
+		node = new ServiceCatalogueNode();
+		compiled.put(concept.getConceptId(), node);
+		node.conceptId = concept.getConceptId();
+		node.name = concept.getName().getName();
+		node.label = String.valueOf(concept.getName());
+		node.shortName = concept.getName().getShortName();
+		node.className = concept.getConceptClass().getName();
+
+		Collection<ConceptAnswer> conceptAnswers = concept.getAnswers();
+		Collection<ConceptSet> conceptSets = concept.getConceptSets();
+		node.hasAnswers = conceptAnswers != null && conceptAnswers.size() > 0;
+		node.hasSetMembers = conceptSets != null && conceptSets.size() > 0;
+		if (node.isClass("Test") || node.isClass("labset")) {
+			return node;
+		}
+
+		if (node.hasAnswers) {
+			List<ServiceCatalogueNode> children = new ArrayList<ServiceCatalogueNode>();
+			for (ConceptAnswer ca : conceptAnswers) {
+				children.add(compile(ca.getAnswerConcept(), compiled));
+			}
+			node.answers = Collections.unmodifiableList(children);
+			node.sortedAnswers = sort(children);
+		} else if (node.hasSetMembers) {
+			List<ServiceCatalogueNode> children = new ArrayList<ServiceCatalogueNode>();
+			for (ConceptSet cs : conceptSets) {
+				children.add(compile(cs.getConcept(), compiled));
+			}
+			node.setMembers = Collections.unmodifiableList(children);
+			node.sortedSetMembers = sort(children);
+		}
+		return node;
+	}
+
+	private static List<ServiceCatalogueNode> sort(
+			List<ServiceCatalogueNode> children) {
+		List<ServiceCatalogueNode> sorted = new ArrayList<ServiceCatalogueNode>(
+				children);
+		Collections.sort(sorted, BY_NAME);
+		return Collections.unmodifiableList(sorted);
+	}
+
+	/**
+	 * See whether the concept class has the given name, ignoring case
+	 * 
+	 * @param conceptClassName
+	 * @return
+	 */
+	public boolean isClass(String conceptClassName) {
+		return className.equalsIgnoreCase(conceptClassName);
+	}
+
+	public Integer getConceptId() {
+		return conceptId;
+	}
+
+	/**
+	 * Preferred name of the concept
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * The concept name as printed in the service tree
+	 */
+	public String getLabel() {
+		return label;
+	}
+
+	public String getShortName() {
+		return shortName;
+	}
+
+	public boolean hasAnswers() {
+		return hasAnswers;
+	}
+
+	public boolean hasSetMembers() {
+		return hasSetMembers;
+	}
+
+	/**
+	 * Answers in the order of the concept
+	 */
+	public List<ServiceCatalogueNode> getAnswers() {
+		return answers;
+	}
+
+	/**
+	 * Answers sorted by name
+	 */
+	public List<ServiceCatalogueNode> getSortedAnswers() {
+		return sortedAnswers;
+	}
+
+	/**
+	 * Set members in the order of the concept, only filled when the concept
+	 * has no answers
+	 */
+	public List<ServiceCatalogueNode> getSetMembers() {
+		return setMembers;
+	}
+
+	/**
+	 * Set members sorted by name
+	 */
+	public List<ServiceCatalogueNode> getSortedSetMembers() {
+		return sortedSetMembers;
+	}
+}
@@ -0,0 +1,195 @@
+/**
+ *  Copyright 2010 Society for Health Information Systems Programmes, India (HISP India)
+ *
+ *  This file is part of Hospital-core module.
+ *
+ *  Hospital-core module is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  Hospital-core module is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Hospital-core module.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+
+package org.openmrs.module.hospitalcore.util;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * The latest vital statistics of every admission asked for, so ward
+ * screens do not read them again on every refresh. Admissions without
+ * vital statistics are remembered too. A reading committed for an
+ * admission that is not cached yet is kept as pending, so a load that
+ * read the database before the commit can not cache an older reading.
+ */
+public class VitalLatestCache {
+
+	/**
+	 * The cache is emptied when it holds more admissions than this
+	 */
+	private static final int MAX_SIZE = 10000;
+
+	/**
+	 * Pending readings younger than this are kept when the cache is emptied,
+	 * a load may be running that has not seen them
+	 */
+	private static final long PENDING_MILLIS = 60000;
+
+	private static final VitalReading NONE = new VitalReading(Long.MIN_VALUE,
+			Double.NaN, Double.NaN, Double.NaN, Double.NaN);
+
+	private static final ConcurrentMap<Integer, VitalReading> readings = new ConcurrentHashMap<Integer, VitalReading>();
+
+	/**
+	 * Get the cached readings of admissions
+	 * 
+	 * @param admissionLogIds
+	 * @param missing
+	 *            gets the admissions that are not cached
+	 * @return the latest reading by admission log id
+	 */
+	public static Map<Integer, VitalReading> get(
+			Collection<Integer> admissionLogIds, List<Integer> missing) {
+		Map<Integer, VitalReading> found = new HashMap<Integer, VitalReading>();
+		for (Integer id : admissionLogIds) {
+			VitalReading reading = readings.get(id);
+			if (reading == null || reading instanceof Pending) {
+				missing.add(id);
+			} else if (reading != NONE) {
+				found.put(id, reading);
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Cache readings loaded from the database
+	 * 
+	 * @param admissionLogIds
+	 *            the admissions that were loaded
+	 * @param loaded
+	 *            the latest reading of the ones that have any
+	 */
+	public static void putAll(Collection<Integer> admissionLogIds,
+			Map<Integer, VitalReading> loaded) {
+		if (readings.size() > MAX_SIZE) {
+			clear();
+		}
+		for (Integer id : admissionLogIds) {
+			VitalReading reading = loaded.get(id);
+			cache(id, reading != null ? reading : NONE);
+		}
+	}
+
+	private static void cache(Integer admissionLogId, VitalReading loaded) {
+		while (true) {
+			VitalReading current = readings.putIfAbsent(admissionLogId, loaded);
+			if (!(current instanceof Pending)) {
+				// cached now, or by a load or update that came first
+				return;
+			}
+			VitalReading pending = ((Pending) current).getReading();
+			if (readings.replace(admissionLogId, current,
+					pending.getTime() > loaded.getTime() ? pending : loaded)) {
+				return;
+			}
+		}
+	}
+
+	private static void clear() {
+		long keepSince = System.currentTimeMillis() - PENDING_MILLIS;
+		for (Map.Entry<Integer, VitalReading> entry : readings.entrySet()) {
+			VitalReading reading = entry.getValue();
+			if (!(reading instanceof Pending)
+					|| ((Pending) reading).getSince() < keepSince) {
+				readings.remove(entry.getKey(), reading);
+			}
+		}
+	}
+
+	/**
+	 * Record a new reading once its transaction is committed
+	 * 
+	 * @param admissionLogId
+	 * @param reading
+	 */
+	public static void put(final Integer admissionLogId,
+			final VitalReading reading) {
+		if (admissionLogId == null) {
+			return;
+		}
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager
+					.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+						public void afterCommit() {
+							update(admissionLogId, reading);
+						}
+					});
+		} else {
+			update(admissionLogId, reading);
+		}
+	}
+
+	private static void update(Integer admissionLogId, VitalReading reading) {
+		while (true) {
+			VitalReading current = readings.get(admissionLogId);
+			if (current == null) {
+				if (readings.putIfAbsent(admissionLogId, new Pending(reading)) == null) {
+					return;
+				}
+			} else if (current instanceof Pending) {
+				if (((Pending) current).getReading().getTime() > reading.getTime()
+						|| readings.replace(admissionLogId, current,
+								new Pending(reading))) {
+					return;
+				}
+			} else if (current.getTime() > reading.getTime()
+					|| readings.replace(admissionLogId, current, reading)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * A reading committed for an admission not cached yet. It is not
+	 * returned, the admission is loaded when asked for and the newer of the
+	 * loaded and the pending reading is cached.
+	 */
+	private static class Pending extends VitalReading {
+
+		private final VitalReading reading;
+
+		private final long since = System.currentTimeMillis();
+
+		Pending(VitalReading reading) {
+			super(reading.getTime(), reading.getSystolic(), reading
+					.getDiastolic(), reading.getPulseRate(), reading
+					.getTemperature());
+			this.reading = reading;
+		}
+
+		VitalReading getReading() {
+			return reading;
+		}
+
+		long getSince() {
+			return since;
+		}
+	}
+}
@@ -0,0 +1,109 @@
+/**
+ *  Copyright 2010 Society for Health Information Systems Programmes, India (HISP India)
+ *
+ *  This file is part of Hospital-core module.
+ *
+ *  Hospital-core module is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  Hospital-core module is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Hospital-core module.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+
+package org.openmrs.module.hospitalcore.util;
+
+import java.util.Date;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * The vital statistics of one recording as numbers. Values that are
+ * missing or can not be read are NaN.
+ */
+public class VitalReading {
+
+	private final long time;
+	private final double systolic;
+	private final double diastolic;
+	private final double pulseRate;
+	private final double temperature;
+
+	public VitalReading(long time, double systolic, double diastolic,
+			double pulseRate, double temperature) {
+		this.time = time;
+		this.systolic = systolic;
+		this.diastolic = diastolic;
+		this.pulseRate = pulseRate;
+		this.temperature = temperature;
+	}
+
+	/**
+	 * Read the vital statistics as they are entered, the blood pressure as
+	 * systolic/diastolic
+	 */
+	public static VitalReading parse(Date createdOn, String bloodPressure,
+			String pulseRate, String temperature) {
+		double systolic = Double.NaN;
+		double diastolic = Double.NaN;
+		if (StringUtils.isNotBlank(bloodPressure)) {
+			int slash = bloodPressure.indexOf('/');
+			if (slash >= 0) {
+				systolic = parse(bloodPressure.substring(0, slash));
+				diastolic = parse(bloodPressure.substring(slash + 1));
+			} else {
+				systolic = parse(bloodPressure);
+			}
+		}
+		return new VitalReading(createdOn != null ? createdOn.getTime() : 0,
+				systolic, diastolic, parse(pulseRate), parse(temperature));
+	}
+
+	public long getTime() {
+		return time;
+	}
+
+	public double getSystolic() {
+		return systolic;
+	}
+
+	public double getDiastolic() {
+		return diastolic;
+	}
+
+	public double getPulseRate() {
+		return pulseRate;
+	}
+
+	public double getTemperature() {
+		return temperature;
+	}
+
+	/**
+	 * @return the number at the start of the text, NaN when there is none
+	 */
+	static double parse(String text) {
+		if (text == null) {
+			return Double.NaN;
+		}
+		String value = text.trim();
+		int end = 0;
+		while (end < value.length()
+				&& (Character.isDigit(value.charAt(end)) || value.charAt(end) == '.')) {
+			end++;
+		}
+		try {
+			return end > 0 ? Double.parseDouble(value.substring(0, end))
+					: Double.NaN;
+		} catch (NumberFormatException e) {
+			return Double.NaN;
+		}
+	}
+}
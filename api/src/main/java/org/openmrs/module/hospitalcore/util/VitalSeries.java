@@ -0,0 +1,178 @@
+/**
+ *  Copyright 2010 Society for Health Information Systems Programmes, India (HISP India)
+ *
+ *  This file is part of Hospital-core module.
+ *
+ *  Hospital-core module is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  Hospital-core module is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Hospital-core module.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+
+package org.openmrs.module.hospitalcore.util;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Vital statistics of an admission as arrays for charts. The readings are
+ * grouped into buckets of equal length; every measure has the minimum,
+ * average and maximum of each bucket, NaN when the bucket has no value for
+ * it.
+ */
+public class VitalSeries {
+
+	public static final int SYSTOLIC = 0;
+	public static final int DIASTOLIC = 1;
+	public static final int PULSE_RATE = 2;
+	public static final int TEMPERATURE = 3;
+
+	private static final int MEASURES = 4;
+
+	private final long bucketMillis;
+	private final long[] times;
+	private final int[] readings;
+	private final double[][] min;
+	private final double[][] avg;
+	private final double[][] max;
+	private final int[][] counts;
+
+	private VitalSeries(long bucketMillis, int buckets) {
+		this.bucketMillis = bucketMillis;
+		times = new long[buckets];
+		readings = new int[buckets];
+		min = new double[MEASURES][buckets];
+		avg = new double[MEASURES][buckets];
+		max = new double[MEASURES][buckets];
+		counts = new int[MEASURES][buckets];
+		for (int measure = 0; measure < MEASURES; measure++) {
+			Arrays.fill(min[measure], Double.NaN);
+			Arrays.fill(avg[measure], Double.NaN);
+			Arrays.fill(max[measure], Double.NaN);
+		}
+	}
+
+	/**
+	 * Group readings ordered by time into at most maxPoints buckets. Every
+	 * reading is its own bucket when there are no more than maxPoints.
+	 * 
+	 * @param readings
+	 *            ordered by time
+	 * @param maxPoints
+	 * @return
+	 */
+	public static VitalSeries downsample(List<VitalReading> readings,
+			int maxPoints) {
+		if (readings.isEmpty()) {
+			return new VitalSeries(0, 0);
+		}
+		if (maxPoints <= 0 || readings.size() <= maxPoints) {
+			VitalSeries series = new VitalSeries(0, readings.size());
+			for (int i = 0; i < readings.size(); i++) {
+				series.times[i] = readings.get(i).getTime();
+				series.add(i, readings.get(i));
+			}
+			series.finish();
+			return series;
+		}
+		long first = readings.get(0).getTime();
+		long span = readings.get(readings.size() - 1).getTime() - first + 1;
+		long bucketMillis = (span + maxPoints - 1) / maxPoints;
+		int buckets = (int) ((span + bucketMillis - 1) / bucketMillis);
+		VitalSeries series = new VitalSeries(bucketMillis, buckets);
+		for (int i = 0; i < buckets; i++) {
+			series.times[i] = first + i * bucketMillis;
+		}
+		for (VitalReading reading : readings) {
+			series.add((int) ((reading.getTime() - first) / bucketMillis),
+					reading);
+		}
+		series.finish();
+		return series;
+	}
+
+	private void add(int bucket, VitalReading reading) {
+		readings[bucket]++;
+		add(SYSTOLIC, bucket, reading.getSystolic());
+		add(DIASTOLIC, bucket, reading.getDiastolic());
+		add(PULSE_RATE, bucket, reading.getPulseRate());
+		add(TEMPERATURE, bucket, reading.getTemperature());
+	}
+
+	/**
+	 * Sum the values in avg until finish() divides them by their count
+	 */
+	private void add(int measure, int bucket, double value) {
+		if (Double.isNaN(value)) {
+			return;
+		}
+		if (Double.isNaN(min[measure][bucket])) {
+			min[measure][bucket] = value;
+			max[measure][bucket] = value;
+			avg[measure][bucket] = value;
+			counts[measure][bucket] = 1;
+			return;
+		}
+		min[measure][bucket] = Math.min(min[measure][bucket], value);
+		max[measure][bucket] = Math.max(max[measure][bucket], value);
+		avg[measure][bucket] += value;
+		counts[measure][bucket]++;
+	}
+
+	private void finish() {
+		for (int measure = 0; measure < MEASURES; measure++) {
+			for (int bucket = 0; bucket < times.length; bucket++) {
+				if (counts[measure][bucket] > 1) {
+					avg[measure][bucket] /= counts[measure][bucket];
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the length of a bucket, 0 when every reading is its own
+	 *         bucket
+	 */
+	public long getBucketMillis() {
+		return bucketMillis;
+	}
+
+	/**
+	 * @return the start of every bucket, or the time of every reading
+	 */
+	public long[] getTimes() {
+		return times;
+	}
+
+	/**
+	 * @return the number of readings in every bucket
+	 */
+	public int[] getReadings() {
+		return readings;
+	}
+
+	/**
+	 * @param measure
+	 *            one of SYSTOLIC, DIASTOLIC, PULSE_RATE or TEMPERATURE
+	 */
+	public double[] getMin(int measure) {
+		return min[measure];
+	}
+
+	public double[] getAvg(int measure) {
+		return avg[measure];
+	}
+
+	public double[] getMax(int measure) {
+		return max[measure];
+	}
+}
@@ -0,0 +1,245 @@
+/**
+ *  Copyright 2010 Society for Health Information Systems Programmes, India (HISP India)
+ *
+ *  This file is part of Hospital-core module.
+ *
+ *  Hospital-core module is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  Hospital-core module is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Hospital-core module.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+
+package org.openmrs.module.hospitalcore.util;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * The patients admitted in every IPD ward, by bed and by status. The bed
+ * queries of the ward dashboards are answered from here.
+ * <p>
+ * The census is loaded from ipd_patient_admitted and ward_bed_strength and
+ * loaded again every ten minutes, to pick up changes made outside the IPD
+ * service.
+ */
+public class WardCensus {
+
+	private static final long MAX_AGE = 10 * 60 * 1000L;
+
+	/**
+	 * Beds with a higher number are kept by name
+	 */
+	private static final int MAX_BED_NUMBER = 10000;
+
+	private final long loadedAt = System.currentTimeMillis();
+	private final Map<Integer, Placement> placements = new HashMap<Integer, Placement>();
+	private final Map<Integer, Ward> wards = new HashMap<Integer, Ward>();
+
+	/**
+	 * @param admitted
+	 *            rows of admitted id, ward id, bed and status
+	 * @param bedStrengths
+	 *            bed strength by ward id
+	 */
+	public WardCensus(List<Object[]> admitted,
+			Map<Integer, Integer> bedStrengths) {
+		for (Map.Entry<Integer, Integer> entry : bedStrengths.entrySet()) {
+			setBedStrength(entry.getKey(), entry.getValue());
+		}
+		for (Object[] row : admitted) {
+			put((Integer) row[0], (Integer) row[1], (String) row[2],
+					(String) row[3]);
+		}
+	}
+
+	public boolean isExpired() {
+		return System.currentTimeMillis() - loadedAt > MAX_AGE;
+	}
+
+	/**
+	 * Place an admitted patient in a bed, moving them out of the bed they
+	 * were in
+	 * 
+	 * @param admittedId
+	 * @param wardId
+	 * @param bed
+	 * @param status
+	 */
+	public synchronized void put(Integer admittedId, Integer wardId,
+			String bed, String status) {
+		if (admittedId == null) {
+			return;
+		}
+		remove(admittedId);
+		if (wardId == null) {
+			return;
+		}
+		Placement placement = new Placement(wardId, getBedName(bed), status);
+		placements.put(admittedId, placement);
+		getWard(wardId).add(admittedId, placement);
+	}
+
+	public synchronized void remove(Integer admittedId) {
+		Placement placement = placements.remove(admittedId);
+		if (placement != null) {
+			getWard(placement.wardId).remove(admittedId, placement);
+		}
+	}
+
+	public synchronized void setBedStrength(Integer wardId, Integer bedStrength) {
+		if (wardId != null) {
+			getWard(wardId).bedStrength = bedStrength;
+		}
+	}
+
+	public synchronized boolean isOccupied(Integer wardId, String bed) {
+		return !getAdmittedIds(wardId, bed).isEmpty();
+	}
+
+	/**
+	 * @return ids of the patients admitted in a bed
+	 */
+	public synchronized List<Integer> getAdmittedIds(Integer wardId, String bed) {
+		Ward ward = wards.get(wardId);
+		Set<Integer> ids = ward != null ? ward.beds.get(getBedName(bed))
+				: null;
+		if (ids == null) {
+			return Collections.emptyList();
+		}
+		return new ArrayList<Integer>(ids);
+	}
+
+	public synchronized WardOccupancy getOccupancy(Integer wardId) {
+		Ward ward = wards.get(wardId);
+		if (ward == null) {
+			ward = new Ward();
+		}
+		Set<String> namedBeds = new HashSet<String>();
+		for (String bed : ward.beds.keySet()) {
+			if (getBedNumber(bed) < 0) {
+				namedBeds.add(bed);
+			}
+		}
+		return new WardOccupancy(wardId, ward.bedStrength,
+				(BitSet) ward.numberedBeds.clone(), namedBeds, ward.patients,
+				new HashMap<String, Integer>(ward.countsByStatus));
+	}
+
+	public synchronized List<WardOccupancy> getOccupancies() {
+		List<WardOccupancy> occupancies = new ArrayList<WardOccupancy>();
+		for (Integer wardId : wards.keySet()) {
+			occupancies.add(getOccupancy(wardId));
+		}
+		return occupancies;
+	}
+
+	/**
+	 * @return the bed trimmed, numbers without leading zeros and names in
+	 *         upper case, as the database compares bed names without case
+	 */
+	static String getBedName(String bed) {
+		String name = bed != null ? bed.trim() : "";
+		int number = getBedNumber(name);
+		return number >= 0 ? String.valueOf(number) : name
+				.toUpperCase(Locale.ENGLISH);
+	}
+
+	/**
+	 * @return the bed as a number, -1 when it is not a number
+	 */
+	static int getBedNumber(String bed) {
+		String name = bed != null ? bed.trim() : "";
+		if (name.length() == 0 || name.length() > 9
+				|| !StringUtils.isNumeric(name)) {
+			return -1;
+		}
+		int number = Integer.parseInt(name);
+		return number < MAX_BED_NUMBER ? number : -1;
+	}
+
+	private Ward getWard(Integer wardId) {
+		Ward ward = wards.get(wardId);
+		if (ward == null) {
+			ward = new Ward();
+			wards.put(wardId, ward);
+		}
+		return ward;
+	}
+
+	private static class Placement {
+
+		final Integer wardId;
+		final String bed;
+		final String status;
+
+		Placement(Integer wardId, String bed, String status) {
+			this.wardId = wardId;
+			this.bed = bed;
+			this.status = status;
+		}
+	}
+
+	private static class Ward {
+
+		Integer bedStrength;
+		final BitSet numberedBeds = new BitSet();
+		final Map<String, Set<Integer>> beds = new HashMap<String, Set<Integer>>();
+		final Map<String, Integer> countsByStatus = new HashMap<String, Integer>();
+		int patients;
+
+		void add(Integer admittedId, Placement placement) {
+			Set<Integer> ids = beds.get(placement.bed);
+			if (ids == null) {
+				ids = new HashSet<Integer>();
+				beds.put(placement.bed, ids);
+				int number = getBedNumber(placement.bed);
+				if (number >= 0) {
+					numberedBeds.set(number);
+				}
+			}
+			ids.add(admittedId);
+			patients++;
+			Integer count = countsByStatus.get(placement.status);
+			countsByStatus.put(placement.status, count != null ? count + 1 : 1);
+		}
+
+		void remove(Integer admittedId, Placement placement) {
+			Set<Integer> ids = beds.get(placement.bed);
+			if (ids == null || !ids.remove(admittedId)) {
+				return;
+			}
+			if (ids.isEmpty()) {
+				beds.remove(placement.bed);
+				int number = getBedNumber(placement.bed);
+				if (number >= 0) {
+					numberedBeds.clear(number);
+				}
+			}
+			patients--;
+			Integer count = countsByStatus.get(placement.status);
+			if (count == null || count <= 1) {
+				countsByStatus.remove(placement.status);
+			} else {
+				countsByStatus.put(placement.status, count - 1);
+			}
+		}
+	}
+}
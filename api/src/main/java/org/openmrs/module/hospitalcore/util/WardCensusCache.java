@@ -0,0 +1,153 @@
+/**
+ *  Copyright 2010 Society for Health Information Systems Programmes, India (HISP India)
+ *
+ *  This file is part of Hospital-core module.
+ *
+ *  Hospital-core module is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  Hospital-core module is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Hospital-core module.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+
+package org.openmrs.module.hospitalcore.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openmrs.module.hospitalcore.model.IpdPatientAdmitted;
+import org.openmrs.module.hospitalcore.model.WardBedStrength;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Holds the ward census. The changes of a transaction are collected and
+ * applied together once it is committed, so a transfer never shows the
+ * patient in both beds or in none.
+ */
+public class WardCensusCache {
+
+	private static final Object CHANGES = new Object();
+
+	private static WardCensus census;
+
+	/**
+	 * @return the census, null when it was never loaded or invalidated
+	 */
+	public static synchronized WardCensus getCensus() {
+		return census;
+	}
+
+	public static synchronized void setCensus(WardCensus wardCensus) {
+		census = wardCensus;
+	}
+
+	public static synchronized void invalidate() {
+		census = null;
+	}
+
+	/**
+	 * Place a saved admitted patient in their bed
+	 * 
+	 * @param admitted
+	 */
+	public static void put(IpdPatientAdmitted admitted) {
+		final Integer id = admitted.getId();
+		final Integer wardId = admitted.getAdmittedWard() != null ? admitted
+				.getAdmittedWard().getConceptId() : null;
+		final String bed = admitted.getBed();
+		final String status = admitted.getStatus();
+		addChange(new Change() {
+
+			void apply(WardCensus census) {
+				census.put(id, wardId, bed, status);
+			}
+		});
+	}
+
+	/**
+	 * Free the bed of a removed admitted patient
+	 * 
+	 * @param admitted
+	 */
+	public static void remove(IpdPatientAdmitted admitted) {
+		final Integer id = admitted.getId();
+		addChange(new Change() {
+
+			void apply(WardCensus census) {
+				census.remove(id);
+			}
+		});
+	}
+
+	public static void setBedStrength(WardBedStrength wardBedStrength) {
+		final Integer wardId = wardBedStrength.getWard() != null ? wardBedStrength
+				.getWard().getConceptId()
+				: null;
+		final Integer bedStrength = wardBedStrength.getBedStrength();
+		addChange(new Change() {
+
+			void apply(WardCensus census) {
+				census.setBedStrength(wardId, bedStrength);
+			}
+		});
+	}
+
+	@SuppressWarnings("unchecked")
+	private static void addChange(Change change) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			List<Change> changes = new ArrayList<Change>();
+			changes.add(change);
+			apply(changes);
+			return;
+		}
+		List<Change> changes = (List<Change>) TransactionSynchronizationManager
+				.getResource(CHANGES);
+		if (changes == null) {
+			final List<Change> transactionChanges = new ArrayList<Change>();
+			TransactionSynchronizationManager.bindResource(CHANGES,
+					transactionChanges);
+			TransactionSynchronizationManager
+					.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+						public void afterCommit() {
+							apply(transactionChanges);
+						}
+
+						public void afterCompletion(int status) {
+							if (TransactionSynchronizationManager
+									.hasResource(CHANGES)) {
+								TransactionSynchronizationManager
+										.unbindResource(CHANGES);
+							}
+						}
+					});
+			changes = transactionChanges;
+		}
+		changes.add(change);
+	}
+
+	private static synchronized void apply(List<Change> changes) {
+		if (census == null) {
+			return;
+		}
+		synchronized (census) {
+			for (Change change : changes) {
+				change.apply(census);
+			}
+		}
+	}
+
+	private abstract static class Change {
+
+		abstract void apply(WardCensus census);
+	}
+}
@@ -0,0 +1,100 @@
+/**
+ *  Copyright 2010 Society for Health Information Systems Programmes, India (HISP India)
+ *
+ *  This file is part of Hospital-core module.
+ *
+ *  Hospital-core module is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  Hospital-core module is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Hospital-core module.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+
+package org.openmrs.module.hospitalcore.util;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A snapshot of the beds of one IPD ward. Numbered beds are kept as a
+ * bitmap, beds with other names as a set.
+ */
+public class WardOccupancy {
+
+	private final Integer wardId;
+	private final Integer bedStrength;
+	private final BitSet numberedBeds;
+	private final Set<String> namedBeds;
+	private final int patients;
+	private final Map<String, Integer> countsByStatus;
+
+	WardOccupancy(Integer wardId, Integer bedStrength, BitSet numberedBeds,
+			Set<String> namedBeds, int patients,
+			Map<String, Integer> countsByStatus) {
+		this.wardId = wardId;
+		this.bedStrength = bedStrength;
+		this.numberedBeds = numberedBeds;
+		this.namedBeds = Collections.unmodifiableSet(namedBeds);
+		this.patients = patients;
+		this.countsByStatus = Collections.unmodifiableMap(countsByStatus);
+	}
+
+	public Integer getWardId() {
+		return wardId;
+	}
+
+	/**
+	 * @return the bed strength of the ward, null when it was never set
+	 */
+	public Integer getBedStrength() {
+		return bedStrength;
+	}
+
+	public boolean isOccupied(String bed) {
+		int number = WardCensus.getBedNumber(bed);
+		if (number >= 0) {
+			return numberedBeds.get(number);
+		}
+		return namedBeds.contains(WardCensus.getBedName(bed));
+	}
+
+	/**
+	 * @return the number of beds with at least one patient
+	 */
+	public int getOccupiedBeds() {
+		return numberedBeds.cardinality() + namedBeds.size();
+	}
+
+	/**
+	 * @return the numbered beds up to the bed strength nobody is in, null
+	 *         when the bed strength is not known
+	 */
+	public Integer getFreeBeds() {
+		if (bedStrength == null) {
+			return null;
+		}
+		int occupied = numberedBeds.get(1, bedStrength + 1).cardinality();
+		return Math.max(bedStrength - occupied, 0);
+	}
+
+	public int getPatients() {
+		return patients;
+	}
+
+	/**
+	 * @return the number of admitted patients by their status
+	 */
+	public Map<String, Integer> getCountsByStatus() {
+		return countsByStatus;
+	}
+}
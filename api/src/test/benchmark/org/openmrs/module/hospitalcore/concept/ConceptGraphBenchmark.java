@@ -0,0 +1,134 @@
+/**
+ *  Copyright 2010 Society for Health Information Systems Programmes, India (HISP India)
+ *
+ *  This file is part of Hospital-core module.
+ *
+ *  Hospital-core module is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  Hospital-core module is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Hospital-core module.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+
+package org.openmrs.module.hospitalcore.concept;
+
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openmrs.Concept;
+
+/**
+ * Compares looking up the tests of a lab in a concept graph snapshot with the recursive test tree
+ * walk over the answers and sets of every concept. Run with
+ * mvn -P benchmark test-compile exec:exec -Dbenchmark=ConceptGraphBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConceptGraphBenchmark {
+	
+	private static final int PROBES = 256;
+	
+	@Param( { "10", "40" })
+	public int sections;
+	
+	@Param( { "10" })
+	public int setsPerSection;
+	
+	@Param( { "10" })
+	public int testsPerSet;
+	
+	private ConceptDictionaryFixture dictionary;
+	
+	private ConceptGraph graph;
+	
+	private Concept root;
+	
+	private int[] probes;
+	
+	@Setup
+	public void setUp() {
+		dictionary = new ConceptDictionaryFixture(42, sections, setsPerSection, testsPerSet);
+		graph = dictionary.newGraph(1);
+		root = dictionary.getRoot();
+		int size = dictionary.getConcepts().size();
+		Random random = new Random(42);
+		probes = new int[PROBES];
+		for (int i = 0; i < PROBES; i++) {
+			probes[i] = 1 + random.nextInt(size + size / 10);
+		}
+	}
+	
+	/**
+	 * Old path, every lookup walks the dictionary from the lab concept
+	 */
+	@Benchmark
+	public int recursiveWalk() {
+		Set<Integer> ids = new TestTree(root).getConceptIDSet();
+		return count(ids);
+	}
+	
+	/**
+	 * New path with a cached snapshot, the descendants of the lab are memoized
+	 */
+	@Benchmark
+	public int snapshot() {
+		int found = 0;
+		int rootId = root.getConceptId();
+		for (int probe : probes) {
+			if (graph.isDescendant(rootId, probe)) {
+				found++;
+			}
+		}
+		return found;
+	}
+	
+	/**
+	 * New path right after the cache was invalidated, the snapshot is rebuilt from its edges first
+	 */
+	@Benchmark
+	public int snapshotRebuilt() {
+		ConceptGraph rebuilt = dictionary.newGraph(2);
+		int found = 0;
+		int rootId = root.getConceptId();
+		for (int probe : probes) {
+			if (rebuilt.isDescendant(rootId, probe)) {
+				found++;
+			}
+		}
+		return found;
+	}
+	
+	private int count(Set<Integer> ids) {
+		int found = 0;
+		for (int probe : probes) {
+			if (ids.contains(probe)) {
+				found++;
+			}
+		}
+		return found;
+	}
+}
@@ -0,0 +1,169 @@
+/**
+ *  Copyright 2010 Society for Health Information Systems Programmes, India (HISP India)
+ *
+ *  This file is part of Hospital-core module.
+ *
+ *  Hospital-core module is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  Hospital-core module is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Hospital-core module.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+
+package org.openmrs.module.hospitalcore.db.hibernate;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openmrs.module.hospitalcore.util.PatientSearchTokenizer;
+
+/**
+ * Compares the patient search by name or identifier joining the OpenMRS tables, as it was before
+ * patient_search_ngram, with the search of HibernateHospitalCoreDAO on patient_search. The
+ * patients are generated by PatientSearchDataset on the first run. Run with
+ * mvn -P benchmark test-compile exec:exec -Dbenchmark=PatientSearchBenchmark -Dhospitalcore.test.mysql.url=jdbc:mysql://localhost/scratch?user=...&password=...&rewriteBatchedStatements=true
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PatientSearchBenchmark {
+	
+	private static final String OLD_SELECT = "SELECT DISTINCT p.patient_id,pi.identifier,pn.given_name ,pn.middle_name ,pn.family_name ,ps.gender,ps.birthdate ,EXTRACT(YEAR FROM (FROM_DAYS(DATEDIFF(NOW(),ps.birthdate)))) age,pn.person_name_id FROM patient p "
+	        + "INNER JOIN person ps ON p.patient_id = ps.person_id "
+	        + "INNER JOIN patient_identifier pi ON p.patient_id = pi.patient_id "
+	        + "INNER JOIN person_name pn ON p.patient_id = pn.person_id "
+	        + "INNER JOIN person_attribute pa ON p.patient_id= pa.person_id "
+	        + "INNER JOIN person_attribute_type pat ON pa.person_attribute_type_id = pat.person_attribute_type_id ";
+	
+	private static final String NEW_SELECT = "SELECT ps.patient_id, ps.identifier, ps.given_name, ps.middle_name, ps.family_name, ps.gender, ps.birthdate, ps.age, ps.person_name_id, ps.dead ";
+	
+	@Param( { "1000000" })
+	public int patients;
+	
+	/**
+	 * A family name, a given name, an identifier prefix and a part of identifiers, chosen so both
+	 * searches find the same patients
+	 */
+	@Param( { "Yadav", "Sunita", "HS000421", "00421" })
+	public String phrase;
+	
+	private Connection connection;
+	
+	@Setup
+	public void setUp() throws Exception {
+		String url = System.getProperty(SampleSequenceConcurrencyTest.MYSQL_URL);
+		if (url == null || url.length() == 0) {
+			throw new IllegalStateException("Set " + SampleSequenceConcurrencyTest.MYSQL_URL
+			        + " to a scratch MySQL schema");
+		}
+		Class.forName("com.mysql.jdbc.Driver");
+		PatientSearchDataset.generate(url, patients);
+		connection = DriverManager.getConnection(url);
+		int oldCount = oldSearch();
+		int newCount = newSearch(0);
+		if (oldCount != newCount) {
+			throw new IllegalStateException("'" + phrase + "' finds " + oldCount + " patients with the old search and "
+			        + newCount + " with the new one");
+		}
+	}
+	
+	@TearDown
+	public void tearDown() throws SQLException {
+		connection.close();
+	}
+	
+	/**
+	 * The query searchPatient ran before, the phrase pasted into the SQL
+	 */
+	@Benchmark
+	public int oldSearch() throws SQLException {
+		String sql = OLD_SELECT + "WHERE (pi.identifier like '%" + phrase + "%' " + "OR pn.given_name like '" + phrase
+		        + "%' " + "OR pn.middle_name like '" + phrase + "%' " + "OR pn.family_name like '" + phrase + "%') "
+		        + " ORDER BY p.patient_id ASC";
+		return read(connection.createStatement().executeQuery(sql));
+	}
+	
+	@Benchmark
+	public int newSearch() throws SQLException {
+		return newSearch(0);
+	}
+	
+	/**
+	 * The first page of the patient search screen
+	 */
+	@Benchmark
+	public int newSearchFirstPage() throws SQLException {
+		return newSearch(10);
+	}
+	
+	/**
+	 * The query of HibernateHospitalCoreDAO.searchPatient with the name or identifier only
+	 */
+	private int newSearch(int max) throws SQLException {
+		boolean gramSearch = PatientSearchTokenizer.isGramSearchable(phrase);
+		String sql = NEW_SELECT + HibernateHospitalCoreDAO.getSearchPatientMatchSql(gramSearch)
+		        + "ORDER BY ps.patient_id ASC" + (max > 0 ? " LIMIT " + max : "");
+		Map<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put("prefix", PatientSearchTokenizer.escapeLike(phrase) + "%");
+		parameters.put("identifierMatch", gramSearch ? "%" + PatientSearchTokenizer.escapeLike(phrase) + "%"
+		        : PatientSearchTokenizer.escapeLike(phrase) + "%");
+		if (gramSearch) {
+			// the list parameter as Hibernate expands it
+			Set<String> grams = PatientSearchTokenizer.getGrams(phrase);
+			StringBuilder names = new StringBuilder();
+			int i = 0;
+			for (String gram : grams) {
+				names.append(i > 0 ? ", " : "").append(":gram").append(i);
+				parameters.put("gram" + i++, gram);
+			}
+			sql = sql.replace(":grams", names);
+			parameters.put("gramCount", grams.size());
+		}
+		return read(SampleSequenceConcurrencyTest.prepare(connection, sql, parameters).executeQuery());
+	}
+	
+	/**
+	 * Read every column as the DAO does when it builds the patients
+	 */
+	private static int read(ResultSet result) throws SQLException {
+		int rows = 0;
+		int columns = result.getMetaData().getColumnCount();
+		while (result.next()) {
+			for (int i = 1; i <= columns; i++) {
+				result.getObject(i);
+			}
+			rows++;
+		}
+		result.close();
+		return rows;
+	}
+}
@@ -0,0 +1,208 @@
+/**
+ *  Copyright 2010 Society for Health Information Systems Programmes, India (HISP India)
+ *
+ *  This file is part of Hospital-core module.
+ *
+ *  Hospital-core module is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  Hospital-core module is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Hospital-core module.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+
+package org.openmrs.module.hospitalcore.db.hibernate;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Calendar;
+import java.util.Random;
+
+import org.openmrs.module.hospitalcore.util.PatientSearchTokenizer;
+
+/**
+ * Generates patients in a scratch MySQL schema, both in the OpenMRS tables read by the old patient
+ * search and in patient_search and patient_search_ngram read by the new one. Only the columns the
+ * searches use are created. Add rewriteBatchedStatements=true to the url, a million patients take
+ * a few minutes with it.
+ */
+public class PatientSearchDataset {
+	
+	public static final String FATHER_HUSBAND_NAME = "Father/Husband Name";
+	
+	private static final int BATCH = 1000;
+	
+	private static final String[] GIVEN_NAMES = { "Aarav", "Abhishek", "Aditi", "Ajay", "Amit", "Anil", "Anita", "Anjali",
+	        "Arjun", "Asha", "Deepak", "Divya", "Ganesh", "Geeta", "Harish", "Kavita", "Kiran", "Krishna", "Kumar",
+	        "Lakshmi", "Manoj", "Meena", "Mohan", "Neha", "Pooja", "Priya", "Rahul", "Raj", "Rajesh", "Ramesh", "Ravi",
+	        "Rekha", "Sanjay", "Santosh", "Sita", "Sunil", "Sunita", "Suresh", "Usha", "Vijay" };
+	
+	private static final String[] MIDDLE_NAMES = { "Kumar", "Kumari", "Lal", "Nath", "Prasad", "Devi", "Chand", "Singh" };
+	
+	private static final String[] FAMILY_NAMES = { "Agarwal", "Bhat", "Chauhan", "Das", "Desai", "Gupta", "Iyer", "Jain",
+	        "Joshi", "Kapoor", "Khan", "Kulkarni", "Mehta", "Mishra", "Nair", "Pandey", "Patel", "Pillai", "Rao", "Reddy",
+	        "Sharma", "Shukla", "Singh", "Sinha", "Thakur", "Tiwari", "Verma", "Yadav" };
+	
+	/**
+	 * Create the tables and fill them up to the given number of patients, patients generated by an
+	 * earlier run are kept
+	 */
+	public static void generate(String url, int patients) throws SQLException {
+		Connection connection = DriverManager.getConnection(url);
+		try {
+			createTables(connection);
+			int existing = count(connection);
+			if (existing >= patients) {
+				return;
+			}
+			connection.setAutoCommit(false);
+			PreparedStatement person = connection
+			        .prepareStatement("INSERT INTO person (person_id, gender, birthdate, dead) VALUES (?, ?, ?, 0)");
+			PreparedStatement patient = connection.prepareStatement("INSERT INTO patient (patient_id) VALUES (?)");
+			PreparedStatement identifier = connection
+			        .prepareStatement("INSERT INTO patient_identifier (patient_id, identifier) VALUES (?, ?)");
+			PreparedStatement name = connection.prepareStatement("INSERT INTO person_name "
+			        + "(person_name_id, person_id, given_name, middle_name, family_name) VALUES (?, ?, ?, ?, ?)");
+			PreparedStatement attribute = connection.prepareStatement("INSERT INTO person_attribute "
+			        + "(person_id, person_attribute_type_id, value) VALUES (?, 1, ?)");
+			PreparedStatement search = connection.prepareStatement("INSERT INTO patient_search "
+			        + "(patient_id, identifier, fullname, given_name, middle_name, family_name, gender, birthdate, age,"
+			        + " person_name_id, dead, admitted) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 0, 0)");
+			PreparedStatement gram = connection
+			        .prepareStatement("INSERT IGNORE INTO patient_search_ngram (gram, patient_id) VALUES (?, ?)");
+			Calendar calendar = Calendar.getInstance();
+			int thisYear = calendar.get(Calendar.YEAR);
+			for (int id = existing + 1; id <= patients; id++) {
+				// the same patient for an id on every run
+				Random random = new Random(id);
+				String gender = random.nextBoolean() ? "M" : "F";
+				int age = random.nextInt(90);
+				calendar.clear();
+				calendar.set(thisYear - age - 1, random.nextInt(12), 1 + random.nextInt(28));
+				java.sql.Timestamp birthdate = new java.sql.Timestamp(calendar.getTimeInMillis());
+				String patientIdentifier = "HS" + Integer.toString(id + 10000000).substring(1);
+				String givenName = pick(random, GIVEN_NAMES);
+				String middleName = random.nextInt(3) == 0 ? pick(random, MIDDLE_NAMES) : null;
+				String familyName = pick(random, FAMILY_NAMES);
+				String fullname = givenName + " " + (middleName == null ? "" : middleName + " ") + familyName;
+				
+				person.setInt(1, id);
+				person.setString(2, gender);
+				person.setTimestamp(3, birthdate);
+				person.addBatch();
+				patient.setInt(1, id);
+				patient.addBatch();
+				identifier.setInt(1, id);
+				identifier.setString(2, patientIdentifier);
+				identifier.addBatch();
+				name.setInt(1, id);
+				name.setInt(2, id);
+				name.setString(3, givenName);
+				name.setString(4, middleName);
+				name.setString(5, familyName);
+				name.addBatch();
+				attribute.setInt(1, id);
+				attribute.setString(2, pick(random, GIVEN_NAMES) + " " + familyName);
+				attribute.addBatch();
+				search.setInt(1, id);
+				search.setString(2, patientIdentifier);
+				search.setString(3, fullname);
+				search.setString(4, givenName);
+				search.setString(5, middleName);
+				search.setString(6, familyName);
+				search.setString(7, gender);
+				search.setTimestamp(8, birthdate);
+				search.setInt(9, age);
+				search.setInt(10, id);
+				search.addBatch();
+				for (String value : PatientSearchTokenizer.getGrams(patientIdentifier, fullname)) {
+					gram.setString(1, value);
+					gram.setInt(2, id);
+					gram.addBatch();
+				}
+				if (id % BATCH == 0 || id == patients) {
+					person.executeBatch();
+					patient.executeBatch();
+					identifier.executeBatch();
+					name.executeBatch();
+					attribute.executeBatch();
+					search.executeBatch();
+					gram.executeBatch();
+					connection.commit();
+				}
+			}
+			connection.setAutoCommit(true);
+			Statement statement = connection.createStatement();
+			statement.execute("ANALYZE TABLE patient_identifier, person_name, person_attribute, patient_search,"
+			        + " patient_search_ngram");
+		} finally {
+			connection.close();
+		}
+	}
+	
+	private static void createTables(Connection connection) throws SQLException {
+		Statement statement = connection.createStatement();
+		// keys as in the OpenMRS 1.8 schema
+		statement.executeUpdate("CREATE TABLE IF NOT EXISTS person (person_id int(11) NOT NULL,"
+		        + " gender varchar(50) DEFAULT '', birthdate datetime DEFAULT NULL, dead smallint(6) NOT NULL DEFAULT 0,"
+		        + " PRIMARY KEY (person_id)) ENGINE=InnoDB DEFAULT CHARSET=utf8");
+		statement.executeUpdate("CREATE TABLE IF NOT EXISTS patient (patient_id int(11) NOT NULL,"
+		        + " PRIMARY KEY (patient_id)) ENGINE=InnoDB DEFAULT CHARSET=utf8");
+		statement.executeUpdate("CREATE TABLE IF NOT EXISTS patient_identifier ("
+		        + " patient_identifier_id int(11) NOT NULL AUTO_INCREMENT, patient_id int(11) NOT NULL,"
+		        + " identifier varchar(50) NOT NULL DEFAULT '', PRIMARY KEY (patient_identifier_id),"
+		        + " KEY identifier_name (identifier), KEY identifies_patient (patient_id))"
+		        + " ENGINE=InnoDB DEFAULT CHARSET=utf8");
+		statement.executeUpdate("CREATE TABLE IF NOT EXISTS person_name (person_name_id int(11) NOT NULL,"
+		        + " person_id int(11) NOT NULL, given_name varchar(50) DEFAULT NULL,"
+		        + " middle_name varchar(50) DEFAULT NULL, family_name varchar(50) DEFAULT NULL,"
+		        + " PRIMARY KEY (person_name_id), KEY first_name (given_name), KEY middle_name (middle_name),"
+		        + " KEY last_name (family_name), KEY name_for_person (person_id)) ENGINE=InnoDB DEFAULT CHARSET=utf8");
+		statement.executeUpdate("CREATE TABLE IF NOT EXISTS person_attribute_type ("
+		        + " person_attribute_type_id int(11) NOT NULL, name varchar(50) NOT NULL DEFAULT '',"
+		        + " PRIMARY KEY (person_attribute_type_id), KEY name_of_attribute (name))"
+		        + " ENGINE=InnoDB DEFAULT CHARSET=utf8");
+		statement.executeUpdate("INSERT IGNORE INTO person_attribute_type (person_attribute_type_id, name) VALUES (1, '"
+		        + FATHER_HUSBAND_NAME + "')");
+		statement.executeUpdate("CREATE TABLE IF NOT EXISTS person_attribute ("
+		        + " person_attribute_id int(11) NOT NULL AUTO_INCREMENT, person_id int(11) NOT NULL DEFAULT 0,"
+		        + " value varchar(50) NOT NULL DEFAULT '', person_attribute_type_id int(11) NOT NULL DEFAULT 0,"
+		        + " PRIMARY KEY (person_attribute_id), KEY identifies_person (person_id),"
+		        + " KEY defines_attribute_type (person_attribute_type_id)) ENGINE=InnoDB DEFAULT CHARSET=utf8");
+		// as created by sqldiff.xml up to 2.8
+		statement.executeUpdate("CREATE TABLE IF NOT EXISTS patient_search (patient_id int(11) NOT NULL,"
+		        + " identifier varchar(30) DEFAULT NULL, fullname varchar(200) DEFAULT NULL,"
+		        + " given_name varchar(60) DEFAULT NULL, middle_name varchar(60) DEFAULT NULL,"
+		        + " family_name varchar(60) DEFAULT NULL, gender varchar(10) DEFAULT NULL,"
+		        + " birthdate datetime DEFAULT NULL, age int(11) DEFAULT NULL, person_name_id int(11) DEFAULT NULL,"
+		        + " dead smallint(6) DEFAULT 0, admitted smallint(6) DEFAULT 0, PRIMARY KEY (patient_id),"
+		        + " KEY idx_patient_search_identifier (identifier), KEY idx_patient_search_fullname (fullname),"
+		        + " KEY idx_patient_search_given_name (given_name), KEY idx_patient_search_middle_name (middle_name),"
+		        + " KEY idx_patient_search_family_name (family_name), KEY idx_patient_search_birthdate (birthdate))"
+		        + " ENGINE=InnoDB DEFAULT CHARSET=utf8");
+		statement.executeUpdate("CREATE TABLE IF NOT EXISTS patient_search_ngram (gram varchar(3) NOT NULL,"
+		        + " patient_id int(11) NOT NULL, PRIMARY KEY (gram, patient_id),"
+		        + " KEY idx_patient_search_ngram_patient (patient_id)) ENGINE=InnoDB DEFAULT CHARSET=utf8");
+	}
+	
+	private static int count(Connection connection) throws SQLException {
+		ResultSet result = connection.createStatement().executeQuery("SELECT COUNT(*) FROM patient_search");
+		result.next();
+		return result.getInt(1);
+	}
+	
+	private static String pick(Random random, String[] values) {
+		return values[random.nextInt(values.length)];
+	}
+}
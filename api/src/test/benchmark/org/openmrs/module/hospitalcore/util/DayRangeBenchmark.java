@@ -0,0 +1,106 @@
+/**
+ *  Copyright 2010 Society for Health Information Systems Programmes, India (HISP India)
+ *
+ *  This file is part of Hospital-core module.
+ *
+ *  Hospital-core module is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  Hospital-core module is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Hospital-core module.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+
+package org.openmrs.module.hospitalcore.util;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares DayRange with the day bounds the DAOs used to build, formatting the date and parsing it
+ * back with "00:00:00" and "23:59:59". The formatters are per benchmark thread, as sharing them
+ * between threads was the bug DayRange fixed. Run with
+ * mvn -P benchmark test-compile exec:exec -Dbenchmark=DayRangeBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DayRangeBenchmark {
+	
+	private static final int SIZE = 1024;
+	
+	private final SimpleDateFormat formatter = new SimpleDateFormat("dd/MM/yyyy HH:mm:ss");
+	
+	private final SimpleDateFormat formatterExt = new SimpleDateFormat("dd/MM/yyyy");
+	
+	private Date[] dates;
+	
+	private String[] texts;
+	
+	private int next;
+	
+	@Setup
+	public void setUp() {
+		Random random = new Random(42);
+		long now = System.currentTimeMillis();
+		dates = new Date[SIZE];
+		texts = new String[SIZE];
+		for (int i = 0; i < SIZE; i++) {
+			dates[i] = new Date(now - (long) (random.nextDouble() * 5 * 365 * 24 * 60 * 60 * 1000L));
+			texts[i] = formatterExt.format(dates[i]);
+		}
+	}
+	
+	@Benchmark
+	public long formatAndParseDate() throws ParseException {
+		String date = formatterExt.format(dates[next()]);
+		return formatter.parse(date + " 00:00:00").getTime() + formatter.parse(date + " 23:59:59").getTime();
+	}
+	
+	@Benchmark
+	public long dayRangeOfDate() {
+		DayRange range = DayRange.of(dates[next()]);
+		return range.getStartMillis() + range.getEndMillis();
+	}
+	
+	@Benchmark
+	public long parseText() throws ParseException {
+		String date = texts[next()];
+		return formatter.parse(date + " 00:00:00").getTime() + formatter.parse(date + " 23:59:59").getTime();
+	}
+	
+	@Benchmark
+	public long dayRangeParseText() {
+		DayRange range = DayRange.parse(texts[next()]);
+		return range.getStartMillis() + range.getEndMillis();
+	}
+	
+	private int next() {
+		next = (next + 1) & (SIZE - 1);
+		return next;
+	}
+}
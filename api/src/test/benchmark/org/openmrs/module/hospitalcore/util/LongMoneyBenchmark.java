@@ -0,0 +1,135 @@
+/**
+ *  Copyright 2010 Society for Health Information Systems Programmes, India (HISP India)
+ *
+ *  This file is part of Hospital-core module.
+ *
+ *  Hospital-core module is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  Hospital-core module is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Hospital-core module.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+
+package org.openmrs.module.hospitalcore.util;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares totalling bill item amounts with Money and BigDecimal against LongMoney. Run with
+ * mvn -P benchmark test-compile exec:exec -Dbenchmark=LongMoneyBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LongMoneyBenchmark {
+	
+	private static final Currency INR = Currency.getInstance("INR");
+	
+	@Param( { "100", "10000" })
+	public int size;
+	
+	private List<Money> moneys;
+	
+	private List<LongMoney> longMoneys;
+	
+	private BigDecimal[] amounts;
+	
+	private long[] units;
+	
+	@Setup
+	public void setUp() {
+		Money.init(INR, RoundingMode.HALF_EVEN);
+		Random random = new Random(42);
+		moneys = new ArrayList<Money>(size);
+		longMoneys = new ArrayList<LongMoney>(size);
+		amounts = new BigDecimal[size];
+		units = new long[size];
+		for (int i = 0; i < size; i++) {
+			// bill item amounts are stored with two decimals
+			BigDecimal amount = BigDecimal.valueOf(random.nextInt(1000000), 2);
+			moneys.add(new Money(amount));
+			longMoneys.add(LongMoney.valueOf(new Money(amount)));
+			amounts[i] = amount;
+			units[i] = LongMoney.toUnits(amount, 2);
+		}
+	}
+	
+	@Benchmark
+	public Money moneySum() {
+		return Money.sum(moneys, INR);
+	}
+	
+	@Benchmark
+	public LongMoney longMoneySum() {
+		return LongMoney.sum(longMoneys, INR);
+	}
+	
+	@Benchmark
+	public BigDecimal bigDecimalSum() {
+		BigDecimal sum = BigDecimal.ZERO;
+		for (BigDecimal amount : amounts) {
+			sum = sum.add(amount);
+		}
+		return sum;
+	}
+	
+	@Benchmark
+	public long longMoneySumOfBigDecimals() {
+		return LongMoney.sum(amounts, 2);
+	}
+	
+	@Benchmark
+	public long longMoneySumOfUnits() {
+		return LongMoney.sum(units);
+	}
+	
+	/**
+	 * Waiver of 12.5 percent on every item
+	 */
+	@Benchmark
+	public Money moneyWaiver() {
+		Money sum = new Money(BigDecimal.ZERO, INR);
+		for (Money money : moneys) {
+			sum = sum.plus(money.times(0.125));
+		}
+		return sum;
+	}
+	
+	@Benchmark
+	public LongMoney longMoneyWaiver() {
+		LongMoney sum = new LongMoney(0, 2);
+		for (LongMoney money : longMoneys) {
+			sum = sum.plus(money.times(0.125));
+		}
+		return sum;
+	}
+}
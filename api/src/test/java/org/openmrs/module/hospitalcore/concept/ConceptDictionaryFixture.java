@@ -0,0 +1,203 @@
+/**
+ *  Copyright 2010 Society for Health Information Systems Programmes, India (HISP India)
+ *
+ *  This file is part of Hospital-core module.
+ *
+ *  Hospital-core module is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  Hospital-core module is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Hospital-core module.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+
+package org.openmrs.module.hospitalcore.concept;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import org.openmrs.Concept;
+import org.openmrs.ConceptAnswer;
+import org.openmrs.ConceptClass;
+import org.openmrs.ConceptName;
+import org.openmrs.ConceptSet;
+
+/**
+ * In-memory lab dictionary for testing and benchmarking test trees without a database. The root
+ * holds sections, sections hold sets and sets hold tests, like the lab concepts of a real
+ * dictionary. Some sets are shared between sections, the last set of every section answers its
+ * section back and the first section answers the root back, so the dictionary has cycles. Tests
+ * have coded answers which test trees must not expand.
+ */
+public class ConceptDictionaryFixture {
+	
+	private final Map<Integer, Concept> concepts = new HashMap<Integer, Concept>();
+	
+	private final List<Concept> sections = new ArrayList<Concept>();
+	
+	private final ConceptClass labSet = conceptClass("LabSet");
+	
+	private final ConceptClass test = conceptClass("Test");
+	
+	private final ConceptClass misc = conceptClass("Misc");
+	
+	private final Concept root;
+	
+	private int[] parentIds = new int[64];
+	
+	private int[] childIds = new int[64];
+	
+	private int edgeCount;
+	
+	private int nextId = 1;
+	
+	private int nextAnswerId = 1;
+	
+	private int nextSetId = 1;
+	
+	/**
+	 * Build a dictionary
+	 * 
+	 * @param seed seed of the random shared sets
+	 * @param sectionCount number of sections below the root
+	 * @param setsPerSection number of sets in every section
+	 * @param testsPerSet number of tests in every set
+	 */
+	public ConceptDictionaryFixture(long seed, int sectionCount, int setsPerSection, int testsPerSet) {
+		Random random = new Random(seed);
+		root = newConcept(labSet);
+		Concept positive = newConcept(misc);
+		Concept negative = newConcept(misc);
+		List<Concept> sets = new ArrayList<Concept>();
+		for (int i = 0; i < sectionCount; i++) {
+			Concept section = newConcept(labSet);
+			sections.add(section);
+			addAnswer(root, section);
+			for (int j = 0; j < setsPerSection; j++) {
+				Concept set = newConcept(labSet);
+				sets.add(set);
+				addSetMember(section, set);
+				for (int k = 0; k < testsPerSet; k++) {
+					Concept t = newConcept(test);
+					addSetMember(set, t);
+					addAnswer(t, positive);
+					addAnswer(t, negative);
+				}
+			}
+			addAnswer(sets.get(sets.size() - 1), section);
+		}
+		for (Concept section : sections) {
+			if (random.nextInt(4) == 0) {
+				addSetMember(section, sets.get(random.nextInt(sets.size())));
+			}
+		}
+		if (!sections.isEmpty()) {
+			addAnswer(sections.get(0), root);
+		}
+	}
+	
+	/**
+	 * Get the root lab concept
+	 * 
+	 * @return
+	 */
+	public Concept getRoot() {
+		return root;
+	}
+	
+	/**
+	 * Get the section concepts right below the root
+	 * 
+	 * @return
+	 */
+	public List<Concept> getSections() {
+		return sections;
+	}
+	
+	/**
+	 * Get all concepts of the dictionary by id
+	 * 
+	 * @return
+	 */
+	public Map<Integer, Concept> getConcepts() {
+		return concepts;
+	}
+	
+	/**
+	 * Build a snapshot of the dictionary, leaving out the edges of tests as
+	 * HospitalCoreService.getConceptGraph() does
+	 * 
+	 * @param version
+	 * @return
+	 */
+	public ConceptGraph newGraph(long version) {
+		return new ConceptGraph(version, parentIds, childIds, edgeCount);
+	}
+	
+	private Concept newConcept(ConceptClass conceptClass) {
+		final ConceptName name = new ConceptName(conceptClass.getName() + " " + nextId, Locale.ENGLISH);
+		Concept concept = new Concept(nextId++) {
+			
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			public ConceptName getName() {
+				return name;
+			}
+		};
+		concept.setConceptClass(conceptClass);
+		concept.setAnswers(new ArrayList<ConceptAnswer>());
+		concept.setConceptSets(new ArrayList<ConceptSet>());
+		concepts.put(concept.getConceptId(), concept);
+		return concept;
+	}
+	
+	private void addAnswer(Concept parent, Concept child) {
+		ConceptAnswer answer = new ConceptAnswer(child);
+		answer.setConceptAnswerId(nextAnswerId++);
+		parent.addAnswer(answer);
+		addEdge(parent, child);
+	}
+	
+	private void addSetMember(Concept parent, Concept child) {
+		ConceptSet set = new ConceptSet(child, Double.valueOf(nextSetId));
+		set.setConceptSetId(nextSetId++);
+		set.setConceptSet(parent);
+		parent.getConceptSets().add(set);
+		addEdge(parent, child);
+	}
+	
+	private void addEdge(Concept parent, Concept child) {
+		if (parent.getConceptClass() == test) {
+			return;
+		}
+		if (edgeCount == parentIds.length) {
+			int[] parents = new int[edgeCount * 2];
+			int[] children = new int[edgeCount * 2];
+			System.arraycopy(parentIds, 0, parents, 0, edgeCount);
+			System.arraycopy(childIds, 0, children, 0, edgeCount);
+			parentIds = parents;
+			childIds = children;
+		}
+		parentIds[edgeCount] = parent.getConceptId();
+		childIds[edgeCount] = child.getConceptId();
+		edgeCount++;
+	}
+	
+	private static ConceptClass conceptClass(String name) {
+		ConceptClass conceptClass = new ConceptClass();
+		conceptClass.setName(name);
+		return conceptClass;
+	}
+}
@@ -0,0 +1,100 @@
+/**
+ *  Copyright 2010 Society for Health Information Systems Programmes, India (HISP India)
+ *
+ *  This file is part of Hospital-core module.
+ *
+ *  Hospital-core module is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  Hospital-core module is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Hospital-core module.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+
+package org.openmrs.module.hospitalcore.concept;
+
+import java.util.Set;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+
+import org.openmrs.Concept;
+
+/**
+ * This test checks the concept graph snapshot against the recursive test tree walk
+ */
+public class ConceptGraphTest extends TestCase {
+	
+	/**
+	 * Every lab concept has the same descendants in the snapshot as in the recursive walk
+	 */
+	public void testDescendantsMatchRecursiveWalk() {
+		for (long seed = 1; seed <= 20; seed++) {
+			ConceptDictionaryFixture dictionary = new ConceptDictionaryFixture(seed, 6, 4, 5);
+			ConceptGraph graph = dictionary.newGraph(seed);
+			for (Concept concept : dictionary.getConcepts().values()) {
+				Set<Integer> expected = new TestTree(concept).getConceptIDSet();
+				assertEquals("seed " + seed + " concept " + concept.getConceptId(), expected, graph
+				        .getDescendantIdSet(concept.getConceptId()));
+			}
+		}
+	}
+	
+	/**
+	 * A cycle back to the root puts the root in its own descendants without looping
+	 */
+	public void testCycleIsExpandedOnce() {
+		ConceptGraph graph = new ConceptGraph(1, new int[] { 1, 2, 3, 3 }, new int[] { 2, 3, 1, 4 }, 4);
+		assertEquals(set(1, 2, 3, 4), graph.getDescendantIdSet(1));
+		assertEquals(set(1, 2, 3, 4), graph.getDescendantIdSet(3));
+		assertTrue(graph.isDescendant(2, 2));
+		assertFalse(graph.isDescendant(4, 1));
+	}
+	
+	/**
+	 * Concepts outside the snapshot have no children and no descendants
+	 */
+	public void testUnknownConcept() {
+		ConceptGraph graph = new ConceptGraph(1, new int[] { 1 }, new int[] { 2 }, 1);
+		assertEquals(0, graph.getChildIds(5).length);
+		assertEquals(0, graph.getDescendantIds(5).length);
+		assertEquals(0, graph.getDescendantIds(2).length);
+		assertTrue(graph.isChild(1, 2));
+		assertFalse(graph.isChild(2, 1));
+	}
+	
+	/**
+	 * Tests are leaves, their coded answers are not part of the lab
+	 */
+	public void testAnswersOfTestsAreLeftOut() {
+		ConceptDictionaryFixture dictionary = new ConceptDictionaryFixture(7, 3, 2, 2);
+		ConceptGraph graph = dictionary.newGraph(1);
+		int rootId = dictionary.getRoot().getConceptId();
+		for (Concept concept : dictionary.getConcepts().values()) {
+			boolean isTest = concept.getConceptClass().getName().equals("Test");
+			boolean isResult = concept.getConceptClass().getName().equals("Misc");
+			if (isTest) {
+				assertTrue(graph.isDescendant(rootId, concept.getConceptId()));
+				assertEquals(0, graph.getChildIds(concept.getConceptId()).length);
+			}
+			if (isResult) {
+				assertFalse(graph.isDescendant(rootId, concept.getConceptId()));
+			}
+		}
+	}
+	
+	private static Set<Integer> set(int... ids) {
+		Set<Integer> set = new TreeSet<Integer>();
+		for (int id : ids) {
+			set.add(id);
+		}
+		return set;
+	}
+}
@@ -0,0 +1,133 @@
+/**
+ *  Copyright 2010 Society for Health Information Systems Programmes, India (HISP India)
+ *
+ *  This file is part of Hospital-core module.
+ *
+ *  Hospital-core module is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  Hospital-core module is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Hospital-core module.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+
+package org.openmrs.module.hospitalcore.db.hibernate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import junit.framework.TestCase;
+
+import org.openmrs.module.hospitalcore.db.hibernate.ReceiptIdGenerator.BlockSource;
+
+/**
+ * This test hands out receipt ids from several nodes and threads at once, with small blocks so
+ * they are refilled all the time, and checks that the ids are unique and increase on every thread
+ */
+public class ReceiptIdGeneratorTest extends TestCase {
+	
+	private static final int NODES = 4;
+	
+	private static final int THREADS_PER_NODE = 8;
+	
+	private static final int IDS_PER_THREAD = 1000;
+	
+	private static final int BLOCK_SIZE = 7;
+	
+	/**
+	 * The counters of a busy hospital give out a few thousand receipts per minute
+	 */
+	private static final int MIN_IDS_PER_MINUTE = 6000;
+	
+	/**
+	 * The billing_receipt_sequence row shared by the nodes, moved by a block per reservation as
+	 * LAST_INSERT_ID(next_val + ?) does
+	 */
+	private static class SequenceRow implements BlockSource {
+		
+		private final AtomicLong nextVal = new AtomicLong(1);
+		
+		public long reserve(int size) {
+			try {
+				// a round trip to the database
+				Thread.sleep(1);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return nextVal.addAndGet(size);
+		}
+	}
+	
+	public void testConcurrentIdsAreUniqueAndIncreasing() throws Exception {
+		final SequenceRow row = new SequenceRow();
+		Properties params = new Properties();
+		params.setProperty(ReceiptIdGenerator.BLOCK_SIZE, Integer.toString(BLOCK_SIZE));
+		ExecutorService executor = Executors.newFixedThreadPool(NODES * THREADS_PER_NODE);
+		final CountDownLatch start = new CountDownLatch(1);
+		List<Future<int[]>> results = new ArrayList<Future<int[]>>();
+		try {
+			for (int node = 0; node < NODES; node++) {
+				final ReceiptIdGenerator generator = new ReceiptIdGenerator();
+				generator.configure(null, params, null);
+				for (int thread = 0; thread < THREADS_PER_NODE; thread++) {
+					results.add(executor.submit(new Callable<int[]>() {
+						
+						public int[] call() throws Exception {
+							start.await();
+							int[] ids = new int[IDS_PER_THREAD];
+							for (int i = 0; i < ids.length; i++) {
+								ids[i] = generator.next(row);
+							}
+							return ids;
+						}
+					}));
+				}
+			}
+			long started = System.currentTimeMillis();
+			start.countDown();
+			
+			boolean[] seen = new boolean[(int) row.nextVal.get() + NODES * THREADS_PER_NODE * IDS_PER_THREAD
+			        + NODES * BLOCK_SIZE];
+			int count = 0;
+			for (Future<int[]> result : results) {
+				int[] ids = result.get();
+				for (int i = 0; i < ids.length; i++) {
+					if (i > 0) {
+						assertTrue("ids of a thread must increase: " + ids[i - 1] + ", " + ids[i], ids[i] > ids[i - 1]);
+					}
+					assertFalse("id " + ids[i] + " given out twice", seen[ids[i]]);
+					seen[ids[i]] = true;
+					count++;
+				}
+			}
+			long elapsed = Math.max(1, System.currentTimeMillis() - started);
+			
+			assertEquals(NODES * THREADS_PER_NODE * IDS_PER_THREAD, count);
+			// only the rest of the last block of each node is skipped
+			int skipped = 0;
+			for (int id = 1; id < row.nextVal.get(); id++) {
+				if (!seen[id]) {
+					skipped++;
+				}
+			}
+			assertTrue(skipped + " ids skipped", skipped < NODES * BLOCK_SIZE);
+			assertTrue(count * 60000L / elapsed + " ids per minute", count * 60000L / elapsed >= MIN_IDS_PER_MINUTE);
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
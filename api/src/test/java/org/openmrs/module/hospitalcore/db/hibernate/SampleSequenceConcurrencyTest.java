@@ -0,0 +1,184 @@
+/**
+ *  Copyright 2010 Society for Health Information Systems Programmes, India (HISP India)
+ *
+ *  This file is part of Hospital-core module.
+ *
+ *  Hospital-core module is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  Hospital-core module is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Hospital-core module.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+
+package org.openmrs.module.hospitalcore.db.hibernate;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import junit.framework.TestCase;
+
+/**
+ * This test runs the sample number reservation of HibernateLabDAO from 50 accepts at once against
+ * MySQL, the first accept of each day included, and checks that every number is given out once.
+ * It needs a scratch MySQL schema and is skipped without one, run it with
+ * mvn test -Dtest=SampleSequenceConcurrencyTest -Dhospitalcore.test.mysql.url=jdbc:mysql://localhost/scratch?user=...&password=...
+ */
+public class SampleSequenceConcurrencyTest extends TestCase {
+	
+	public static final String MYSQL_URL = "hospitalcore.test.mysql.url";
+	
+	private static final int ACCEPTS = 50;
+	
+	private static final int DAYS = 10;
+	
+	private static final int LAB_ID = -21;
+	
+	private static final Pattern PARAMETER = Pattern.compile(":(\\w+)");
+	
+	private String url;
+	
+	protected void setUp() throws Exception {
+		url = System.getProperty(MYSQL_URL);
+		if (url == null) {
+			return;
+		}
+		Class.forName("com.mysql.jdbc.Driver");
+		Connection connection = DriverManager.getConnection(url);
+		try {
+			Statement statement = connection.createStatement();
+			// as created by sqldiff.xml
+			statement.executeUpdate("CREATE TABLE IF NOT EXISTS simplelabentry_sample_sequence ("
+			        + " lab_id int(11) NOT NULL, sample_date date NOT NULL, next_val int(11) NOT NULL,"
+			        + " PRIMARY KEY (lab_id, sample_date)) ENGINE=InnoDB");
+			statement.executeUpdate("DELETE FROM simplelabentry_sample_sequence WHERE lab_id = " + LAB_ID);
+		} finally {
+			connection.close();
+		}
+	}
+	
+	public void testParallelAcceptsGetUniqueNumbers() throws Exception {
+		if (url == null) {
+			System.out.println("Skipped, set " + MYSQL_URL + " to run against MySQL");
+			return;
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(ACCEPTS);
+		try {
+			for (int day = 1; day <= DAYS; day++) {
+				final java.sql.Date date = java.sql.Date.valueOf("2010-10-" + (day < 10 ? "0" + day : "" + day));
+				final CountDownLatch start = new CountDownLatch(1);
+				List<Future<int[]>> accepts = new ArrayList<Future<int[]>>();
+				for (int i = 0; i < ACCEPTS; i++) {
+					final int count = 1 + i % 3;
+					accepts.add(executor.submit(new Callable<int[]>() {
+						
+						public int[] call() throws Exception {
+							start.await();
+							return accept(date, count);
+						}
+					}));
+				}
+				start.countDown();
+				List<int[]> reserved = new ArrayList<int[]>();
+				for (Future<int[]> accept : accepts) {
+					reserved.add(accept.get());
+				}
+				assertContiguous(date.toString(), reserved);
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+	
+	/**
+	 * One accept in its own transaction, reserving as HibernateLabDAO.reserveSampleNumbers does on
+	 * a day without numbers given out before the sequence
+	 * 
+	 * @return the first number and the count
+	 */
+	private int[] accept(java.sql.Date day, int count) throws SQLException {
+		Connection connection = DriverManager.getConnection(url);
+		try {
+			connection.setAutoCommit(false);
+			connection.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+			Map<String, Object> parameters = new java.util.HashMap<String, Object>();
+			parameters.put("labId", LAB_ID);
+			parameters.put("day", day);
+			parameters.put("lastNumber", 0);
+			parameters.put("count", count);
+			query(connection, HibernateLabDAO.COUNT_SAMPLE_SEQUENCES, parameters);
+			prepare(connection, HibernateLabDAO.RESERVE_SAMPLE_NUMBERS, parameters).executeUpdate();
+			int limit = query(connection, "SELECT LAST_INSERT_ID()", parameters);
+			// the accept saves its lab tests while holding the row
+			Thread.sleep(2);
+			connection.commit();
+			return new int[] { limit - count, count };
+		} catch (InterruptedException e) {
+			connection.rollback();
+			throw new SQLException(e.toString());
+		} finally {
+			connection.close();
+		}
+	}
+	
+	private static void assertContiguous(String day, List<int[]> reserved) {
+		int[][] ranges = reserved.toArray(new int[reserved.size()][]);
+		Arrays.sort(ranges, new Comparator<int[]>() {
+			
+			public int compare(int[] o1, int[] o2) {
+				return o1[0] - o2[0];
+			}
+		});
+		int next = 1;
+		for (int[] range : ranges) {
+			assertEquals(day + " numbers given out twice or lost", next, range[0]);
+			next += range[1];
+		}
+	}
+	
+	private static int query(Connection connection, String sql, Map<String, Object> parameters) throws SQLException {
+		ResultSet result = prepare(connection, sql, parameters).executeQuery();
+		result.next();
+		return result.getInt(1);
+	}
+	
+	/**
+	 * Prepare a statement written with the named parameters of Hibernate
+	 */
+	static PreparedStatement prepare(Connection connection, String sql, Map<String, Object> parameters)
+	        throws SQLException {
+		List<String> names = new ArrayList<String>();
+		Matcher matcher = PARAMETER.matcher(sql);
+		while (matcher.find()) {
+			names.add(matcher.group(1));
+		}
+		PreparedStatement statement = connection.prepareStatement(matcher.replaceAll("?"));
+		for (int i = 0; i < names.size(); i++) {
+			statement.setObject(i + 1, parameters.get(names.get(i)));
+		}
+		return statement;
+	}
+}
@@ -0,0 +1,57 @@
+/**
+ *  Copyright 2010 Society for Health Information Systems Programmes, India (HISP India)
+ *
+ *  This file is part of Hospital-core module.
+ *
+ *  Hospital-core module is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  Hospital-core module is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Hospital-core module.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+
+package org.openmrs.module.hospitalcore.util;
+
+import java.util.Date;
+
+import junit.framework.TestCase;
+
+/**
+ * This test checks that admission cursors are read back as written
+ */
+public class AdmissionCursorTest extends TestCase {
+	
+	public void testRoundTrip() {
+		Date[] dates = { new Date(1288000000000L), new Date(0), new Date(-86400000L), null };
+		for (Date date : dates) {
+			AdmissionCursor cursor = AdmissionCursor.parse(new AdmissionCursor(date, 42).toString());
+			assertEquals(date, cursor.getAdmissionDate());
+			assertEquals(Integer.valueOf(42), cursor.getId());
+		}
+	}
+	
+	public void testBlankIsFirstPage() {
+		assertNull(AdmissionCursor.parse(null));
+		assertNull(AdmissionCursor.parse(" "));
+	}
+	
+	public void testInvalidCursor() {
+		String[] cursors = { "42", "abc-1", "null-", "12-x" };
+		for (String cursor : cursors) {
+			try {
+				AdmissionCursor.parse(cursor);
+				fail("Parsed " + cursor);
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+}
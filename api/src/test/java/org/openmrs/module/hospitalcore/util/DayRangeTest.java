@@ -0,0 +1,176 @@
+/**
+ *  Copyright 2010 Society for Health Information Systems Programmes, India (HISP India)
+ *
+ *  This file is part of Hospital-core module.
+ *
+ *  Hospital-core module is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  Hospital-core module is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Hospital-core module.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+
+package org.openmrs.module.hospitalcore.util;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.TestCase;
+
+/**
+ * This test checks DayRange, used from many threads, against day bounds computed the way the DAOs
+ * did before: formatting a date and parsing it back with "00:00:00" and "23:59:59"
+ */
+public class DayRangeTest extends TestCase {
+	
+	private static final long DAY = 24 * 60 * 60 * 1000L;
+	
+	private static final int THREADS = 8;
+	
+	/**
+	 * Zones with midnight, early morning and half hour daylight saving transitions, and one without
+	 */
+	private static final String[] ZONES = { "America/Sao_Paulo", "America/New_York", "Europe/London",
+	        "Australia/Lord_Howe", "Asia/Kolkata" };
+	
+	private TimeZone defaultZone;
+	
+	protected void setUp() throws Exception {
+		defaultZone = TimeZone.getDefault();
+	}
+	
+	protected void tearDown() throws Exception {
+		TimeZone.setDefault(defaultZone);
+	}
+	
+	/**
+	 * Every day of 2017 to 2019 in every zone, from many threads at once
+	 */
+	public void testConcurrentRangesMatchFormatAndParse() throws Exception {
+		for (String zone : ZONES) {
+			TimeZone.setDefault(TimeZone.getTimeZone(zone));
+			// the calendars of DayRange are per thread and keep the zone they were created in
+			ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+			try {
+				checkConcurrently(executor, zone);
+			} finally {
+				executor.shutdown();
+			}
+		}
+	}
+	
+	/**
+	 * The day of the spring transition in Sao Paulo starts at 01:00, midnight does not exist
+	 */
+	public void testDayWithoutMidnight() throws Exception {
+		TimeZone.setDefault(TimeZone.getTimeZone("America/Sao_Paulo"));
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			DayRange range = executor.submit(new Callable<DayRange>() {
+				
+				public DayRange call() {
+					return DayRange.parse("04/11/2018");
+				}
+			}).get();
+			assertEquals(23 * 60 * 60 * 1000L, range.getEndMillis() - range.getStartMillis());
+			StringBuilder errors = new StringBuilder();
+			check(errors, "04/11/2018", expected("04/11/2018", "04/11/2018"), range);
+			assertEquals("", errors.toString());
+		} finally {
+			executor.shutdown();
+		}
+	}
+	
+	/**
+	 * Malformed dates are refused
+	 */
+	public void testParseRejectsMalformedDates() {
+		String[] dates = { null, "", "2018-11-04", "04/11", "04/11/2018/1", "a/11/2018" };
+		for (String date : dates) {
+			try {
+				DayRange.parse(date);
+				fail("Parsed " + date);
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+	
+	private void checkConcurrently(ExecutorService executor, final String zone) throws Exception {
+		Random random = new Random(zone.hashCode());
+		List<Future<String>> results = new ArrayList<Future<String>>();
+		SimpleDateFormat day = new SimpleDateFormat("dd/MM/yyyy");
+		long first = day.parse("25/12/2016").getTime();
+		long last = day.parse("05/01/2020").getTime();
+		for (int round = 0; round < 4; round++) {
+			for (long time = first; time < last; time += DAY) {
+				final Date from = new Date(time + (long) (random.nextDouble() * DAY));
+				final Date to = new Date(from.getTime() + random.nextInt(40) * DAY + random.nextInt((int) DAY));
+				final int days = random.nextInt(80) - 40;
+				final String fromText = day.format(from);
+				final String toText = day.format(to);
+				final long[] expectedOf = expected(fromText, fromText);
+				final long[] expectedBetween = expected(fromText, toText);
+				final long[] expectedShift = expected(shift(fromText, days), shift(fromText, days));
+				results.add(executor.submit(new Callable<String>() {
+					
+					public String call() {
+						StringBuilder errors = new StringBuilder();
+						check(errors, "of " + from, expectedOf, DayRange.of(from));
+						check(errors, "parse " + fromText, expectedOf, DayRange.parse(fromText));
+						check(errors, "between " + from + " " + to, expectedBetween, DayRange.between(from, to));
+						check(errors, "parse " + fromText + " " + toText, expectedBetween, DayRange.parse(fromText,
+						    toText));
+						check(errors, "shift " + fromText + " " + days, expectedShift, DayRange.of(from).shift(days));
+						return errors.toString();
+					}
+				}));
+			}
+		}
+		for (Future<String> result : results) {
+			assertEquals(zone, "", result.get());
+		}
+	}
+	
+	private static void check(StringBuilder errors, String what, long[] expected, DayRange actual) {
+		if (expected[0] != actual.getStartMillis() || expected[1] != actual.getEndMillis()) {
+			errors.append(what).append(": expected [").append(new Date(expected[0])).append(", ").append(
+			    new Date(expected[1])).append(") got ").append(actual).append('\n');
+		}
+	}
+	
+	/**
+	 * Bounds computed with new formatters, the end is one second after 23:59:59 of the last day
+	 */
+	private static long[] expected(String from, String to) throws ParseException {
+		SimpleDateFormat formatter = new SimpleDateFormat("dd/MM/yyyy HH:mm:ss");
+		return new long[] { formatter.parse(from + " 00:00:00").getTime(),
+		        formatter.parse(to + " 23:59:59").getTime() + 1000 };
+	}
+	
+	private static String shift(String date, int days) throws ParseException {
+		SimpleDateFormat formatter = new SimpleDateFormat("dd/MM/yyyy");
+		Calendar calendar = Calendar.getInstance();
+		calendar.setTime(formatter.parse(date));
+		calendar.add(Calendar.DAY_OF_MONTH, days);
+		return formatter.format(calendar.getTime());
+	}
+}
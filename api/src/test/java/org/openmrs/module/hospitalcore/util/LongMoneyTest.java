@@ -0,0 +1,243 @@
+/**
+ *  Copyright 2010 Society for Health Information Systems Programmes, India (HISP India)
+ *
+ *  This file is part of Hospital-core module.
+ *
+ *  Hospital-core module is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  Hospital-core module is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Hospital-core module.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+
+package org.openmrs.module.hospitalcore.util;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Currency;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * This test compares LongMoney with Money on random amounts in every rounding mode, and checks
+ * that going past the range of a long throws
+ */
+public class LongMoneyTest extends TestCase {
+	
+	private static final long SEED = 20101011L;
+	
+	private static final int ROUNDS = 20000;
+	
+	private static final Currency INR = Currency.getInstance("INR");
+	
+	private static final Currency USD = Currency.getInstance("USD");
+	
+	/**
+	 * Factors hitting the fallback: a scale above the currency decimals plus a long scale, a
+	 * negative scale, and ties
+	 */
+	private static final double[] FACTORS = { 0, 1, -1, 2, 0.1, 0.05, 0.125, 12.5, -0.15, 0.333, 1.0 / 3, 7.77,
+	        1e-7, 0.0000123, 1e10, 1e18, 123456789.123 };
+	
+	private Currency defaultCurrency;
+	
+	private RoundingMode defaultRounding;
+	
+	protected void setUp() throws Exception {
+		defaultCurrency = Money.getDefaultCurrency();
+		defaultRounding = Money.getDefaultRounding();
+		Money.init(INR, RoundingMode.HALF_EVEN);
+	}
+	
+	protected void tearDown() throws Exception {
+		Money.init(defaultCurrency, defaultRounding);
+	}
+	
+	public void testArithmeticMatchesMoney() {
+		Random random = new Random(SEED);
+		for (RoundingMode rounding : roundingModes()) {
+			for (int i = 0; i < ROUNDS; i++) {
+				Money money = new Money(randomAmount(random), INR, rounding);
+				LongMoney longMoney = LongMoney.valueOf(money);
+				assertEquals(money, longMoney.toMoney());
+				
+				Money other = new Money(randomAmount(random), INR, rounding);
+				LongMoney longOther = LongMoney.valueOf(other);
+				assertEquals(money.plus(other), longMoney.plus(longOther).toMoney());
+				assertEquals(money.minus(other), longMoney.minus(longOther).toMoney());
+				assertEquals(money.negate(), longMoney.negate().toMoney());
+				assertEquals(Integer.signum(money.compareTo(other)), Integer.signum(longMoney.compareTo(longOther)));
+				
+				int intFactor = random.nextInt(2001) - 1000;
+				assertEquals(money.times(intFactor), longMoney.times(intFactor).toMoney());
+				
+				double factor = i % 3 == 0 ? FACTORS[random.nextInt(FACTORS.length)]
+				        : (random.nextInt(100001) - 50000) / 1000.0;
+				assertTimes(money, longMoney, factor);
+			}
+		}
+	}
+	
+	/**
+	 * Products past a long in the fast path are computed again with BigDecimal
+	 */
+	public void testTimesFallsBackWhenTheProductDoesNotFit() {
+		long[] units = { Long.MAX_VALUE / 4, Long.MIN_VALUE / 4, Long.MAX_VALUE / 100, Long.MAX_VALUE };
+		double[] factors = { 0.25, 0.5, 0.015, 0.001, 1e-7 };
+		for (RoundingMode rounding : roundingModes()) {
+			for (long unit : units) {
+				for (double factor : factors) {
+					for (int scale = 0; scale <= 2; scale++) {
+						LongMoney longMoney = new LongMoney(unit, scale, INR, rounding);
+						assertTimes(longMoney.toMoney(), longMoney, factor);
+					}
+				}
+			}
+		}
+	}
+	
+	public void testOverflowThrows() {
+		LongMoney max = new LongMoney(Long.MAX_VALUE, 2);
+		assertOverflow(max, 2);
+		assertOverflow(max, 1.5);
+		assertOverflow(max, 1e10);
+		assertOverflow(new LongMoney(Long.MIN_VALUE, 0), -1);
+		try {
+			max.plus(new LongMoney(1, 2));
+			fail("Sum out of range");
+		} catch (ArithmeticException e) {
+			// expected
+		}
+		try {
+			new LongMoney(Long.MAX_VALUE, 0).plus(new LongMoney(0, 2));
+			fail("Rescale out of range");
+		} catch (ArithmeticException e) {
+			// expected
+		}
+		try {
+			LongMoney.sum(new long[] { Long.MAX_VALUE, 1 });
+			fail("Sum out of range");
+		} catch (ArithmeticException e) {
+			// expected
+		}
+		try {
+			LongMoney.toUnits(new BigDecimal("92233720368547758.08"), 2);
+			fail("Amount out of range");
+		} catch (ArithmeticException e) {
+			// expected
+		}
+		try {
+			LongMoney.toUnits(new BigDecimal("1.005"), 2);
+			fail("More decimals than the scale");
+		} catch (ArithmeticException e) {
+			// expected
+		}
+		assertEquals(Long.MAX_VALUE, LongMoney.toUnits(new BigDecimal("92233720368547758.07"), 2));
+		assertEquals(Long.MIN_VALUE, LongMoney.toUnits(new BigDecimal("-92233720368547758.08"), 2));
+	}
+	
+	public void testSumsMatchMoney() {
+		Random random = new Random(SEED);
+		for (int round = 0; round < 50; round++) {
+			int size = random.nextInt(500);
+			List<Money> moneys = new ArrayList<Money>();
+			List<LongMoney> longMoneys = new ArrayList<LongMoney>();
+			List<BigDecimal> amounts = new ArrayList<BigDecimal>();
+			long[] units = new long[size];
+			for (int i = 0; i < size; i++) {
+				BigDecimal amount = BigDecimal.valueOf(random.nextInt(2000001) - 1000000, random.nextInt(3));
+				moneys.add(new Money(amount));
+				longMoneys.add(LongMoney.valueOf(new Money(amount)));
+				amounts.add(amount);
+				units[i] = LongMoney.toUnits(amount, 2);
+			}
+			Money expected = Money.sum(moneys, INR);
+			assertEquals(expected, LongMoney.sum(longMoneys, INR).toMoney());
+			assertEquals(0, expected.getAmount().compareTo(BigDecimal.valueOf(LongMoney.sum(units), 2)));
+			
+			amounts.add(null);
+			Collections.shuffle(amounts, random);
+			BigDecimal[] array = amounts.toArray(new BigDecimal[amounts.size()]);
+			assertEquals(LongMoney.sum(units), LongMoney.sum(array, 2));
+			assertEquals(LongMoney.sum(units), LongMoney.sum(amounts, 2));
+		}
+		assertEquals(Money.sum(new ArrayList<Money>(), INR), LongMoney.sum(new ArrayList<LongMoney>(), INR).toMoney());
+	}
+	
+	public void testSumChecksCurrency() {
+		try {
+			LongMoney.sum(Arrays.asList(new LongMoney(1, 2), new LongMoney(1, 2, USD, RoundingMode.HALF_EVEN)), INR);
+			fail("Mismatched currency");
+		} catch (Money.MismatchedCurrencyException e) {
+			// expected
+		}
+	}
+	
+	public void testDivideMatchesBigDecimal() {
+		Random random = new Random(SEED);
+		for (RoundingMode rounding : roundingModes()) {
+			for (int i = 0; i < ROUNDS; i++) {
+				long dividend = i % 5 == 0 ? random.nextLong() : random.nextInt(20001) - 10000;
+				long divisor = i % 2 == 0 ? (long) Math.pow(10, random.nextInt(19)) : 1 + random.nextInt(1000);
+				BigDecimal expected = new BigDecimal(dividend).divide(new BigDecimal(divisor), 0, rounding);
+				assertEquals(dividend + "/" + divisor + " " + rounding, expected.longValue(), LongMoney.divide(dividend,
+				    divisor, rounding));
+			}
+		}
+	}
+	
+	private static void assertTimes(Money money, LongMoney longMoney, double factor) {
+		Money expected = money.times(factor);
+		LongMoney actual;
+		try {
+			actual = longMoney.times(factor);
+		} catch (ArithmeticException e) {
+			// only when Money has a result past a long
+			assertTrue(money + " * " + factor, expected.getAmount().unscaledValue().bitLength() > 63);
+			return;
+		}
+		assertEquals(money + " * " + factor, expected, actual.toMoney());
+	}
+	
+	private static void assertOverflow(LongMoney money, double factor) {
+		try {
+			money.times(factor);
+			fail(money + " * " + factor + " out of range");
+		} catch (ArithmeticException e) {
+			// expected
+		}
+	}
+	
+	private static void assertOverflow(LongMoney money, int factor) {
+		try {
+			money.times(factor);
+			fail(money + " * " + factor + " out of range");
+		} catch (ArithmeticException e) {
+			// expected
+		}
+	}
+	
+	private static BigDecimal randomAmount(Random random) {
+		long units = random.nextInt(10) == 0 ? random.nextLong() / 1000000 : random.nextInt(2000001) - 1000000;
+		return BigDecimal.valueOf(units, random.nextInt(3));
+	}
+	
+	private static List<RoundingMode> roundingModes() {
+		List<RoundingMode> modes = new ArrayList<RoundingMode>(Arrays.asList(RoundingMode.values()));
+		modes.remove(RoundingMode.UNNECESSARY);
+		return modes;
+	}
+}
@@ -0,0 +1,97 @@
+/**
+ *  Copyright 2010 Society for Health Information Systems Programmes, India (HISP India)
+ *
+ *  This file is part of Hospital-core module.
+ *
+ *  Hospital-core module is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  Hospital-core module is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Hospital-core module.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+
+package org.openmrs.module.hospitalcore.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * This test checks that VitalLatestCache keeps a reading committed while the latest readings are
+ * being loaded. Every test uses its own admission ids, the cache is shared.
+ */
+public class VitalLatestCacheTest extends TestCase {
+	
+	private static VitalReading reading(long time) {
+		return new VitalReading(time, 120, 80, 72, 37);
+	}
+	
+	private static Map<Integer, VitalReading> get(Integer admissionLogId, List<Integer> missing) {
+		return VitalLatestCache.get(Collections.singletonList(admissionLogId), missing);
+	}
+	
+	public void testReadingCommittedDuringLoadIsKept() {
+		Integer id = -1;
+		List<Integer> missing = new ArrayList<Integer>();
+		assertTrue(get(id, missing).isEmpty());
+		assertEquals(Arrays.asList(id), missing);
+		
+		// the load reads reading 1 from the database, then reading 2 is committed
+		Map<Integer, VitalReading> loaded = new HashMap<Integer, VitalReading>();
+		loaded.put(id, reading(1));
+		VitalLatestCache.put(id, reading(2));
+		VitalLatestCache.putAll(missing, loaded);
+		
+		missing.clear();
+		assertEquals(2, get(id, missing).get(id).getTime());
+		assertTrue(missing.isEmpty());
+	}
+	
+	public void testReadingCommittedDuringLoadOfAdmissionWithoutReadings() {
+		Integer id = -2;
+		VitalLatestCache.put(id, reading(5));
+		List<Integer> missing = new ArrayList<Integer>();
+		assertTrue("a pending reading is loaded first", get(id, missing).isEmpty());
+		assertEquals(Arrays.asList(id), missing);
+		
+		VitalLatestCache.putAll(missing, new HashMap<Integer, VitalReading>());
+		
+		missing.clear();
+		assertEquals(5, get(id, missing).get(id).getTime());
+	}
+	
+	public void testNewerLoadedReadingWins() {
+		Integer id = -3;
+		// an older reading entered late
+		VitalLatestCache.put(id, reading(3));
+		Map<Integer, VitalReading> loaded = new HashMap<Integer, VitalReading>();
+		loaded.put(id, reading(4));
+		VitalLatestCache.putAll(Collections.singletonList(id), loaded);
+		
+		assertEquals(4, get(id, new ArrayList<Integer>()).get(id).getTime());
+	}
+	
+	public void testCachedReadingIsUpdated() {
+		Integer id = -4;
+		Map<Integer, VitalReading> loaded = new HashMap<Integer, VitalReading>();
+		loaded.put(id, reading(1));
+		VitalLatestCache.putAll(Collections.singletonList(id), loaded);
+		VitalLatestCache.put(id, reading(2));
+		VitalLatestCache.put(id, reading(0));
+		
+		assertEquals(2, get(id, new ArrayList<Integer>()).get(id).getTime());
+	}
+}
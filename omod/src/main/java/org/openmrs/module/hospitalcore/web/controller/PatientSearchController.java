@@ -54,6 +54,7 @@ public class PatientSearchController {
 			@RequestParam(value = "view", required = false) String view,
 			@RequestParam(value = "currentPage", required = false) Integer currentPage,
 			@RequestParam(value = "pageSize", required = false) Integer pageSize,
+			@RequestParam(value = "lastPatientId", required = false) Integer lastPatientId,
 			HttpServletRequest request, Model model) {
 		String prefix = Context.getAdministrationService().getGlobalProperty(
 				HospitalCoreConstants.PROPERTY_IDENTIFIER_PREFIX);
@@ -73,8 +74,19 @@ public class PatientSearchController {
 
 		HospitalCoreService hcs = (HospitalCoreService) Context
 				.getService(HospitalCoreService.class);
-		List<Patient> patients = hcs.searchPatient(phrase, gender, age,
-				ageRange, date, dateRange, relativeName);
+		// page in the database: by the last patient of the previous page when
+		// moving forward, by offset otherwise
+		List<Patient> renderedPatients;
+		if (lastPatientId != null && currentPage > 0) {
+			renderedPatients = hcs.searchPatient(phrase, gender, age, ageRange,
+					date, dateRange, relativeName, lastPatientId, 0, pageSize);
+		} else {
+			renderedPatients = hcs.searchPatient(phrase, gender, age, ageRange,
+					date, dateRange, relativeName, null, currentPage * pageSize,
+					pageSize);
+		}
+		Integer size = hcs.countPatient(phrase, gender, age, ageRange, date,
+				dateRange, relativeName);
 
 		// List<Patient> patients = Context.getPatientService()
 		// .getPatients(phrase);
@@ -96,14 +108,17 @@ public class PatientSearchController {
 		if (currentPage > 0) {
 			model.addAttribute("prevPage", currentPage - 1);
 		}
-		if ((currentPage + 1) * pageSize <= patients.size()) {
+		if ((currentPage + 1) * pageSize <= size) {
 			model.addAttribute("nextPage", currentPage + 1);
 		}
-		List<Patient> renderedPatients = pagePatient(patients, currentPage,
-				pageSize);
+		if (!renderedPatients.isEmpty()) {
+			model.addAttribute("lastPatientId",
+					renderedPatients.get(renderedPatients.size() - 1)
+							.getPatientId());
+		}
 
 		model.addAttribute("patients", renderedPatients);
-		model.addAttribute("size", patients.size());
+		model.addAttribute("size", size);
 		return "/module/hospitalcore/patientSearch/" + view;
 	}
 
@@ -157,19 +172,6 @@ public class PatientSearchController {
 		return filteredPatients;
 	}
 
-	// paging
-	private List<Patient> pagePatient(List<Patient> patients, int currentPage,
-			int pageSize) {
-		int firstIndex = pageSize * currentPage;
-		List<Patient> page = new ArrayList<Patient>();
-		for (int i = firstIndex; i < (currentPage + 1) * pageSize; i++) {
-			if (i < patients.size()) {
-				page.add(patients.get(i));
-			}
-		}
-		return page;
-	}
-
 	@RequestMapping(method = RequestMethod.GET)
 	public String showSearchBox(@RequestParam("view") String view,
 			@RequestParam("resultBoxId") String resultBoxId, Model model) {
@@ -0,0 +1,65 @@
+/**
+ *  Copyright 2010 Society for Health Information Systems Programmes, India (HISP India)
+ *
+ *  This file is part of Hospital-core module.
+ *
+ *  Hospital-core module is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  Hospital-core module is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Hospital-core module.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+
+package org.openmrs.module.hospitalcore.web.controller.billing;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.openmrs.api.context.Context;
+import org.openmrs.module.hospitalcore.BillingService;
+import org.openmrs.module.hospitalcore.util.ServiceCatalogue;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+
+/**
+ * Serves the pre-rendered billing service catalogue. The fragment carries the catalogue version
+ * as its ETag so billing counters only download it again after a service or concept changed.
+ */
+@Controller("HospitalcoreServiceCatalogueController")
+public class ServiceCatalogueController {
+
+	@RequestMapping(value = "/module/hospitalcore/billing/serviceCatalogue.htm", method = RequestMethod.GET)
+	public void serviceCatalogue(
+			@RequestParam(value = "part", required = false) String part,
+			HttpServletRequest request, HttpServletResponse response)
+			throws IOException {
+		ServiceCatalogue catalogue = Context.getService(BillingService.class)
+				.getServiceCatalogue();
+		response.setHeader("ETag", catalogue.getETag());
+		response.setHeader("Cache-Control", "no-cache");
+		String ifNoneMatch = request.getHeader("If-None-Match");
+		if (ifNoneMatch != null && ifNoneMatch.equals(catalogue.getETag())) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+		}
+		String fragment = "services".equals(part) ? catalogue.getServices()
+				: catalogue.getTabs();
+		response.setContentType("text/html;charset=UTF-8");
+		PrintWriter writer = response.getWriter();
+		writer.write(fragment);
+		writer.flush();
+	}
+}
@@ -25,8 +25,10 @@ import java.io.PrintWriter;
 import java.math.BigInteger;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -84,11 +86,15 @@ public class PatientSearchController {
 	
 	private Map<Integer, Map<Integer, String>> buildAttributeMap(List<Patient> patients) {
 		HospitalCoreService hcs = Context.getService(HospitalCoreService.class);
+		Map<Integer, List<PersonAttribute>> personAttributes = hcs.getPersonAttributes(getPatientIds(patients));
 		Map<Integer, Map<Integer, String>> attributeMap = new HashMap<Integer, Map<Integer, String>>();
 		for (Patient patient : patients) {
 			Map<Integer, String> attributes = new HashMap<Integer, String>();
-			for (PersonAttribute pa : hcs.getPersonAttributes(patient.getPatientId())) {
-				attributes.put(pa.getAttributeType().getId(), pa.getValue());
+			List<PersonAttribute> patientAttributes = personAttributes.get(patient.getPatientId());
+			if (patientAttributes != null) {
+				for (PersonAttribute pa : patientAttributes) {
+					attributes.put(pa.getAttributeType().getId(), pa.getValue());
+				}
 			}
 			attributeMap.put(patient.getPatientId(), attributes);
 		}
@@ -104,13 +110,21 @@ public class PatientSearchController {
 	private Map<Integer, java.util.Date> getLastVisitTime(List<Patient> patients) {
 		Map<Integer, java.util.Date> lastVisitTime = new HashMap<Integer, java.util.Date>();
 		HospitalCoreService hcs = Context.getService(HospitalCoreService.class);
+		Map<Integer, java.util.Date> lastVisitTimes = hcs.getLastVisitTimes(getPatientIds(patients));
 		for (Patient p : patients) {
-			// TO DO
-			lastVisitTime.put(p.getPatientId(), hcs.getLastVisitTime(p.getPatientId()));
+			lastVisitTime.put(p.getPatientId(), lastVisitTimes.get(p.getPatientId()));
 		}
 		return lastVisitTime;
 	}
 	
+	private Set<Integer> getPatientIds(List<Patient> patients) {
+		Set<Integer> patientIds = new HashSet<Integer>();
+		for (Patient patient : patients) {
+			patientIds.add(patient.getPatientId());
+		}
+		return patientIds;
+	}
+	
 	@RequestMapping(value = "/module/hospitalcore/getPatientResultCount.form", method = RequestMethod.POST)
 	public void getPatientResultCount(@RequestParam("query") String query, HttpServletResponse response) throws IOException {
 		response.setContentType("text/html;charset=UTF-8");
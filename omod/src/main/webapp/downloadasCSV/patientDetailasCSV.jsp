@@ -20,11 +20,40 @@
 
 <form:form action="downloadCSV" method="post" id="downloadCSV">
 		<fieldset style="width: 400px;">
-			
+			From (dd/mm/yyyy) <input type="text" name="fromDate" id="fromDate" size="10"/>
+			To <input type="text" name="toDate" id="toDate" size="10"/>
+			<select name="partition" id="partition">
+				<option value="day">Per day</option>
+				<option value="week">Per week</option>
+			</select>
+			<input type="hidden" name="exportId" id="exportId"/>
 			<input id="submitId" type="submit" value="Downlaod CSV">
+			<div id="exportProgress"></div>
 		</fieldset>
 	</form:form>
 
+<script type="text/javascript">
+	// poll the progress of date range exports while the file downloads
+	jQuery("#downloadCSV").submit(function(){
+		if(jQuery("#fromDate").val() == "" || jQuery("#toDate").val() == ""){
+			return true;
+		}
+		var exportId = new Date().getTime() + "";
+		jQuery("#exportId").val(exportId);
+		var timer = setInterval(function(){
+			jQuery.getJSON("exportProgress", {exportId: exportId}, function(progress){
+				if(progress.totalPartitions){
+					jQuery("#exportProgress").html(progress.donePartitions + " / " + progress.totalPartitions + " partitions, " + progress.rows + " visits");
+				}
+				if(progress.finished){
+					clearInterval(timer);
+				}
+			});
+		}, 2000);
+		return true;
+	});
+</script>
+
 
 
 <%@ include file="/WEB-INF/template/footer.jsp" %>
\ No newline at end of file
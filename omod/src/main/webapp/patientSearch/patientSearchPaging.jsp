@@ -27,7 +27,7 @@
 page ${currentPage + 1}
 &nbsp;&nbsp;
 <c:if test="${not empty nextPage}">
-	<a href="#" onClick="ADVSEARCH.searchPatient(${nextPage}, 10)">
+	<a href="#" onClick="ADVSEARCH.searchPatient(${nextPage}, 10<c:if test="${not empty lastPatientId}">, ${lastPatientId}</c:if>)">
 		Next &raquo;&raquo;
 	</a>
 </c:if>
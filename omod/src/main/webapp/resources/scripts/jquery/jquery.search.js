@@ -50,7 +50,7 @@ ADVSEARCH = {
 	},
 
 	// search patient
-	searchPatient : function(currentPage, pageSize) {
+	searchPatient : function(currentPage, pageSize, lastPatientId) {
 		this.beforeSearch();
 		form = jQuery("#searchForm");
 		phrase = jQuery("#phrase", form).val();
@@ -69,21 +69,26 @@ ADVSEARCH = {
 			if (this.params.length > 0) {
 				url = url + "?" + this.params;
 			}
+			var data = {
+				phrase : phrase,
+				gender : gender,
+				age : age,
+				ageRange : ageRange,
+				date : date,
+				dateRange : dateRange,
+				relativeName : relativeName,
+				view : view,
+				currentPage : currentPage,
+				pageSize : pageSize
+			};
+			// only sent when paging forward, the first search and "Previous" page by offset
+			if (lastPatientId != null) {
+				data.lastPatientId = lastPatientId;
+			}
 			jQuery.ajax({
 				type : "POST",
 				url : url,
-				data : ({
-					phrase : phrase,
-					gender : gender,
-					age : age,
-					ageRange : ageRange,
-					date : date,
-					dateRange : dateRange,
-					relativeName : relativeName,
-					view : view,
-					currentPage : currentPage,
-					pageSize : pageSize
-				}),
+				data : data,
 				success : function(data) {
 					resultBoxId = "#" + jQuery("#resultBoxId", form).val();
 					jQuery(resultBoxId).html(data);